@@ -0,0 +1,143 @@
+package com.fasterxml.aalto;
+
+/**
+ * Class that contains constant for property names used to configure
+ * non-standard (Aalto-specific) properties of input factories and
+ * stream readers. These are in addition to properties defined by
+ * Stax and Stax2 APIs.
+ */
+public final class AaltoInputProperties
+{
+    /**
+     * Property that defines maximum number of names that symbol tables
+     * shared by readers of a factory may contain. If a reader encounters
+     * more distinct names than this, it will stop adding them to its
+     * symbol table (names are still constructed, just not shared), and
+     * the shared table is reset when reader is closed. This prevents
+     * input with generated, unique element or attribute names from
+     * growing tables without bounds, degrading performance for all
+     * other readers.
+     *<p>
+     * Value is an {@link Integer}; default value is
+     * {@link com.fasterxml.aalto.in.ReaderConfig#DEFAULT_MAX_SYMBOL_TABLE_SIZE}.
+     */
+    public final static String P_MAX_SYMBOL_TABLE_SIZE = "com.fasterxml.aalto.maxSymbolTableSize";
+
+    /**
+     * Property that defines {@link com.fasterxml.aalto.util.BufferPool}
+     * that readers of the factory use for allocating and recycling
+     * their buffers. If null (default), a per-thread
+     * {@link com.fasterxml.aalto.util.BufferRecycler} is used, which
+     * works well for a fixed set of long-lived threads; for short-lived
+     * threads (including virtual threads), a shared pool like
+     * {@link com.fasterxml.aalto.util.SharedBufferPool} is more
+     * efficient.
+     */
+    public final static String P_BUFFER_POOL = "com.fasterxml.aalto.bufferPool";
+
+    /**
+     * Property that defines maximum length of CHARACTERS events returned
+     * by readers: if enabled (value above zero), longer text segments are
+     * returned as multiple consecutive CHARACTERS events, so that the
+     * amount of memory a reader needs stays constant regardless of length
+     * of text content. Chunks may exceed the limit by a few characters in
+     * rare cases (long runs of ']' characters at the boundary).
+     * Has no effect if text coalescing is enabled.
+     *<p>
+     * Value is an {@link Integer}; default value is 0, meaning that
+     * text is not split.
+     */
+    public final static String P_MAX_TEXT_CHUNK_LENGTH = "com.fasterxml.aalto.maxTextChunkLength";
+
+    /**
+     * Property that defines size of the cache used for canonicalizing
+     * short attribute values and text segments: if enabled (value above
+     * zero), readers of the factory return shared String instances for
+     * repeated values, instead of constructing a new String for each
+     * occurrence. This reduces memory usage of object graphs built from
+     * documents that repeat a small set of values (codes, enumerated
+     * values). Cache is bounded; least recently used values are
+     * evicted as necessary.
+     *<p>
+     * Value is an {@link Integer}, maximum number of values to cache;
+     * default value is 0, meaning that values are not cached.
+     */
+    public final static String P_VALUE_CACHE_SIZE = "com.fasterxml.aalto.valueCacheSize";
+
+    /**
+     * Property that can be enabled to indicate that input comes from
+     * a trusted source (such as another service using Aalto writers),
+     * and is known to be well-formed. If enabled, readers skip some of
+     * the checks that only matter for malformed input: duplicate
+     * attribute checks, verification that end tag names match start
+     * tags, and validation of characters of new names. Malformed input
+     * will still not cause anything worse than an exception (or
+     * incorrect content), but problems may not be reported, or reported
+     * with less accurate diagnostics.
+     *<p>
+     * Value is a {@link Boolean}; default value is false.
+     */
+    public final static String P_TRUSTED_INPUT = "com.fasterxml.aalto.trustedInput";
+
+    // // // Resource limits
+
+    /* Limits are meant for protecting services that process input from
+     * untrusted sources; if a limit is exceeded, reader throws
+     * a WFCException. None is enforced by default.
+     */
+
+    /**
+     * Property that defines maximum nesting depth of elements; root
+     * element is at depth 1.
+     *<p>
+     * Value is an {@link Integer}; default value is
+     * {@link java.lang.Integer#MAX_VALUE} (no limit).
+     */
+    public final static String P_MAX_ELEMENT_DEPTH = "com.fasterxml.aalto.maxElementDepth";
+
+    /**
+     * Property that defines maximum number of attributes a single
+     * element may have; namespace declarations are not included.
+     *<p>
+     * Value is an {@link Integer}; default value is
+     * {@link java.lang.Integer#MAX_VALUE} (no limit).
+     */
+    public final static String P_MAX_ATTRIBUTE_COUNT = "com.fasterxml.aalto.maxAttributeCount";
+
+    /**
+     * Property that defines maximum length (in characters) of element
+     * and attribute names, including possible namespace prefix.
+     *<p>
+     * Value is an {@link Integer}; default value is
+     * {@link java.lang.Integer#MAX_VALUE} (no limit).
+     */
+    public final static String P_MAX_NAME_LENGTH = "com.fasterxml.aalto.maxNameLength";
+
+    /**
+     * Property that defines maximum length (in characters) of a single
+     * textual event (CHARACTERS, CDATA, COMMENT, PROCESSING_INSTRUCTION
+     * and so on), when its contents are accessed; as well as that of
+     * a single attribute value. Note that when text
+     * is returned in chunks (see {@link #P_MAX_TEXT_CHUNK_LENGTH}),
+     * limit applies to individual chunks.
+     *<p>
+     * Value is an {@link Integer}; default value is
+     * {@link java.lang.Integer#MAX_VALUE} (no limit).
+     */
+    public final static String P_MAX_TEXT_LENGTH = "com.fasterxml.aalto.maxTextLength";
+
+    /**
+     * Property that defines maximum total length of the document; in
+     * bytes for byte-based input, in characters for character-based
+     * input. Limit is checked when input is read (or fed, for
+     * non-blocking readers), so it is enforced with granularity of
+     * the input buffer; and not at all for content passed to factory as
+     * a byte or char array, which is already held in memory.
+     *<p>
+     * Value is a {@link Long}; default value is
+     * {@link java.lang.Long#MAX_VALUE} (no limit).
+     */
+    public final static String P_MAX_DOCUMENT_LENGTH = "com.fasterxml.aalto.maxDocumentLength";
+
+    private AaltoInputProperties() { }
+}
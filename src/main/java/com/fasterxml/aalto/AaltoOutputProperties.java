@@ -0,0 +1,36 @@
+package com.fasterxml.aalto;
+
+/**
+ * Class that contains constant for property names used to configure
+ * non-standard (Aalto-specific) properties of output factories and
+ * stream writers. These are in addition to properties defined by
+ * Stax and Stax2 APIs.
+ */
+public final class AaltoOutputProperties
+{
+    /**
+     * Property that defines {@link com.fasterxml.aalto.util.BufferPool}
+     * that writers of the factory use for allocating and recycling
+     * their buffers. If null (default), a per-thread
+     * {@link com.fasterxml.aalto.util.BufferRecycler} is used.
+     *
+     * @see AaltoInputProperties#P_BUFFER_POOL
+     */
+    public final static String P_BUFFER_POOL = "com.fasterxml.aalto.bufferPool";
+
+    /**
+     * Property that defines {@link java.util.concurrent.Executor} that
+     * byte-based writers of the factory use for writing full output
+     * buffers in the background, while serialization continues into
+     * a spare buffer. If null (default), buffers are written by the
+     * calling thread as they fill up.
+     *<p>
+     * Pipelining only pays off when writes to the underlying stream
+     * block for a significant time (slow disks or sockets) and there
+     * is lots of output; and since at most one buffer is written at a
+     * time, executor does not need more than one thread per writer.
+     */
+    public final static String P_FLUSH_EXECUTOR = "com.fasterxml.aalto.flushExecutor";
+
+    private AaltoOutputProperties() { }
+}
@@ -46,6 +46,15 @@ public final class ErrorConsts
     public static String ERR_WF_DUP_ATTRS = "Duplicate attributes \"{0}\" (index {1}), \"{2}\" (index {3})";
 
 
+    // // // Errors, resource limits
+
+    public static String ERR_LIMIT_ELEMENT_DEPTH = "Maximum element nesting depth ({0}) exceeded";
+    public static String ERR_LIMIT_ATTRIBUTE_COUNT = "Maximum attribute count ({0}) exceeded: element has {1} attributes";
+    public static String ERR_LIMIT_NAME_LENGTH = "Maximum name length ({0}) exceeded";
+    public static String ERR_LIMIT_TEXT_LENGTH = "Maximum text length ({0}) exceeded";
+    public static String ERR_LIMIT_ATTRIBUTE_LENGTH = "Maximum attribute value length ({0}) exceeded";
+    public static String ERR_LIMIT_DOCUMENT_LENGTH = "Maximum document length ({0}) exceeded";
+
     // // // Errors, namespace binding
 
     public static String ERR_NS_UNDECLARED = "Undeclared namespace prefix \"{0}\"";
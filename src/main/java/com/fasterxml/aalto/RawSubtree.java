@@ -0,0 +1,77 @@
+package com.fasterxml.aalto;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Container for an element and its whole subtree, as raw UTF-8 encoded
+ * bytes exactly as they appeared in the input document, along with
+ * namespace bindings that the subtree relies on but that were declared
+ * by its ancestors. Instances are created by
+ * {@link com.fasterxml.aalto.in.StreamReaderImpl#readRawSubtree}, and
+ * can be output as is using
+ * {@link com.fasterxml.aalto.out.StreamWriterBase#writeRawSubtree}.
+ */
+public final class RawSubtree
+{
+    private final byte[] _content;
+
+    private final Map<String,String> _nsBindings;
+
+    public RawSubtree(byte[] content, Map<String,String> nsBindings)
+    {
+        _content = content;
+        _nsBindings = Collections.unmodifiableMap(nsBindings);
+    }
+
+    /**
+     * @return Read-only view of the raw content, starting with the '&lt;'
+     *   of the start tag and ending with the '&gt;' of the end tag
+     */
+    public ByteBuffer getContent() {
+        return ByteBuffer.wrap(_content).asReadOnlyBuffer();
+    }
+
+    public int getLength() {
+        return _content.length;
+    }
+
+    /**
+     * @return Namespace bindings (from prefix to URI) that are used by
+     *   elements or attributes of the subtree, but declared outside of it.
+     *   Default namespace is indicated by empty String prefix, and
+     *   "no namespace" by empty String URI.
+     */
+    public Map<String,String> getNamespaceBindings() {
+        return _nsBindings;
+    }
+
+    /**
+     * @return Offset of the first byte after the element name in the
+     *   start tag; location at which namespace declarations can be
+     *   added
+     */
+    public int getRootNameEnd()
+    {
+        final byte[] buf = _content;
+        int i = 1; // skip '<'
+        for (final int end = buf.length; i < end; ++i) {
+            int c = buf[i];
+            if (c == '>' || c == '/' || (c <= 0x20 && c >= 0)) {
+                break;
+            }
+        }
+        return i;
+    }
+
+    @Override
+    public String toString()
+    {
+        try {
+            return new String(_content, "UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) { // never occurs
+            throw new IllegalStateException(e);
+        }
+    }
+}
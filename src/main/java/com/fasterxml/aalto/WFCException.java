@@ -25,6 +25,11 @@ import javax.xml.stream.Location;
 public class WFCException
     extends StreamExceptionBase
 {
+    public WFCException(String msg)
+    {
+        super(msg);
+    }
+
     public WFCException(String msg, Location loc)
     {
         super(msg, loc);
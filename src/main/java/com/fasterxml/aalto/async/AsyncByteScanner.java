@@ -261,6 +261,7 @@ public abstract class AsyncByteScanner
         _inputPtr = start;
         _inputEnd = start+len;
         mOrigBufferLen = len;
+        checkDocumentLength(len);
     }
 
     /**
@@ -377,11 +378,8 @@ public abstract class AsyncByteScanner
                     return (_currToken = END_ELEMENT);
                 }
             } else if (_currToken == END_ELEMENT) {
-                _currElem = _currElem.getParent();
                 // Any namespace declarations that need to be unbound?
-                while (_lastNsDecl != null && _lastNsDecl.getLevel() >= _depth) {
-                    _lastNsDecl = _lastNsDecl.unbind();
-                }
+                unbindNamespaces();
             }
 
             /* Only CHARACTERS can remain incomplete: this happens iff
@@ -969,6 +967,7 @@ public abstract class AsyncByteScanner
     }
 
     private void initStartElement(PName elemName)
+        throws XMLStreamException
     {
         String prefix = elemName.getPrefix();
         if (prefix == null) { // element in default ns
@@ -978,7 +977,7 @@ public abstract class AsyncByteScanner
             mElemAllNsBound = elemName.isBound();
         }
         _tokenName = elemName;
-        _currElem = new ElementScope(elemName, _currElem);
+        pushElementName(elemName);
         _attrCount = 0;
         mElemAttrPtr = 0;
         mState = STATE_SE_SPACE_OR_END;
@@ -993,7 +992,7 @@ public abstract class AsyncByteScanner
         boolean nsDecl;
  
         if (prefix == null) { // can be default ns decl:
-            nsDecl = (attrName.getLocalName() == "xmlns");
+            nsDecl = _cfgNsAware && (attrName.getLocalName() == "xmlns");
         } else {
             // May be a namespace decl though?
             if (prefix == "xmlns") {
@@ -1040,6 +1039,7 @@ public abstract class AsyncByteScanner
             reportInputProblem(_attrCollector.getErrorMsg());
         }
         _attrCount = act;
+        _nameLookups += act + 1;
         ++_depth;
 
         /* Was there any prefix that wasn't bound prior to use?
@@ -1065,7 +1065,7 @@ public abstract class AsyncByteScanner
         throws XMLStreamException
     {
         --_depth;
-        _tokenName = _currElem.getName();
+        _tokenName = _elemNames[_depth];
 
         /* Ok, perhaps we can do this quickly? This works, if we
          * are expected to have the full name (plus one more byte
@@ -1601,7 +1601,7 @@ public abstract class AsyncByteScanner
         // Separate handling for short names:
         if (qlen <= 1) { // short name?
             if (qlen == 0) { // 4-bytes or less; only has 'lastQuad' defined
-                int hash = ByteBasedPNameTable.calcHash(lastQuad);
+                int hash = mSymbols.calcHash(lastQuad);
                 PName name = mSymbols.findSymbol(hash, lastQuad, 0);
                 if (name == null) {
                     // Let's simplify things a bit, and just use array based one then:
@@ -1611,7 +1611,7 @@ public abstract class AsyncByteScanner
                 return name;
             }
             int firstQuad = mQuadBuffer[0];
-            int hash = ByteBasedPNameTable.calcHash(firstQuad, lastQuad);
+            int hash = mSymbols.calcHash(firstQuad, lastQuad);
             PName name = mSymbols.findSymbol(hash, firstQuad, lastQuad);
             if (name == null) {
                 // As above, let's just use array, then
@@ -1627,7 +1627,7 @@ public abstract class AsyncByteScanner
             mQuadBuffer = DataUtil.growArrayBy(mQuadBuffer, mQuadBuffer.length);
         }
         mQuadBuffer[qlen++] = lastQuad;
-        int hash = ByteBasedPNameTable.calcHash(mQuadBuffer, qlen);
+        int hash = mSymbols.calcHash(mQuadBuffer, qlen);
         PName name = mSymbols.findSymbol(hash, mQuadBuffer, qlen);
         if (name == null) {
             name = addPName(hash, mQuadBuffer, qlen, lastByteCount);
@@ -31,7 +31,9 @@ import org.codehaus.stax2.ri.typed.ValueDecoderFactory;
 
 
 import com.fasterxml.aalto.ErrorConsts;
+import com.fasterxml.aalto.WFCException;
 import com.fasterxml.aalto.util.DataUtil;
+import com.fasterxml.aalto.util.ValueCanonicalizer;
 
 /**
  * Object used by the tokenizer to collect and store information
@@ -60,6 +62,25 @@ public final class AttributeCollector
 
     final ReaderConfig _config;
 
+    /**
+     * Cache used for sharing short values, if enabled
+     */
+    final ValueCanonicalizer _valueCanonicalizer;
+
+    /**
+     * If input is trusted, there is no need to check for duplicates;
+     * and hash area is only built if and when needed for access
+     */
+    final boolean _cfgTrusted;
+
+    final int _cfgMaxAttributeCount;
+
+    /**
+     * Maximum length of a single attribute value; same as maximum
+     * length of textual events
+     */
+    final int _cfgMaxValueLength;
+
     // // // State: actual collected attributes
 
     /**
@@ -149,6 +170,10 @@ public final class AttributeCollector
     {
         _config = cfg;
         _attrCount = 0;
+        _valueCanonicalizer = cfg.getValueCanonicalizer();
+        _cfgTrusted = cfg.willTrustInput();
+        _cfgMaxAttributeCount = cfg.getMaxAttributeCount();
+        _cfgMaxValueLength = cfg.getMaxTextLength();
     }
 
     /**
@@ -217,6 +242,14 @@ public final class AttributeCollector
         // Since a previous startNewValue checked buffers, no check needed
         int count = _attrCount;
         _valueOffsets[count-1] = endingOffset;
+        if (count > _cfgMaxAttributeCount) {
+            _errorMsg = MessageFormat.format(ErrorConsts.ERR_LIMIT_ATTRIBUTE_COUNT,
+                                             new Object[] {
+                                                 String.valueOf(_cfgMaxAttributeCount),
+                                                 String.valueOf(count)
+                                             });
+            return -1;
+        }
 
         /* So far so good. But now, also need to ensure there are no
          * duplicates. This also allows us to create a hash for efficient
@@ -224,6 +257,10 @@ public final class AttributeCollector
          * overhead is somewhat significant, let's only use it for 3 or
          * more attributes.
          */
+        if (_cfgTrusted) { // no checks; and build hash lazily (-1 as marker)
+            _hashAreaSize = (count < 3) ? 0 : -1;
+            return count;
+        }
         if (count < 3) {
             _hashAreaSize = 0;
             if (count == 2) {
@@ -338,10 +375,21 @@ public final class AttributeCollector
     }
 
     /**
-     * Method called by the owner, when the 
+     * Method called by the owner, when the value buffer is full and
+     * more room is needed for the value being parsed. Since values are
+     * only limited by buffer size, this is also where maximum length
+     * of attribute values is enforced.
      */
     public char[] valueBufferFull()
+        throws XMLStreamException
     {
+        int count = _attrCount;
+        int start = (count < 2) ? 0 : _valueOffsets[count-2];
+        if ((_valueBuffer.length - start) >= _cfgMaxValueLength) {
+            // no access to location information from here
+            throw new WFCException(MessageFormat.format(ErrorConsts.ERR_LIMIT_ATTRIBUTE_LENGTH,
+                    new Object[] { String.valueOf(_cfgMaxValueLength) }));
+        }
         /* Let's just double the size as necessary? Could also grow
          * by less (50%?)... but shouldn't greatly matter
          */
@@ -366,6 +414,14 @@ public final class AttributeCollector
 
     public String getValue(int index)
     {
+        // Short values may be shared, if so configured
+        if (_valueCanonicalizer != null) {
+            int start = (index == 0) ? 0 : _valueOffsets[index-1];
+            int len = _valueOffsets[index] - start;
+            if (len <= _valueCanonicalizer.getMaxValueLength()) {
+                return _valueCanonicalizer.canonicalize(_valueBuffer, start, len);
+            }
+        }
         int count = _attrCount;
 
         /* Note: no checks, caller is to ensure index is ok. Acceptable
@@ -390,6 +446,56 @@ public final class AttributeCollector
         return (start == end) ? "" : _allAttrValues.substring(start, end);
     }
 
+    /**
+     * Method for checking whether value of specified attribute equals
+     * given String, without constructing a String out of the value.
+     */
+    public boolean valueEquals(int index, String str)
+    {
+        int start = (index == 0) ? 0 : _valueOffsets[index-1];
+        int len = _valueOffsets[index] - start;
+        if (len != str.length()) {
+            return false;
+        }
+        final char[] buf = _valueBuffer;
+        for (int i = 0; i < len; ++i) {
+            if (buf[start+i] != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean valueEquals(int index, char[] chars, int offset, int len)
+    {
+        int start = (index == 0) ? 0 : _valueOffsets[index-1];
+        if (len != (_valueOffsets[index] - start)) {
+            return false;
+        }
+        final char[] buf = _valueBuffer;
+        for (int i = 0; i < len; ++i) {
+            if (buf[start+i] != chars[offset+i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Hash code of the value of specified attribute; same as
+     *   what {@link String#hashCode} would return for the value
+     */
+    public int valueHashCode(int index)
+    {
+        int start = (index == 0) ? 0 : _valueOffsets[index-1];
+        final char[] buf = _valueBuffer;
+        int hash = 0;
+        for (int i = start, end = _valueOffsets[index]; i < end; ++i) {
+            hash = (31 * hash) + buf[i];
+        }
+        return hash;
+    }
+
     public String getValue(String nsUri, String localName)
     {
         int ix = findIndex(nsUri, localName);
@@ -400,6 +506,12 @@ public final class AttributeCollector
     {
         int hashSize = _hashAreaSize;
 
+        // Hash not yet built (trusted input)?
+        if (hashSize < 0) {
+            finishLastValue2();
+            hashSize = _hashAreaSize;
+        }
+
         // No hash? Linear search, then:
         if (hashSize < 1) {
             for (int i = 0, len = _attrCount; i < len; ++i) {
@@ -15,14 +15,19 @@
 
 package com.fasterxml.aalto.in;
 
-import com.fasterxml.aalto.util.NameTable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.TreeMap;
+
+import com.fasterxml.aalto.util.NameTableStats;
 
 /**
  * This is a symbol table implementation used for storing byte-based
  * <code>PNames</code>, specifically, instances of ({@link ByteBasedPName}).
  */
 public final class ByteBasedPNameTable
-    extends NameTable
+    extends SharedPNameTable<ByteBasedPNameTable>
 {
     final static int MIN_HASH_SIZE = 16;
 
@@ -34,6 +39,14 @@ public final class ByteBasedPNameTable
      */
     final static int LAST_VALID_BUCKET = 0xFE;
 
+    /**
+     * Maximum length of a collision bucket chain: names that would
+     * make a chain longer are instead added to the fallback
+     * structure, lookups from which have logarithmic worst-case
+     * cost, regardless of hash code distribution.
+     */
+    final static int MAX_CHAIN_LENGTH = 16;
+
     /*
     /////////////////////////////////////////////////////
     // Main table state
@@ -93,6 +106,21 @@ public final class ByteBasedPNameTable
      */
     private int mCollEnd;
 
+    // // // And finally, fallback structure for pathological cases
+
+    /**
+     * Names that could not be added to collision buckets because
+     * the chain was already at its maximum length. Null when there
+     * are no such names, which should be the case for all non-malicious
+     * input.
+     */
+    private TreeMap<QuadKey,ByteBasedPName> mFallback;
+
+    /**
+     * Key reused for fallback area lookups, to avoid allocations
+     */
+    private QuadKey mFallbackKey;
+
     // // // Info regarding pending rehashing...
 
     /**
@@ -101,6 +129,35 @@ public final class ByteBasedPNameTable
      */
     private transient boolean mNeedRehash;
 
+    // // // Size limits
+
+    /**
+     * Maximum number of entries this table will contain; names
+     * added beyond this are constructed, but not added.
+     */
+    private final int mMaxCount;
+
+    /**
+     * Flag set if an attempt was made to add more than
+     * {@link #mMaxCount} entries.
+     */
+    private boolean mOverflowed;
+
+    // // // Usage statistics
+
+    /**
+     * Number of symbol lookups done using this table instance; not
+     * updated by lookups themselves, but reported by the owning
+     * scanner before the table is released
+     */
+    private int mLookupCount;
+
+    /**
+     * Number of symbols added (or attempted to be added) to this table
+     * instance; which is equal to number of failed lookups
+     */
+    private int mMissCount;
+
     /*
     /////////////////////////////////////////////////////
     // Sharing, versioning
@@ -135,6 +192,29 @@ public final class ByteBasedPNameTable
      */
     private boolean mCollListShared;
 
+    private boolean mFallbackShared;
+
+    /*
+    /////////////////////////////////////////////////////
+    // Hashing
+    /////////////////////////////////////////////////////
+     */
+
+    /**
+     * Seed used for calculating hash codes of names; randomized for
+     * shared tables, to make it harder to construct sets of names
+     * that have colliding hash codes.
+     */
+    private final int mSeed;
+
+    /**
+     * Generation of the shared table this table was created from (or,
+     * for shared tables, of the table itself): used to detect child
+     * tables created before the shared table was reset, which must
+     * not be merged back.
+     */
+    private int mGeneration;
+
     /*
     /////////////////////////////////////////////////////
     // Construction, merging
@@ -142,6 +222,15 @@ public final class ByteBasedPNameTable
      */
 
     public ByteBasedPNameTable(int hashSize)
+    {
+        this(hashSize, 0);
+    }
+
+    /**
+     * @param seed Seed to use for hash code calculation; children
+     *   tables will use the same seed
+     */
+    public ByteBasedPNameTable(int hashSize, int seed)
     {
         /* Sanity check: let's now allow hash sizes below certain
          * min. value
@@ -172,14 +261,27 @@ public final class ByteBasedPNameTable
         mCollListShared = true; // just since it'll need to be allocated
         mCollList = null;
         mCollEnd = 0;
+        mFallback = null;
+        mFallbackShared = false;
+        mSeed = seed;
 
         mNeedRehash = false;
+        mMaxCount = Integer.MAX_VALUE;
     }
 
     /**
      * Constructor used when creating a child instance
      */
     ByteBasedPNameTable(ByteBasedPNameTable parent)
+    {
+        this(parent, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor used when creating a child instance, with a limit
+     * on number of entries it may contain.
+     */
+    ByteBasedPNameTable(ByteBasedPNameTable parent, int maxCount)
     {
         // First, let's copy the state as is:
         mCount = parent.mCount;
@@ -189,12 +291,17 @@ public final class ByteBasedPNameTable
         mCollList = parent.mCollList;
         mCollCount = parent.mCollCount;
         mCollEnd = parent.mCollEnd;
+        mFallback = parent.mFallback;
         mNeedRehash = false;
+        mMaxCount = maxCount;
+        mSeed = parent.mSeed;
+        mGeneration = parent.mGeneration;
 
         // And consider all shared, so far:
         mMainHashShared = true;
         mMainNamesShared = true;
         mCollListShared = true;
+        mFallbackShared = true;
     }
 
     public boolean mergeFromChild(ByteBasedPNameTable child)
@@ -212,6 +319,7 @@ public final class ByteBasedPNameTable
         mCollList = child.mCollList;
         mCollCount = child.mCollCount;
         mCollEnd = child.mCollEnd;
+        mFallback = child.mFallback;
 
         /* Plus, as an added safety measure, let's mark child buffers
          * as shared, just in case it might still be used:
@@ -225,6 +333,7 @@ public final class ByteBasedPNameTable
         mMainHashShared = true;
         mMainNamesShared = true;
         mCollListShared = true;
+        mFallbackShared = true;
     }
 
     /**
@@ -234,6 +343,7 @@ public final class ByteBasedPNameTable
         mMainHash = null;
         mMainNames = null;
         mCollList = null;
+        mFallback = null;
     }
 
     /*
@@ -244,6 +354,71 @@ public final class ByteBasedPNameTable
 
     public int size() { return mCount; }
 
+    /**
+     * Method for checking whether an attempt was made to add more
+     * entries to this table than its size limit allows.
+     */
+    public boolean hasOverflowed() { return mOverflowed; }
+
+    /**
+     * Method called once overflow has been handled by the owner of the
+     * shared table, to prevent it from being handled more than once.
+     * Since contents of an overflowed table are not to be merged,
+     * this also marks the table as shared (not dirty).
+     */
+    public void clearOverflowed()
+    {
+        mOverflowed = false;
+        markAsShared();
+    }
+
+    public int getLookupCount() { return mLookupCount; }
+
+    public int getMissCount() { return mMissCount; }
+
+    /**
+     * Method called by the owning scanner to report number of lookups
+     * made, since these are not counted by lookup methods themselves.
+     */
+    public void addLookupCount(int count) {
+        mLookupCount += count;
+    }
+
+    int getGeneration() { return mGeneration; }
+
+    void setGeneration(int gen) { mGeneration = gen; }
+
+    void mergeChild(ByteBasedPNameTable child) {
+        mergeFromChild(child);
+    }
+
+    ByteBasedPNameTable createEmptyShared() {
+        return new ByteBasedPNameTable(64, mSeed);
+    }
+
+    /**
+     * Method for clearing usage counters, called once they have been
+     * accumulated by the owner of the shared table.
+     */
+    public void resetUsageCounts() {
+        mLookupCount = 0;
+        mMissCount = 0;
+    }
+
+    /**
+     * Method for constructing a snapshot of statistics regarding
+     * state of this table, combined with given usage counts.
+     */
+    public NameTableStats getStats(long lookups, long misses, int resets)
+    {
+        int collisions = mCollCount;
+        if (mFallback != null) {
+            collisions += mFallback.size();
+        }
+        return new NameTableStats(mCount, mMainHash.length, collisions, mCollEnd,
+                                  lookups, misses, resets);
+    }
+
     /**
      * Method called to check to quickly see if a child symbol table
      * may have gotten additional entries. Used for checking to see
@@ -274,7 +449,6 @@ public final class ByteBasedPNameTable
      */
     public ByteBasedPName findSymbol(int hash, int firstQuad, int secondQuad)
     {
-        
         int ix = (hash & mMainHashMask);
         int val = mMainHash[ix];
         
@@ -299,7 +473,11 @@ public final class ByteBasedPNameTable
             val -= 1; // to convert from 1-based to 0...
             Bucket bucket = mCollList[val];
             if (bucket != null) {
-                return bucket.find(hash, firstQuad, secondQuad);
+                ByteBasedPName pname = bucket.find(hash, firstQuad, secondQuad);
+                if (pname == null && mFallback != null) {
+                    return mFallback.get(fallbackKey().reset(firstQuad, secondQuad));
+                }
+                return pname;
             }
         }
         // Nope, no match whatsoever
@@ -348,7 +526,13 @@ public final class ByteBasedPNameTable
             val -= 1; // to convert from 1-based to 0...
             Bucket bucket = mCollList[val];
             if (bucket != null) {
-                return bucket.find(hash, quads, qlen);
+                ByteBasedPName pname = bucket.find(hash, quads, qlen);
+                if (pname == null && mFallback != null) {
+                    QuadKey key = fallbackKey();
+                    pname = mFallback.get(key.reset(quads, qlen));
+                    key.reset(0, 0); // no need to retain caller's quads
+                }
+                return pname;
             }
         }
         return null;
@@ -364,7 +548,13 @@ public final class ByteBasedPNameTable
                                     int firstQuad, int secondQuad)
     {
         ByteBasedPName symbol = ByteBasedPNameFactory.getInstance().constructPName(hash, symbolStr, colonIx, firstQuad, secondQuad);
-        doAddSymbol(hash, symbol);
+        ++mMissCount;
+        // Full? If so, will not add, just return the instance
+        if (mCount >= mMaxCount) {
+            mOverflowed = true;
+        } else {
+            doAddSymbol(hash, symbol);
+        }
         return symbol;
     }
 
@@ -372,38 +562,162 @@ public final class ByteBasedPNameTable
                            int[] quads, int qlen)
     {
         ByteBasedPName symbol = ByteBasedPNameFactory.getInstance().constructPName(hash, symbolStr, colonIx, quads, qlen);
-        doAddSymbol(hash, symbol);
+        ++mMissCount;
+        // Full? If so, will not add, just return the instance
+        if (mCount >= mMaxCount) {
+            mOverflowed = true;
+        } else {
+            doAddSymbol(hash, symbol);
+        }
         return symbol;
     }
 
+    /*
+    /////////////////////////////////////////////////////
+    // Persistence
+    /////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for writing out contents of this symbol table, so that
+     * an equivalent table can be reconstructed using
+     * {@link #readFrom}. Serialized form consists of the main
+     * hash area size (to retain hash layout without having to
+     * rehash on reconstruction), followed by all names with their
+     * quads, in name order.
+     */
+    public void writeTo(DataOutput out)
+        throws IOException
+    {
+        out.writeInt(mMainHash.length);
+        out.writeInt(mCount);
+        /* Names are written in sorted order, so that output does not
+         * depend on hash seed: tables with same names give identical
+         * output.
+         */
+        TreeMap<String,ByteBasedPName> names = new TreeMap<String,ByteBasedPName>();
+        for (ByteBasedPName name : mMainNames) {
+            if (name != null) {
+                names.put(name.getPrefixedName(), name);
+            }
+        }
+        for (int i = 0; i < mCollEnd; ++i) {
+            for (Bucket curr = mCollList[i]; curr != null; curr = curr.mNext) {
+                names.put(curr.mName.getPrefixedName(), curr.mName);
+            }
+        }
+        if (mFallback != null) {
+            for (ByteBasedPName name : mFallback.values()) {
+                names.put(name.getPrefixedName(), name);
+            }
+        }
+        for (ByteBasedPName name : names.values()) {
+            writeName(out, name);
+        }
+    }
+
+    /**
+     * Factory method for reconstructing a symbol table written
+     * using {@link #writeTo}.
+     */
+    public static ByteBasedPNameTable readFrom(DataInput in, int seed)
+        throws IOException
+    {
+        return readFrom(in, seed, ReaderConfig.DEFAULT_MAX_SYMBOL_TABLE_SIZE);
+    }
+
+    /**
+     * @param maxCount Maximum number of entries table may contain;
+     *   data declaring bigger (or otherwise invalid) sizes is rejected
+     *   as corrupt
+     */
+    public static ByteBasedPNameTable readFrom(DataInput in, int seed, int maxCount)
+        throws IOException
+    {
+        int hashSize = in.readInt();
+        int count = in.readInt();
+        verifyImportSizes(hashSize, count, maxCount);
+        ByteBasedPNameTable table = new ByteBasedPNameTable(hashSize, seed);
+        int[] quads = new int[8];
+        for (int i = 0; i < count; ++i) {
+            String pname = in.readUTF();
+            int qlen = in.readUnsignedShort();
+            if (qlen < 1 || qlen > pname.length() * 3) {
+                throw new IOException("Corrupt symbol table data: invalid quad count "+qlen+" for name '"+pname+"'");
+            }
+            if (qlen > quads.length) {
+                quads = new int[qlen];
+            }
+            for (int q = 0; q < qlen; ++q) {
+                quads[q] = in.readInt();
+            }
+            int colonIx = pname.indexOf(':');
+            if (qlen == 1) {
+                table.addSymbol(table.calcHash(quads[0]), pname, colonIx, quads[0], 0);
+            } else if (qlen == 2) {
+                table.addSymbol(table.calcHash(quads[0], quads[1]), pname, colonIx, quads[0], quads[1]);
+            } else {
+                table.addSymbol(table.calcHash(quads, qlen), pname, colonIx, quads, qlen);
+            }
+        }
+        return table;
+    }
+
+    private static void writeName(DataOutput out, ByteBasedPName name)
+        throws IOException
+    {
+        out.writeUTF(name.getPrefixedName());
+        int qlen = name.sizeInQuads();
+        out.writeShort(qlen);
+        for (int q = 0; q < qlen; ++q) {
+            out.writeInt(name.getQuad(q));
+        }
+    }
+
     /*
     /////////////////////////////////////////////////////
     // Helper methods
     /////////////////////////////////////////////////////
      */
 
-    public final static int calcHash(int firstQuad)
+    /**
+     * Method for calculating hash code for a name that consists of
+     * a single quad (1 - 4 bytes). Hash code depends on the seed
+     * of this table, so names have to be looked up using hash codes
+     * calculated by the same table (or its parent/children).
+     */
+    public final int calcHash(int firstQuad)
     {
-        int hash = firstQuad * 31;
-        hash ^= (hash >>> 16); // to xor hi- and low- 16-bits
-        hash ^= (hash >>> 8); // as well as lowest 2 bytes
-        return hash;
+        return finishHash(mixQuad(mSeed, firstQuad));
     }
 
-    public final static int calcHash(int firstQuad, int secondQuad)
+    public final int calcHash(int firstQuad, int secondQuad)
     {
-        int hash = (firstQuad * 31) + secondQuad;
-        hash ^= (hash >>> 16); // to xor hi- and low- 16-bits
-        hash ^= (hash >>> 8); // as well as lowest 2 bytes
-        return hash;
+        return finishHash(mixQuad(mixQuad(mSeed, firstQuad), secondQuad));
     }
 
-    public final static int calcHash(int[] quads, int qlen)
+    public final int calcHash(int[] quads, int qlen)
     {
-        int hash = quads[0];
+        int hash = mixQuad(mSeed, quads[0]);
         for (int i = 1; i < qlen; ++i) {
-            hash = (hash * 31) + quads[i];
+            hash = mixQuad(hash, quads[i]);
         }
+        return finishHash(hash);
+    }
+
+    /**
+     * Helper method for combining a quad to hash code: in addition to
+     * the usual multiply-and-add step, high bits are shifted down,
+     * which makes collisions depend on the seed used.
+     */
+    private final static int mixQuad(int hash, int quad)
+    {
+        hash = (hash * 31) + quad;
+        return hash ^ (hash >>> 15);
+    }
+
+    private final static int finishHash(int hash)
+    {
         hash ^= (hash >>> 16); // to xor hi- and low- 16-bits
         hash ^= (hash >>> 8); // as well as lowest 2 bytes
         return hash;
@@ -546,28 +860,7 @@ public final class ByteBasedPNameTable
             if (mCollListShared) {
                 unshareCollision(); // also allocates if list was null
             }
-            ++mCollCount;
-            int entryValue = mMainHash[ix];
-            int bucket = entryValue & 0xFF;
-            if (bucket == 0) { // first spill over?
-                if (mCollEnd <= LAST_VALID_BUCKET) { // yup, still unshared bucket
-                    bucket = mCollEnd;
-                    ++mCollEnd;
-                    // need to expand?
-                    if (bucket >= mCollList.length) {
-                        expandCollision();
-                    }
-                } else { // nope, have to share... let's find shortest?
-                    bucket = findBestBucket();
-                }
-                // Need to mark the entry... and the spill index is 1-based
-                mMainHash[ix] = (entryValue & ~0xFF) | (bucket + 1);
-            } else {
-                --bucket; // 1-based index in value
-            }
-            
-            // And then just need to link the new bucket entry in
-            mCollList[bucket] = new Bucket(symbol, mCollList[bucket]);
+            spillOver(ix, symbol);
         }
 
         /* Ok. Now, do we need a rehash next time? Need to have at least
@@ -608,6 +901,9 @@ System.err.println("DEBUG: ]");
          * collisions during this phase.
          */
         int symbolsSeen = 0; // let's do a sanity check
+        TreeMap<QuadKey,ByteBasedPName> oldFallback = mFallback;
+        mFallback = null;
+        mFallbackShared = false;
         int[] oldMainHash = mMainHash;
         int len = oldMainHash.length;
         mMainHash = new int[len + len];
@@ -630,7 +926,7 @@ System.err.println("DEBUG: ]");
          * same amount of space, however
          */
         int oldEnd = mCollEnd;
-        if (oldEnd == 0) { // no prior collisions...
+        if (oldEnd == 0) { // no prior collisions (nor fallback entries)...
             return;
         }
 
@@ -646,35 +942,34 @@ System.err.println("DEBUG: ]");
                 ByteBasedPName symbol = curr.mName;
                 int hash = symbol.hashCode();
                 int ix = (hash & mMainHashMask);
-                int val = mMainHash[ix];
                 if (mMainNames[ix] == null) { // no primary entry?
                     mMainHash[ix] = (hash << 8);
                     mMainNames[ix] = symbol;
                 } else { // nope, it's a collision, need to spill over
-                    ++mCollCount;
-                    int bucket = val & 0xFF;
-                    if (bucket == 0) { // first spill over?
-                        if (mCollEnd <= LAST_VALID_BUCKET) { // yup, still unshared bucket
-                            bucket = mCollEnd;
-                            ++mCollEnd;
-                            // need to expand?
-                            if (bucket >= mCollList.length) {
-                                expandCollision();
-                            }
-                        } else { // nope, have to share... let's find shortest?
-                            bucket = findBestBucket();
-                        }
-                        // Need to mark the entry... and the spill index is 1-based
-                        mMainHash[ix] = (val & ~0xFF) | (bucket + 1);
-                    } else {
-                        --bucket; // 1-based index in value
-                    }
-                    // And then just need to link the new bucket entry in
-                    mCollList[bucket] = new Bucket(symbol, mCollList[bucket]);
+                    spillOver(ix, symbol);
                 }
             } // for (... buckets in the chain ...)
         } // for (... list of bucket heads ... )
 
+        /* And finally, names from the fallback area (detached above,
+         * since re-adding names may spill over to a new fallback area):
+         * these may or may not need to go back there, depending on
+         * new layout
+         */
+        if (oldFallback != null) {
+            for (ByteBasedPName symbol : oldFallback.values()) {
+                ++symbolsSeen;
+                int hash = symbol.hashCode();
+                int ix = (hash & mMainHashMask);
+                if (mMainNames[ix] == null) {
+                    mMainHash[ix] = (hash << 8);
+                    mMainNames[ix] = symbol;
+                } else {
+                    spillOver(ix, symbol);
+                }
+            }
+        }
+
         if (symbolsSeen != mCount) { // sanity check
             throw new Error("Internal error: count after rehash "+symbolsSeen+"; should be "+mCount);
         }
@@ -686,6 +981,60 @@ System.err.println("DEBUG: ]");
         */
     }
 
+    private QuadKey fallbackKey()
+    {
+        QuadKey key = mFallbackKey;
+        if (key == null) {
+            mFallbackKey = key = new QuadKey();
+        }
+        return key;
+    }
+
+    /**
+     * Method called to add given symbol in the collision area, when
+     * the primary slot at given index is already taken. Symbol is
+     * linked to the collision bucket chain of the slot (allocating
+     * a bucket if necessary), unless the chain is already at its
+     * maximum length: if so, it is added to the fallback area.
+     */
+    private void spillOver(int ix, ByteBasedPName symbol)
+    {
+        int entryValue = mMainHash[ix];
+        int bucket = entryValue & 0xFF;
+        if (bucket == 0) { // first spill over?
+            if (mCollEnd <= LAST_VALID_BUCKET) { // yup, still unshared bucket
+                bucket = mCollEnd;
+                ++mCollEnd;
+                // need to expand?
+                if (bucket >= mCollList.length) {
+                    expandCollision();
+                }
+            } else { // nope, have to share... let's find shortest?
+                bucket = findBestBucket();
+            }
+            // Need to mark the entry... and the spill index is 1-based
+            mMainHash[ix] = (entryValue & ~0xFF) | (bucket + 1);
+        } else {
+            --bucket; // 1-based index in value
+        }
+
+        Bucket head = mCollList[bucket];
+        if (head != null && head.length() >= MAX_CHAIN_LENGTH) {
+            // Too many collisions (most likely, malicious input)
+            if (mFallback == null) {
+                mFallback = new TreeMap<QuadKey,ByteBasedPName>();
+            } else if (mFallbackShared) {
+                mFallback = new TreeMap<QuadKey,ByteBasedPName>(mFallback);
+            }
+            mFallbackShared = false;
+            mFallback.put(new QuadKey(symbol), symbol);
+            return;
+        }
+        // And then just need to link the new bucket entry in
+        ++mCollCount;
+        mCollList[bucket] = new Bucket(symbol, head);
+    }
+
     /**
      * Method called to find the best bucket to spill a PName over to:
      * usually the first bucket that has only one entry, but in general
@@ -762,6 +1111,84 @@ System.err.println("DEBUG: ]");
     /////////////////////////////////////////////////////
      */
 
+    /**
+     * Key class used for the fallback area; compares names by their
+     * quads, so that lookup cost does not depend on hash codes.
+     */
+    final static class QuadKey
+        implements Comparable<QuadKey>
+    {
+        int[] mQuads;
+        int mLength;
+
+        /**
+         * For lookup keys, array used for short names; null for others
+         */
+        private final int[] mShortQuads;
+
+        /**
+         * Constructor for keys used for lookups, which are to be
+         * {@link #reset} before use
+         */
+        QuadKey()
+        {
+            mShortQuads = new int[2];
+        }
+
+        QuadKey(ByteBasedPName name)
+        {
+            mShortQuads = null;
+            int qlen = name.sizeInQuads();
+            int[] quads = new int[qlen];
+            for (int i = 0; i < qlen; ++i) {
+                quads[i] = name.getQuad(i);
+            }
+            mQuads = quads;
+            mLength = qlen;
+        }
+
+        /**
+         * Method for making a lookup key match given short name;
+         * not to be called for keys stored in the fallback area.
+         */
+        QuadKey reset(int firstQuad, int secondQuad)
+        {
+            int[] quads = mShortQuads;
+            mQuads = quads;
+            quads[0] = firstQuad;
+            quads[1] = secondQuad;
+            mLength = (secondQuad == 0) ? 1 : 2;
+            return this;
+        }
+
+        /**
+         * Method for making a lookup key match given name, without
+         * copying quads; not to be called for keys stored in the
+         * fallback area.
+         */
+        QuadKey reset(int[] quads, int qlen)
+        {
+            mQuads = quads;
+            mLength = qlen;
+            return this;
+        }
+
+        public int compareTo(QuadKey other)
+        {
+            if (mLength != other.mLength) {
+                return (mLength < other.mLength) ? -1 : 1;
+            }
+            int[] q1 = mQuads;
+            int[] q2 = other.mQuads;
+            for (int i = 0; i < mLength; ++i) {
+                if (q1[i] != q2[i]) {
+                    return (q1[i] < q2[i]) ? -1 : 1;
+                }
+            }
+            return 0;
+        }
+    }
+
     final static class Bucket
     {
         final ByteBasedPName mName;
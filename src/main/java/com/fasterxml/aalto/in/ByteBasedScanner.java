@@ -178,9 +178,10 @@ public abstract class ByteBasedScanner
     protected void _releaseBuffers()
     {
         super._releaseBuffers();
-        if (mSymbols.maybeDirty()) {
-            _config.updateBBSymbols(mSymbols);
-        }
+        // Need to call always, to let usage stats be accumulated
+        mSymbols.addLookupCount(_nameLookups);
+        _nameLookups = 0;
+        _config.updateBBSymbols(mSymbols);
     }
 
     protected abstract void _closeSource() throws IOException;
@@ -335,7 +336,7 @@ public abstract class ByteBasedScanner
                         ch = (ch << 6) | (ch2 & 0x3F);
                     }
                 }
-                ok = XmlChars.is10NameStartChar(ch);
+                ok = _cfgTrusted || XmlChars.is10NameStartChar(ch);
                 if (needed > 2) { // outside of basic 16-bit range? need surrogates
                     /* so, let's first output first char (high surrogate),
                      * let second be output by later code
@@ -371,10 +372,12 @@ public abstract class ByteBasedScanner
                 ok = false;
                 break;
             case XmlCharTypes.CT_NAME_COLON: // not ok as first
-                if (last_colon >= 0) {
-                    reportMultipleColonsInName();
+                if (_cfgNsAware) { // just a regular name char otherwise
+                    if (last_colon >= 0) {
+                        reportMultipleColonsInName();
+                    }
+                    last_colon = cix;
                 }
-                last_colon = cix;
                 ok = true;
                 break;
             case XmlCharTypes.CT_NAME_NONFIRST:
@@ -434,7 +437,7 @@ public abstract class ByteBasedScanner
                             ch = (ch << 6) | (ch2 & 0x3F);
                         }
                     }
-                    ok = XmlChars.is10NameChar(ch);
+                    ok = _cfgTrusted || XmlChars.is10NameChar(ch);
                     if (needed > 2) { // surrogate pair? once again, let's output one here, one later on
                         ch -= 0x10000; // to normalize it starting with 0x0
                         if (cix >= cbuf.length) {
@@ -458,6 +461,7 @@ public abstract class ByteBasedScanner
          * String (as well as check proper composition of semicolons
          * for ns-aware mode...)
          */
+        checkNameLength(cix);
         String baseName = new String(cbuf, 0, cix);
         // And finally, unalign if necessary
         if (lastQuadBytes < 4) {
@@ -15,7 +15,14 @@
 
 package com.fasterxml.aalto.in;
 
-import com.fasterxml.aalto.util.NameTable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.fasterxml.aalto.util.NameTableStats;
 
 /**
  * This is a symbol table implementation used for storing byte-based
@@ -23,12 +30,44 @@ import com.fasterxml.aalto.util.NameTable;
  * ({@link PNameC}).
  */
 public class CharBasedPNameTable
-    extends NameTable
+    extends SharedPNameTable<CharBasedPNameTable>
 {
     final static int MIN_HASH_SIZE = 16;
 
     protected static final float DEFAULT_FILL_FACTOR = 0.75f;
 
+    /**
+     * Maximum length of a collision bucket chain: names that would
+     * make a chain longer are instead added to the fallback
+     * structure, lookups from which have logarithmic worst-case
+     * cost, regardless of hash code distribution.
+     */
+    final static int MAX_CHAIN_LENGTH = 16;
+
+    /**
+     * Multiplier used for calculating hash codes of names (same as
+     * that of 32-bit FNV-1a hash); see {@link #calcHash}.
+     */
+    public final static int HASH_MULT = 0x01000193;
+
+    /**
+     * Ordering used for names in the fallback structure: allows
+     * lookups using {@link NameKey}s, as well as Strings.
+     */
+    private final static Comparator<CharSequence> NAME_ORDER = new Comparator<CharSequence>() {
+        public int compare(CharSequence s1, CharSequence s2) {
+            int len1 = s1.length();
+            int len2 = s2.length();
+            for (int i = 0, end = Math.min(len1, len2); i < end; ++i) {
+                int diff = s1.charAt(i) - s2.charAt(i);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return len1 - len2;
+        }
+    };
+
     /*
     ////////////////////////////////////////
     // Actual symbol table data:
@@ -50,6 +89,20 @@ public class CharBasedPNameTable
      */
     protected Bucket[] mBuckets;
 
+    /**
+     * Names that could not be added to collision buckets because
+     * the chain was already at its maximum length. Null when there
+     * are no such names, which should be the case for all non-malicious
+     * input.
+     */
+    protected TreeMap<CharSequence,PNameC> mFallback;
+
+    /**
+     * Reusable key used for looking up names from {@link #mFallback},
+     * to avoid constructing Strings for lookups
+     */
+    private NameKey mFallbackKey;
+
     /**
      * Current size (number of entries); needed to know if and when
      * rehash.
@@ -70,6 +123,52 @@ public class CharBasedPNameTable
      */
     protected int mIndexMask;
 
+    /**
+     * Seed mixed in when calculating slot index from hash code;
+     * randomized for shared tables, to make it harder to construct
+     * sets of names that map to same slots.
+     */
+    protected final int mSeed;
+
+    /**
+     * Generation of the shared table this table was created from (or,
+     * for shared tables, of the table itself): used to detect child
+     * tables created before the shared table was reset, which must
+     * not be merged back.
+     */
+    protected int mGeneration;
+
+    /**
+     * Maximum number of entries this table will contain; names
+     * added beyond this are constructed, but not added.
+     */
+    protected final int mMaxSize;
+
+    /**
+     * Flag set if an attempt was made to add more than
+     * {@link #mMaxSize} entries.
+     */
+    protected boolean mOverflowed;
+
+    /*
+    ////////////////////////////////////////
+    // Usage statistics
+    ////////////////////////////////////////
+     */
+
+    /**
+     * Number of symbol lookups done using this table instance; not
+     * updated by lookups themselves, but reported by the owning
+     * scanner before the table is released
+     */
+    protected int mLookupCount;
+
+    /**
+     * Number of symbols added (or attempted to be added) to this table
+     * instance; which is equal to number of failed lookups
+     */
+    protected int mMissCount;
+
     /*
     ////////////////////////////////////////
     // Information about concurrency
@@ -98,6 +197,15 @@ public class CharBasedPNameTable
      *   will always use a power of two equal to or bigger than this value.
      */
     public CharBasedPNameTable(int initialSize)
+    {
+        this(initialSize, 0);
+    }
+
+    /**
+     * @param seed Seed to use for calculating slot indexes; children
+     *   tables will use the same seed
+     */
+    public CharBasedPNameTable(int initialSize, int seed)
     {
         // Let's set flags so no copying of buckets is needed:
         mDirty = true;
@@ -123,15 +231,26 @@ public class CharBasedPNameTable
         /* Let's use 3/4 fill factor...
          */
         mSizeThreshold = (initialSize * 3 + 3) >> 2;
+        mMaxSize = Integer.MAX_VALUE;
+        mSeed = seed;
     }
 
     CharBasedPNameTable(CharBasedPNameTable parent)
+    {
+        this(parent, Integer.MAX_VALUE);
+    }
+
+    CharBasedPNameTable(CharBasedPNameTable parent, int maxSize)
     {
         mSymbols = parent.mSymbols;
         mBuckets = parent.mBuckets;
         mSize = parent.mSize;
         mSizeThreshold = parent.mSizeThreshold;
         mIndexMask = parent.mIndexMask;
+        mFallback = parent.mFallback;
+        mMaxSize = maxSize;
+        mSeed = parent.mSeed;
+        mGeneration = parent.mGeneration;
 
         // Need to make copies of arrays, if/when adding new entries
         mDirty = false;
@@ -157,6 +276,7 @@ public class CharBasedPNameTable
         mSize = child.mSize;
         mSizeThreshold = child.mSizeThreshold;
         mIndexMask = child.mIndexMask;
+        mFallback = child.mFallback;
 
         // Dirty flag... well, let's just clear it, to force copying just
         // in case. Shouldn't really matter, for master tables.
@@ -179,8 +299,99 @@ public class CharBasedPNameTable
 
     public int size() { return mSize; }
 
+    public int getSeed() { return mSeed; }
+
+    /**
+     * Method for calculating hash code of given name, the same way
+     * scanners calculate it during parsing. Seed is used as the
+     * initial value, so that names with colliding hash codes
+     * differ between seeds.
+     *
+     * @param len Length of name; has to be at least 1
+     */
+    public int calcHash(char[] buffer, int start, int len)
+    {
+        int hash = mSeed;
+        for (int i = 0; i < len; ++i) {
+            hash = (hash ^ buffer[start+i]) * HASH_MULT;
+        }
+        return hash;
+    }
+
     public boolean maybeDirty() { return mDirty; }
 
+    /**
+     * Method for checking whether an attempt was made to add more
+     * entries to this table than its size limit allows.
+     */
+    public boolean hasOverflowed() { return mOverflowed; }
+
+    /**
+     * Method called once overflow has been handled by the owner of the
+     * shared table, to prevent it from being handled more than once.
+     * Since contents of an overflowed table are not to be merged,
+     * this also clears the dirty flag.
+     */
+    public void clearOverflowed()
+    {
+        mOverflowed = false;
+        mDirty = false;
+    }
+
+    public int getLookupCount() { return mLookupCount; }
+
+    public int getMissCount() { return mMissCount; }
+
+    /**
+     * Method called by the owning scanner to report number of lookups
+     * made, since these are not counted by lookup methods themselves.
+     */
+    public void addLookupCount(int count) {
+        mLookupCount += count;
+    }
+
+    int getGeneration() { return mGeneration; }
+
+    void setGeneration(int gen) { mGeneration = gen; }
+
+    void mergeChild(CharBasedPNameTable child) {
+        mergeFromChild(child);
+    }
+
+    CharBasedPNameTable createEmptyShared() {
+        return new CharBasedPNameTable(64, mSeed);
+    }
+
+    /**
+     * Method for clearing usage counters, called once they have been
+     * accumulated by the owner of the shared table.
+     */
+    public void resetUsageCounts() {
+        mLookupCount = 0;
+        mMissCount = 0;
+    }
+
+    /**
+     * Method for constructing a snapshot of statistics regarding
+     * state of this table, combined with given usage counts.
+     */
+    public NameTableStats getStats(long lookups, long misses, int resets)
+    {
+        int collisions = 0;
+        int buckets = 0;
+        for (Bucket b : mBuckets) {
+            if (b != null) {
+                ++buckets;
+                collisions += b.length();
+            }
+        }
+        if (mFallback != null) {
+            collisions += mFallback.size();
+        }
+        return new NameTableStats(mSize, mSymbols.length, collisions, buckets,
+                                  lookups, misses, resets);
+    }
+
     /*
     ////////////////////////////////////////////////////
     // Public API, accessing symbols:
@@ -189,7 +400,7 @@ public class CharBasedPNameTable
 
     public PNameC findSymbol(char[] buffer, int start, int len, int hash)
     {
-        int index = hash & mIndexMask;
+        int index = slotIndex(hash);
         PNameC sym = mSymbols[index];
 
         // Optimal case; checking existing primary symbol for hash index:
@@ -205,15 +416,42 @@ public class CharBasedPNameTable
                     return sym;
                 }
             }
+            if (mFallback != null) {
+                NameKey key = mFallbackKey;
+                if (key == null) {
+                    mFallbackKey = key = new NameKey();
+                }
+                PNameC result = mFallback.get(key.reset(buffer, start, len));
+                key.reset(null, 0, 0); // no need to retain caller's buffer
+                return result;
+            }
         }
         return null;
     }
 
     public PNameC addSymbol(char[] buffer, int start, int len, int hash)
+    {
+        return addSymbol(buffer, start, len, hash, true);
+    }
+
+    /**
+     * @param nsAware Whether name is to be split into prefix and local
+     *   name (if it contains a colon); if false, name is taken as is,
+     *   as the local name
+     */
+    public PNameC addSymbol(char[] buffer, int start, int len, int hash,
+                            boolean nsAware)
     {
         String newStr = new String(buffer, start, len).intern();
-        PNameC pname = PNameC.construct(newStr, hash);
-        int index = hash & mIndexMask;
+        PNameC pname = nsAware ? PNameC.construct(newStr, hash)
+            : new PNameC(newStr, null, newStr, hash);
+        ++mMissCount;
+        // Full? If so, will not add, just return the instance
+        if (mSize >= mMaxSize) {
+            mOverflowed = true;
+            return pname;
+        }
+        int index = slotIndex(hash);
         boolean primary;
 
         // First... let's see if we can add it without a collision.
@@ -226,7 +464,7 @@ public class CharBasedPNameTable
             if (mSize >= mSizeThreshold) {
                 rehash();
                 // Need to recalc hash index
-                index = hash & mIndexMask;
+                index = slotIndex(hash);
                 primary = (null == mSymbols[index]);
             } else { // nope: need a bucket
                 primary = false;
@@ -243,18 +481,122 @@ public class CharBasedPNameTable
             mSymbols[index] = pname;
         } else {
             // Ok, all right: need to add to a bucket
-            int bix = (index >> 1);
-            mBuckets[bix] = new Bucket(pname, mBuckets[bix]);
+            addToBucket(index, pname);
         }
         return pname;
     }
 
+    /*
+    ////////////////////////////////////////////////////
+    // Public API, persistence:
+    ////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for writing out contents of this symbol table, so that
+     * an equivalent table can be reconstructed using
+     * {@link #readFrom}. Serialized form consists of the size
+     * of the primary symbol array (to retain hash layout without having
+     * to rehash on reconstruction), followed by all names in
+     * sorted order.
+     */
+    public void writeTo(DataOutput out)
+        throws IOException
+    {
+        out.writeInt(mSymbols.length);
+        out.writeInt(mSize);
+        // sorted, so that output does not depend on hash seed
+        TreeSet<String> names = new TreeSet<String>();
+        for (PNameC sym : mSymbols) {
+            if (sym != null) {
+                names.add(sym.getPrefixedName());
+            }
+        }
+        for (Bucket b : mBuckets) {
+            for (; b != null; b = b.getNext()) {
+                names.add(b.getSymbol().getPrefixedName());
+            }
+        }
+        if (mFallback != null) {
+            for (PNameC sym : mFallback.values()) {
+                names.add(sym.getPrefixedName());
+            }
+        }
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    /**
+     * Factory method for reconstructing a symbol table written
+     * using {@link #writeTo}.
+     */
+    public static CharBasedPNameTable readFrom(DataInput in, int seed)
+        throws IOException
+    {
+        return readFrom(in, seed, ReaderConfig.DEFAULT_MAX_SYMBOL_TABLE_SIZE);
+    }
+
+    /**
+     * @param maxCount Maximum number of entries table may contain;
+     *   data declaring bigger (or otherwise invalid) sizes is rejected
+     *   as corrupt
+     */
+    public static CharBasedPNameTable readFrom(DataInput in, int seed, int maxCount)
+        throws IOException
+    {
+        int hashSize = in.readInt();
+        int count = in.readInt();
+        verifyImportSizes(hashSize, count, maxCount);
+        CharBasedPNameTable table = new CharBasedPNameTable(hashSize, seed);
+        for (int i = 0; i < count; ++i) {
+            String pname = in.readUTF();
+            if (pname.length() == 0) {
+                throw new IOException("Corrupt symbol table data: empty name");
+            }
+            char[] buf = pname.toCharArray();
+            table.addSymbol(buf, 0, buf.length, table.calcHash(buf, 0, buf.length));
+        }
+        return table;
+    }
+
     /*
     //////////////////////////////////////////////////////////
     // Internal methods
     //////////////////////////////////////////////////////////
      */
 
+    /**
+     * Method for calculating index of the primary slot for given hash
+     * code: higher bits are spread down, since low bits of hash codes
+     * only depend on low bits of characters.
+     */
+    private int slotIndex(int hash)
+    {
+        hash *= 0x9E3779B1;
+        return (hash ^ (hash >>> 16)) & mIndexMask;
+    }
+
+    /**
+     * Method called to add given symbol in the collision bucket chain
+     * for given primary slot index; unless the chain is already at its
+     * maximum length, in which case it is added to the fallback area.
+     */
+    private void addToBucket(int index, PNameC symbol)
+    {
+        int bix = (index >> 1);
+        Bucket head = mBuckets[bix];
+        if (head != null && head.length() >= MAX_CHAIN_LENGTH) {
+            // Too many collisions (most likely, malicious input)
+            if (mFallback == null) {
+                mFallback = new TreeMap<CharSequence,PNameC>(NAME_ORDER);
+            }
+            mFallback.put(symbol.getPrefixedName(), symbol);
+        } else {
+            mBuckets[bix] = new Bucket(symbol, head);
+        }
+    }
+
     /**
      * Method called when copy-on-write is needed; generally when first
      * change is made to a derived symbol table.
@@ -269,6 +611,9 @@ public class CharBasedPNameTable
         size = oldBuckets.length;
         mBuckets = new Bucket[size];
         System.arraycopy(oldBuckets, 0, mBuckets, 0, size);
+        if (mFallback != null) {
+            mFallback = new TreeMap<CharSequence,PNameC>(mFallback);
+        }
 
         mDirty = true;
     }
@@ -293,6 +638,9 @@ public class CharBasedPNameTable
         mSizeThreshold += mSizeThreshold;
         
         int count = 0; // let's do sanity check
+        // re-adding names may spill over to a new fallback area
+        TreeMap<CharSequence,PNameC> oldFallback = mFallback;
+        mFallback = null;
 
         /* Need to do two loops, unfortunately, since spillover area is
          * only half the size:
@@ -301,12 +649,11 @@ public class CharBasedPNameTable
             PNameC symbol = oldSyms[i];
             if (symbol != null) {
                 ++count;
-                int index = symbol.getCustomHash() & mIndexMask;
+                int index = slotIndex(symbol.getCustomHash());
                 if (mSymbols[index] == null) {
                     mSymbols[index] = symbol;
                 } else {
-                    int bix = index >> 1;
-                    mBuckets[bix] = new Bucket(symbol, mBuckets[bix]);
+                    addToBucket(index, symbol);
                 }
             }
         }
@@ -317,17 +664,31 @@ public class CharBasedPNameTable
             while (b != null) {
                 ++count;
                 PNameC symbol = b.getSymbol();
-                int index = symbol.getCustomHash() & mIndexMask;
+                int index = slotIndex(symbol.getCustomHash());
                 if (mSymbols[index] == null) {
                     mSymbols[index] = symbol;
                 } else {
-                    int bix = index >> 1;
-                    mBuckets[bix] = new Bucket(symbol, mBuckets[bix]);
+                    addToBucket(index, symbol);
                 }
                 b = b.getNext();
             }
         }
 
+        /* And finally, names from the fallback area: these may or may
+         * not need to go back there, depending on new layout
+         */
+        if (oldFallback != null) {
+            for (PNameC symbol : oldFallback.values()) {
+                ++count;
+                int index = slotIndex(symbol.getCustomHash());
+                if (mSymbols[index] == null) {
+                    mSymbols[index] = symbol;
+                } else {
+                    addToBucket(index, symbol);
+                }
+            }
+        }
+
         if (count != mSize) {
             throw new Error("Internal error on SymbolTable.rehash(): had "+mSize+" entries; now have "+count+".");
         }
@@ -357,6 +718,15 @@ public class CharBasedPNameTable
         public PNameC getSymbol() { return mSymbol; }
         public Bucket getNext() { return mNext; }
 
+        public int length()
+        {
+            int len = 1;
+            for (Bucket curr = mNext; curr != null; curr = curr.mNext) {
+                ++len;
+            }
+            return len;
+        }
+
         public PNameC find(char[] buf, int start, int len, int hash)
         {
             Bucket b = this;
@@ -370,4 +740,35 @@ public class CharBasedPNameTable
             return null;
         }
     }
+
+    /**
+     * Mutable key used for looking up names from the fallback
+     * structure without constructing Strings.
+     */
+    final static class NameKey
+        implements CharSequence
+    {
+        private char[] mBuffer;
+        private int mStart;
+        private int mLength;
+
+        public NameKey reset(char[] buf, int start, int len)
+        {
+            mBuffer = buf;
+            mStart = start;
+            mLength = len;
+            return this;
+        }
+
+        public int length() { return mLength; }
+
+        public char charAt(int index) { return mBuffer[mStart+index]; }
+
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() { return new String(mBuffer, mStart, mLength); }
+    }
 }
@@ -37,6 +37,13 @@ public final class FixedNsContext
      */
     protected final NsDeclaration _lastDeclaration;
 
+    /**
+     * Sequence number of {@link #_lastDeclaration} at point when this
+     * instance was created; needed since declaration instances are
+     * reused by scanners.
+     */
+    protected final int _lastSeqNr;
+
     /**
      * Array that contains prefix/namespace-uri pairs, ordered from the
      * most recent declaration to older ones. Array is always exactly
@@ -44,15 +51,10 @@ public final class FixedNsContext
      */
     protected final String[] _declarationData;
 
-    /**
-     * Temporary List used for constructing compact namespace binding
-     * information that we will actually use.
-     */
-    protected ArrayList<String> _tmpDecl = null;
-
     private FixedNsContext(NsDeclaration lastDecl, String[] declData)
     {
         _lastDeclaration = lastDecl;
+        _lastSeqNr = (lastDecl == null) ? 0 : lastDecl.getSeqNr();
         _declarationData = declData;
     }
 
@@ -64,18 +66,23 @@ public final class FixedNsContext
     public FixedNsContext reuseOrCreate(final NsDeclaration currLastDecl)
     {
         if (currLastDecl == _lastDeclaration) {
-            return this;
+            if (currLastDecl == null || currLastDecl.getSeqNr() == _lastSeqNr) {
+                return this;
+            }
         }
-        if (_tmpDecl == null) {
-            _tmpDecl = new ArrayList<String>();
-        } else {
-            _tmpDecl.clear();
+        if (currLastDecl == null) {
+            return EMPTY_CONTEXT;
+        }
+        int count = 0;
+        for (NsDeclaration curr = currLastDecl; curr != null; curr = curr.getPrev()) {
+            ++count;
         }
+        String[] data = new String[count+count];
+        int ix = 0;
         for (NsDeclaration curr = currLastDecl; curr != null; curr = curr.getPrev()) {
-            _tmpDecl.add(curr.getPrefix());
-            _tmpDecl.add(curr.getCurrNsURI());
+            data[ix++] = curr.getPrefix();
+            data[ix++] = curr.getCurrNsURI();
         }
-        String[] data = _tmpDecl.toArray(new String[_tmpDecl.size()]);
         return new FixedNsContext(currLastDecl, data);
     }
 
@@ -39,9 +39,27 @@ final class NsBinding
     public final static NsBinding XMLNS_BINDING = new NsBinding
         ("xmlns", XMLConstants.XMLNS_ATTRIBUTE_NS_URI, null);
 
+    /**
+     * Bound name tables are not allowed to grow beyond this size; after
+     * which new bound names are still created but not cached.
+     */
+    private final static int MAX_BOUND_NAMES_SIZE = 0x400;
+
     public final String mPrefix;
     public String mURI;
 
+    /**
+     * Hash table (open addressing, linear probing) that contains bound
+     * names already created for this binding. Since bindings are
+     * per-document (and per-prefix) objects, and URI changes are
+     * reflected via binding, bound names can be reused for the whole
+     * document. Lazily created; never used for immutable bindings,
+     * which are shared between readers.
+     */
+    private PName[] mBoundNames;
+
+    private int mBoundCount;
+
     public NsBinding(String prefix)
     {
         /* For internal consistency, it is illegal to create multiple
@@ -69,4 +87,69 @@ final class NsBinding
     {
         return (this == XML_BINDING || this == XMLNS_BINDING);
     }
+
+    /*
+    //////////////////////////////////////////////////
+    // Bound name caching
+    //////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for finding the bound version of given unbound name,
+     * creating and caching it if none exists yet.
+     */
+    public PName bindName(PName name)
+    {
+        if (isImmutable()) { // shared, must not modify
+            return name.createBoundName(this);
+        }
+        PName[] names = mBoundNames;
+        if (names == null) {
+            mBoundNames = names = new PName[16];
+        }
+        final String pname = name.getPrefixedName();
+        int mask = names.length - 1;
+        int ix = name.unboundHashCode() & mask;
+        PName bn;
+        while ((bn = names[ix]) != null) {
+            if (pname.equals(bn.getPrefixedName())) {
+                return bn;
+            }
+            ix = (ix + 1) & mask;
+        }
+        bn = name.createBoundName(this);
+        // Keep load factor at 50% or below
+        if ((mBoundCount + mBoundCount) >= names.length) {
+            if (names.length >= MAX_BOUND_NAMES_SIZE) {
+                return bn;
+            }
+            rehash();
+            names = mBoundNames;
+            mask = names.length - 1;
+            ix = name.unboundHashCode() & mask;
+            while (names[ix] != null) {
+                ix = (ix + 1) & mask;
+            }
+        }
+        names[ix] = bn;
+        ++mBoundCount;
+        return bn;
+    }
+
+    private void rehash()
+    {
+        PName[] old = mBoundNames;
+        PName[] names = new PName[old.length + old.length];
+        int mask = names.length - 1;
+        for (PName bn : old) {
+            if (bn != null) {
+                int ix = bn.unboundHashCode() & mask;
+                while (names[ix] != null) {
+                    ix = (ix + 1) & mask;
+                }
+                names[ix] = bn;
+            }
+        }
+        mBoundNames = names;
+    }
 }
@@ -17,10 +17,15 @@ package com.fasterxml.aalto.in;
 
 /**
  * This class encapsulates information about a namespace binding declaration,
- * associated with start elements. Declarations are stored as a linked list,
- * to minimize fixed allocations, and since they only need to be accessed
- * directly when dealing with START_ELEMENT and END_ELEMENT, not when
- * binding element or attribute names.
+ * associated with start elements. Declarations are linked backwards,
+ * since they only need to be accessed directly when dealing with
+ * START_ELEMENT and END_ELEMENT, not when binding element or attribute names.
+ *<p>
+ * Instances are owned by a scanner, which keeps them in an array-backed
+ * stack and reuses them once declarations go out of scope: link to the
+ * previous declaration is fixed (instance at stack index <code>i</code>
+ * always links to one at <code>i-1</code>), whereas binding information
+ * is reset by {@link #bind}.
  */
 public final class NsDeclaration
 {
@@ -29,9 +34,9 @@ public final class NsDeclaration
      * declaration (URI changed when declaration comes in and goes out
      * of scope)
      */
-    private final NsBinding mBinding;
+    private NsBinding mBinding;
 
-    private final String mPreviousURI;
+    private String mPreviousURI;
 
     private final NsDeclaration mPrevDeclaration;
 
@@ -40,14 +45,29 @@ public final class NsDeclaration
      * to see if the particular declaration is associated with the start
      * element for which end element is pair.
      */
-    private final int mLevel;
+    private int mLevel;
 
-    public NsDeclaration(NsBinding binding, String newURI,
-                         NsDeclaration prevDecl, int level)
+    /**
+     * Sequence number assigned when declaration was bound: since
+     * instances are reused, this is needed to distinguish between
+     * different declarations bound using the same instance.
+     */
+    private int mSeqNr;
+
+    public NsDeclaration(NsDeclaration prevDecl)
     {
-        mBinding = binding;
         mPrevDeclaration = prevDecl;
+    }
+
+    /**
+     * Method called to (re)initialize this declaration, and to
+     * update the binding it is for.
+     */
+    public void bind(NsBinding binding, String newURI, int level, int seqNr)
+    {
+        mBinding = binding;
         mLevel = level;
+        mSeqNr = seqNr;
 
         // Also, need to update the binding itself
         mPreviousURI = binding.mURI;
@@ -55,6 +75,7 @@ public final class NsDeclaration
     }
 
     public int getLevel() { return mLevel; }
+    public int getSeqNr() { return mSeqNr; }
     public NsDeclaration getPrev() { return mPrevDeclaration; }
     public NsBinding getBinding() { return mBinding; }
 
@@ -76,6 +97,8 @@ public final class NsDeclaration
     public NsDeclaration unbind()
     {
         mBinding.mURI = mPreviousURI;
+        mBinding = null;
+        mPreviousURI = null;
         return mPrevDeclaration;
     }
 
@@ -1,18 +1,24 @@
 package com.fasterxml.aalto.in;
 
+import java.io.*;
 import java.lang.ref.SoftReference;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.stream.*;
 
 import org.codehaus.stax2.XMLInputFactory2;
 
 
+import com.fasterxml.aalto.AaltoInputProperties;
 import com.fasterxml.aalto.CommonConfig;
 import com.fasterxml.aalto.XmlConsts;
+import com.fasterxml.aalto.util.BufferPool;
 import com.fasterxml.aalto.util.BufferRecycler;
 import com.fasterxml.aalto.util.CharsetNames;
+import com.fasterxml.aalto.util.NameTableStats;
 import com.fasterxml.aalto.util.UriCanonicalizer;
+import com.fasterxml.aalto.util.ValueCanonicalizer;
 import com.fasterxml.aalto.util.XmlCharTypes;
 
 /**
@@ -26,6 +32,13 @@ public final class ReaderConfig
 
     public final static int DEFAULT_CHAR_BUFFER_LEN = 4000;
 
+    /**
+     * Default maximum number of names shared symbol tables are allowed
+     * to contain; big enough not to be reached with any normal
+     * xml vocabulary.
+     */
+    public final static int DEFAULT_MAX_SYMBOL_TABLE_SIZE = 0x4000;
+
     public final static int STANDALONE_UNKNOWN = 0;
     public final static int STANDALONE_YES = 1;
     public final static int STANDALONE_NO = 2;
@@ -46,6 +59,19 @@ public final class ReaderConfig
     final static int F_AUTO_CLOSE_INPUT = 0x2000;
 
     // Custom flags:
+    final static int F_TRUSTED_INPUT = 0x10000;
+
+    // Non-flag (object) properties
+
+    final static int PROP_MAX_SYMBOL_TABLE_SIZE = -2;
+    final static int PROP_BUFFER_POOL = -3;
+    final static int PROP_MAX_TEXT_CHUNK_LENGTH = -4;
+    final static int PROP_VALUE_CACHE_SIZE = -5;
+    final static int PROP_MAX_ELEMENT_DEPTH = -6;
+    final static int PROP_MAX_ATTRIBUTE_COUNT = -7;
+    final static int PROP_MAX_NAME_LENGTH = -8;
+    final static int PROP_MAX_TEXT_LENGTH = -9;
+    final static int PROP_MAX_DOCUMENT_LENGTH = -10;
 
     /**
      * These are the default settigs for XMLInputFactory.
@@ -66,11 +92,7 @@ public final class ReaderConfig
     private final static HashMap<String, Object> sProperties;
     static {
         sProperties = new HashMap<String, Object>();
-        /* 28-Oct-2006, tatus: Let's recognize it, but not allow to be
-         *   disabled. Can/needs to be changed if we'll support it.
-         */
-        sProperties.put(XMLInputFactory.IS_NAMESPACE_AWARE,
-                      Boolean.TRUE);
+        sProperties.put(XMLInputFactory.IS_NAMESPACE_AWARE, Integer.valueOf(F_NS_AWARE));
         sProperties.put(XMLInputFactory.IS_VALIDATING, 
                       //Boolean.FALSE);
                       new Integer(F_DTD_VALIDATING));
@@ -98,6 +120,18 @@ public final class ReaderConfig
         sProperties.put(XMLInputFactory2.P_REPORT_PROLOG_WHITESPACE, Boolean.FALSE);
         sProperties.put(XMLInputFactory2.P_REPORT_CDATA, Integer.valueOf(F_REPORT_CDATA));
 
+        // Aalto-specific:
+        sProperties.put(AaltoInputProperties.P_MAX_SYMBOL_TABLE_SIZE, Integer.valueOf(PROP_MAX_SYMBOL_TABLE_SIZE));
+        sProperties.put(AaltoInputProperties.P_BUFFER_POOL, Integer.valueOf(PROP_BUFFER_POOL));
+        sProperties.put(AaltoInputProperties.P_MAX_TEXT_CHUNK_LENGTH, Integer.valueOf(PROP_MAX_TEXT_CHUNK_LENGTH));
+        sProperties.put(AaltoInputProperties.P_VALUE_CACHE_SIZE, Integer.valueOf(PROP_VALUE_CACHE_SIZE));
+        sProperties.put(AaltoInputProperties.P_TRUSTED_INPUT, Integer.valueOf(F_TRUSTED_INPUT));
+        sProperties.put(AaltoInputProperties.P_MAX_ELEMENT_DEPTH, Integer.valueOf(PROP_MAX_ELEMENT_DEPTH));
+        sProperties.put(AaltoInputProperties.P_MAX_ATTRIBUTE_COUNT, Integer.valueOf(PROP_MAX_ATTRIBUTE_COUNT));
+        sProperties.put(AaltoInputProperties.P_MAX_NAME_LENGTH, Integer.valueOf(PROP_MAX_NAME_LENGTH));
+        sProperties.put(AaltoInputProperties.P_MAX_TEXT_LENGTH, Integer.valueOf(PROP_MAX_TEXT_LENGTH));
+        sProperties.put(AaltoInputProperties.P_MAX_DOCUMENT_LENGTH, Integer.valueOf(PROP_MAX_DOCUMENT_LENGTH));
+
         sProperties.put(XMLInputFactory2.P_PRESERVE_LOCATION, Boolean.TRUE);
 
         // !!! Not really implemented, but let's recognize it
@@ -119,6 +153,12 @@ public final class ReaderConfig
      */
     private final UriCanonicalizer mCanonicalizer;
 
+    /**
+     * Optional cache for canonicalizing short attribute values and
+     * text segments; shared by all readers created by a factory.
+     */
+    private ValueCanonicalizer mValueCanonicalizer;
+
     private final String mPublicId;
     private final String mSystemId;
 
@@ -142,6 +182,24 @@ public final class ReaderConfig
     private XMLReporter mReporter;
     private XMLResolver mResolver;
 
+    // // // Custom properties
+
+    private int mMaxSymbolTableSize;
+
+    private int mMaxTextChunkLength;
+
+    // // // Resource limits (no limit by default)
+
+    private int mMaxElementDepth;
+
+    private int mMaxAttributeCount;
+
+    private int mMaxNameLength;
+
+    private int mMaxTextLength;
+
+    private long mMaxDocumentLength;
+
     /*
     //////////////////////////////////////////////////////////
     // Buffer recycling:
@@ -163,6 +221,12 @@ public final class ReaderConfig
      */
     BufferRecycler mCurrRecycler = null;
 
+    /**
+     * Explicitly configured buffer pool, if any; if non-null, used
+     * instead of thread-local recycler.
+     */
+    private BufferPool mBufferPool;
+
     /*
     /////////////////////////////////////////////////////
     // Life-cycle
@@ -172,7 +236,11 @@ public final class ReaderConfig
     private ReaderConfig(String publicId, String systemId, String extEnc,
                          EncodingContext encCtxt, int flags, int flagMods,
                          XMLReporter rep, XMLResolver res,
-                         UriCanonicalizer canonicalizer)
+                         UriCanonicalizer canonicalizer,
+                         int maxSymbolTableSize, BufferPool bufferPool,
+                         int maxTextChunkLength, ValueCanonicalizer valueCanonicalizer,
+                         int maxElementDepth, int maxAttributeCount,
+                         int maxNameLength, int maxTextLength, long maxDocumentLength)
     {
         super(flags, flagMods);
         mPublicId = publicId;
@@ -185,23 +253,36 @@ public final class ReaderConfig
          * we can reconstruct one if and when we are to return one or more
          * buffers.
          */
-        SoftReference<BufferRecycler> ref = mRecyclerRef.get();
-        if (ref != null) {
-            mCurrRecycler = ref.get();
+        if (bufferPool == null) {
+            SoftReference<BufferRecycler> ref = mRecyclerRef.get();
+            if (ref != null) {
+                mCurrRecycler = ref.get();
+            }
         }
+        mBufferPool = bufferPool;
         mEncCtxt = encCtxt;
         _flags = flags;
         _flagMods = flagMods;
         mReporter = rep;
         mResolver = res;
         mCanonicalizer = canonicalizer;
+        mMaxSymbolTableSize = maxSymbolTableSize;
+        mMaxTextChunkLength = maxTextChunkLength;
+        mValueCanonicalizer = valueCanonicalizer;
+        mMaxElementDepth = maxElementDepth;
+        mMaxAttributeCount = maxAttributeCount;
+        mMaxNameLength = maxNameLength;
+        mMaxTextLength = maxTextLength;
+        mMaxDocumentLength = maxDocumentLength;
     }
 
     public ReaderConfig()
     {
         this(null, null, null, new EncodingContext(), DEFAULT_FLAGS, 0,
              null, null,
-             new UriCanonicalizer());
+             new UriCanonicalizer(), DEFAULT_MAX_SYMBOL_TABLE_SIZE, null, 0, null,
+             Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+             Integer.MAX_VALUE, Long.MAX_VALUE);
     }
 
     public void setActualEncoding(String actualEnc)
@@ -276,7 +357,11 @@ public final class ReaderConfig
     {
         return new ReaderConfig(publicId, systemId, extEnc, mEncCtxt,
                                 _flags, _flagMods,
-                                mReporter, mResolver, mCanonicalizer);
+                                mReporter, mResolver, mCanonicalizer,
+                                mMaxSymbolTableSize, mBufferPool,
+                                mMaxTextChunkLength, mValueCanonicalizer,
+                                mMaxElementDepth, mMaxAttributeCount,
+                                mMaxNameLength, mMaxTextLength, mMaxDocumentLength);
     }
 
     public String getExternalEncoding() { return mExtEncoding; }
@@ -322,7 +407,31 @@ public final class ReaderConfig
             throw new RuntimeException("Internal error: unrecognized property value type: "+ob.getClass().getName());
         }
         int f = ((Integer) ob).intValue();
-        return hasFlag(f);
+        if (f >= 0) {
+            return hasFlag(f);
+        }
+        // object values ones
+        switch (f) {
+        case PROP_MAX_SYMBOL_TABLE_SIZE:
+            return Integer.valueOf(mMaxSymbolTableSize);
+        case PROP_BUFFER_POOL:
+            return mBufferPool;
+        case PROP_MAX_TEXT_CHUNK_LENGTH:
+            return Integer.valueOf(mMaxTextChunkLength);
+        case PROP_VALUE_CACHE_SIZE:
+            return Integer.valueOf((mValueCanonicalizer == null) ? 0 : mValueCanonicalizer.capacity());
+        case PROP_MAX_ELEMENT_DEPTH:
+            return Integer.valueOf(mMaxElementDepth);
+        case PROP_MAX_ATTRIBUTE_COUNT:
+            return Integer.valueOf(mMaxAttributeCount);
+        case PROP_MAX_NAME_LENGTH:
+            return Integer.valueOf(mMaxNameLength);
+        case PROP_MAX_TEXT_LENGTH:
+            return Integer.valueOf(mMaxTextLength);
+        case PROP_MAX_DOCUMENT_LENGTH:
+            return Long.valueOf(mMaxDocumentLength);
+        }
+        return null;
     }
 
     public boolean setProperty(String name, Object value)
@@ -342,9 +451,45 @@ public final class ReaderConfig
             throw new RuntimeException("Internal error");
         }
         int f = ((Integer) ob).intValue();
-        boolean state = ((Boolean) value).booleanValue();
-        setFlag(f, state);
-        return true;
+        if (f >= 0) {
+            boolean state = ((Boolean) value).booleanValue();
+            setFlag(f, state);
+            return true;
+        }
+        // object values ones
+        switch (f) {
+        case PROP_MAX_SYMBOL_TABLE_SIZE:
+            mMaxSymbolTableSize = intValue(name, value, 1);
+            return true;
+        case PROP_BUFFER_POOL:
+            setBufferPool((BufferPool) value);
+            return true;
+        case PROP_MAX_TEXT_CHUNK_LENGTH:
+            mMaxTextChunkLength = intValue(name, value, 0);
+            return true;
+        case PROP_VALUE_CACHE_SIZE:
+            {
+                int size = intValue(name, value, 0);
+                mValueCanonicalizer = (size == 0) ? null : new ValueCanonicalizer(Math.max(2, size));
+            }
+            return true;
+        case PROP_MAX_ELEMENT_DEPTH:
+            mMaxElementDepth = intValue(name, value, 1);
+            return true;
+        case PROP_MAX_ATTRIBUTE_COUNT:
+            mMaxAttributeCount = intValue(name, value, 0);
+            return true;
+        case PROP_MAX_NAME_LENGTH:
+            mMaxNameLength = intValue(name, value, 1);
+            return true;
+        case PROP_MAX_TEXT_LENGTH:
+            mMaxTextLength = intValue(name, value, 0);
+            return true;
+        case PROP_MAX_DOCUMENT_LENGTH:
+            mMaxDocumentLength = longValue(name, value, 1L);
+            return true;
+        }
+        return false;
     }
 
     @Override
@@ -369,7 +514,7 @@ public final class ReaderConfig
     }
 
     public boolean willSupportNamespaces() {
-        return true;
+        return hasFlag(F_NS_AWARE);
     }
 
     // // // Stax2 standard properties
@@ -388,6 +533,66 @@ public final class ReaderConfig
 
     public boolean willAutoCloseInput() { return hasFlag(F_AUTO_CLOSE_INPUT); }
 
+    // // // Aalto-specific properties
+
+    public int getMaxSymbolTableSize() { return mMaxSymbolTableSize; }
+
+    public BufferPool getBufferPool() { return mBufferPool; }
+
+    /**
+     * @return True if input is known to be well-formed, so that
+     *   checks for malformed content can be skipped
+     */
+    public boolean willTrustInput() { return hasFlag(F_TRUSTED_INPUT); }
+
+    /**
+     * @return Maximum length of CHARACTERS events to return, if text
+     *   is to be split in chunks; 0 if not
+     */
+    public int getMaxTextChunkLength() { return mMaxTextChunkLength; }
+
+    /**
+     * @return Canonicalizer to use for short attribute values and text
+     *   segments, if one is enabled; null if not
+     */
+    public ValueCanonicalizer getValueCanonicalizer() { return mValueCanonicalizer; }
+
+    /**
+     * @return Maximum nesting depth of elements
+     */
+    public int getMaxElementDepth() { return mMaxElementDepth; }
+
+    /**
+     * @return Maximum number of attributes per element
+     */
+    public int getMaxAttributeCount() { return mMaxAttributeCount; }
+
+    /**
+     * @return Maximum length of element and attribute names
+     */
+    public int getMaxNameLength() { return mMaxNameLength; }
+
+    /**
+     * @return Maximum length of a single textual event
+     */
+    public int getMaxTextLength() { return mMaxTextLength; }
+
+    /**
+     * @return Maximum length of the document, in bytes or characters
+     *   (depending on type of input)
+     */
+    public long getMaxDocumentLength() { return mMaxDocumentLength; }
+
+    /**
+     * @param pool Buffer pool to use for readers created using this
+     *   configuration; null to use default per-thread recycling
+     */
+    public void setBufferPool(BufferPool pool)
+    {
+        mBufferPool = pool;
+        mCurrRecycler = null;
+    }
+
     // // // Support for things that must be explicitly enabled
 
     public boolean hasInternNamesBeenEnabled() { return hasExplicitFlag(F_INTERN_NAMES); }
@@ -543,6 +748,9 @@ public final class ReaderConfig
 
     public char[] allocSmallCBuffer(int minSize)
     {
+        if (mBufferPool != null) {
+            return mBufferPool.allocCharBuffer(minSize);
+        }
 //System.err.println("DEBUG: cfg, allocCSmall: "+mCurrRecycler);
         if (mCurrRecycler != null) {
             char[] result = mCurrRecycler.getSmallCBuffer(minSize);
@@ -556,6 +764,10 @@ public final class ReaderConfig
 
     public void freeSmallCBuffer(char[] buffer)
     {
+        if (mBufferPool != null) {
+            mBufferPool.releaseCharBuffer(buffer);
+            return;
+        }
 //System.err.println("DEBUG: cfg, freeCSmall: "+buffer);
         // Need to create (and assign) the buffer?
         if (mCurrRecycler == null) {
@@ -566,6 +778,9 @@ public final class ReaderConfig
 
     public char[] allocMediumCBuffer(int minSize)
     {
+        if (mBufferPool != null) {
+            return mBufferPool.allocCharBuffer(minSize);
+        }
 //System.err.println("DEBUG: cfg, allocCMed: "+mCurrRecycler);
         if (mCurrRecycler != null) {
             char[] result = mCurrRecycler.getMediumCBuffer(minSize);
@@ -578,6 +793,10 @@ public final class ReaderConfig
 
     public void freeMediumCBuffer(char[] buffer)
     {
+        if (mBufferPool != null) {
+            mBufferPool.releaseCharBuffer(buffer);
+            return;
+        }
 //System.err.println("DEBUG: cfg, freeCMed: "+buffer);
         if (mCurrRecycler == null) {
             mCurrRecycler = createRecycler();
@@ -587,6 +806,9 @@ public final class ReaderConfig
 
     public char[] allocFullCBuffer(int minSize)
     {
+        if (mBufferPool != null) {
+            return mBufferPool.allocCharBuffer(minSize);
+        }
 //System.err.println("DEBUG: cfg, allocCFull: "+mCurrRecycler);
         if (mCurrRecycler != null) {
             char[] result = mCurrRecycler.getFullCBuffer(minSize);
@@ -599,6 +821,10 @@ public final class ReaderConfig
 
     public void freeFullCBuffer(char[] buffer)
     {
+        if (mBufferPool != null) {
+            mBufferPool.releaseCharBuffer(buffer);
+            return;
+        }
 //System.err.println("DEBUG: cfg, freeCFull: "+buffer);
         // Need to create (and assign) the buffer?
         if (mCurrRecycler == null) {
@@ -609,6 +835,9 @@ public final class ReaderConfig
 
     public byte[] allocFullBBuffer(int minSize)
     {
+        if (mBufferPool != null) {
+            return mBufferPool.allocByteBuffer(minSize);
+        }
 //System.err.println("DEBUG: cfg, allocBFull: "+mCurrRecycler);
         if (mCurrRecycler != null) {
             byte[] result = mCurrRecycler.getFullBBuffer(minSize);
@@ -621,6 +850,10 @@ public final class ReaderConfig
 
     public void freeFullBBuffer(byte[] buffer)
     {
+        if (mBufferPool != null) {
+            mBufferPool.releaseByteBuffer(buffer);
+            return;
+        }
 //System.err.println("DEBUG: cfg, freeBFull: "+buffer);
         // Need to create (and assign) the buffer?
         if (mCurrRecycler == null) {
@@ -646,33 +879,43 @@ public final class ReaderConfig
     /////////////////////////////////////////////////////
      */
 
+    /**
+     * @return Context that contains symbol tables to use for readers
+     *   with this configuration; namespace-aware and -unaware readers
+     *   use different tables
+     */
+    private EncodingContext encodingContext()
+    {
+        return willSupportNamespaces() ? mEncCtxt : mEncCtxt.getNonNsContext();
+    }
+
     public ByteBasedPNameTable getBBSymbols()
     {
         if (mActualEncoding == CharsetNames.CS_UTF8) {
-            return mEncCtxt.getUtf8Symbols();
+            return encodingContext().getUtf8Symbols(mMaxSymbolTableSize);
         }
         if (mActualEncoding == CharsetNames.CS_ISO_LATIN1) {
-            return mEncCtxt.getLatin1Symbols();
+            return encodingContext().getLatin1Symbols(mMaxSymbolTableSize);
         }
         if (mActualEncoding == CharsetNames.CS_US_ASCII) {
-            return mEncCtxt.getAsciiSymbols();
+            return encodingContext().getAsciiSymbols(mMaxSymbolTableSize);
         }
         throw new Error("Internal error, unknown encoding '"+mActualEncoding+"'");
     }
 
     public CharBasedPNameTable getCBSymbols()
     {
-        return mEncCtxt.getSymbols();
+        return encodingContext().getSymbols(mMaxSymbolTableSize);
     }
 
     public void updateBBSymbols(ByteBasedPNameTable sym)
     {
         if (mActualEncoding == CharsetNames.CS_UTF8) {
-            mEncCtxt.updateUtf8Symbols(sym);
+            encodingContext().updateUtf8Symbols(sym);
         } else if (mActualEncoding == CharsetNames.CS_ISO_LATIN1) {
-            mEncCtxt.updateLatin1Symbols(sym);
+            encodingContext().updateLatin1Symbols(sym);
         } else if (mActualEncoding == CharsetNames.CS_US_ASCII) {
-            mEncCtxt.updateAsciiSymbols(sym);
+            encodingContext().updateAsciiSymbols(sym);
         } else {
             throw new Error("Internal error, unknown encoding '"+mActualEncoding+"'");
         }
@@ -680,7 +923,63 @@ public final class ReaderConfig
 
     public void updateCBSymbols(CharBasedPNameTable sym)
     {
-            mEncCtxt.updateSymbols(sym);
+            encodingContext().updateSymbols(sym);
+    }
+
+    /**
+     * Method for accessing statistics of the shared byte-based symbol
+     * table used for given encoding (one of "UTF-8", "ISO-8859-1" and
+     * "US-ASCII").
+     */
+    public NameTableStats getBBSymbolStats(String encoding)
+    {
+        encoding = CharsetNames.normalize(encoding);
+        if (encoding == CharsetNames.CS_UTF8) {
+            return encodingContext().getUtf8Stats();
+        }
+        if (encoding == CharsetNames.CS_ISO_LATIN1) {
+            return encodingContext().getLatin1Stats();
+        }
+        if (encoding == CharsetNames.CS_US_ASCII) {
+            return encodingContext().getAsciiStats();
+        }
+        throw new IllegalArgumentException("No byte-based symbol table for encoding '"+encoding+"'");
+    }
+
+    /**
+     * Method for accessing statistics of the shared char-based symbol
+     * table (used for Reader-backed input).
+     */
+    public NameTableStats getCBSymbolStats()
+    {
+        return encodingContext().getGeneralStats();
+    }
+
+    /**
+     * Method for exporting the current state of symbol tables shared
+     * by all readers created using the same factory. Only tables used
+     * by namespace-aware readers are exported.
+     *
+     * @see #importSymbolTables
+     */
+    public void exportSymbolTables(OutputStream out)
+        throws IOException
+    {
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+        mEncCtxt.writeTo(dout);
+        dout.flush();
+    }
+
+    /**
+     * Method for replacing shared symbol tables with contents exported
+     * earlier using {@link #exportSymbolTables}. This is usually done
+     * right after the factory has been constructed, to avoid having
+     * to gradually build up symbol tables when parsing first documents.
+     */
+    public void importSymbolTables(InputStream in)
+        throws IOException
+    {
+        mEncCtxt.readFrom(new DataInputStream(new BufferedInputStream(in)), mMaxSymbolTableSize);
     }
 
     public XmlCharTypes getCharTypes()
@@ -697,6 +996,48 @@ public final class ReaderConfig
         throw new Error("Internal error, unknown encoding '"+mActualEncoding+"'");
     }
     
+    /*
+    /////////////////////////////////////////////////////
+    // Internal methods
+    /////////////////////////////////////////////////////
+     */
+
+    private static int intValue(String propName, Object value, int minValue)
+    {
+        int i;
+        if (value instanceof Number) {
+            i = ((Number) value).intValue();
+        } else {
+            try {
+                i = Integer.parseInt(String.valueOf(value).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for property '"+propName+"': not an integer ("+value+")");
+            }
+        }
+        if (i < minValue) {
+            throw new IllegalArgumentException("Invalid value for property '"+propName+"': "+i+" (minimum "+minValue+")");
+        }
+        return i;
+    }
+
+    private static long longValue(String propName, Object value, long minValue)
+    {
+        long l;
+        if (value instanceof Number) {
+            l = ((Number) value).longValue();
+        } else {
+            try {
+                l = Long.parseLong(String.valueOf(value).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for property '"+propName+"': not an integer ("+value+")");
+            }
+        }
+        if (l < minValue) {
+            throw new IllegalArgumentException("Invalid value for property '"+propName+"': "+l+" (minimum "+minValue+")");
+        }
+        return l;
+    }
+
     /*
     /////////////////////////////////////////////////////
     // Helper classes
@@ -719,58 +1060,279 @@ public final class ReaderConfig
          */
         CharBasedPNameTable mGeneralTable;
 
-        EncodingContext() { }
+        /**
+         * Usage statistics for the shared tables; accumulated without
+         * synchronization when readers are closed.
+         */
+        final Usage mUtf8Usage = new Usage();
+        final Usage mLatin1Usage = new Usage();
+        final Usage mAsciiUsage = new Usage();
+        final Usage mGeneralUsage = new Usage();
+
+        /**
+         * Seed used for hashing names in all symbol tables of this
+         * context: randomized to make it harder to construct names
+         * with colliding hash codes.
+         */
+        final int mHashSeed;
 
-        public synchronized ByteBasedPNameTable getUtf8Symbols()
+        /**
+         * Generation number assigned to the latest shared table that
+         * replaced an earlier one (due to reset or import); child
+         * tables of replaced tables are not merged. Only accessed
+         * while holding lock of this context.
+         */
+        private int mGeneration;
+
+        /**
+         * Context used by namespace-unaware readers: since their names
+         * are not split into prefix and local name, they can not be
+         * shared with namespace-aware readers. Created when first needed.
+         */
+        private EncodingContext mNonNsContext;
+
+        EncodingContext() {
+            mHashSeed = new Random().nextInt();
+        }
+
+        public synchronized EncodingContext getNonNsContext()
+        {
+            if (mNonNsContext == null) {
+                mNonNsContext = new EncodingContext();
+            }
+            return mNonNsContext;
+        }
+
+        public synchronized ByteBasedPNameTable getUtf8Symbols(int maxSize)
         {
             if (mUtf8Table == null) {
-                mUtf8Table = new ByteBasedPNameTable(64);
+                mUtf8Table = new ByteBasedPNameTable(64, mHashSeed);
             }
-            return new ByteBasedPNameTable(mUtf8Table);
+            return new ByteBasedPNameTable(mUtf8Table, maxSize);
         }
 
-        public synchronized void updateUtf8Symbols(ByteBasedPNameTable sym)
+        public void updateUtf8Symbols(ByteBasedPNameTable sym)
         {
-            mUtf8Table.mergeFromChild(sym);
+            mUtf8Usage.record(sym);
+            if (sym.maybeDirty() || sym.hasOverflowed()) {
+                synchronized (this) {
+                    mUtf8Table = merge(mUtf8Table, sym, mUtf8Usage);
+                }
+            }
         }
 
-        public synchronized ByteBasedPNameTable getLatin1Symbols()
+        public synchronized ByteBasedPNameTable getLatin1Symbols(int maxSize)
         {
             if (mLatin1Table == null) {
-                mLatin1Table = new ByteBasedPNameTable(64);
+                mLatin1Table = new ByteBasedPNameTable(64, mHashSeed);
             }
-            return new ByteBasedPNameTable(mLatin1Table);
+            return new ByteBasedPNameTable(mLatin1Table, maxSize);
         }
 
-        public synchronized void updateLatin1Symbols(ByteBasedPNameTable sym)
+        public void updateLatin1Symbols(ByteBasedPNameTable sym)
         {
-            mLatin1Table.mergeFromChild(sym);
+            mLatin1Usage.record(sym);
+            if (sym.maybeDirty() || sym.hasOverflowed()) {
+                synchronized (this) {
+                    mLatin1Table = merge(mLatin1Table, sym, mLatin1Usage);
+                }
+            }
         }
 
-        public synchronized ByteBasedPNameTable getAsciiSymbols()
+        public synchronized ByteBasedPNameTable getAsciiSymbols(int maxSize)
         {
             if (mAsciiTable == null) {
-                mAsciiTable = new ByteBasedPNameTable(64);
+                mAsciiTable = new ByteBasedPNameTable(64, mHashSeed);
             }
-            return new ByteBasedPNameTable(mAsciiTable);
+            return new ByteBasedPNameTable(mAsciiTable, maxSize);
         }
 
-        public synchronized void updateAsciiSymbols(ByteBasedPNameTable sym)
+        public void updateAsciiSymbols(ByteBasedPNameTable sym)
         {
-            mAsciiTable.mergeFromChild(sym);
+            mAsciiUsage.record(sym);
+            if (sym.maybeDirty() || sym.hasOverflowed()) {
+                synchronized (this) {
+                    mAsciiTable = merge(mAsciiTable, sym, mAsciiUsage);
+                }
+            }
         }
 
-        public synchronized CharBasedPNameTable getSymbols()
+        public synchronized CharBasedPNameTable getSymbols(int maxSize)
         {
             if (mGeneralTable == null) {
-                mGeneralTable = new CharBasedPNameTable(64);
+                mGeneralTable = new CharBasedPNameTable(64, mHashSeed);
+            }
+            return new CharBasedPNameTable(mGeneralTable, maxSize);
+        }
+
+        public void updateSymbols(CharBasedPNameTable sym)
+        {
+            mGeneralUsage.record(sym);
+            if (sym.maybeDirty() || sym.hasOverflowed()) {
+                synchronized (this) {
+                    mGeneralTable = merge(mGeneralTable, sym, mGeneralUsage);
+                }
+            }
+        }
+
+        /**
+         * Helper method that will either merge contents of a child table
+         * into shared table; or, if child table overflowed its size limit,
+         * replace shared table with a new empty table. Child tables
+         * created from an earlier shared table (one since replaced)
+         * are ignored, so that their content can not undo the reset.
+         */
+        private <T extends SharedPNameTable<T>> T merge(T shared, T child, Usage usage)
+        {
+            if (child.getGeneration() != shared.getGeneration()) {
+                child.clearOverflowed();
+                return shared;
+            }
+            if (child.hasOverflowed()) {
+                ++usage.mResets;
+                child.clearOverflowed();
+                T table = shared.createEmptyShared();
+                table.setGeneration(++mGeneration);
+                return table;
             }
-            return new CharBasedPNameTable(mGeneralTable);
+            shared.mergeChild(child);
+            return shared;
+        }
+
+        // // // Statistics
+
+        public synchronized NameTableStats getUtf8Stats() {
+            return getStats(mUtf8Table, mUtf8Usage);
+        }
+
+        public synchronized NameTableStats getLatin1Stats() {
+            return getStats(mLatin1Table, mLatin1Usage);
+        }
+
+        public synchronized NameTableStats getAsciiStats() {
+            return getStats(mAsciiTable, mAsciiUsage);
+        }
+
+        public synchronized NameTableStats getGeneralStats()
+        {
+            Usage u = mGeneralUsage;
+            if (mGeneralTable == null) {
+                return new NameTableStats(0, 0, 0, 0, u.mLookups.get(), u.mMisses.get(), u.mResets);
+            }
+            return mGeneralTable.getStats(u.mLookups.get(), u.mMisses.get(), u.mResets);
+        }
+
+        private static NameTableStats getStats(ByteBasedPNameTable table, Usage u)
+        {
+            if (table == null) {
+                return new NameTableStats(0, 0, 0, 0, u.mLookups.get(), u.mMisses.get(), u.mResets);
+            }
+            return table.getStats(u.mLookups.get(), u.mMisses.get(), u.mResets);
+        }
+
+        // // // Persistence
+
+        /**
+         * Identifier used at the start of exported symbol tables, to
+         * catch obviously wrong input
+         */
+        final static int EXPORT_MAGIC = 0xAA170001;
+
+        public synchronized void writeTo(DataOutput out)
+            throws IOException
+        {
+            out.writeInt(EXPORT_MAGIC);
+            writeTable(out, mUtf8Table);
+            writeTable(out, mLatin1Table);
+            writeTable(out, mAsciiTable);
+            if (mGeneralTable == null) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                mGeneralTable.writeTo(out);
+            }
+        }
+
+        public void readFrom(DataInput in, int maxCount)
+            throws IOException
+        {
+            int magic = in.readInt();
+            if (magic != EXPORT_MAGIC) {
+                throw new IOException("Invalid symbol table data: unrecognized header 0x"+Integer.toHexString(magic));
+            }
+            // Let's fully read everything before changing anything
+            ByteBasedPNameTable utf8 = readTable(in, maxCount);
+            ByteBasedPNameTable latin1 = readTable(in, maxCount);
+            ByteBasedPNameTable ascii = readTable(in, maxCount);
+            CharBasedPNameTable general = in.readBoolean() ? CharBasedPNameTable.readFrom(in, mHashSeed, maxCount) : null;
+            synchronized (this) {
+                // (children of replaced tables are not to be merged)
+                ++mGeneration;
+                if (utf8 != null) {
+                    utf8.setGeneration(mGeneration);
+                    mUtf8Table = utf8;
+                }
+                if (latin1 != null) {
+                    latin1.setGeneration(mGeneration);
+                    mLatin1Table = latin1;
+                }
+                if (ascii != null) {
+                    ascii.setGeneration(mGeneration);
+                    mAsciiTable = ascii;
+                }
+                if (general != null) {
+                    general.setGeneration(mGeneration);
+                    mGeneralTable = general;
+                }
+            }
+        }
+
+        private static void writeTable(DataOutput out, ByteBasedPNameTable table)
+            throws IOException
+        {
+            if (table == null) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                table.writeTo(out);
+            }
+        }
+
+        private ByteBasedPNameTable readTable(DataInput in, int maxCount)
+            throws IOException
+        {
+            return in.readBoolean() ? ByteBasedPNameTable.readFrom(in, mHashSeed, maxCount) : null;
+        }
+    }
+
+    /**
+     * Container for usage statistics of a shared symbol table; counts
+     * are accumulated over all readers, including ones for which the
+     * shared table was reset.
+     */
+    final static class Usage
+    {
+        final AtomicLong mLookups = new AtomicLong();
+        final AtomicLong mMisses = new AtomicLong();
+
+        /**
+         * Number of times shared table has been reset; only modified
+         * while holding lock of the owning context.
+         */
+        int mResets;
+
+        public void record(ByteBasedPNameTable child)
+        {
+            mLookups.addAndGet(child.getLookupCount());
+            mMisses.addAndGet(child.getMissCount());
+            child.resetUsageCounts();
         }
 
-        public synchronized void updateSymbols(CharBasedPNameTable sym)
+        public void record(CharBasedPNameTable child)
         {
-            mGeneralTable.mergeFromChild(sym);
+            mLookups.addAndGet(child.getLookupCount());
+            mMisses.addAndGet(child.getMissCount());
+            child.resetUsageCounts();
         }
     }
 }
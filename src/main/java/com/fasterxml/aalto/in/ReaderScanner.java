@@ -106,6 +106,7 @@ public final class ReaderScanner
         _inputBuffer = buffer;
         _inputPtr = ptr;
         _inputEnd = last;
+        _documentLength = last;
         mPastChars = 0; // should it be passed by caller?
         mRowStartOffset = 0; // should probably be passed by caller...
  
@@ -128,9 +129,10 @@ public final class ReaderScanner
     protected void _releaseBuffers()
     {
         super._releaseBuffers();
-        if (_symbols.maybeDirty()) {
-            _config.updateCBSymbols(_symbols);
-        }
+        // Need to call always, to let usage stats be accumulated
+        _symbols.addLookupCount(_nameLookups);
+        _nameLookups = 0;
+        _config.updateCBSymbols(_symbols);
         /* Note: if we have block input (_in == null), the buffer we
          * use is not owned by scanner, can't recycle
          * Also note that this method will always get called before
@@ -233,11 +235,8 @@ public final class ReaderScanner
                     return (_currToken = END_ELEMENT);
                 }
             } else if (_currToken == END_ELEMENT) {
-                _currElem = _currElem.getParent();
                 // Any namespace declarations that need to be unbound?
-                while (_lastNsDecl != null && _lastNsDecl.getLevel() >= _depth) {
-                    _lastNsDecl = _lastNsDecl.unbind();
-                }
+                unbindNamespaces();
             } else {
                 // It's possible CHARACTERS entity with an entity ref:
                 if (_entityPending) {
@@ -623,7 +622,7 @@ public final class ReaderScanner
         }
 
         _tokenName = elemName;
-        _currElem = new ElementScope(elemName, _currElem);
+        pushElementName(elemName);
 
         // And then attribute parsing loop:
         int attrPtr = 0;
@@ -683,7 +682,7 @@ public final class ReaderScanner
             boolean isNsDecl;
 
             if (prefix == null) { // can be default ns decl:
-                isNsDecl = (attrName.getLocalName() == "xmlns");
+                isNsDecl = _cfgNsAware && (attrName.getLocalName() == "xmlns");
             } else {
                 // May be a namespace decl though?
                 if (prefix == "xmlns") {
@@ -772,6 +771,7 @@ public final class ReaderScanner
                 reportInputProblem(_attrCollector.getErrorMsg());
             }
             _attrCount = act;
+            _nameLookups += act + _currNsCount + 1;
         }
         ++_depth;
 
@@ -989,20 +989,33 @@ public final class ReaderScanner
 
         _currToken = END_ELEMENT;
         // Ok, at this point we have seen '/', need the name
-        _tokenName = _currElem.getName();
+        _tokenName = _elemNames[_depth];
         String pname = _tokenName.getPrefixedName();
         char c;
         int i = 0;
         int len = pname.length();
-        do {
-            if (_inputPtr >= _inputEnd) {
+        if (_cfgTrusted) { // no need to verify name, can just skip it
+            while (true) {
+                int avail = _inputEnd - _inputPtr;
+                if (len <= avail) {
+                    _inputPtr += len;
+                    break;
+                }
+                len -= avail;
+                _inputPtr = _inputEnd;
                 loadMoreGuaranteed();
             }
-            c = _inputBuffer[_inputPtr++];
-            if (c != pname.charAt(i)) {
-                reportUnexpectedEndTag(pname);
-            }
-        } while (++i < len);
+        } else {
+            do {
+                if (_inputPtr >= _inputEnd) {
+                    loadMoreGuaranteed();
+                }
+                c = _inputBuffer[_inputPtr++];
+                if (c != pname.charAt(i)) {
+                    reportUnexpectedEndTag(pname);
+                }
+            } while (++i < len);
+        }
 
         // Can still have a problem, if name didn't end there...
         if (_inputPtr >= _inputEnd) {
@@ -1011,7 +1024,7 @@ public final class ReaderScanner
         c = _inputBuffer[_inputPtr++];
         if (c <= ' ') {
             c = skipInternalWs(false, null);
-        } else if (c != '>') {
+        } else if (c != '>' && !_cfgTrusted) {
             if (c == ':' || XmlChars.is10NameChar(c)) {
                 reportUnexpectedEndTag(pname);
             }
@@ -1757,13 +1770,24 @@ public final class ReaderScanner
                     loadMoreGuaranteed();
                     ptr = _inputPtr;
                 }
-                if (outPtr >= outputBuffer.length) {
-                    outputBuffer = _textBuilder.finishCurrentSegment();
-                    outPtr = 0;
+                int outEnd = (_cfgTextChunkLength > 0) ?
+                    _textBuilder.getChunkEnd(_cfgTextChunkLength) : outputBuffer.length;
+                if (outPtr >= outEnd) {
+                    if (_cfgTextChunkLength > 0) {
+                        outputBuffer = _textBuilder.expandForChunk(outPtr, _cfgTextChunkLength);
+                        if (outputBuffer == null) { // chunk full, rest is returned as another event
+                            break main_loop;
+                        }
+                        outEnd = _textBuilder.getChunkEnd(_cfgTextChunkLength);
+                    } else {
+                        outputBuffer = _textBuilder.finishCurrentSegment();
+                        outPtr = 0;
+                        outEnd = outputBuffer.length;
+                    }
                 }
                 int max = _inputEnd;
                 {
-                    int max2 = ptr + (outputBuffer.length - outPtr);
+                    int max2 = ptr + (outEnd - outPtr);
                     if (max2 < max) {
                         max = max2;
                     }
@@ -2970,7 +2994,8 @@ public final class ReaderScanner
             throwUnexpectedChar(c, "; expected a name start character");
         }
         nameBuffer[0] = c;
-        int hash = (int) c;
+        // (hash calculation has to match CharBasedPNameTable.calcHash())
+        int hash = (_symbols.getSeed() ^ c) * CharBasedPNameTable.HASH_MULT;
         int ptr = 1;
 
         while (true) {
@@ -2992,16 +3017,21 @@ public final class ReaderScanner
             }
             ++_inputPtr;
             if (ptr >= nameBuffer.length) {
+                checkNameLength(ptr);
                 _nameBuffer = nameBuffer = DataUtil.growArrayBy(nameBuffer, nameBuffer.length);
             }
             nameBuffer[ptr++] = c;
-            hash = (hash * 31) + d;
+            hash = (hash ^ d) * CharBasedPNameTable.HASH_MULT;
         }
     }
 
     protected final PName addPName(char[] nameBuffer, int nameLen, int hash)
         throws XMLStreamException
     {
+        checkNameLength(nameLen);
+        if (_cfgTrusted) { // no need to validate
+            return _symbols.addSymbol(nameBuffer, 0, nameLen, hash, _cfgNsAware);
+        }
         // Let's validate completely, now:
         char c = nameBuffer[0];
         int namePtr = 1;
@@ -3025,10 +3055,12 @@ public final class ReaderScanner
 
             if (c < 0xD800 || c >= 0xE000) {
                 if (c == ':') {
-                    if (last_colon >= 0) {
-                        reportMultipleColonsInName();
+                    if (_cfgNsAware) { // just a regular name char otherwise
+                        if (last_colon >= 0) {
+                            reportMultipleColonsInName();
+                        }
+                        last_colon = namePtr;
                     }
-                    last_colon = namePtr;
                 } else {
                     if (!XmlChars.is10NameChar(c)) {
                         reportInvalidNameChar(c, namePtr);
@@ -3041,7 +3073,7 @@ public final class ReaderScanner
                 checkSurrogateNameChar(c, nameBuffer[namePtr+1], namePtr);
             }
         }
-        return _symbols.addSymbol(nameBuffer, 0, nameLen, hash);
+        return _symbols.addSymbol(nameBuffer, 0, nameLen, hash, _cfgNsAware);
     }
 
     protected String parsePublicId(char quoteChar)
@@ -3301,6 +3333,7 @@ public final class ReaderScanner
                 return false;
             }
             _inputEnd = count;
+            checkDocumentLength(count);
             return true;
         } catch (IOException ioe) {
             throw new IoStreamException(ioe);
@@ -3357,6 +3390,7 @@ public final class ReaderScanner
                     return false;
                 }
                 _inputEnd += count;
+                checkDocumentLength(count);
             } while (_inputEnd < nrOfChars);
             return true;
         } catch (IOException ioe) {
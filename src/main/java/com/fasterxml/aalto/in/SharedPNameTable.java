@@ -0,0 +1,45 @@
+package com.fasterxml.aalto.in;
+
+import com.fasterxml.aalto.util.NameTable;
+
+/**
+ * Base class for symbol tables used by readers, defining operations
+ * that {@link ReaderConfig} needs for sharing them: child tables are
+ * either merged back into the shared table, or, if they overflowed,
+ * cause the shared table to be replaced. Having these in a common
+ * base class allows byte- and char-based tables to be handled by
+ * the same code.
+ */
+abstract class SharedPNameTable<T extends SharedPNameTable<T>>
+    extends NameTable
+{
+    protected SharedPNameTable() { }
+
+    /**
+     * Method for checking whether an attempt was made to add more
+     * entries to this table than its size limit allows.
+     */
+    public abstract boolean hasOverflowed();
+
+    /**
+     * Method called once overflow has been handled by the owner of the
+     * shared table, to prevent it from being handled more than once.
+     */
+    public abstract void clearOverflowed();
+
+    abstract int getGeneration();
+
+    abstract void setGeneration(int gen);
+
+    /**
+     * Method for merging contents of given child table into this
+     * (shared) table, if child has more entries.
+     */
+    abstract void mergeChild(T child);
+
+    /**
+     * Method for constructing a new empty shared table, using same
+     * hash seed as this table, to replace this table with.
+     */
+    abstract T createEmptyShared();
+}
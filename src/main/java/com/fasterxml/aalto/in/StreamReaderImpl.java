@@ -16,11 +16,18 @@
 package com.fasterxml.aalto.in;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 
+import javax.xml.XMLConstants;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.namespace.QName;
 import javax.xml.stream.Location;
@@ -45,8 +52,10 @@ import org.codehaus.stax2.ri.typed.ValueDecoderFactory;
 
 import com.fasterxml.aalto.ErrorConsts;
 import com.fasterxml.aalto.IoStreamException;
+import com.fasterxml.aalto.RawSubtree;
 import com.fasterxml.aalto.UncheckedStreamException;
 import com.fasterxml.aalto.WFCException;
+import com.fasterxml.aalto.io.ChannelOutputStream;
 import com.fasterxml.aalto.util.TextAccumulator;
 import com.fasterxml.aalto.util.XmlNames;
 
@@ -66,6 +75,16 @@ public final class StreamReaderImpl
     final static int STATE_EPILOG = 2; // After root element has been closed
     final static int STATE_CLOSED = 3; // After reader has been closed
 
+    // // // Constants for streaming binary content:
+
+    /**
+     * Maximum length of text chunks to read when streaming decoded
+     * binary content.
+     */
+    final static int BINARY_TEXT_CHUNK_LENGTH = 16000;
+
+    final static int BINARY_BUFFER_LENGTH = 8000;
+
     /*
     /////////////////////////////////////////////////////
     // Configuration
@@ -120,6 +139,14 @@ public final class StreamReaderImpl
      */
     protected CharArrayBase64Decoder _base64Decoder = null;
 
+    /**
+     * Buffer used for streaming decoded binary content to
+     * output streams and channels; lazily allocated.
+     */
+    protected byte[] _binaryBuffer = null;
+
+    protected ByteBuffer _binaryByteBuffer = null;
+
     /*
     /////////////////////////////////////////////////////
     // Collected info
@@ -572,6 +599,28 @@ public final class StreamReaderImpl
         }
     }
 
+    /**
+     * Non-standard alternative to {@link #getText} that returns textual
+     * content of the current event as a {@link CharSequence} which reads
+     * characters directly from the internal text buffer, without
+     * constructing a String. This is useful for callers that only need
+     * to scan, match or hash content, or append it to another buffer.
+     *<p>
+     * Note: returned object is a live view, and is only valid until the
+     * reader is advanced; after that its contents will change.
+     */
+    public CharSequence getTextCharSequence()
+    {
+        if (((1 << _currToken) & MASK_GET_TEXT) == 0) {
+            throwNotTextual(_currToken);
+        }
+        try {
+            return _scanner.getTextCharSequence();
+        } catch (XMLStreamException sex) {
+            throw UncheckedStreamException.createFrom(sex);
+        }
+    }
+
     public int getTextLength()
     {
         if (((1 << _currToken) & MASK_GET_TEXT_XXX) == 0) {
@@ -1116,6 +1165,393 @@ public final class StreamReaderImpl
         return (totalCount > 0) ? totalCount : -1;
     }
 
+    /*
+    ////////////////////////////////////////////////////////
+    // Non-standard extensions, streaming binary data
+    ////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for decoding all of the base64-encoded binary content of
+     * the current element, and writing it to given stream. Works like
+     * {@link #getElementAsBinary()}, except that decoded content is never
+     * aggregated: text is read in bounded chunks (see
+     * {@link com.fasterxml.aalto.AaltoInputProperties#P_MAX_TEXT_CHUNK_LENGTH}),
+     * and decoded content copied to the stream as soon as it is
+     * available; so even very large attachments need only a constant
+     * amount of memory. (The only exception is if text coalescing is
+     * enabled, in which case each text segment is read fully.)
+     *
+     * @return Number of bytes written
+     */
+    public long readElementAsBinary(OutputStream out)
+        throws XMLStreamException
+    {
+        return readElementAsBinary(out, Base64Variants.getDefaultVariant());
+    }
+
+    public long readElementAsBinary(OutputStream out, Base64Variant v)
+        throws XMLStreamException
+    {
+        final byte[] buffer = _binaryBuffer();
+        long total = 0L;
+        int count;
+        try {
+            while ((count = _readBinaryChunked(buffer, 0, buffer.length, v)) > 0) {
+                out.write(buffer, 0, count);
+                total += count;
+            }
+        } catch (IOException ioe) {
+            throw new IoStreamException(ioe);
+        }
+        return total;
+    }
+
+    /**
+     * Method similar to {@link #readElementAsBinary(OutputStream)}, but
+     * that writes decoded content to given channel. Channel has to be
+     * a blocking one, since reader has no way to wait for a non-blocking
+     * one to become writable.
+     *
+     * @return Number of bytes written
+     *
+     * @throws IllegalArgumentException If channel is a non-blocking
+     *   {@link java.nio.channels.SelectableChannel}
+     */
+    public long readElementAsBinary(WritableByteChannel ch)
+        throws XMLStreamException
+    {
+        return readElementAsBinary(ch, Base64Variants.getDefaultVariant());
+    }
+
+    public long readElementAsBinary(WritableByteChannel ch, Base64Variant v)
+        throws XMLStreamException
+    {
+        ChannelOutputStream.verifyBlocking(ch);
+        final byte[] buffer = _binaryBuffer();
+        ByteBuffer bb = _binaryByteBuffer;
+        if (bb == null) {
+            _binaryByteBuffer = bb = ByteBuffer.wrap(buffer);
+        }
+        long total = 0L;
+        int count;
+        try {
+            while ((count = _readBinaryChunked(buffer, 0, buffer.length, v)) > 0) {
+                bb.clear();
+                bb.limit(count);
+                ChannelOutputStream.writeFully(ch, bb);
+                total += count;
+            }
+        } catch (IOException ioe) {
+            throw new IoStreamException(ioe);
+        }
+        return total;
+    }
+
+    /**
+     * Method similar to
+     * {@link #readElementAsBinary(byte[],int,int)}, but that decodes
+     * content into given buffer (up to its remaining capacity), and
+     * reads text in bounded chunks, similar to
+     * {@link #readElementAsBinary(OutputStream)}. Can be called
+     * repeatedly, until it returns -1 to indicate end of content.
+     *
+     * @return Number of bytes decoded into the buffer (position of which
+     *   is advanced accordingly); or -1 if there is no more content
+     */
+    public int readElementAsBinary(ByteBuffer dst)
+        throws XMLStreamException
+    {
+        return readElementAsBinary(dst, Base64Variants.getDefaultVariant());
+    }
+
+    public int readElementAsBinary(ByteBuffer dst, Base64Variant v)
+        throws XMLStreamException
+    {
+        int len = dst.remaining();
+        if (len == 0) {
+            return 0;
+        }
+        int count;
+        if (dst.hasArray()) {
+            int pos = dst.position();
+            count = _readBinaryChunked(dst.array(), dst.arrayOffset() + pos, len, v);
+            if (count > 0) {
+                dst.position(pos + count);
+            }
+        } else {
+            final byte[] buffer = _binaryBuffer();
+            count = _readBinaryChunked(buffer, 0, Math.min(len, buffer.length), v);
+            if (count > 0) {
+                dst.put(buffer, 0, count);
+            }
+        }
+        return count;
+    }
+
+    /*
+    ////////////////////////////////////////////////////////
+    // Non-standard extensions, raw UTF-8 content
+    ////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for accessing textual content of the current CHARACTERS
+     * event as raw UTF-8 bytes, exactly as they appear in the input
+     * document: this allows passing content through to another UTF-8
+     * destination without decoding and re-encoding it.
+     * Raw content is only available when parsing UTF-8 encoded byte
+     * input (not ISO-8859-1 or US-ASCII, even though these are parsed
+     * by the same scanner) in non-coalescing mode, and when the whole
+     * event still fits in the input buffer; caller needs to fall back
+     * to {@link #getText} (or equivalent) when it is not.
+     *<p>
+     * Note that raw content may contain entity and character references,
+     * as well as un-normalized line feeds; {@link #isRawTextVerbatim}
+     * can be used to check whether this is the case.
+     *<p>
+     * Returned buffer is a read-only view of the input buffer of the
+     * reader, and is only valid until the reader is advanced.
+     *
+     * @return Read-only view of raw UTF-8 content, if available;
+     *   null if not (including when current event is not CHARACTERS)
+     */
+    public ByteBuffer getRawText() throws XMLStreamException
+    {
+        return _scanner.getRawText();
+    }
+
+    /**
+     * Method for checking whether raw content of the current CHARACTERS
+     * event (see {@link #getRawText}) is identical to its decoded content;
+     * that is, whether no entity or character references were expanded,
+     * and no line feeds normalized.
+     *
+     * @return True if raw content is available and identical to decoded
+     *   text; false otherwise
+     */
+    public boolean isRawTextVerbatim() throws XMLStreamException
+    {
+        return _scanner.isRawTextVerbatim();
+    }
+
+    /**
+     * Method for accessing the value of specified attribute of the
+     * current START_ELEMENT event as raw UTF-8 bytes (excluding
+     * quotes), exactly as they appear in the input document.
+     * Availability and validity of the returned view are as explained
+     * for {@link #getRawText}.
+     *
+     * @return Read-only view of raw UTF-8 content, if available;
+     *   null if not
+     */
+    public ByteBuffer getRawAttributeValue(int index)
+    {
+        checkAttrIndex(index);
+        return _scanner.getRawAttrValue(index);
+    }
+
+    /**
+     * Method for checking whether raw value of specified attribute (see
+     * {@link #getRawAttributeValue}) is identical to its decoded value;
+     * that is, whether no entity or character references were expanded,
+     * and no white space normalized.
+     */
+    public boolean isRawAttributeValueVerbatim(int index)
+    {
+        checkAttrIndex(index);
+        return _scanner.isRawAttrValueVerbatim(index);
+    }
+
+    /**
+     * Method that can be called when the current event is START_ELEMENT,
+     * to read the element along with its whole subtree as raw UTF-8
+     * bytes, exactly as they appear in the input document; this allows
+     * forwarding a subtree (such as a SOAP body) without re-serializing
+     * it event by event. Namespace bindings that elements and attributes
+     * of the subtree use, but that were declared outside of it, are
+     * included, so that the subtree can be output in a different context.
+     * As with {@link #skipElement}, reader is positioned at the matching
+     * END_ELEMENT after the call.
+     *<p>
+     * Raw content is only available when parsing UTF-8 encoded byte
+     * input (not ISO-8859-1 or US-ASCII) using a blocking reader; for
+     * other readers, null is returned and reader is not advanced.
+     *
+     * @return Raw content of the element, if available; null if not
+     */
+    public RawSubtree readRawSubtree() throws XMLStreamException
+    {
+        if (_currToken != START_ELEMENT) {
+            throw new IllegalStateException(ErrorConsts.ERR_STATE_NOT_STELEM);
+        }
+        if (!_scanner.startRawCapture()) {
+            return null;
+        }
+        final boolean nsAware = _scanner.getConfig().willSupportNamespaces();
+        // Declarations of the element itself are included in raw content
+        LinkedHashSet<String> ownDecls = new LinkedHashSet<String>();
+        for (int i = 0, len = getNamespaceCount(); i < len; ++i) {
+            ownDecls.add(_nonNull(getNamespacePrefix(i)));
+        }
+        LinkedHashSet<String> usedPrefixes = new LinkedHashSet<String>();
+        if (nsAware) {
+            _addUsedPrefixes(usedPrefixes);
+        }
+        int nesting = 1;
+        while (true) {
+            int type = next();
+            if (type == START_ELEMENT) {
+                ++nesting;
+                if (nsAware) {
+                    _addUsedPrefixes(usedPrefixes);
+                }
+            } else if (type == END_ELEMENT) {
+                if (--nesting == 0) {
+                    break;
+                }
+            }
+        }
+        byte[] content = _scanner.finishRawCapture();
+
+        // Bindings of the element itself are still in scope
+        Map<String,String> bindings = new LinkedHashMap<String,String>();
+        for (String prefix : usedPrefixes) {
+            if (!ownDecls.contains(prefix)) {
+                String uri = getNamespaceURI(prefix);
+                // null if only bound within the subtree
+                if (uri != null) {
+                    bindings.put(prefix, uri);
+                }
+            }
+        }
+        return new RawSubtree(content, bindings);
+    }
+
+    private void _addUsedPrefixes(LinkedHashSet<String> prefixes)
+    {
+        prefixes.add(_nonNull(getPrefix()));
+        for (int i = 0, len = _attrCount; i < len; ++i) {
+            String prefix = getAttributePrefix(i);
+            if (prefix != null && prefix.length() > 0
+                && !XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                prefixes.add(prefix);
+            }
+        }
+    }
+
+    private static String _nonNull(String str) {
+        return (str == null) ? "" : str;
+    }
+
+    /*
+    ////////////////////////////////////////////////////////
+    // Non-standard extensions, in-place value matching
+    ////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for checking whether value of specified attribute of the
+     * current START_ELEMENT event equals given String. Unlike
+     * calling {@link #getAttributeValue(int)} and comparing its result,
+     * this does not construct any Strings.
+     */
+    public boolean attributeValueEquals(int index, String value)
+    {
+        checkAttrIndex(index);
+        return _scanner.attrValueEquals(index, value);
+    }
+
+    public boolean attributeValueEquals(int index, char[] buf, int offset, int len)
+    {
+        checkAttrIndex(index);
+        return _scanner.attrValueEquals(index, buf, offset, len);
+    }
+
+    /**
+     * Method for checking whether the current START_ELEMENT event has
+     * specified attribute, with value that equals given String.
+     *
+     * @return True if attribute exists and has specified value; false
+     *   otherwise
+     */
+    public boolean attributeValueEquals(String nsURI, String localName, String value)
+    {
+        if (_currToken != START_ELEMENT) {
+            throw new IllegalStateException(ErrorConsts.ERR_STATE_NOT_STELEM);
+        }
+        int ix = _scanner.findAttrIndex(nsURI, localName);
+        return (ix >= 0) && _scanner.attrValueEquals(ix, value);
+    }
+
+    /**
+     * @return Hash code of the value of specified attribute; same as
+     *   <code>getAttributeValue(index).hashCode()</code>, but calculated
+     *   without constructing a String
+     */
+    public int getAttributeValueHashCode(int index)
+    {
+        checkAttrIndex(index);
+        return _scanner.getAttrValueHashCode(index);
+    }
+
+    /**
+     * Method for checking whether textual content of the current event
+     * equals given String. Unlike calling {@link #getText} and comparing
+     * its result, this does not construct a String, even if the content
+     * is stored in multiple internal segments.
+     */
+    public boolean textEquals(String value)
+    {
+        if (((1 << _currToken) & MASK_GET_TEXT) == 0) {
+            throwNotTextual(_currToken);
+        }
+        try {
+            return _scanner.textEquals(value);
+        } catch (XMLStreamException sex) {
+            throw UncheckedStreamException.createFrom(sex);
+        }
+    }
+
+    public boolean textEquals(char[] buf, int offset, int len)
+    {
+        if (((1 << _currToken) & MASK_GET_TEXT) == 0) {
+            throwNotTextual(_currToken);
+        }
+        try {
+            return _scanner.textEquals(buf, offset, len);
+        } catch (XMLStreamException sex) {
+            throw UncheckedStreamException.createFrom(sex);
+        }
+    }
+
+    /**
+     * @return Hash code of the textual content of the current event;
+     *   same as <code>getText().hashCode()</code>, but calculated without
+     *   constructing a String
+     */
+    public int getTextHashCode()
+    {
+        if (((1 << _currToken) & MASK_GET_TEXT) == 0) {
+            throwNotTextual(_currToken);
+        }
+        try {
+            return _scanner.getTextHashCode();
+        } catch (XMLStreamException sex) {
+            throw UncheckedStreamException.createFrom(sex);
+        }
+    }
+
+    private void checkAttrIndex(int index)
+    {
+        if (_currToken != START_ELEMENT) {
+            throw new IllegalStateException(ErrorConsts.ERR_STATE_NOT_STELEM);
+        }
+        if (index >= _attrCount || index < 0) {
+            reportInvalidAttrIndex(index);
+        }
+    }
+
     /*
     ///////////////////////////////////////////////////////////
     // TypedXMLStreamReader2 implementation, scalar attributes
@@ -1755,6 +2191,34 @@ public final class StreamReaderImpl
         return _decoderFactory;
     }
 
+    /**
+     * Helper method that will decode binary content like
+     * {@link #readElementAsBinary(byte[],int,int,Base64Variant)}, but
+     * so that scanner only reads text in bounded chunks while doing so.
+     */
+    private int _readBinaryChunked(byte[] buffer, int offset, int len, Base64Variant v)
+        throws XMLStreamException
+    {
+        int prevChunkLength = _scanner.setTextChunkLength(BINARY_TEXT_CHUNK_LENGTH);
+        // If a smaller limit was configured, better honor that
+        if (prevChunkLength > 0 && prevChunkLength < BINARY_TEXT_CHUNK_LENGTH) {
+            _scanner.setTextChunkLength(prevChunkLength);
+        }
+        try {
+            return readElementAsBinary(buffer, offset, len, v);
+        } finally {
+            _scanner.setTextChunkLength(prevChunkLength);
+        }
+    }
+
+    protected byte[] _binaryBuffer()
+    {
+        if (_binaryBuffer == null) {
+            _binaryBuffer = new byte[BINARY_BUFFER_LENGTH];
+        }
+        return _binaryBuffer;
+    }
+
     protected CharArrayBase64Decoder _base64Decoder()
     {
         if (_base64Decoder == null) {
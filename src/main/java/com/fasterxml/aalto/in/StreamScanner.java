@@ -16,12 +16,14 @@
 package com.fasterxml.aalto.in;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 import javax.xml.stream.XMLStreamException;
 
 
 import com.fasterxml.aalto.ErrorConsts;
 import com.fasterxml.aalto.IoStreamException;
+import com.fasterxml.aalto.util.CharsetNames;
 import com.fasterxml.aalto.util.DataUtil;
 import com.fasterxml.aalto.util.TextBuilder;
 
@@ -55,6 +57,63 @@ public abstract class StreamScanner
 
     protected int _inputEnd;
 
+    /*
+    ///////////////////////////////////////////////////////////////
+    // Raw content tracking
+    ///////////////////////////////////////////////////////////////
+    */
+
+    /**
+     * Input offset (relative to start of the whole input, same as
+     * {@link #mPastBytes}) of the first byte of the current text event.
+     */
+    protected int _rawTextStart;
+
+    /**
+     * Input offsets of the first byte and the end (exclusive) of the raw
+     * values of attributes of the current start element; two entries
+     * per attribute.
+     */
+    protected int[] _rawAttrOffsets;
+
+    /**
+     * Flag that indicates whether input is UTF-8 encoded, so that its
+     * raw content can be exposed as UTF-8: other encodings (ISO-8859-1,
+     * US-ASCII) are also parsed by this scanner, but their raw bytes
+     * are not valid UTF-8 in general.
+     */
+    protected final boolean _rawUtf8;
+
+    /*
+    ///////////////////////////////////////////////////////////////
+    // Raw subtree capture
+    ///////////////////////////////////////////////////////////////
+    */
+
+    /**
+     * Index of the first byte of the current start tag within input
+     * buffer; or, if input buffer was reloaded while parsing the tag,
+     * 0 (with bytes before it already in {@link #_captureBuffer})
+     */
+    protected int _startTagPtr;
+
+    /**
+     * Index within input buffer from which content is to be appended
+     * to {@link #_captureBuffer}, before the buffer is reloaded; or -1
+     * if nothing is being captured.
+     */
+    protected int _captureFrom = -1;
+
+    /**
+     * Flag set when capturing content of a whole subtree (instead of
+     * just retaining bytes of the current start tag)
+     */
+    protected boolean _captureSubtree;
+
+    protected byte[] _captureBuffer;
+
+    protected int _captureLen;
+
     /*
     ////////////////////////////////////////////////
     // Life-cycle
@@ -70,6 +129,8 @@ public abstract class StreamScanner
         _inputBuffer = buffer;
         _inputPtr = ptr;
         _inputEnd = last;
+        _documentLength = last;
+        _rawUtf8 = (cfg.getActualEncoding() == CharsetNames.CS_UTF8);
     }
 
     @Override
@@ -86,6 +147,7 @@ public abstract class StreamScanner
             _config.freeFullBBuffer(_inputBuffer);
             _inputBuffer = null;
         }
+        _captureBuffer = null;
     }
 
     @Override
@@ -201,11 +263,8 @@ public abstract class StreamScanner
                     return (_currToken = END_ELEMENT);
                 }
             } else if (_currToken == END_ELEMENT) {
-                _currElem = _currElem.getParent();
                 // Any namespace declarations that need to be unbound?
-                while (_lastNsDecl != null && _lastNsDecl.getLevel() >= _depth) {
-                    _lastNsDecl =_lastNsDecl.unbind();
-                }
+                unbindNamespaces();
             } else {
                 // It's possible CHARACTERS entity with an entity ref:
                 if (_entityPending) {
@@ -244,6 +303,7 @@ public abstract class StreamScanner
             }
             return handleStartElement(b);
         }
+        _rawTextStart = mPastBytes + _inputPtr;
         if (b == BYTE_AMP) { // entity reference
             ++_inputPtr;
             /* Need to expand; should indicate either text, or an unexpanded
@@ -272,6 +332,203 @@ public abstract class StreamScanner
         return (_currToken = CHARACTERS);
     }
 
+    /*
+    ////////////////////////////////////////////////
+    // Raw content access
+    ////////////////////////////////////////////////
+     */
+
+    @Override
+    public ByteBuffer getRawText()
+        throws XMLStreamException
+    {
+        int start = rawTextStart();
+        if (start < 0) {
+            return null;
+        }
+        return ByteBuffer.wrap(_inputBuffer, start, _inputPtr - start).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public boolean isRawTextVerbatim()
+        throws XMLStreamException
+    {
+        int start = rawTextStart();
+        if (start < 0) {
+            return false;
+        }
+        final byte[] buf = _inputBuffer;
+        for (int i = start, end = _inputPtr; i < end; ++i) {
+            byte b = buf[i];
+            if (b == BYTE_AMP || b == BYTE_CR) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ByteBuffer getRawAttrValue(int index)
+    {
+        int start = rawAttrStart(index);
+        if (start < 0) {
+            return null;
+        }
+        int end = _rawAttrOffsets[index+index+1] - mPastBytes;
+        return ByteBuffer.wrap(_inputBuffer, start, end - start).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public boolean isRawAttrValueVerbatim(int index)
+    {
+        int start = rawAttrStart(index);
+        if (start < 0) {
+            return false;
+        }
+        final byte[] buf = _inputBuffer;
+        for (int i = start, end = _rawAttrOffsets[index+index+1] - mPastBytes; i < end; ++i) {
+            byte b = buf[i];
+            // white space other than plain space gets normalized
+            if (b == BYTE_AMP || b == BYTE_CR || b == BYTE_LF || b == BYTE_TAB) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Offset of the first byte of the current text event
+     *   within input buffer; or -1 if raw content is not available
+     */
+    private final int rawTextStart()
+        throws XMLStreamException
+    {
+        // coalesced text may contain CDATA sections, can't expose
+        if (_currToken != CHARACTERS || _cfgCoalescing || !_rawUtf8) {
+            return -1;
+        }
+        if (_tokenIncomplete) {
+            finishToken();
+        }
+        // if an entity could not be expanded, it has been consumed already
+        if (_entityPending) {
+            return -1;
+        }
+        // and otherwise, is the whole event still in the buffer?
+        int start = _rawTextStart - mPastBytes;
+        return (start < 0) ? -1 : start;
+    }
+
+    private final int rawAttrStart(int index)
+    {
+        if (_currToken != START_ELEMENT || _rawAttrOffsets == null || !_rawUtf8) {
+            return -1;
+        }
+        int start = _rawAttrOffsets[index+index] - mPastBytes;
+        return (start < 0) ? -1 : start;
+    }
+
+    /**
+     * Method called by sub-classes to store the input offsets of
+     * the raw value of an attribute.
+     */
+    protected final void setRawAttrOffsets(int index, int start, int end)
+    {
+        int ix = index+index;
+        if (_rawAttrOffsets == null) {
+            _rawAttrOffsets = new int[16];
+        } else if (ix >= _rawAttrOffsets.length) {
+            _rawAttrOffsets = DataUtil.growArrayBy(_rawAttrOffsets, _rawAttrOffsets.length);
+        }
+        _rawAttrOffsets[ix] = start;
+        _rawAttrOffsets[ix+1] = end;
+    }
+
+    @Override
+    public boolean startRawCapture()
+    {
+        // (bytes of other encodings would not be valid UTF-8)
+        if (_currToken != START_ELEMENT || !_rawUtf8) {
+            return false;
+        }
+        _captureSubtree = true;
+        // note: bytes of the start tag already captured (if any) are retained
+        _captureFrom = _startTagPtr;
+        return true;
+    }
+
+    @Override
+    public byte[] finishRawCapture()
+    {
+        byte[] result;
+        if (_captureLen == 0) { // all in the current buffer
+            result = new byte[_inputPtr - _captureFrom];
+            System.arraycopy(_inputBuffer, _captureFrom, result, 0, result.length);
+        } else {
+            appendCaptured(_captureFrom, _inputPtr);
+            result = new byte[_captureLen];
+            System.arraycopy(_captureBuffer, 0, result, 0, _captureLen);
+        }
+        _captureSubtree = false;
+        _captureFrom = -1;
+        _captureLen = 0;
+        return result;
+    }
+
+    /**
+     * Method called by sub-classes when starting to parse a start tag,
+     * right after the first byte of the element name has been read;
+     * needed to be able to capture the element as raw content.
+     */
+    protected final void markStartTag()
+    {
+        if (!_captureSubtree) {
+            _captureLen = 0;
+            int ptr = _inputPtr - 2;
+            if (ptr < 0) { // '<' was the last byte of previous buffer
+                appendCaptured(BYTE_LT);
+                ptr = 0;
+            }
+            _captureFrom = ptr;
+        }
+    }
+
+    /**
+     * Method called by sub-classes after successfully parsing a start tag
+     */
+    protected final void markStartTagEnd()
+    {
+        if (!_captureSubtree) {
+            _startTagPtr = _captureFrom;
+            _captureFrom = -1;
+        }
+    }
+
+    private final void appendCaptured(int start, int end)
+    {
+        int len = end - start;
+        if (len > 0) {
+            ensureCaptureRoom(len);
+            System.arraycopy(_inputBuffer, start, _captureBuffer, _captureLen, len);
+            _captureLen += len;
+        }
+    }
+
+    private final void appendCaptured(byte b)
+    {
+        ensureCaptureRoom(1);
+        _captureBuffer[_captureLen++] = b;
+    }
+
+    private final void ensureCaptureRoom(int len)
+    {
+        if (_captureBuffer == null) {
+            _captureBuffer = new byte[Math.max(len, 4000)];
+        } else if (_captureLen + len > _captureBuffer.length) {
+            _captureBuffer = DataUtil.growArrayBy(_captureBuffer, Math.max(len, _captureBuffer.length));
+        }
+    }
+
     /*
     ////////////////////////////////////////////////
     // Internal methods, secondary parsing
@@ -595,9 +852,13 @@ public abstract class StreamScanner
         --_depth;
         _currToken = END_ELEMENT;
         // Ok, at this point we have seen '/', need the name
-        _tokenName = _currElem.getName();
+        _tokenName = _elemNames[_depth];
  
         int size = _tokenName.sizeInQuads();
+        if (_cfgTrusted) { // no need to verify name, can just skip it
+            skipEndElementName(size);
+            return finishEndElement();
+        }
         /* Do we need to take the slow route? Let's separate that out
          * to another method.
          * Note: we'll require max bytes for name PLUS one (for trailing
@@ -708,8 +969,39 @@ public abstract class StreamScanner
                 break; // never gets here
             }
         }
+        return finishEndElement();
+    }
 
-        // Trailing space?
+    /**
+     * Method called with trusted input, to skip the name of the end
+     * tag without verifying it.
+     */
+    private final void skipEndElementName(int size)
+        throws XMLStreamException
+    {
+        // Name bytes are never zero, so length of the last quad is easy to find
+        int lastQ = _tokenName.getQuad(size-1);
+        int len = ((size-1) << 2)
+            + ((lastQ >>> 24) != 0 ? 4 : ((lastQ >>> 16) != 0 ? 3 : ((lastQ >>> 8) != 0 ? 2 : 1)));
+        while (true) {
+            int avail = _inputEnd - _inputPtr;
+            if (len <= avail) {
+                _inputPtr += len;
+                return;
+            }
+            len -= avail;
+            _inputPtr = _inputEnd;
+            loadMoreGuaranteed();
+        }
+    }
+
+    /**
+     * Method called to skip optional white space after end tag name,
+     * and the closing '>'
+     */
+    private final int finishEndElement()
+        throws XMLStreamException
+    {
         if (_inputPtr >= _inputEnd) {
             loadMoreGuaranteed();
         }
@@ -747,7 +1039,7 @@ public abstract class StreamScanner
         --_depth;
         _currToken = END_ELEMENT;
         // Ok, at this point we have seen '/', need the name
-        _tokenName = _currElem.getName();
+        _tokenName = _elemNames[_depth];
 
         int i2;
         int qix = 0;
@@ -1008,6 +1300,7 @@ public abstract class StreamScanner
                 }
             }
             if (qix >= quads.length) { // let's just double?
+                checkNameLength(qix);
                 mQuadBuffer = quads = DataUtil.growArrayBy(quads, quads.length);
             }
             quads[qix] = q;
@@ -1087,6 +1380,7 @@ public abstract class StreamScanner
                 quads[1] = q;
             } else { // 3rd or after... need to make sure there's room
                 if (qix >= quads.length) { // let's just double?
+                    checkNameLength(qix);
                     mQuadBuffer = quads = DataUtil.growArrayBy(quads, quads.length);
                 }
                 quads[qix] = q;
@@ -1111,7 +1405,7 @@ public abstract class StreamScanner
     {
         // First, need to push back the byte read but not used:
         --_inputPtr;
-        int hash = ByteBasedPNameTable.calcHash(onlyQuad);
+        int hash = mSymbols.calcHash(onlyQuad);
         PName name = mSymbols.findSymbol(hash, onlyQuad, 0);
         if (name == null) {
             // Let's simplify things a bit, and just use array based one then:
@@ -1138,7 +1432,7 @@ public abstract class StreamScanner
     {
         // First, need to push back the byte read but not used:
         --_inputPtr;
-        int hash = ByteBasedPNameTable.calcHash(firstQuad, secondQuad);
+        int hash = mSymbols.calcHash(firstQuad, secondQuad);
         PName name = mSymbols.findSymbol(hash, firstQuad, secondQuad);
         if (name == null) {
             // Let's just use array, then
@@ -1174,10 +1468,11 @@ public abstract class StreamScanner
          * not yet in the array, let's add:
          */
         if (qlen >= quads.length) { // let's just double?
+            checkNameLength(qlen);
             mQuadBuffer = quads = DataUtil.growArrayBy(quads, quads.length);
         }
         quads[qlen++] = lastQuad;
-        int hash = ByteBasedPNameTable.calcHash(quads, qlen);
+        int hash = mSymbols.calcHash(quads, qlen);
         PName name = mSymbols.findSymbol(hash, quads, qlen);
         if (name == null) {
             name = addPName(hash, quads, qlen, lastByteCount);
@@ -1433,6 +1728,11 @@ public abstract class StreamScanner
     protected final boolean loadMore()
         throws XMLStreamException
     {
+        // Content being captured needs to be saved before it's discarded
+        if (_captureFrom >= 0) {
+            appendCaptured(_captureFrom, _inputEnd);
+            _captureFrom = 0;
+        }
         // First, let's update offsets:
         mPastBytes += _inputEnd;
         mRowStartOffset -= _inputEnd;
@@ -1457,6 +1757,7 @@ public abstract class StreamScanner
                 return false;
             }
             _inputEnd = count;
+            checkDocumentLength(count);
             return true;
         } catch (IOException ioe) {
             throw new IoStreamException(ioe);
@@ -1515,6 +1816,10 @@ public abstract class StreamScanner
 
         // otherwise, need to use cut'n pasted code from loadMore()...
 
+        if (_captureFrom >= 0) {
+            appendCaptured(_captureFrom, _inputPtr);
+            _captureFrom = 0;
+        }
         mPastBytes += _inputPtr;
         mRowStartOffset -= _inputPtr;
 
@@ -1535,6 +1840,7 @@ public abstract class StreamScanner
                     return false;
                 }
                 _inputEnd += count;
+                checkDocumentLength(count);
             } while (_inputEnd < nrOfChars);
             return true;
         } catch (IOException ioe) {
@@ -54,6 +54,7 @@ public final class Utf8Scanner
     {
         _currToken = START_ELEMENT;
         _currNsCount = 0;
+        markStartTag();
         PName elemName = parsePName(b);
 
         /* Ok. Need to create a qualified name. Simplest for element
@@ -71,10 +72,11 @@ public final class Utf8Scanner
         }
 
         _tokenName = elemName;
-        _currElem = new ElementScope(elemName, _currElem);
+        pushElementName(elemName);
 
         // And then attribute parsing loop:
         int attrPtr = 0;
+        int attrIndex = 0;
 
         while (true) {
             if (_inputPtr >= _inputEnd) {
@@ -135,7 +137,7 @@ public final class Utf8Scanner
             boolean isNsDecl;
 
             if (prefix == null) { // can be default ns decl:
-                isNsDecl = (attrName.getLocalName() == "xmlns");
+                isNsDecl = _cfgNsAware && (attrName.getLocalName() == "xmlns");
             } else {
                 // May be a namespace decl though?
                 if (prefix == "xmlns") {
@@ -217,7 +219,10 @@ public final class Utf8Scanner
                 handleNsDeclaration(attrName, b);
                 ++_currNsCount;
             } else { // nope, a 'real' attribute:
+                int rawStart = mPastBytes + _inputPtr;
                 attrPtr = collectValue(attrPtr, b, attrName);
+                // end offset excludes the closing quote
+                setRawAttrOffsets(attrIndex++, rawStart, mPastBytes + _inputPtr - 1);
             }
         }
         {
@@ -228,6 +233,7 @@ public final class Utf8Scanner
                 reportInputProblem(_attrCollector.getErrorMsg());
             }
             _attrCount = act;
+            _nameLookups += act + _currNsCount + 1;
         }
         ++_depth;
 
@@ -246,6 +252,7 @@ public final class Utf8Scanner
                 }
             }
         }
+        markStartTagEnd();
         return START_ELEMENT;
     }
 
@@ -1588,13 +1595,24 @@ public final class Utf8Scanner
                     loadMoreGuaranteed();
                     ptr = _inputPtr;
                 }
-                if (outPtr >= outputBuffer.length) {
-                    outputBuffer = _textBuilder.finishCurrentSegment();
-                    outPtr = 0;
+                int outEnd = (_cfgTextChunkLength > 0) ?
+                    _textBuilder.getChunkEnd(_cfgTextChunkLength) : outputBuffer.length;
+                if (outPtr >= outEnd) {
+                    if (_cfgTextChunkLength > 0) {
+                        outputBuffer = _textBuilder.expandForChunk(outPtr, _cfgTextChunkLength);
+                        if (outputBuffer == null) { // chunk full, rest is returned as another event
+                            break main_loop;
+                        }
+                        outEnd = _textBuilder.getChunkEnd(_cfgTextChunkLength);
+                    } else {
+                        outputBuffer = _textBuilder.finishCurrentSegment();
+                        outPtr = 0;
+                        outEnd = outputBuffer.length;
+                    }
                 }
                 int max = _inputEnd;
                 {
-                    int max2 = ptr + (outputBuffer.length - outPtr);
+                    int max2 = ptr + (outEnd - outPtr);
                     if (max2 < max) {
                         max = max2;
                     }
@@ -1,6 +1,8 @@
 package com.fasterxml.aalto.in;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Iterator;
 
@@ -123,11 +125,51 @@ public abstract class XmlScanner
 
     protected final boolean _cfgCoalescing;
 
+    /**
+     * Maximum length of CHARACTERS events, if longer text segments are
+     * to be returned as multiple events; 0 if not (which is always the
+     * case when coalescing text).
+     *<p>
+     * Note: non-final since stream reader may change it temporarily,
+     * see {@link #setTextChunkLength}
+     */
+    protected int _cfgTextChunkLength;
+
     /* Note: non-final since it may need to be disabled after
      * construction.
      */
     protected boolean _cfgLazyParsing;
 
+    /**
+     * Whether input is known to be well-formed, so that checks that
+     * only matter for malformed input can be skipped.
+     */
+    protected final boolean _cfgTrusted;
+
+    /**
+     * Whether namespace processing is enabled; if not, names are
+     * reported as is (colons being just regular name characters), and
+     * no namespace declarations or bindings are processed.
+     */
+    protected final boolean _cfgNsAware;
+
+    // // // Resource limits
+
+    protected final int _cfgMaxElementDepth;
+
+    protected final int _cfgMaxNameLength;
+
+    protected final int _cfgMaxTextLength;
+
+    protected final long _cfgMaxDocumentLength;
+
+    /**
+     * Total amount of input (bytes or chars) read so far; kept
+     * separately from input offsets used for location information,
+     * which are not guaranteed not to overflow for very big documents.
+     */
+    protected long _documentLength;
+
     /*
     ///////////////////////////////////////////////////////////////
     // Tokenization state
@@ -189,9 +231,13 @@ public abstract class XmlScanner
     protected boolean _isEmptyTag = false;
 
     /**
-     * Information about the current element on the stack
+     * Stack of names of currently open elements, indexed by depth:
+     * name of the current element is at index <code>_depth-1</code>
+     * for START_ELEMENT, and at <code>_depth</code> for END_ELEMENT
+     * (since depth is decremented when end tag is encountered).
+     * Entries above current depth are stale, and simply get overwritten.
      */
-    protected ElementScope _currElem;
+    protected PName[] _elemNames = new PName[16];
 
     /**
      * Public id of the current event (DTD), if any.
@@ -216,6 +262,21 @@ public abstract class XmlScanner
      */
     protected NsDeclaration _lastNsDecl = null;
 
+    /**
+     * Array-backed stack of namespace declaration instances, both
+     * currently active ones (first {@link #_nsDeclCount} entries) and
+     * ones that have gone out of scope but can be reused.
+     */
+    protected NsDeclaration[] _nsDecls = null;
+
+    protected int _nsDeclCount = 0;
+
+    /**
+     * Sequence number of the last namespace declaration bound,
+     * used to distinguish declarations that reuse the same instance.
+     */
+    protected int _nsDeclSeqNr = 0;
+
     /**
      * This is a temporary state variable, valid during START_ELEMENT
      * event. For those events, contains number of namespace declarations
@@ -273,6 +334,14 @@ public abstract class XmlScanner
 
     protected int _attrCount = 0;
 
+    /**
+     * Number of element and attribute names looked up from the symbol
+     * table since the table was last released; accumulated once per
+     * start element, instead of by symbol table lookups themselves,
+     * and only used for usage statistics.
+     */
+    protected int _nameLookups = 0;
+
     /*
     ////////////////////////////////////////////////
     // Minimal location info for all impls
@@ -298,6 +367,13 @@ public abstract class XmlScanner
 
         _cfgCoalescing = cfg.willCoalesceText();
         _cfgLazyParsing = cfg.willParseLazily();
+        _cfgTrusted = cfg.willTrustInput();
+        _cfgNsAware = cfg.willSupportNamespaces();
+        _cfgMaxElementDepth = cfg.getMaxElementDepth();
+        _cfgMaxNameLength = cfg.getMaxNameLength();
+        _cfgMaxTextLength = cfg.getMaxTextLength();
+        _cfgMaxDocumentLength = cfg.getMaxDocumentLength();
+        _cfgTextChunkLength = _cfgCoalescing ? 0 : cfg.getMaxTextChunkLength();
         _xml11 = cfg.isXml11();
         _textBuilder = TextBuilder.createRecyclableBuffer(_config);
         _attrCollector = new AttributeCollector(cfg);
@@ -395,6 +471,9 @@ public abstract class XmlScanner
         default:
             throw new Error("Internal error, unexpected incomplete token type "+ErrorConsts.tokenTypeDesc(_currToken));
         }
+        if (_textBuilder.size() > _cfgMaxTextLength) {
+            reportLimitExceeded(ErrorConsts.ERR_LIMIT_TEXT_LENGTH, _cfgMaxTextLength);
+        }
     }
 
     /**
@@ -579,6 +658,46 @@ public abstract class XmlScanner
         return _textBuilder.contentsToArray(srcStart, target, targetStart, len);
     }
 
+    public final boolean textEquals(String str)
+        throws XMLStreamException
+    {
+        if (_tokenIncomplete) {
+            finishToken();
+        }
+        return _textBuilder.equalsString(str);
+    }
+
+    public final boolean textEquals(char[] buf, int offset, int len)
+        throws XMLStreamException
+    {
+        if (_tokenIncomplete) {
+            finishToken();
+        }
+        return _textBuilder.equalsChars(buf, offset, len);
+    }
+
+    public final int getTextHashCode()
+        throws XMLStreamException
+    {
+        if (_tokenIncomplete) {
+            finishToken();
+        }
+        return _textBuilder.contentsHashCode();
+    }
+
+    /**
+     * @return Live view of the textual content of the current event;
+     *   valid until the scanner is advanced
+     */
+    public final CharSequence getTextCharSequence()
+        throws XMLStreamException
+    {
+        if (_tokenIncomplete) {
+            finishToken();
+        }
+        return _textBuilder.contentsAsCharSequence();
+    }
+
     public final int getText(Writer w, boolean preserveContents)
         throws XMLStreamException
     {
@@ -629,6 +748,23 @@ public abstract class XmlScanner
         }
     }
 
+    /**
+     * Method called by the stream reader to change the maximum length
+     * of CHARACTERS events returned; used when it can process text
+     * incrementally (like when decoding binary content). Has no effect
+     * if text is to be coalesced.
+     *
+     * @return Maximum length in effect before the call
+     */
+    public final int setTextChunkLength(int maxLength)
+    {
+        int prev = _cfgTextChunkLength;
+        if (!_cfgCoalescing) {
+            _cfgTextChunkLength = maxLength;
+        }
+        return prev;
+    }
+
     /**
      * Method called by the stream reader to reset given base64 decoder
      * with data from the current text event.
@@ -642,6 +778,90 @@ public abstract class XmlScanner
         _textBuilder.resetForBinaryDecode(v, dec, firstChunk);
     }
 
+    /*
+    ///////////////////////////////////////////////
+    // Data accessors, raw (undecoded) content
+    ///////////////////////////////////////////////
+    */
+
+    /**
+     * Method for accessing raw UTF-8 encoded bytes of the current
+     * CHARACTERS event, exactly as they appear in the input.
+     * Only scanners that decode UTF-8 from a byte buffer can provide
+     * raw content (and only for documents actually encoded in UTF-8),
+     * and only as long as all of it is still
+     * in the input buffer; base implementation never can.
+     *
+     * @return Read-only view of raw content, if available; null if not
+     */
+    public ByteBuffer getRawText()
+        throws XMLStreamException
+    {
+        return null;
+    }
+
+    /**
+     * Method for checking whether raw content of the current CHARACTERS
+     * event is identical to its decoded content: that is, it contains
+     * no entity or character references, nor line feeds that were
+     * normalized.
+     *
+     * @return True if raw content is available and identical to decoded
+     *   content; false otherwise
+     */
+    public boolean isRawTextVerbatim()
+        throws XMLStreamException
+    {
+        return false;
+    }
+
+    /**
+     * Method for accessing raw UTF-8 encoded bytes of the value of
+     * specified attribute of the current START_ELEMENT event (not
+     * including quotes), exactly as they appear in the input.
+     *
+     * @return Read-only view of raw content, if available; null if not
+     */
+    public ByteBuffer getRawAttrValue(int index)
+    {
+        return null;
+    }
+
+    /**
+     * Method for checking whether raw value of specified attribute is
+     * identical to its decoded value: that is, it contains no entity or
+     * character references, nor white space that was normalized.
+     */
+    public boolean isRawAttrValueVerbatim(int index)
+    {
+        return false;
+    }
+
+    /**
+     * Method called when the current event is START_ELEMENT, to start
+     * capturing raw UTF-8 encoded bytes of the element, starting with
+     * its start tag; capture continues until {@link #finishRawCapture}
+     * is called. Base implementation does not support capturing.
+     *
+     * @return True if capturing was started; false if not supported
+     */
+    public boolean startRawCapture()
+    {
+        return false;
+    }
+
+    /**
+     * Method called to stop capturing started with
+     * {@link #startRawCapture}, right after the matching END_ELEMENT
+     * has been returned.
+     *
+     * @return Bytes captured
+     */
+    public byte[] finishRawCapture()
+    {
+        throw new IllegalStateException();
+    }
+
     /*
     ///////////////////////////////////////////////
     // Data accessors, firing SAX events
@@ -804,6 +1024,22 @@ public abstract class XmlScanner
         return _attrCollector.getValue(nsURI, localName);
     }
 
+    public final boolean attrValueEquals(int index, String str)
+    {
+        // Note: caller checks indices
+        return _attrCollector.valueEquals(index, str);
+    }
+
+    public final boolean attrValueEquals(int index, char[] buf, int offset, int len)
+    {
+        return _attrCollector.valueEquals(index, buf, offset, len);
+    }
+
+    public final int getAttrValueHashCode(int index)
+    {
+        return _attrCollector.valueHashCode(index);
+    }
+
     public final void decodeAttrValue(int index, TypedValueDecoder tvd)
         throws XMLStreamException
     {
@@ -1139,7 +1375,7 @@ public abstract class XmlScanner
                 _nsBindings[i-1] = b;
             }
             // Plus, should we cache it?
-            PName bn = name.createBoundName(b);
+            PName bn = b.bindName(name);
             if (_nsBindingCache == null) {
                 if (++_nsBindMisses < BIND_MISSES_TO_ACTIVATE_CACHE) {
                     return bn;
@@ -1168,7 +1404,7 @@ public abstract class XmlScanner
         }
         _nsBindings[_nsBindingCount] = b;
         ++_nsBindingCount;
-        return name.createBoundName(b);
+        return b.bindName(name);
     }
 
     /**
@@ -1249,7 +1485,52 @@ public abstract class XmlScanner
         if (_lastNsDecl != null && _lastNsDecl.alreadyDeclared(prefix, _depth)) {
             reportDuplicateNsDecl(prefix);
         }
-        _lastNsDecl = new NsDeclaration(ns, uri, _lastNsDecl, _depth);
+        NsDeclaration[] decls = _nsDecls;
+        int ix = _nsDeclCount;
+        if (decls == null) {
+            _nsDecls = decls = new NsDeclaration[16];
+        } else if (ix >= decls.length) {
+            _nsDecls = decls = (NsDeclaration[]) DataUtil.growAnyArrayBy(decls, decls.length);
+        }
+        NsDeclaration decl = decls[ix];
+        if (decl == null) {
+            decls[ix] = decl = new NsDeclaration(_lastNsDecl);
+        }
+        decl.bind(ns, uri, _depth, ++_nsDeclSeqNr);
+        _nsDeclCount = ix+1;
+        _lastNsDecl = decl;
+    }
+
+    /**
+     * Method called after END_ELEMENT has been processed, to unbind
+     * namespace declarations that go out of scope.
+     */
+    protected final void unbindNamespaces()
+    {
+        NsDeclaration decl = _lastNsDecl;
+        int count = _nsDeclCount;
+        while (decl != null && decl.getLevel() >= _depth) {
+            decl = decl.unbind();
+            --count;
+        }
+        _lastNsDecl = decl;
+        _nsDeclCount = count;
+    }
+
+    /**
+     * Method called when a START_ELEMENT has been encountered, before
+     * depth has been incremented, to store its name in the element stack.
+     */
+    protected final void pushElementName(PName name)
+        throws XMLStreamException
+    {
+        if (_depth >= _elemNames.length) {
+            _elemNames = (PName[]) DataUtil.growAnyArrayBy(_elemNames, _elemNames.length);
+        }
+        _elemNames[_depth] = name;
+        if (_depth >= _cfgMaxElementDepth) {
+            reportLimitExceeded(ErrorConsts.ERR_LIMIT_ELEMENT_DEPTH, _cfgMaxElementDepth);
+        }
     }
 
     /**
@@ -1306,6 +1587,39 @@ public abstract class XmlScanner
         throw new WFCException(msg, getCurrentLocation());
     }
 
+    protected void reportLimitExceeded(String format, long limit)
+        throws XMLStreamException
+    {
+        reportInputProblem(MessageFormat.format(format, new Object[] { String.valueOf(limit) }));
+    }
+
+    /**
+     * Method called to verify that length of a name (or, for names
+     * still being parsed, a lower bound of it) is within the limit.
+     */
+    protected final void checkNameLength(int len)
+        throws XMLStreamException
+    {
+        if (len > _cfgMaxNameLength) {
+            reportLimitExceeded(ErrorConsts.ERR_LIMIT_NAME_LENGTH, _cfgMaxNameLength);
+        }
+    }
+
+    /**
+     * Method called when more input has been read, to verify that
+     * the total length of the document is within the limit.
+     *
+     * @param count Amount of input (bytes or chars) just read
+     */
+    protected final void checkDocumentLength(int count)
+        throws XMLStreamException
+    {
+        _documentLength += count;
+        if (_documentLength > _cfgMaxDocumentLength) {
+            reportLimitExceeded(ErrorConsts.ERR_LIMIT_DOCUMENT_LENGTH, _cfgMaxDocumentLength);
+        }
+    }
+
     /**
      * Method called when a call to expand an entity within attribute
      * value fails to expand it.
@@ -0,0 +1,289 @@
+package com.fasterxml.aalto.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.fasterxml.aalto.util.BufferPool;
+
+/**
+ * {@link OutputStream} implementation that collects output in a chain
+ * of fixed-size segments, instead of a single growing array like
+ * {@link ByteArrayOutputStream} does: content is never copied after
+ * being written, segments can be allocated from (and returned to)
+ * a {@link BufferPool}, and collected content can be written to
+ * a {@link GatheringByteChannel} with a single call. This makes it
+ * a good output target for serializing responses that go to NIO
+ * sockets or files.
+ *<p>
+ * Byte-based stream writers do not write to the chain through the
+ * {@link OutputStream} interface, but hand their full output buffers
+ * over as is using {@link #appendSegment}, continuing with a new
+ * segment, so that content is not copied at all. Such writers also
+ * allocate their first buffer using {@link #allocSegment}, and return
+ * the last one using {@link #releaseSegment}, so that all buffers
+ * come from, and are returned to, the pool of the chain.
+ *<p>
+ * Instances are not thread-safe. Content remains accessible after
+ * {@link #close}; {@link #release} needs to be called to return
+ * segments to the pool.
+ */
+public final class ByteBufferChain
+    extends OutputStream
+{
+    public final static int DEFAULT_SEGMENT_SIZE = 16000;
+
+    private final BufferPool _pool;
+
+    private final int _segmentSize;
+
+    /**
+     * Completed segments; not including the one currently being filled
+     */
+    private final ArrayList<byte[]> _segments = new ArrayList<byte[]>();
+
+    /**
+     * Lengths of content in completed segments, which may be less than
+     * segment lengths
+     */
+    private int[] _segmentLengths = new int[16];
+
+    /**
+     * Segment currently being filled, if any
+     */
+    private byte[] _current;
+
+    private int _currentPtr;
+
+    /**
+     * Combined length of content in segments before the current one
+     */
+    private long _pastLength;
+
+    public ByteBufferChain() {
+        this(null, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param pool Pool to allocate segments from, if any; if null,
+     *   segments are allocated as needed, and not recycled
+     * @param segmentSize Minimum size of segments to allocate
+     */
+    public ByteBufferChain(BufferPool pool, int segmentSize)
+    {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("Illegal segment size ("+segmentSize+"), must be positive");
+        }
+        _pool = pool;
+        _segmentSize = segmentSize;
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // OutputStream implementation
+    ////////////////////////////////////////////////
+     */
+
+    @Override
+    public void write(int b)
+    {
+        if (_current == null || _currentPtr >= _current.length) {
+            nextSegment();
+        }
+        _current[_currentPtr++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int offset, int len)
+    {
+        while (len > 0) {
+            if (_current == null || _currentPtr >= _current.length) {
+                nextSegment();
+            }
+            int count = Math.min(len, _current.length - _currentPtr);
+            System.arraycopy(b, offset, _current, _currentPtr, count);
+            _currentPtr += count;
+            offset += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public void close() {
+        // nothing to do: content is to remain accessible
+    }
+
+    /**
+     * Method for appending given buffer as the next segment of the
+     * chain, without copying its content. Chain takes over the buffer
+     * (returning it to the pool, if any, when {@link #release} is
+     * called), and caller is not to modify it after this call.
+     *
+     * @param buffer Buffer to append
+     * @param len Length of content in the buffer
+     *
+     * @return Empty buffer, at least as long as the one appended,
+     *   that caller can continue writing to
+     */
+    public byte[] appendSegment(byte[] buffer, int len)
+    {
+        // content written via OutputStream methods needs to precede
+        if (_currentPtr > 0) {
+            addSegment(_current, _currentPtr);
+            _current = null;
+            _currentPtr = 0;
+        }
+        addSegment(buffer, len);
+        return allocSegment(buffer.length);
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Public API, accessing content
+    ////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Total length of content written
+     */
+    public long size() {
+        return _pastLength + _currentPtr;
+    }
+
+    /**
+     * Method for accessing content written, as a sequence of buffers
+     * that wrap chain segments (without copying). Buffers are ready to
+     * be read (or written to a channel), and are only valid until
+     * {@link #release} is called.
+     */
+    public ByteBuffer[] getBuffers()
+    {
+        final int count = _segments.size();
+        ByteBuffer[] result = new ByteBuffer[(_currentPtr > 0) ? (count+1) : count];
+        for (int i = 0; i < count; ++i) {
+            result[i] = ByteBuffer.wrap(_segments.get(i), 0, _segmentLengths[i]);
+        }
+        if (_currentPtr > 0) {
+            result[count] = ByteBuffer.wrap(_current, 0, _currentPtr);
+        }
+        return result;
+    }
+
+    /**
+     * Method for writing all content to given channel, using gathering
+     * writes. Channel needs to be a blocking one: if it does not
+     * accept any content (as non-blocking channels may do), an
+     * {@link IOException} is thrown.
+     *
+     * @return Number of bytes written
+     */
+    public long writeTo(GatheringByteChannel ch) throws IOException
+    {
+        ByteBuffer[] bufs = getBuffers();
+        long total = size();
+        long left = total;
+        while (left > 0) {
+            long count = ch.write(bufs);
+            if (count <= 0) {
+                throw new IOException(ChannelOutputStream.ERR_NO_PROGRESS);
+            }
+            left -= count;
+        }
+        return total;
+    }
+
+    /**
+     * Method for copying all content into a newly allocated array
+     */
+    public byte[] toByteArray()
+    {
+        long size = size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Content too long ("+size+" bytes) for a byte array");
+        }
+        byte[] result = new byte[(int) size];
+        int ptr = 0;
+        for (ByteBuffer bb : getBuffers()) {
+            int len = bb.remaining();
+            bb.get(result, ptr, len);
+            ptr += len;
+        }
+        return result;
+    }
+
+    /**
+     * Method for allocating an empty segment, to be filled by caller
+     * and then appended using {@link #appendSegment}, or returned
+     * using {@link #releaseSegment}.
+     *
+     * @param minSize Minimum size of the segment; segments are never
+     *   smaller than the segment size of this chain, however
+     */
+    public byte[] allocSegment(int minSize)
+    {
+        if (minSize < _segmentSize) {
+            minSize = _segmentSize;
+        }
+        return (_pool == null) ? new byte[minSize] : _pool.allocByteBuffer(minSize);
+    }
+
+    /**
+     * Method for returning a segment allocated using {@link #allocSegment}
+     * (or returned by {@link #appendSegment}) that was not appended to
+     * the chain.
+     */
+    public void releaseSegment(byte[] segment)
+    {
+        if (_pool != null) {
+            _pool.releaseByteBuffer(segment);
+        }
+    }
+
+    /**
+     * Method that will clear all content, and return segments to the
+     * buffer pool (if any). Chain can be reused after this call.
+     */
+    public void release()
+    {
+        if (_pool != null) {
+            for (byte[] seg : _segments) {
+                _pool.releaseByteBuffer(seg);
+            }
+            if (_current != null) {
+                _pool.releaseByteBuffer(_current);
+            }
+        }
+        _segments.clear();
+        _current = null;
+        _currentPtr = 0;
+        _pastLength = 0L;
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Internal methods
+    ////////////////////////////////////////////////
+     */
+
+    private void nextSegment()
+    {
+        if (_current != null) {
+            addSegment(_current, _currentPtr);
+        }
+        _current = allocSegment(_segmentSize);
+        _currentPtr = 0;
+    }
+
+    private void addSegment(byte[] seg, int len)
+    {
+        int ix = _segments.size();
+        if (ix >= _segmentLengths.length) {
+            _segmentLengths = Arrays.copyOf(_segmentLengths, ix+ix);
+        }
+        _segments.add(seg);
+        _segmentLengths[ix] = len;
+        _pastLength += len;
+    }
+}
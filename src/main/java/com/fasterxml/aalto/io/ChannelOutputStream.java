@@ -0,0 +1,117 @@
+package com.fasterxml.aalto.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Minimal {@link OutputStream} implementation used by writers to
+ * write to a {@link WritableByteChannel}. Unlike the adapter returned
+ * by {@link java.nio.channels.Channels#newOutputStream}, it does no
+ * locking, and wraps caller's array instead of copying it. Byte-based
+ * writers only use it for content they can not buffer; full output
+ * buffers are written to the channel directly using
+ * {@link #writeFully}.
+ *<p>
+ * Only blocking channels are supported: writers have no way to wait
+ * for a non-blocking channel to become writable.
+ */
+public final class ChannelOutputStream
+    extends OutputStream
+{
+    final static String ERR_NO_PROGRESS = "Channel did not accept any output (non-blocking channel?)";
+
+    private WritableByteChannel _channel;
+
+    /**
+     * Wrapper for the last array written, reused if the same array is
+     * written again (which is the case for writer's output buffer)
+     */
+    private ByteBuffer _wrapper;
+
+    private byte[] _wrapped;
+
+    /**
+     * @throws IllegalArgumentException If channel is a non-blocking
+     *   {@link SelectableChannel}
+     */
+    public ChannelOutputStream(WritableByteChannel ch)
+    {
+        verifyBlocking(ch);
+        _channel = ch;
+    }
+
+    public WritableByteChannel getChannel() {
+        return _channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int offset, int len) throws IOException
+    {
+        if (_channel == null) {
+            throw new IOException("Channel closed");
+        }
+        ByteBuffer bb;
+        if (b == _wrapped) {
+            bb = _wrapper;
+            bb.limit(offset+len);
+            bb.position(offset);
+        } else {
+            bb = ByteBuffer.wrap(b, offset, len);
+            _wrapper = bb;
+            _wrapped = b;
+        }
+        writeFully(_channel, bb);
+    }
+
+    /**
+     * Method for verifying that given channel is not a non-blocking
+     * one, which could not be written to without spinning.
+     *
+     * @throws IllegalArgumentException If channel is a non-blocking
+     *   {@link SelectableChannel}
+     */
+    public static void verifyBlocking(WritableByteChannel ch)
+    {
+        if ((ch instanceof SelectableChannel) && !((SelectableChannel) ch).isBlocking()) {
+            throw new IllegalArgumentException("Can not write to a non-blocking channel");
+        }
+    }
+
+    /**
+     * Method for writing all remaining content of given buffer to
+     * given channel.
+     *
+     * @throws IOException If channel does not accept any content;
+     *   which would mean it is (or has been made) non-blocking, and
+     *   retrying would only spin
+     */
+    public static void writeFully(WritableByteChannel ch, ByteBuffer bb)
+        throws IOException
+    {
+        while (bb.hasRemaining()) {
+            if (ch.write(bb) <= 0) {
+                throw new IOException(ERR_NO_PROGRESS);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (_channel != null) {
+            WritableByteChannel ch = _channel;
+            _channel = null;
+            _wrapper = null;
+            _wrapped = null;
+            ch.close();
+        }
+    }
+}
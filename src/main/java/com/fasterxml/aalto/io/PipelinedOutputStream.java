@@ -0,0 +1,206 @@
+package com.fasterxml.aalto.io;
+
+import java.io.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * {@link OutputStream} wrapper used by byte-based writers for
+ * double-buffered output: writer hands its full output buffer over
+ * using {@link #writeAsync}, which returns immediately after
+ * scheduling the write with an {@link Executor}, so that writer can
+ * keep on serializing into its spare buffer while the full one is
+ * being written. At most one buffer is being written at any given
+ * time; handing over another one first waits for the previous write
+ * to complete.
+ *<p>
+ * All other methods are synchronous: they first wait for the pending
+ * buffer (if any) to be written, so that ordering of output is
+ * retained. Problems encountered by the background write are reported
+ * by the next call made.
+ *<p>
+ * Instances are not thread-safe, beyond handing over buffers to the
+ * background write: they are to be used by a single writer.
+ */
+public final class PipelinedOutputStream
+    extends OutputStream
+    implements Runnable
+{
+    private final OutputStream _out;
+
+    private final Executor _executor;
+
+    /**
+     * Buffer being written (or, once written, available for reuse);
+     * null if none
+     */
+    private byte[] _pendingBuffer;
+
+    private int _pendingLen;
+
+    /**
+     * Flag set while pending buffer is being written; guarded by
+     * lock of this instance
+     */
+    private boolean _writing;
+
+    /**
+     * Problem encountered during background write, if any; to be
+     * reported by the next call
+     */
+    private Throwable _failure;
+
+    private boolean _closed;
+
+    public PipelinedOutputStream(OutputStream out, Executor executor)
+    {
+        _out = out;
+        _executor = executor;
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Double-buffering
+    ////////////////////////////////////////////////
+     */
+
+    /**
+     * Method called to schedule given buffer to be written in the
+     * background. Caller is not to modify the buffer until it is
+     * returned by a later call.
+     *
+     * @return Buffer that was earlier handed over and has since been
+     *   written, and can now be reused by the caller; or null if
+     *   there is no such buffer (for the first call)
+     */
+    public byte[] writeAsync(byte[] buffer, int len)
+        throws IOException
+    {
+        byte[] free = takeBuffer();
+        _pendingBuffer = buffer;
+        _pendingLen = len;
+        synchronized (this) {
+            _writing = true;
+        }
+        try {
+            _executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            // can't pipeline any more; just write it from this thread
+            run();
+        }
+        return free;
+    }
+
+    /**
+     * Method called to wait for the pending write to complete, and to
+     * take back the buffer that was written, if any.
+     *
+     * @return Buffer that was written, if any; null if none
+     */
+    public byte[] takeBuffer()
+        throws IOException
+    {
+        await();
+        byte[] buf = _pendingBuffer;
+        _pendingBuffer = null;
+        return buf;
+    }
+
+    /**
+     * Writes the pending buffer; called by the executor
+     */
+    public void run()
+    {
+        Throwable fail = null;
+        try {
+            _out.write(_pendingBuffer, 0, _pendingLen);
+        } catch (Throwable t) {
+            fail = t;
+        }
+        synchronized (this) {
+            if (fail != null) {
+                _failure = fail;
+            }
+            _writing = false;
+            notifyAll();
+        }
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // OutputStream implementation
+    ////////////////////////////////////////////////
+     */
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        await();
+        _out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int offset, int len) throws IOException
+    {
+        await();
+        _out.write(b, offset, len);
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        await();
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        await();
+        if (!_closed) {
+            _closed = true;
+            _out.close();
+        }
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Internal methods
+    ////////////////////////////////////////////////
+     */
+
+    private void await() throws IOException
+    {
+        Throwable fail;
+        synchronized (this) {
+            boolean interrupted = false;
+            while (_writing) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // can not abandon the write, so need to keep on waiting
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            fail = _failure;
+            _failure = null;
+        }
+        if (fail != null) {
+            if (fail instanceof IOException) {
+                throw (IOException) fail;
+            }
+            if (fail instanceof RuntimeException) {
+                throw (RuntimeException) fail;
+            }
+            if (fail instanceof Error) {
+                throw (Error) fail;
+            }
+            IOException ioe = new IOException(fail.getMessage());
+            ioe.initCause(fail);
+            throw ioe;
+        }
+    }
+}
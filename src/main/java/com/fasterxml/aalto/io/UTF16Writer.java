@@ -0,0 +1,280 @@
+package com.fasterxml.aalto.io;
+
+import java.io.*;
+
+import com.fasterxml.aalto.out.WriterConfig;
+
+/**
+ * Simple {@link Writer} implementation that encodes chars as UTF-16
+ * (either big- or little-endian), without going through a JDK charset
+ * encoder: since UTF-16 code units map one-to-one to chars, valid
+ * surrogate pairs are passed as is. As with JDK encoders, unpaired
+ * surrogates are replaced with the replacement character (U+FFFD).
+ *<p>
+ * Writer does no buffering of its own, since its caller (a char-based
+ * xml writer) already buffers its output: each write call encodes
+ * given chars into an internal byte buffer, which is then written out
+ * right away.
+ */
+public final class UTF16Writer
+    extends Writer
+{
+    final static int SURR1_FIRST = 0xD800;
+    final static int SURR1_LAST = 0xDBFF;
+    final static int SURR2_FIRST = 0xDC00;
+    final static int SURR2_LAST = 0xDFFF;
+
+    final static char REPLACEMENT_CHAR = '\uFFFD';
+
+    /**
+     * Big enough to encode full output buffer of char-based writers
+     * with a single write
+     */
+    final static int DEFAULT_BUFFER_SIZE = 4000;
+
+    final WriterConfig mConfig;
+
+    final boolean mAutoCloseOutput;
+
+    final boolean mBigEndian;
+
+    OutputStream mOut;
+
+    byte[] mOutBuffer;
+
+    /**
+     * Number of bytes in output buffer not yet written out; only
+     * non-zero for byte order mark, before the first write
+     */
+    int mOutPtr;
+
+    /**
+     * First part of a surrogate pair, if the last char written was
+     * one; 0 if not
+     */
+    char mSurrogate = 0;
+
+    final char[] mOneChar = new char[1];
+
+    /**
+     * @param bigEndian Whether to use big-endian (network) byte order
+     * @param writeBom Whether to start output with a byte order mark;
+     *   needed for "UTF-16" (which does not specify endianness), but
+     *   not for "UTF-16BE" or "UTF-16LE".
+     */
+    public UTF16Writer(WriterConfig cfg, OutputStream out, boolean autoclose,
+                       boolean bigEndian, boolean writeBom)
+    {
+        mConfig = cfg;
+        mAutoCloseOutput = autoclose;
+        mBigEndian = bigEndian;
+        mOut = out;
+        mOutBuffer = cfg.allocFullBBuffer(DEFAULT_BUFFER_SIZE);
+        mOutPtr = 0;
+        if (writeBom) {
+            mOutPtr = append((char) 0xFEFF, mOutBuffer, 0);
+        }
+    }
+
+    public void close()
+        throws IOException
+    {
+        if (mOut != null) {
+            // Dangling first part of a surrogate pair?
+            if (mSurrogate != 0) {
+                mSurrogate = 0;
+                mOutPtr = append(REPLACEMENT_CHAR, mOutBuffer, mOutPtr);
+            }
+            if (mOutPtr > 0) {
+                mOut.write(mOutBuffer, 0, mOutPtr);
+                mOutPtr = 0;
+            }
+            OutputStream out = mOut;
+            mOut = null;
+            byte[] buf = mOutBuffer;
+            mOutBuffer = null;
+
+            if (mAutoCloseOutput) {
+                out.close();
+            }
+            mConfig.freeFullBBuffer(buf);
+        }
+    }
+
+    public void flush()
+        throws IOException
+    {
+        if (mOutPtr > 0) {
+            mOut.write(mOutBuffer, 0, mOutPtr);
+            mOutPtr = 0;
+        }
+        mOut.flush();
+    }
+
+    public void write(char[] cbuf)
+        throws IOException
+    {
+        write(cbuf, 0, cbuf.length);
+    }
+
+    public void write(char[] cbuf, int off, int len)
+        throws IOException
+    {
+        if (len < 1) {
+            return;
+        }
+        final byte[] outBuf = mOutBuffer;
+        int outPtr = mOutPtr;
+        len += off; // len will now be the end of input buffer
+
+        // First things first: second part of a pair split between calls?
+        if (mSurrogate != 0) {
+            char c = cbuf[off];
+            if (c >= SURR2_FIRST && c <= SURR2_LAST) {
+                outPtr = append(mSurrogate, outBuf, outPtr);
+                outPtr = append(c, outBuf, outPtr);
+                ++off;
+            } else {
+                outPtr = append(REPLACEMENT_CHAR, outBuf, outPtr);
+            }
+            mSurrogate = 0;
+        }
+
+        do {
+            /* How many chars can we encode before buffer is full?
+             * (leaving room for the second part of a surrogate pair)
+             */
+            int end = off + ((outBuf.length - outPtr - 2) >> 1);
+            if (end > len) {
+                end = len;
+            }
+            while (off < end) {
+                char c = cbuf[off++];
+                if (c >= SURR1_FIRST && c <= SURR2_LAST) {
+                    if (c <= SURR1_LAST) {
+                        if (off >= len) { // need to wait for the second part
+                            mSurrogate = c;
+                            break;
+                        }
+                        char d = cbuf[off];
+                        if (d >= SURR2_FIRST && d <= SURR2_LAST) {
+                            outPtr = append(c, outBuf, outPtr);
+                            c = d;
+                            ++off;
+                        } else {
+                            c = REPLACEMENT_CHAR;
+                        }
+                    } else {
+                        c = REPLACEMENT_CHAR;
+                    }
+                }
+                if (mBigEndian) {
+                    outBuf[outPtr++] = (byte) (c >> 8);
+                    outBuf[outPtr++] = (byte) c;
+                } else {
+                    outBuf[outPtr++] = (byte) c;
+                    outBuf[outPtr++] = (byte) (c >> 8);
+                }
+            }
+            if (outPtr > 0) {
+                mOut.write(outBuf, 0, outPtr);
+                outPtr = 0;
+            }
+        } while (off < len);
+        mOutPtr = 0;
+    }
+
+    public void write(int c)
+        throws IOException
+    {
+        mOneChar[0] = (char) c;
+        write(mOneChar, 0, 1);
+    }
+
+    public void write(String str)
+        throws IOException
+    {
+        write(str, 0, str.length());
+    }
+
+    public void write(String str, int off, int len)
+        throws IOException
+    {
+        if (len < 1) {
+            return;
+        }
+        final byte[] outBuf = mOutBuffer;
+        int outPtr = mOutPtr;
+        len += off; // len will now be the end of input buffer
+
+        if (mSurrogate != 0) {
+            char c = str.charAt(off);
+            if (c >= SURR2_FIRST && c <= SURR2_LAST) {
+                outPtr = append(mSurrogate, outBuf, outPtr);
+                outPtr = append(c, outBuf, outPtr);
+                ++off;
+            } else {
+                outPtr = append(REPLACEMENT_CHAR, outBuf, outPtr);
+            }
+            mSurrogate = 0;
+        }
+
+        do {
+            int end = off + ((outBuf.length - outPtr - 2) >> 1);
+            if (end > len) {
+                end = len;
+            }
+            while (off < end) {
+                char c = str.charAt(off++);
+                if (c >= SURR1_FIRST && c <= SURR2_LAST) {
+                    if (c <= SURR1_LAST) {
+                        if (off >= len) {
+                            mSurrogate = c;
+                            break;
+                        }
+                        char d = str.charAt(off);
+                        if (d >= SURR2_FIRST && d <= SURR2_LAST) {
+                            outPtr = append(c, outBuf, outPtr);
+                            c = d;
+                            ++off;
+                        } else {
+                            c = REPLACEMENT_CHAR;
+                        }
+                    } else {
+                        c = REPLACEMENT_CHAR;
+                    }
+                }
+                if (mBigEndian) {
+                    outBuf[outPtr++] = (byte) (c >> 8);
+                    outBuf[outPtr++] = (byte) c;
+                } else {
+                    outBuf[outPtr++] = (byte) c;
+                    outBuf[outPtr++] = (byte) (c >> 8);
+                }
+            }
+            if (outPtr > 0) {
+                mOut.write(outBuf, 0, outPtr);
+                outPtr = 0;
+            }
+        } while (off < len);
+        mOutPtr = 0;
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Internal methods
+    ////////////////////////////////////////////////
+     */
+
+    private int append(char c, byte[] buf, int ptr)
+    {
+        if (mBigEndian) {
+            buf[ptr++] = (byte) (c >> 8);
+            buf[ptr++] = (byte) c;
+        } else {
+            buf[ptr++] = (byte) c;
+            buf[ptr++] = (byte) (c >> 8);
+        }
+        return ptr;
+    }
+}
@@ -52,7 +52,9 @@ public final class AsciiXmlWriter
             return;
         }
         if (mSurrogate != 0) {
-            outputSurrogates(mSurrogate, cbuf[offset]);
+            int surr = mSurrogate;
+            mSurrogate = 0;
+            outputSurrogates(surr, cbuf[offset]);
             ++offset;
             --len;
         }
@@ -16,6 +16,8 @@
 package com.fasterxml.aalto.out;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import javax.xml.stream.*;
 
@@ -24,6 +26,9 @@ import org.codehaus.stax2.ri.typed.AsciiValueEncoder;
 
 import com.fasterxml.aalto.ErrorConsts;
 import com.fasterxml.aalto.XmlConsts;
+import com.fasterxml.aalto.io.ByteBufferChain;
+import com.fasterxml.aalto.io.ChannelOutputStream;
+import com.fasterxml.aalto.io.PipelinedOutputStream;
 import com.fasterxml.aalto.util.XmlCharTypes;
 import com.fasterxml.aalto.util.XmlChars;
 
@@ -62,6 +67,7 @@ public abstract class ByteXmlWriter
     final static int SMALL_WRITE = 250;
 
     final static byte BYTE_SPACE = (byte) ' ';
+    final static byte BYTE_LF = (byte) '\n';
     final static byte BYTE_COLON = (byte) ':';
     final static byte BYTE_SEMICOLON = (byte) ';';
     final static byte BYTE_LBRACKET = (byte) '[';
@@ -118,6 +124,35 @@ public abstract class ByteXmlWriter
 
     protected final int _outputBufferLen;
 
+    /**
+     * If output is pipelined, stream (same as {@link #_out}) that
+     * writes full buffers in the background; null if not.
+     * Note that this means that {@link #_outputBuffer} may change
+     * whenever the buffer is flushed.
+     */
+    protected PipelinedOutputStream _pipeline;
+
+    /**
+     * If output goes to a buffer chain, the chain (same as {@link #_out}),
+     * to which full buffers are appended as is; null if not.
+     * As with pipelining, {@link #_outputBuffer} may change
+     * whenever the buffer is flushed.
+     */
+    protected ByteBufferChain _chain;
+
+    /**
+     * If output goes to a channel (and is not pipelined), channel
+     * that {@link #_out} writes to, to which full buffers are
+     * written directly; null if not.
+     */
+    protected WritableByteChannel _channel;
+
+    /**
+     * Wrapper for {@link #_outputBuffer}, used when writing to
+     * {@link #_channel}
+     */
+    protected ByteBuffer _channelBuffer;
+
     /**
      * In case a split surrogate pair is output (which can occur for only
      * some of the methods, possibly depending on encoding),
@@ -154,9 +189,22 @@ public abstract class ByteXmlWriter
     protected ByteXmlWriter(WriterConfig cfg, OutputStream out, XmlCharTypes charTypes)
     {
         super(cfg);
+        // no point in pipelining in-memory output
+        if (out instanceof ByteBufferChain) {
+            _chain = (ByteBufferChain) out;
+        } else if (cfg.getFlushExecutor() != null) {
+            out = _pipeline = new PipelinedOutputStream(out, cfg.getFlushExecutor());
+        } else if (out instanceof ChannelOutputStream) {
+            _channel = ((ChannelOutputStream) out).getChannel();
+        }
         _out = out;
-        _outputBuffer = cfg.allocFullBBuffer(DEFAULT_FULL_BUFFER_SIZE);
+        // buffers handed to a chain must come from (and go back to) its pool
+        _outputBuffer = (_chain == null) ? cfg.allocFullBBuffer(DEFAULT_FULL_BUFFER_SIZE)
+            : _chain.allocSegment(DEFAULT_FULL_BUFFER_SIZE);
         _outputBufferLen = _outputBuffer.length;
+        if (_channel != null) {
+            _channelBuffer = ByteBuffer.wrap(_outputBuffer);
+        }
         mCopyBuffer = cfg.allocFullCBuffer(DEFAULT_COPY_BUFFER_SIZE);
         mCopyBufferLen = mCopyBuffer.length;
         _outputPtr = 0;
@@ -293,6 +341,21 @@ public abstract class ByteXmlWriter
     abstract protected int outputMultiByteChar(int ch, char[] cbuf, int inputOffset, int inputLen)
         throws IOException, XMLStreamException;
 
+    /**
+     * Method for encoding given markup, known to be well-formed and to
+     * only contain characters that can be expressed using output encoding,
+     * into bytes: used for pre-encoding constant output fragments.
+     */
+    protected abstract byte[] encodeMarkup(String markup)
+        throws XMLStreamException;
+
+    /**
+     * Variant of {@link #outputMultiByteChar(int,char[],int,int)} used
+     * when encoding directly from a String
+     */
+    abstract protected int outputMultiByteChar(int ch, String str, int inputOffset, int inputLen)
+        throws IOException, XMLStreamException;
+
     /*
     ////////////////////////////////////////////////
     // Low-level (pass-through) methods
@@ -304,9 +367,24 @@ public abstract class ByteXmlWriter
     {
         super._releaseBuffers();
         if (_outputBuffer != null) {
-            _config.freeFullBBuffer(_outputBuffer);
+            if (_chain == null) {
+                _config.freeFullBBuffer(_outputBuffer);
+            } else {
+                _chain.releaseSegment(_outputBuffer);
+            }
             _outputBuffer = null;
         }
+        if (_pipeline != null) {
+            // spare buffer, if any, is no longer needed either
+            try {
+                byte[] spare = _pipeline.takeBuffer();
+                if (spare != null) {
+                    _config.freeFullBBuffer(spare);
+                }
+            } catch (IOException e) {
+                // already reported via flush(), if at all possible
+            }
+        }
         if (mCopyBuffer != null) {
             _config.freeFullCBuffer(mCopyBuffer);
             mCopyBuffer = null;
@@ -444,20 +522,52 @@ public abstract class ByteXmlWriter
     //////////////////////////////////////////////////
      */
 
+    /**
+     * Method for writing an attribute with a String value: value is
+     * escaped and encoded directly from the String, without copying
+     * it to an intermediate char buffer first.
+     */
     public final void writeAttribute(WName name, String value)
         throws IOException, XMLStreamException
     {
-        int vlen = value.length();
-        // Let's off-line rare case:
-        if (vlen > mCopyBufferLen) {
-            writeLongAttribute(name, value, vlen);
-            return;
+        if (mSurrogate != 0) {
+            throwUnpairedSurrogate();
+        }
+        final int vlen = value.length();
+        int ptr = _outputPtr;
+        byte[] bbuf = _outputBuffer;
+
+        if ((ptr + name.serializedLength()) >= _outputBufferLen) {
+            writeName(BYTE_SPACE, name);
+            ptr = _outputPtr;
+            bbuf = _outputBuffer;
+        } else {
+            bbuf[ptr++] = BYTE_SPACE;
+            ptr += name.appendBytes(bbuf, ptr);
+        }
+
+        if ((ptr + 3 + vlen) > _outputBufferLen) { // won't fit
+            _outputPtr = ptr;
+            flushBuffer();
+            bbuf = _outputBuffer;
+            bbuf[_outputPtr++] = BYTE_EQ;
+            bbuf[_outputPtr++] = BYTE_QUOT;
+            if ((_outputPtr + vlen + 1) > _outputBufferLen) {
+                writeAttrValue(value, 0, vlen);
+                writeRaw(BYTE_QUOT);
+                return;
+            }
+            ptr = _outputPtr;
+        } else {
+            bbuf[ptr++] = BYTE_EQ;
+            bbuf[ptr++] = BYTE_QUOT;
         }
-        char[] cbuf = mCopyBuffer;
         if (vlen > 0) {
-            value.getChars(0, vlen, cbuf, 0);
+            ptr = fastWriteAttrValue(value, 0, vlen, bbuf, ptr);
         }
-        writeAttribute(name, cbuf, 0, vlen);
+        // (buffer may have been flushed while writing the value)
+        _outputBuffer[ptr++] = BYTE_QUOT;
+        _outputPtr = ptr;
     }
 
     public final void writeAttribute(WName name, char[] vbuf, int offset, int vlen)
@@ -474,6 +584,7 @@ public abstract class ByteXmlWriter
         if ((ptr + name.serializedLength()) >= _outputBufferLen) {
             writeName(BYTE_SPACE, name);
             ptr = _outputPtr;
+            bbuf = _outputBuffer;
         } else {
             bbuf[ptr++] = BYTE_SPACE;
             ptr += name.appendBytes(bbuf, ptr);
@@ -483,6 +594,7 @@ public abstract class ByteXmlWriter
         if ((ptr + 3 + vlen) > _outputBufferLen) { // won't fit
             _outputPtr = ptr;
             flushBuffer();
+            bbuf = _outputBuffer;
             bbuf[_outputPtr++] = BYTE_EQ;
             bbuf[_outputPtr++] = BYTE_QUOT;
             if ((_outputPtr + vlen + 1) > _outputBufferLen) {
@@ -498,7 +610,7 @@ public abstract class ByteXmlWriter
         if (vlen > 0) {
             ptr = fastWriteAttrValue(vbuf, offset, vlen, bbuf, ptr);
         }
-        bbuf[ptr++] = BYTE_QUOT;
+        _outputBuffer[ptr++] = BYTE_QUOT;
         _outputPtr = ptr;
     }
 
@@ -516,20 +628,13 @@ public abstract class ByteXmlWriter
         while (offset < len) {
             final int[] charTypes = mCharTypes.ATTR_CHARS;
 
-            inner_loop:
-            while (true) {
-                int ch = (int) vbuf[offset];
-                if (ch >= OutputCharTypes.MAIN_TABLE_SIZE) {
-                    break inner_loop;
-                }
-                if (charTypes[ch] != XmlCharTypes.CT_OK) {
-                    // Here we do want to quote linefeed, too
-                    break;
-                }
-                bbuf[ptr++] = (byte)ch;
-                if (++offset >= len) {
-                    break main_loop;
-                }
+            // Here we do want to quote linefeed, too
+            final int end = findCleanEnd(vbuf, offset, len, charTypes);
+            while (offset < end) {
+                bbuf[ptr++] = (byte) vbuf[offset++];
+            }
+            if (offset >= len) {
+                break main_loop;
             }
 
             _outputPtr = ptr;
@@ -561,6 +666,7 @@ public abstract class ByteXmlWriter
                 flushBuffer();
             }
             ptr = _outputPtr;
+            bbuf = _outputBuffer;
         }
 
         return ptr;
@@ -570,7 +676,9 @@ public abstract class ByteXmlWriter
         throws IOException, XMLStreamException
     {
         if (mSurrogate != 0) {
-            outputSurrogates(mSurrogate, vbuf[offset]);
+            int surr = mSurrogate;
+            mSurrogate = 0;
+            outputSurrogates(surr, vbuf[offset]);
             ++offset;
             --len;
         }
@@ -614,38 +722,102 @@ public abstract class ByteXmlWriter
             } else {
                 offset = outputMultiByteChar(ch, vbuf, offset, len);
             }
-
-            _outputBuffer[_outputPtr++] = (byte) ch;
         }
     }
 
-    protected final void writeLongAttribute(WName name, String value, int vlen)
+    /**
+     * Method called to copy given attribute value, when it's known that
+     * it will completely fit in the output buffer without further checks
+     */
+    protected final int fastWriteAttrValue(String value, int offset, int len,
+                                           byte[] bbuf, int ptr)
         throws IOException, XMLStreamException
     {
-        writeRaw(BYTE_SPACE);
-        int nlen = name.serializedLength();
-        if ((_outputPtr + nlen) > _outputBufferLen) {
-            flushBuffer();
-            if (nlen > _outputBufferLen) {
-                name.writeBytes(_out);
+        len += offset; // now marks the end
+
+        main_loop:
+        while (offset < len) {
+            final int[] charTypes = mCharTypes.ATTR_CHARS;
+
+            final int end = findCleanEnd(value, offset, len, charTypes);
+            if (end > offset) {
+                copyClean(value, offset, end, bbuf, ptr);
+                ptr += (end - offset);
+                offset = end;
+                if (offset >= len) {
+                    break main_loop;
+                }
+            }
+
+            _outputPtr = ptr;
+            int ch = (int) value.charAt(offset++);
+            if (ch < OutputCharTypes.MAIN_TABLE_SIZE) {
+                switch (charTypes[ch]) {
+                case CT_INVALID:
+                    reportInvalidChar(ch);
+                    break;
+                case CT_MULTIBYTE_2:
+                    output2ByteChar(ch);
+                    break;
+                default:
+                    writeAsEntity(ch);
+                }
             } else {
-                _outputPtr += name.appendBytes(_outputBuffer, _outputPtr);
+                offset = outputMultiByteChar(ch, value, offset, len);
             }
-        } else {
-            _outputPtr += name.appendBytes(_outputBuffer, _outputPtr);
+            // as with char[] variant: room for the rest, plus closing quote?
+            if ((len - offset) >= (_outputBufferLen - _outputPtr)) {
+                flushBuffer();
+            }
+            ptr = _outputPtr;
+            bbuf = _outputBuffer;
         }
-        writeRaw(BYTE_EQ, BYTE_QUOT);
-        int offset = 0;
-        while (vlen > 0) {
-            char[] buf = mCopyBuffer;
-            final int blen = buf.length;
-            int len2 = (vlen < blen) ? vlen : blen;
-            value.getChars(offset, offset+len2, buf, 0);
-            writeAttrValue(buf, 0, len2);
-            offset += len2;
-            vlen -= len2;
+
+        return ptr;
+    }
+
+    protected final void writeAttrValue(String value, int offset, int len)
+        throws IOException, XMLStreamException
+    {
+        len += offset; // now marks the end
+
+        main_loop:
+        while (offset < len) {
+            final int[] charTypes = mCharTypes.ATTR_CHARS;
+
+            inner_loop:
+            while (true) {
+                int ch = (int) value.charAt(offset);
+                if (ch >= OutputCharTypes.MAIN_TABLE_SIZE) {
+                    break inner_loop;
+                }
+                if (charTypes[ch] != XmlCharTypes.CT_OK) {
+                    break;
+                }
+                if (_outputPtr >= _outputBufferLen) {
+                    flushBuffer();
+                }
+                _outputBuffer[_outputPtr++] = (byte)ch;
+                if (++offset >= len) {
+                    break main_loop;
+                }
+            }
+
+            int ch = (int) value.charAt(offset++);
+            if (ch < OutputCharTypes.MAIN_TABLE_SIZE) {
+                switch (charTypes[ch]) {
+                case CT_INVALID:
+                    reportInvalidChar(ch);
+                case CT_MULTIBYTE_2:
+                    output2ByteChar(ch);
+                    break;
+                default:
+                    writeAsEntity(ch);
+                }
+            } else {
+                offset = outputMultiByteChar(ch, value, offset, len);
+            }
         }
-        writeRaw(BYTE_QUOT);
     }
 
     /*
@@ -735,6 +907,14 @@ public abstract class ByteXmlWriter
         _outputPtr = ptr;
     }
 
+    public final void writeRawUtf8Attribute(WName name, ByteBuffer utf8)
+        throws IOException, XMLStreamException
+    {
+        writeAttrNameEqQ(name);
+        writeRawUtf8Characters(utf8);
+        writeRaw(BYTE_QUOT);
+    }
+
     /*
     //////////////////////////////////////////////////
     // Write methods, textual content
@@ -864,45 +1044,223 @@ public abstract class ByteXmlWriter
         return -1;
     }    
 
+    /**
+     * Method for writing textual content from a String: content is
+     * escaped and encoded directly from the String, without copying
+     * it to an intermediate char buffer first.
+     */
     public final void writeCharacters(String text)
         throws IOException, XMLStreamException
     {
-        final int len = text.length();
+        int len = text.length();
+        if (len == 0) {
+            return;
+        }
+        int offset = 0;
+        if (mSurrogate != 0) {
+            int surr = mSurrogate;
+            mSurrogate = 0;
+            outputSurrogates(surr, text.charAt(0));
+            ++offset;
+            --len;
+        }
 
-        // Not so common case, let's offline:
-        if (len > mCopyBufferLen) {
-            longWriteCharacters(text);
+        int ptr = _outputPtr;
+        if ((ptr + len) > _outputBufferLen) {
+            writeSplitCharacters(text, offset, len);
             return;
         }
-        if (len > 0) {
-            char[] buf = mCopyBuffer;
-            text.getChars(0, len, buf, 0);
-            writeCharacters(buf, 0, len);
+
+        len += offset; // now marks the end
+
+        main_loop:
+        while (offset < len) {
+            final int[] charTypes = mCharTypes.TEXT_CHARS;
+
+            inner_loop:
+            while (true) {
+                final int end = findCleanEnd(text, offset, len, charTypes);
+                if (end > offset) {
+                    copyClean(text, offset, end, _outputBuffer, ptr);
+                    ptr += (end - offset);
+                    offset = end;
+                    if (offset >= len) {
+                        break main_loop;
+                    }
+                }
+                if (text.charAt(offset) != '\n') {
+                    break inner_loop;
+                }
+                ++mLocRowNr;
+                _outputBuffer[ptr++] = BYTE_LF;
+                if (++offset >= len) {
+                    break main_loop;
+                }
+            }
+
+            int ch = (int) text.charAt(offset++);
+            if (ch < OutputCharTypes.MAIN_TABLE_SIZE) {
+                switch (charTypes[ch]) {
+                case CT_INVALID:
+                    reportInvalidChar(ch);
+                case CT_WS_CR:
+                    if (_config.willEscapeCR()) {
+                        _outputPtr = ptr;
+                        writeAsEntity(ch);
+                        break;
+                    }
+                    _outputBuffer[ptr++] = (byte)ch;
+                    ++mLocRowNr;
+                    continue main_loop;
+                case CT_WS_LF: // never occurs (handled in loop)
+                    break;
+                case CT_OUTPUT_MUST_QUOTE:
+                case CT_LT:
+                case CT_AMP:
+                    _outputPtr = ptr;
+                    writeAsEntity(ch);
+                    break;
+                case CT_MULTIBYTE_2:
+                    _outputPtr = ptr;
+                    output2ByteChar(ch);
+                    break;
+                case CT_RBRACKET:
+                    if (offset >= len || text.charAt(offset) == '>') {
+                        _outputPtr = ptr;
+                        writeAsEntity(ch);
+                        break;
+                    }
+                    //  fall through
+                default:
+                    _outputBuffer[ptr++] = (byte)ch;
+                    continue main_loop;
+                }
+            } else {
+                _outputPtr = ptr;
+                offset = outputMultiByteChar(ch, text, offset, len);
+            }
+            // may have used more than one byte per char; still room?
+            if ((len - offset) >= (_outputBufferLen - _outputPtr)) {
+                flushBuffer();
+            }
+            ptr = _outputPtr;
         }
+        _outputPtr = ptr;
     }
 
-    private final void longWriteCharacters(String text)
+    /**
+     * Variant of {@link #writeSplitCharacters(char[],int,int)} used
+     * when encoding directly from a String.
+     */
+    private final void writeSplitCharacters(String text, int offset, int len)
         throws IOException, XMLStreamException
     {
-        int offset = 0;
-        int len = text.length();
-        char[] buf = mCopyBuffer;
+        len += offset; // now marks the end
 
-        do {
-            final int blen = buf.length;
-            int len2 = (len < blen) ? len : blen;
-            text.getChars(offset, offset+len2, buf, 0);
-            writeCharacters(buf, 0, len2);
-            offset += len2;
-            len -= len2;
-        } while (len > 0);
+        main_loop:
+        while (offset < len) {
+            final int[] charTypes = mCharTypes.TEXT_CHARS;
+
+            inner_loop:
+            while (true) {
+                int ch = (int) text.charAt(offset);
+                if (ch >= OutputCharTypes.MAIN_TABLE_SIZE) {
+                    break inner_loop;
+                }
+                if (charTypes[ch] != XmlCharTypes.CT_OK) {
+                    if (ch != '\n') {
+                        break inner_loop;
+                    }
+                    ++mLocRowNr;
+                }
+                if (_outputPtr >= _outputBufferLen) {
+                    flushBuffer();
+                }
+                _outputBuffer[_outputPtr++] = (byte)ch;
+                if (++offset >= len) {
+                    break main_loop;
+                }
+            }
+
+            int ch = (int) text.charAt(offset++);
+            if (ch < OutputCharTypes.MAIN_TABLE_SIZE) {
+                switch (charTypes[ch]) {
+                case CT_INVALID:
+                    reportInvalidChar(ch);
+                case CT_WS_CR:
+                    if (_config.willEscapeCR()) {
+                        writeAsEntity(ch);
+                        continue main_loop;
+                    }
+                    ++mLocRowNr;
+                    break;
+                case CT_WS_LF:
+                    break;
+                case CT_OUTPUT_MUST_QUOTE:
+                case CT_LT:
+                case CT_AMP:
+                    writeAsEntity(ch);
+                    continue main_loop;
+                case CT_MULTIBYTE_2:
+                    output2ByteChar(ch);
+                    continue main_loop;
+                case CT_RBRACKET:
+                    if (offset >= len || text.charAt(offset) == '>') {
+                        writeAsEntity(ch);
+                        continue main_loop;
+                    }
+                    break;
+                default:
+                    break;
+                }
+            } else {
+                offset = outputMultiByteChar(ch, text, offset, len);
+                continue main_loop;
+            }
+
+            if (_outputPtr >= _outputBufferLen) {
+                flushBuffer();
+            }
+            _outputBuffer[_outputPtr++] = (byte)ch;
+        }
+    }
+
+    public final void writeRawUtf8Characters(ByteBuffer utf8)
+        throws IOException, XMLStreamException
+    {
+        if (mSurrogate != 0) {
+            throwUnpairedSurrogate();
+        }
+        int len;
+        while ((len = utf8.remaining()) > 0) {
+            int room = _outputBufferLen - _outputPtr;
+            if (room <= 0) {
+                flushBuffer();
+                room = _outputBufferLen;
+            }
+            if (len > room) {
+                len = room;
+            }
+            int ptr = _outputPtr;
+            utf8.get(_outputBuffer, ptr, len);
+            // no need to decode anything, but row count is to be kept up to date
+            final byte[] bbuf = _outputBuffer;
+            for (int end = ptr+len; ptr < end; ++ptr) {
+                if (bbuf[ptr] == BYTE_LF) {
+                    ++mLocRowNr;
+                }
+            }
+            _outputPtr = ptr;
+        }
     }
 
     public final void writeCharacters(char[] cbuf, int offset, int len)
         throws IOException, XMLStreamException
     {
         if (mSurrogate != 0) {
-            outputSurrogates(mSurrogate, cbuf[offset]);
+            int surr = mSurrogate;
+            mSurrogate = 0;
+            outputSurrogates(surr, cbuf[offset]);
             ++offset;
             --len;
         }
@@ -924,22 +1282,28 @@ public abstract class ByteXmlWriter
 
             inner_loop:
             while (true) {
-                int ch = (int) cbuf[offset];
-                if (ch >= OutputCharTypes.MAIN_TABLE_SIZE) {
-                    break inner_loop;
+                /* Most content needs neither escaping nor multi-byte
+                 * encoding: so let's first find the end of such a run,
+                 * and then copy it all in one tight loop.
+                 */
+                final int end = findCleanEnd(cbuf, offset, len, charTypes);
+                final byte[] bbuf = _outputBuffer;
+                while (offset < end) {
+                    bbuf[ptr++] = (byte) cbuf[offset++];
                 }
-                if (charTypes[ch] != XmlCharTypes.CT_OK) {
-                    /* This may look weird, but profiling showed that
-                     * handling of lfs for indentation has measurable
-                     * effect; plus, that checking it here will not
-                     * slow down inner loop either
-                     */
-                    if (ch != '\n') {
-                        break inner_loop;
-                    }
-                    ++mLocRowNr;
+                if (offset >= len) {
+                    break main_loop;
                 }
-                _outputBuffer[ptr++] = (byte) ch;
+                /* This may look weird, but profiling showed that
+                 * handling of lfs for indentation has measurable
+                 * effect; plus, that checking it here will not
+                 * slow down inner loop either
+                 */
+                if (cbuf[offset] != '\n') {
+                    break inner_loop;
+                }
+                ++mLocRowNr;
+                bbuf[ptr++] = BYTE_LF;
                 if (++offset >= len) {
                     break main_loop;
                 }
@@ -955,6 +1319,8 @@ public abstract class ByteXmlWriter
                     // !!! TBI: line count
                     // Also, CR to be quoted?
                     if (_config.willEscapeCR()) {
+                        _outputPtr = ptr;
+                        writeAsEntity(ch);
                         break;
                     }
                     _outputBuffer[ptr++] = (byte)ch;
@@ -1065,7 +1431,7 @@ public abstract class ByteXmlWriter
                 case CT_MULTIBYTE_2: // 3, 4 and N can never occur
                     // To off-line or not?
                     output2ByteChar(ch);
-                    break;
+                    continue main_loop;
                 case CT_RBRACKET: // may need to quote as well...
                     // Let's not quote if known not to be followed by '>'
                     if (offset >= len || cbuf[offset] == '>') {
@@ -1076,8 +1442,8 @@ public abstract class ByteXmlWriter
                 default:
                     break;
                 }
-            } else {
-                writeAsEntity(ch);
+            } else { // beyond 2-byte encodables; 3-byte, surrogates?
+                offset = outputMultiByteChar(ch, cbuf, offset, len);
                 continue main_loop;
             }
 
@@ -1577,7 +1943,24 @@ public abstract class ByteXmlWriter
             mLocPastChars += ptr;
             mLocRowStartOffset -= ptr;
             _outputPtr = 0;
-            _out.write(_outputBuffer, 0, ptr);
+            if (_channel != null) {
+                ByteBuffer bb = _channelBuffer;
+                bb.limit(ptr);
+                bb.position(0);
+                ChannelOutputStream.writeFully(_channel, bb);
+            } else if (_chain != null) {
+                // Chain takes over the full buffer, gives a new one to continue with
+                _outputBuffer = _chain.appendSegment(_outputBuffer, ptr);
+            } else if (_pipeline != null) {
+                // Pipelined: continue with the spare buffer while this one is written
+                byte[] spare = _pipeline.writeAsync(_outputBuffer, ptr);
+                if (spare == null) {
+                    spare = _config.allocFullBBuffer(_outputBufferLen);
+                }
+                _outputBuffer = spare;
+            } else {
+                _out.write(_outputBuffer, 0, ptr);
+            }
         }
     }
 
@@ -1586,12 +1969,12 @@ public abstract class ByteXmlWriter
     {
         // Quickie check to avoid 
 
-        byte[] buf = _outputBuffer;
         int ptr = _outputPtr;
-        if ((ptr + 10) >= buf.length) { // &#x [up to 6 hex digits] ;
+        if ((ptr + 10) >= _outputBufferLen) { // &#x [up to 6 hex digits] ;
             flushBuffer();
             ptr = _outputPtr;
         }
+        byte[] buf = _outputBuffer;
         buf[ptr++] = BYTE_AMP;
 
         // Can use more optimal notation for 8-bit ascii stuff:
@@ -1673,6 +2056,73 @@ public abstract class ByteXmlWriter
     ////////////////////////////////////////////////////
      */
 
+    /**
+     * Helper method for finding the end of the run of chars, starting
+     * at given offset, that can be output as is, as single bytes:
+     * that is, chars that need neither escaping nor multi-byte encoding.
+     *
+     * @return Offset of the first char that can not be output as is,
+     *   or <code>end</code> if there are no such chars
+     */
+    protected final static int findCleanEnd(char[] cbuf, int offset, int end,
+                                            int[] charTypes)
+    {
+        /* Let's check 4 chars per round first: since table size is a power
+         * of two, none of chars is outside it if their OR isn't; and
+         * since CT_OK is 0, OR of their types tells if all are ok.
+         */
+        for (final int end4 = end - 3; offset < end4; offset += 4) {
+            final int c0 = cbuf[offset], c1 = cbuf[offset+1], c2 = cbuf[offset+2], c3 = cbuf[offset+3];
+            if ((c0 | c1 | c2 | c3) >= OutputCharTypes.MAIN_TABLE_SIZE
+                || (charTypes[c0] | charTypes[c1] | charTypes[c2] | charTypes[c3]) != XmlCharTypes.CT_OK) {
+                break;
+            }
+        }
+        while (offset < end) {
+            int ch = cbuf[offset];
+            if (ch >= OutputCharTypes.MAIN_TABLE_SIZE
+                || charTypes[ch] != XmlCharTypes.CT_OK) {
+                break;
+            }
+            ++offset;
+        }
+        return offset;
+    }
+
+    protected final static int findCleanEnd(String str, int offset, int end,
+                                            int[] charTypes)
+    {
+        for (final int end4 = end - 3; offset < end4; offset += 4) {
+            final int c0 = str.charAt(offset), c1 = str.charAt(offset+1), c2 = str.charAt(offset+2), c3 = str.charAt(offset+3);
+            if ((c0 | c1 | c2 | c3) >= OutputCharTypes.MAIN_TABLE_SIZE
+                || (charTypes[c0] | charTypes[c1] | charTypes[c2] | charTypes[c3]) != XmlCharTypes.CT_OK) {
+                break;
+            }
+        }
+        while (offset < end) {
+            int ch = str.charAt(offset);
+            if (ch >= OutputCharTypes.MAIN_TABLE_SIZE
+                || charTypes[ch] != XmlCharTypes.CT_OK) {
+                break;
+            }
+            ++offset;
+        }
+        return offset;
+    }
+
+    /**
+     * Helper method for copying a run of chars known to be single-byte
+     * ones (as found by {@link #findCleanEnd(String,int,int,int[])}):
+     * uses the (deprecated, but here exactly right) method that just
+     * drops high-order bits, since it is a bulk copy for Strings.
+     */
+    @SuppressWarnings("deprecation")
+    protected final static void copyClean(String str, int offset, int end,
+                                          byte[] bbuf, int ptr)
+    {
+        str.getBytes(offset, end, bbuf, ptr);
+    }
+
     protected final static byte[] getAscii(String str)
     {
         int len = str.length();
@@ -23,6 +23,7 @@ import org.codehaus.stax2.ri.typed.AsciiValueEncoder;
 
 
 import com.fasterxml.aalto.ErrorConsts;
+import com.fasterxml.aalto.io.UTF16Writer;
 import com.fasterxml.aalto.io.UTF8Writer;
 import com.fasterxml.aalto.util.XmlCharTypes;
 
@@ -189,7 +190,9 @@ public final class CharXmlWriter
              *   the second check... but I'll be damned if I rememeber
              *   what exactly it was right now.
              */
-            if (doClose || (_out instanceof UTF8Writer)) {
+            // (encoding writers need to flush, free their buffers)
+            if (doClose || (_out instanceof UTF8Writer)
+                || (_out instanceof UTF16Writer)) {
                 _out.close();
                 _out = null;
             }
@@ -0,0 +1,144 @@
+package com.fasterxml.aalto.out;
+
+import org.codehaus.stax2.ri.typed.AsciiValueEncoder;
+
+import com.fasterxml.aalto.util.FloatFormatter;
+
+/**
+ * Encoder used for writing <code>float</code> and <code>double</code>
+ * values, and arrays thereof, via Typed Access API. Unlike encoders
+ * of {@link org.codehaus.stax2.ri.typed.ValueEncoderFactory}, which go
+ * through <code>String.valueOf()</code>, values are formatted directly
+ * into writer's output buffer using {@link FloatFormatter}. Instances
+ * are reused by stream writers, so that no objects are allocated
+ * per value written.
+ *<p>
+ * Output format is otherwise same as that of stax2 encoders:
+ * array values are preceded by a space, scalars are not.
+ */
+final class FloatingPointEncoder
+    extends AsciiValueEncoder
+{
+    private final static int MAX_DOUBLE_LENGTH = FloatFormatter.MAX_DOUBLE_LENGTH + 1;
+
+    private final static int MAX_FLOAT_LENGTH = FloatFormatter.MAX_FLOAT_LENGTH + 1;
+
+    private final double[] _oneDouble = new double[1];
+
+    private final float[] _oneFloat = new float[1];
+
+    private double[] _doubles;
+
+    private float[] _floats;
+
+    private int _ptr;
+
+    private int _end;
+
+    /**
+     * Whether values are to be preceded by a space (true for arrays)
+     */
+    private boolean _addSpace;
+
+    /**
+     * Buffer used for formatting values when encoding to char arrays
+     */
+    private byte[] _charBuffer;
+
+    public FloatingPointEncoder() { }
+
+    public FloatingPointEncoder reset(double value)
+    {
+        _oneDouble[0] = value;
+        return reset(_oneDouble, 0, 1, false);
+    }
+
+    public FloatingPointEncoder reset(float value)
+    {
+        _oneFloat[0] = value;
+        return reset(_oneFloat, 0, 1, false);
+    }
+
+    public FloatingPointEncoder reset(double[] values, int from, int length, boolean addSpace)
+    {
+        _doubles = values;
+        _floats = null;
+        _ptr = from;
+        _end = from + length;
+        _addSpace = addSpace;
+        return this;
+    }
+
+    public FloatingPointEncoder reset(float[] values, int from, int length, boolean addSpace)
+    {
+        _floats = values;
+        _doubles = null;
+        _ptr = from;
+        _end = from + length;
+        _addSpace = addSpace;
+        return this;
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // AsciiValueEncoder implementation
+    ////////////////////////////////////////////////
+     */
+
+    public boolean isCompleted() {
+        return (_ptr >= _end);
+    }
+
+    public int encodeMore(byte[] buf, int ptr, int end)
+    {
+        if (_doubles != null) {
+            final double[] values = _doubles;
+            end -= MAX_DOUBLE_LENGTH;
+            while (ptr <= end && _ptr < _end) {
+                if (_addSpace) {
+                    buf[ptr++] = ' ';
+                }
+                ptr = FloatFormatter.writeDouble(values[_ptr++], buf, ptr);
+            }
+        } else {
+            final float[] values = _floats;
+            end -= MAX_FLOAT_LENGTH;
+            while (ptr <= end && _ptr < _end) {
+                if (_addSpace) {
+                    buf[ptr++] = ' ';
+                }
+                ptr = FloatFormatter.writeFloat(values[_ptr++], buf, ptr);
+            }
+        }
+        if (_ptr >= _end) { // no need to hold on to caller's data
+            _doubles = null;
+            _floats = null;
+        }
+        return ptr;
+    }
+
+    public int encodeMore(char[] buf, int ptr, int end)
+    {
+        byte[] bbuf = _charBuffer;
+        if (bbuf == null) {
+            _charBuffer = bbuf = new byte[MAX_DOUBLE_LENGTH];
+        }
+        final boolean isDouble = (_doubles != null);
+        end -= isDouble ? MAX_DOUBLE_LENGTH : MAX_FLOAT_LENGTH;
+        while (ptr <= end && _ptr < _end) {
+            if (_addSpace) {
+                buf[ptr++] = ' ';
+            }
+            int len = isDouble ? FloatFormatter.writeDouble(_doubles[_ptr++], bbuf, 0)
+                : FloatFormatter.writeFloat(_floats[_ptr++], bbuf, 0);
+            for (int i = 0; i < len; ++i) {
+                buf[ptr++] = (char) bbuf[i];
+            }
+        }
+        if (_ptr >= _end) {
+            _doubles = null;
+            _floats = null;
+        }
+        return ptr;
+    }
+}
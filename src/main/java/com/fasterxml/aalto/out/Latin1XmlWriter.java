@@ -55,7 +55,9 @@ public final class Latin1XmlWriter
             return;
         }
         if (mSurrogate != 0) {
-            outputSurrogates(mSurrogate, cbuf[offset]);
+            int surr = mSurrogate;
+            mSurrogate = 0;
+            outputSurrogates(surr, cbuf[offset]);
             ++offset;
             --len;
         }
@@ -87,10 +87,16 @@ public final class NonRepairingStreamWriter
         if (!_stateStartElementOpen) {
             throwOutputError(ErrorConsts.WERR_ATTR_NO_ELEM);
         }
-        WName name = (prefix == null || prefix.length() == 0)
+        _writeAttribute(_findAttrName(prefix, nsURI, localName), value);
+    }
+
+    @Override
+    protected WName _findAttrName(String prefix, String nsURI, String localName)
+        throws XMLStreamException
+    {
+        return (prefix == null || prefix.length() == 0)
             ? _symbols.findSymbol(localName)
             : _symbols.findSymbol(prefix, localName);
-        _writeAttribute(name, value);
     }
 
     public void writeDefaultNamespace(String nsURI)
@@ -192,6 +198,26 @@ public final class NonRepairingStreamWriter
         _writeStartTag(name, false, nsURI);
     }
 
+    /*
+    /////////////////////////////////////////////////////
+    // Implementations of abstract methods from base class,
+    // pre-resolved names
+    /////////////////////////////////////////////////////
+     */
+
+    protected void _writeStartElement(OutputName name, boolean isEmpty)
+        throws XMLStreamException
+    {
+        _verifyStartElement(name._prefix, name._localName);
+        _writeStartTag(_nameFor(name), isEmpty, name._nsURI);
+    }
+
+    protected void _writeAttribute(OutputName name, String value)
+        throws XMLStreamException
+    {
+        _writeAttribute(_nameFor(name), value);
+    }
+
     /*
     /////////////////////////////////////////////////////
     // Implementations of abstract methods from base class,
@@ -0,0 +1,78 @@
+package com.fasterxml.aalto.out;
+
+/**
+ * Handle for an element or attribute name (prefix, local name and
+ * namespace URI) that has been resolved by a stream writer, using
+ * {@link StreamWriterBase#resolveName}, and that can be used for writing
+ * elements and attributes without having to look up (or construct)
+ * the serialized name for each call.
+ *<p>
+ * Handles are immutable, and can be used with any Aalto stream writer;
+ * but they only save the name lookup when used with writers of the
+ * same type and output encoding as the writer that resolved them.
+ */
+public final class OutputName
+{
+    final String _prefix;
+
+    final String _localName;
+
+    /**
+     * Namespace URI; empty String for "no namespace"
+     */
+    final String _nsURI;
+
+    /**
+     * Serialized name, for the writer type and encoding it was
+     * resolved for
+     */
+    final WName _name;
+
+    private final Class<?> _writerType;
+
+    private final String _encoding;
+
+    private final int _highest;
+
+    OutputName(String prefix, String localName, String nsURI,
+               WName name, XmlWriter xw, String encoding)
+    {
+        _prefix = (prefix == null || prefix.length() == 0) ? null : prefix;
+        _localName = localName;
+        _nsURI = (nsURI == null) ? "" : nsURI;
+        _name = name;
+        _writerType = xw.getClass();
+        _encoding = encoding;
+        _highest = xw.getHighestEncodable();
+    }
+
+    /**
+     * @return Prefix of the name; null if none
+     */
+    public String getPrefix() { return _prefix; }
+
+    public String getLocalName() { return _localName; }
+
+    /**
+     * @return Namespace URI of the name; empty String if none
+     */
+    public String getNamespaceURI() { return _nsURI; }
+
+    /**
+     * @return True if the serialized name can be used as is with
+     *   given writer
+     */
+    boolean isResolvedFor(XmlWriter xw, String encoding)
+    {
+        return (xw.getClass() == _writerType)
+            && (xw.getHighestEncodable() == _highest)
+            && ((encoding == null) ? (_encoding == null) : encoding.equals(_encoding));
+    }
+
+    @Override
+    public String toString()
+    {
+        String name = (_prefix == null) ? _localName : (_prefix + ":" + _localName);
+        return (_nsURI.length() == 0) ? name : ("{"+_nsURI+"}"+name);
+    }
+}
@@ -0,0 +1,589 @@
+package com.fasterxml.aalto.out;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Definition of an element (optionally with child elements and text)
+ * that is to be output many times, with only some of attribute values
+ * and text segments differing between instances. Constant parts are
+ * escaped and encoded just once per output encoding, and instances
+ * are written using {@link StreamWriterBase#writeTemplate} by passing
+ * values for "slots", in the order in which slots were defined.
+ *<p>
+ * Templates are built by calling definition methods in document order,
+ * starting with {@link #startElement}; for example:
+ *<pre>
+ *  OutputTemplate t = new OutputTemplate()
+ *     .startElement("item").attribute("type", "book").attributeSlot("id")
+ *     .textSlot()
+ *     .endElement();
+ *</pre>
+ * Elements need not be closed by the template: those that are left
+ * open are closed by the caller, with <code>writeEndElement()</code>;
+ * and if template ends right after a start tag, attributes can still
+ * be added to it. Names are output exactly as given, and no namespace
+ * repairing is done: any prefixes used have to be bound either by
+ * namespace declarations of the template, or in the output context.
+ *<p>
+ * Once a template has been used for output, it can no longer be
+ * modified; at that point it is also safe to share it between threads.
+ */
+public final class OutputTemplate
+{
+    final static int OP_START = 1;
+    final static int OP_NS = 2;
+    final static int OP_ATTR = 3;
+    final static int OP_ATTR_SLOT = 4;
+    final static int OP_TEXT = 5;
+    final static int OP_TEXT_SLOT = 6;
+    final static int OP_END = 7;
+
+    private final ArrayList<Op> _ops = new ArrayList<Op>();
+
+    /**
+     * Number of currently open elements during definition
+     */
+    private int _depth = 0;
+
+    private int _slotCount = 0;
+
+    /**
+     * Compiled versions of the template, one per output encoding
+     * (and writer type); replaced (not modified) when a new one
+     * is added.
+     */
+    private volatile Compiled[] _compiled = null;
+
+    public OutputTemplate() { }
+
+    /*
+    ////////////////////////////////////////////////////
+    // Definition
+    ////////////////////////////////////////////////////
+     */
+
+    public OutputTemplate startElement(String localName) {
+        return startElement(null, localName);
+    }
+
+    public OutputTemplate startElement(String prefix, String localName)
+    {
+        _verifyModifiable();
+        if (_depth == 0 && !_ops.isEmpty()) {
+            throw new IllegalStateException("Template can only contain a single root element");
+        }
+        ++_depth;
+        return _add(OP_START, prefix, localName, null);
+    }
+
+    /**
+     * Method for adding a namespace declaration for the current
+     * start tag.
+     *
+     * @param prefix Prefix to bind; null or empty String for the default
+     *   namespace
+     */
+    public OutputTemplate namespace(String prefix, String uri)
+    {
+        _verifyInStartTag();
+        _verifyValue(uri);
+        return _add(OP_NS, prefix, null, uri);
+    }
+
+    public OutputTemplate attribute(String localName, String value) {
+        return attribute(null, localName, value);
+    }
+
+    public OutputTemplate attribute(String prefix, String localName, String value)
+    {
+        _verifyInStartTag();
+        _verifyValue(value);
+        return _add(OP_ATTR, prefix, localName, value);
+    }
+
+    /**
+     * Method for adding an attribute, value of which is given when
+     * writing an instance; if the value given is null, attribute is
+     * not written at all.
+     */
+    public OutputTemplate attributeSlot(String localName) {
+        return attributeSlot(null, localName);
+    }
+
+    public OutputTemplate attributeSlot(String prefix, String localName)
+    {
+        _verifyInStartTag();
+        ++_slotCount;
+        return _add(OP_ATTR_SLOT, prefix, localName, null);
+    }
+
+    public OutputTemplate characters(String text)
+    {
+        _verifyInElement();
+        _verifyValue(text);
+        return _add(OP_TEXT, null, null, text);
+    }
+
+    /**
+     * Method for adding text content that is given when writing an
+     * instance; null value is output as empty text.
+     */
+    public OutputTemplate textSlot()
+    {
+        _verifyInElement();
+        ++_slotCount;
+        return _add(OP_TEXT_SLOT, null, null, null);
+    }
+
+    public OutputTemplate endElement()
+    {
+        _verifyInElement();
+        --_depth;
+        return _add(OP_END, null, null, null);
+    }
+
+    /*
+    ////////////////////////////////////////////////////
+    // Accessors
+    ////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Number of values that need to be passed when writing
+     *   an instance of this template
+     */
+    public int getSlotCount() { return _slotCount; }
+
+    /**
+     * @return True if template leaves one or more elements open
+     */
+    public boolean isOpen() { return _depth > 0; }
+
+    String getRootPrefix() {
+        return _ops.isEmpty() ? null : _ops.get(0).prefix;
+    }
+
+    String getRootLocalName() {
+        return _ops.isEmpty() ? null : _ops.get(0).localName;
+    }
+
+    /*
+    ////////////////////////////////////////////////////
+    // Package methods, compilation
+    ////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for finding the compiled version of this template for
+     * given writer, constructing it if necessary.
+     */
+    Compiled compiledFor(XmlWriter xw, WNameTable symbols, String encoding)
+        throws XMLStreamException
+    {
+        final int highest = xw.getHighestEncodable();
+        final Class<?> writerType = xw.getClass();
+        Compiled[] curr = _compiled;
+        if (curr != null) {
+            for (Compiled c : curr) {
+                if (c.matches(writerType, encoding, highest)) {
+                    return c;
+                }
+            }
+        }
+        if (_ops.isEmpty()) {
+            throw new IllegalStateException("Empty template: no root element defined");
+        }
+        Compiled c = _compile(xw, symbols, encoding);
+        synchronized (this) {
+            curr = _compiled;
+            int len = (curr == null) ? 0 : curr.length;
+            Compiled[] result = new Compiled[len+1];
+            if (len > 0) {
+                System.arraycopy(curr, 0, result, 0, len);
+            }
+            result[len] = c;
+            _compiled = result;
+        }
+        return c;
+    }
+
+    private Compiled _compile(XmlWriter xw, WNameTable symbols, String encoding)
+        throws XMLStreamException
+    {
+        final int highest = xw.getHighestEncodable();
+        ArrayList<String> parts = new ArrayList<String>();
+        WName[] slotNames = new WName[_slotCount];
+        int slot = 0;
+        // names of open elements, and their namespace declarations
+        ArrayList<WName> open = new ArrayList<WName>();
+        ArrayList<ArrayList<String>> openNs = new ArrayList<ArrayList<String>>();
+        boolean tagOpen = false;
+        StringBuilder sb = new StringBuilder();
+
+        for (Op op : _ops) {
+            switch (op.type) {
+            case OP_START:
+                if (tagOpen) {
+                    sb.append('>');
+                }
+                {
+                    WName name = _findName(symbols, op);
+                    sb.append('<').append(name.getPrefixedName());
+                    open.add(name);
+                    openNs.add(new ArrayList<String>());
+                }
+                tagOpen = true;
+                break;
+            case OP_NS:
+                sb.append(" xmlns");
+                if (op.prefix != null && op.prefix.length() > 0) {
+                    sb.append(':').append(op.prefix);
+                }
+                sb.append("=\"");
+                _appendEscaped(sb, op.value, true, highest);
+                sb.append('"');
+                {
+                    ArrayList<String> decls = openNs.get(openNs.size()-1);
+                    decls.add((op.prefix == null) ? "" : op.prefix);
+                    decls.add(op.value);
+                }
+                break;
+            case OP_ATTR:
+                sb.append(' ').append(_findName(symbols, op).getPrefixedName()).append("=\"");
+                _appendEscaped(sb, op.value, true, highest);
+                sb.append('"');
+                break;
+            case OP_ATTR_SLOT:
+                parts.add(sb.toString());
+                sb.setLength(0);
+                slotNames[slot++] = _findName(symbols, op);
+                break;
+            case OP_TEXT:
+            case OP_TEXT_SLOT:
+                if (tagOpen) {
+                    sb.append('>');
+                    tagOpen = false;
+                }
+                if (op.type == OP_TEXT) {
+                    _appendEscaped(sb, op.value, false, highest);
+                } else {
+                    parts.add(sb.toString());
+                    sb.setLength(0);
+                    ++slot; // text slots have no name
+                }
+                break;
+            case OP_END:
+                {
+                    WName name = open.remove(open.size()-1);
+                    openNs.remove(openNs.size()-1);
+                    if (tagOpen) {
+                        sb.append("/>");
+                        tagOpen = false;
+                    } else {
+                        sb.append("</").append(name.getPrefixedName()).append('>');
+                    }
+                }
+                break;
+            }
+        }
+        parts.add(sb.toString());
+
+        String[][] nsDecls = new String[openNs.size()][];
+        for (int i = 0; i < nsDecls.length; ++i) {
+            ArrayList<String> decls = openNs.get(i);
+            nsDecls[i] = decls.toArray(new String[decls.size()]);
+        }
+        return new Compiled(xw, encoding, parts, slotNames,
+                            open.toArray(new WName[open.size()]), nsDecls, tagOpen);
+    }
+
+    private static WName _findName(WNameTable symbols, Op op)
+        throws XMLStreamException
+    {
+        return (op.prefix == null || op.prefix.length() == 0)
+            ? symbols.findSymbol(op.localName)
+            : symbols.findSymbol(op.prefix, op.localName);
+    }
+
+    /**
+     * Helper method for escaping constant text or attribute value:
+     * in addition to markup characters, characters that can not be
+     * expressed using output encoding are replaced by character
+     * entities.
+     */
+    private static void _appendEscaped(StringBuilder sb, String value,
+                                       boolean inAttr, int highest)
+    {
+        for (int i = 0, len = value.length(); i < len; ++i) {
+            int c = value.charAt(i);
+            switch (c) {
+            case '&':
+                sb.append("&amp;");
+                continue;
+            case '<':
+                sb.append("&lt;");
+                continue;
+            case '>':
+                if (!inAttr) {
+                    sb.append("&gt;");
+                    continue;
+                }
+                break;
+            case '"':
+                if (inAttr) {
+                    sb.append("&quot;");
+                    continue;
+                }
+                break;
+            case '\r':
+                _appendEntity(sb, c);
+                continue;
+            case '\t':
+            case '\n':
+                if (inAttr) {
+                    _appendEntity(sb, c);
+                    continue;
+                }
+                break;
+            }
+            if (c > highest) {
+                if (c >= XmlWriter.SURR1_FIRST && c <= XmlWriter.SURR1_LAST) {
+                    // validated when defined, so second part must be there
+                    int c2 = value.charAt(++i);
+                    c = 0x10000 + ((c - XmlWriter.SURR1_FIRST) << 10) + (c2 - XmlWriter.SURR2_FIRST);
+                }
+                _appendEntity(sb, c);
+                continue;
+            }
+            sb.append((char) c);
+        }
+    }
+
+    private static void _appendEntity(StringBuilder sb, int c)
+    {
+        sb.append("&#x").append(Integer.toHexString(c)).append(';');
+    }
+
+    /*
+    ////////////////////////////////////////////////////
+    // Internal methods, definition
+    ////////////////////////////////////////////////////
+     */
+
+    private OutputTemplate _add(int type, String prefix, String localName, String value)
+    {
+        _ops.add(new Op(type, prefix, localName, value));
+        return this;
+    }
+
+    private void _verifyModifiable()
+    {
+        if (_compiled != null) {
+            throw new IllegalStateException("Can not modify template after it has been used for output");
+        }
+    }
+
+    private void _verifyInStartTag()
+    {
+        _verifyModifiable();
+        if (!_ops.isEmpty()) {
+            switch (_ops.get(_ops.size()-1).type) {
+            case OP_START:
+            case OP_NS:
+            case OP_ATTR:
+            case OP_ATTR_SLOT:
+                return;
+            }
+        }
+        throw new IllegalStateException("Attributes and namespace declarations can only be added right after a start element");
+    }
+
+    private void _verifyInElement()
+    {
+        _verifyModifiable();
+        if (_depth == 0) {
+            throw new IllegalStateException("No open element");
+        }
+    }
+
+    /**
+     * Method for verifying that given value only contains characters
+     * that are valid in xml 1.0 content
+     */
+    private static void _verifyValue(String value)
+    {
+        if (value == null) {
+            throw new IllegalArgumentException("Null value");
+        }
+        for (int i = 0, len = value.length(); i < len; ++i) {
+            char c = value.charAt(i);
+            if (c < 0x20) {
+                if (c == '\t' || c == '\n' || c == '\r') {
+                    continue;
+                }
+            } else if (c < XmlWriter.SURR1_FIRST) {
+                continue;
+            } else if (c <= XmlWriter.SURR1_LAST) {
+                if (++i < len) {
+                    char c2 = value.charAt(i);
+                    if (c2 >= XmlWriter.SURR2_FIRST && c2 <= XmlWriter.SURR2_LAST) {
+                        continue;
+                    }
+                }
+            } else if (c > XmlWriter.SURR2_LAST && c < 0xFFFE) {
+                continue;
+            }
+            throw new IllegalArgumentException("Invalid character (code 0x"+Integer.toHexString(c)
+                                               +") in template value \""+value+"\"");
+        }
+    }
+
+    /*
+    ////////////////////////////////////////////////////
+    // Helper classes
+    ////////////////////////////////////////////////////
+     */
+
+    private final static class Op
+    {
+        final int type;
+        final String prefix, localName, value;
+
+        Op(int type, String prefix, String localName, String value)
+        {
+            this.type = type;
+            this.prefix = prefix;
+            this.localName = localName;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Version of a template compiled for a specific writer type and
+     * output encoding: constant parts are stored fully escaped and
+     * encoded (or, for character-based writers, as escaped chars);
+     * and names of attribute slots, as well as of elements left open,
+     * are resolved.
+     */
+    final static class Compiled
+    {
+        private final Class<?> _writerType;
+        private final String _encoding;
+        private final int _highest;
+
+        /**
+         * Constant parts for byte-based writers; one more than there
+         * are slots
+         */
+        private final byte[][] _byteParts;
+
+        /**
+         * Constant parts for character-based writers
+         */
+        private final char[][] _charParts;
+
+        /**
+         * Names of attribute slots; null for text slots
+         */
+        private final WName[] _slotNames;
+
+        /**
+         * Names of elements left open, outermost first
+         */
+        final WName[] _openElements;
+
+        /**
+         * Namespace declarations of elements left open, as (prefix, URI)
+         * pairs, prefix being empty String for the default namespace
+         */
+        final String[][] _openNsDecls;
+
+        /**
+         * Whether the start tag of the innermost open element is left
+         * open as well
+         */
+        final boolean _startTagOpen;
+
+        Compiled(XmlWriter xw, String encoding, ArrayList<String> parts,
+                 WName[] slotNames, WName[] openElements, String[][] openNsDecls,
+                 boolean startTagOpen)
+            throws XMLStreamException
+        {
+            _writerType = xw.getClass();
+            _encoding = encoding;
+            _highest = xw.getHighestEncodable();
+            final int count = parts.size();
+            if (xw instanceof ByteXmlWriter) {
+                ByteXmlWriter bxw = (ByteXmlWriter) xw;
+                _byteParts = new byte[count][];
+                for (int i = 0; i < count; ++i) {
+                    _byteParts[i] = bxw.encodeMarkup(parts.get(i));
+                }
+                _charParts = null;
+            } else {
+                _byteParts = null;
+                _charParts = new char[count][];
+                for (int i = 0; i < count; ++i) {
+                    _charParts[i] = parts.get(i).toCharArray();
+                }
+            }
+            _slotNames = slotNames;
+            _openElements = openElements;
+            _openNsDecls = openNsDecls;
+            _startTagOpen = startTagOpen;
+        }
+
+        boolean matches(Class<?> writerType, String encoding, int highest)
+        {
+            return (writerType == _writerType) && (highest == _highest)
+                && ((encoding == null) ? (_encoding == null) : encoding.equals(_encoding));
+        }
+
+        void write(XmlWriter xw, String[] values)
+            throws IOException, XMLStreamException
+        {
+            final WName[] names = _slotNames;
+            final int count = names.length;
+            if (_byteParts != null) {
+                ByteXmlWriter bxw = (ByteXmlWriter) xw;
+                for (int i = 0; ; ++i) {
+                    byte[] part = _byteParts[i];
+                    if (part.length > 0) {
+                        bxw.writeRaw(part, 0, part.length);
+                    }
+                    if (i == count) {
+                        break;
+                    }
+                    _writeSlot(xw, names[i], values[i]);
+                }
+            } else {
+                for (int i = 0; ; ++i) {
+                    char[] part = _charParts[i];
+                    if (part.length > 0) {
+                        xw.writeRaw(part, 0, part.length);
+                    }
+                    if (i == count) {
+                        break;
+                    }
+                    _writeSlot(xw, names[i], values[i]);
+                }
+            }
+        }
+
+        private static void _writeSlot(XmlWriter xw, WName name, String value)
+            throws IOException, XMLStreamException
+        {
+            if (value == null) { // null attributes are skipped, text empty
+                return;
+            }
+            if (name == null) {
+                xw.writeCharacters(value);
+            } else {
+                xw.writeAttribute(name, value);
+            }
+        }
+    }
+}
@@ -148,11 +148,17 @@ public final class RepairingStreamWriter
         if (!_stateStartElementOpen) {
             throwOutputError(ErrorConsts.WERR_ATTR_NO_ELEM);
         }
+        _writeAttribute(_findAttrName(prefix, nsURI, localName), value);
+    }
+
+    @Override
+    protected WName _findAttrName(String prefix, String nsURI, String localName)
+        throws XMLStreamException
+    {
         // no URI? No prefix. Otherwise, need to find or bind:
-        WName name = (nsURI == null || nsURI.length() == 0)
+        return (nsURI == null || nsURI.length() == 0)
             ? _symbols.findSymbol(localName)
             : _generateAttrName(prefix, localName, nsURI);
-        _writeAttribute(name, value);
     }
 
     public void writeDefaultNamespace(String nsURI)
@@ -229,6 +235,51 @@ public final class RepairingStreamWriter
         _writeStartOrEmpty(prefix, localName, nsURI, false);
     }
 
+    /*
+    /////////////////////////////////////////////////////
+    // Implementations of abstract methods from base class,
+    // pre-resolved names
+    /////////////////////////////////////////////////////
+     */
+
+    protected void _writeStartElement(OutputName name, boolean isEmpty)
+        throws XMLStreamException
+    {
+        /* Fast path is only possible if the name can be used as is:
+         * that is, its prefix is already bound to its URI (or, for
+         * "no namespace", default namespace is not bound). If not,
+         * need to go through full handling, which may add bindings.
+         */
+        final String uri = name._nsURI;
+        boolean ok;
+        if (uri.length() == 0) {
+            ok = (name._prefix == null) && _currElem.hasEmptyDefaultNs();
+        } else {
+            ok = _currElem.isPrefixBoundTo(name._prefix, uri, _rootNsContext);
+        }
+        if (!ok || _validator != null) {
+            _writeStartOrEmpty(name._prefix, name._localName, uri, isEmpty);
+            return;
+        }
+        _verifyStartElement(name._prefix, name._localName);
+        _writeStartTag(_nameFor(name), isEmpty, uri);
+    }
+
+    protected void _writeAttribute(OutputName name, String value)
+        throws XMLStreamException
+    {
+        final String uri = name._nsURI;
+        if (uri.length() > 0) {
+            // attributes need an explicit prefix, bound to the URI
+            if (name._prefix == null
+                || _currElem.checkPrefixValidity(name._prefix, uri, _rootNsContext) != OutputElement.PrefixState.OK) {
+                _writeAttribute(_generateAttrName(name._prefix, name._localName, uri), value);
+                return;
+            }
+        }
+        _writeAttribute(_nameFor(name), value);
+    }
+
     /*
     /////////////////////////////////////////////////////
     // Implementations of abstract methods from base class,
@@ -50,6 +50,15 @@ public abstract class SingleByteXmlWriter
     public abstract void writeRaw(char[] cbuf, int offset, int len)
         throws IOException, XMLStreamException;
 
+    /**
+     * Since markup can only contain encodable characters, all of
+     * them map directly to single bytes.
+     */
+    protected final byte[] encodeMarkup(String markup)
+    {
+        return getAscii(markup);
+    }
+
     /*
     ////////////////////////////////////////////////////
     // Internal methods, low-level write
@@ -98,6 +107,26 @@ public abstract class SingleByteXmlWriter
         return inputOffset;
     }
 
+    final protected int outputMultiByteChar(int ch, String str, int inputOffset, int inputLen)
+        throws IOException, XMLStreamException
+    {
+        if (ch >= SURR1_FIRST) { // surrogate?
+            if (ch <= SURR2_LAST) { // yes, outside of BMP
+                if (inputOffset >= inputLen) { // nope... have to note down
+                    mSurrogate = ch;
+                } else {
+                    int ch2 = str.charAt(inputOffset++);
+                    outputSurrogates(ch, ch2);
+                }
+                return inputOffset;
+            } else if (ch >= 0xFFFE) { // 0xFFFE, 0xFFFF are invalid
+                reportInvalidChar(ch);
+            }
+        } 
+        writeAsEntity(ch);
+        return inputOffset;
+    }
+
     protected final void outputSurrogates(int surr1, int surr2)
         throws IOException, XMLStreamException
     {
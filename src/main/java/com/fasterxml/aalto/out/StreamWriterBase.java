@@ -18,6 +18,7 @@ package com.fasterxml.aalto.out;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.text.MessageFormat;
 import java.util.*;
 
@@ -38,9 +39,12 @@ import org.codehaus.stax2.typed.Base64Variants;
 import com.fasterxml.aalto.ErrorConsts;
 import com.fasterxml.aalto.IoStreamException;
 import com.fasterxml.aalto.LocationImpl;
+import com.fasterxml.aalto.RawSubtree;
 import com.fasterxml.aalto.StreamExceptionBase;
 import com.fasterxml.aalto.ValidationException;
 import com.fasterxml.aalto.XmlConsts;
+import com.fasterxml.aalto.in.StreamReaderImpl;
+import com.fasterxml.aalto.util.CharsetNames;
 import com.fasterxml.aalto.util.TextUtil;
 
 /**
@@ -107,6 +111,12 @@ public abstract class StreamWriterBase
      */
     protected ValueEncoderFactory _valueEncoderFactory;
 
+    /**
+     * Encoder used for floating-point values written using Typed
+     * Access API; lazily constructed and reused.
+     */
+    private FloatingPointEncoder _fpEncoder;
+
     /*
     ////////////////////////////////////////////////////
     // Validation support
@@ -750,13 +760,13 @@ public abstract class StreamWriterBase
     public void writeFloat(float value)
         throws XMLStreamException
     {
-        writeTypedElement(valueEncoderFactory().getEncoder(value));
+        writeTypedElement(fpEncoder().reset(value));
     }
 
     public void writeDouble(double value)
         throws XMLStreamException
     {
-        writeTypedElement(valueEncoderFactory().getEncoder(value));
+        writeTypedElement(fpEncoder().reset(value));
     }
 
     public void writeInteger(BigInteger value)
@@ -794,13 +804,13 @@ public abstract class StreamWriterBase
     public void writeFloatArray(float[] value, int from, int length)
         throws XMLStreamException
     {
-        writeTypedElement(valueEncoderFactory().getEncoder(value, from, length));
+        writeTypedElement(fpEncoder().reset(value, from, length, true));
     }
 
     public void writeDoubleArray(double[] value, int from, int length)
         throws XMLStreamException
     {
-        writeTypedElement(valueEncoderFactory().getEncoder(value, from, length));
+        writeTypedElement(fpEncoder().reset(value, from, length, true));
     }
 
     public void writeBinary(byte[] value, int from, int length)
@@ -856,15 +866,13 @@ public abstract class StreamWriterBase
     public final void writeFloatAttribute(String prefix, String nsURI, String localName, float value)
         throws XMLStreamException
     {
-        writeTypedAttribute(prefix, nsURI, localName,
-                           valueEncoderFactory().getEncoder(value));
+        writeTypedAttribute(prefix, nsURI, localName, fpEncoder().reset(value));
     }
 
     public final void writeDoubleAttribute(String prefix, String nsURI, String localName, double value)
         throws XMLStreamException
     {
-        writeTypedAttribute(prefix, nsURI, localName,
-                           valueEncoderFactory().getEncoder(value));
+        writeTypedAttribute(prefix, nsURI, localName, fpEncoder().reset(value));
     }
 
     public final void writeIntegerAttribute(String prefix, String nsURI, String localName, BigInteger value)
@@ -908,14 +916,14 @@ public abstract class StreamWriterBase
         throws XMLStreamException
     {
         writeTypedAttribute(prefix, nsURI, localName,
-                            valueEncoderFactory().getEncoder(value, 0, value.length));
+                            fpEncoder().reset(value, 0, value.length, true));
     }
 
     public void writeDoubleArrayAttribute(String prefix, String nsURI, String localName, double[] value)
         throws XMLStreamException
     {
         writeTypedAttribute(prefix, nsURI, localName,
-                            valueEncoderFactory().getEncoder(value, 0, value.length));
+                            fpEncoder().reset(value, 0, value.length, true));
     }
 
     public void writeBinaryAttribute(String prefix, String nsURI, String localName, byte[] value)
@@ -945,6 +953,15 @@ public abstract class StreamWriterBase
     protected abstract String _serializeQName(QName name)
         throws XMLStreamException;
 
+    /**
+     * Method called to find the name to use for an attribute, when
+     * writing it. Need to leave implementation of this method abstract,
+     * because repairing and non-repairing modes differ in how names are
+     * handled.
+     */
+    protected abstract WName _findAttrName(String prefix, String nsURI, String localName)
+        throws XMLStreamException;
+
     /*
     ////////////////////////////////////////////////////
     // XMLStreamWriter2 methods (StAX2)
@@ -971,8 +988,255 @@ public abstract class StreamWriterBase
         }
     }
 
-    // From base class:
-    //public void copyEventFromReader(XMLStreamReader2 sr, boolean preserveEventData) throws XMLStreamException
+    /**
+     * Overridden to allow copying of textual content and attribute
+     * values as is, when copying from an Aalto reader that parses UTF-8
+     * input into a UTF-8 output: content that needs no escaping can then
+     * be copied without decoding and re-encoding it. Other events (and
+     * content that does need escaping) are copied using default handling.
+     */
+    @Override
+    public void copyEventFromReader(XMLStreamReader2 sr, boolean preserveEventData)
+        throws XMLStreamException
+    {
+        if (sr.getEventType() == CHARACTERS && _canCopyRaw(sr)) {
+            if (_copyRawCharacters((StreamReaderImpl) sr)) {
+                return;
+            }
+        }
+        super.copyEventFromReader(sr, preserveEventData);
+    }
+
+    @Override
+    protected void copyStartElement(XMLStreamReader sr)
+        throws XMLStreamException
+    {
+        if (!_canCopyRaw(sr)) {
+            super.copyStartElement(sr);
+            return;
+        }
+        // Same as default implementation, except for attribute values
+        int nsCount = sr.getNamespaceCount();
+        for (int i = 0; i < nsCount; ++i) {
+            String prefix = sr.getNamespacePrefix(i);
+            String uri = sr.getNamespaceURI(i);
+            if (prefix == null || prefix.length() == 0) {
+                setDefaultNamespace(uri);
+            } else {
+                setPrefix(prefix, uri);
+            }
+        }
+        writeStartElement(sr.getPrefix(), sr.getLocalName(), sr.getNamespaceURI());
+        for (int i = 0; i < nsCount; ++i) {
+            String prefix = sr.getNamespacePrefix(i);
+            String uri = sr.getNamespaceURI(i);
+            if (prefix == null || prefix.length() == 0) {
+                writeDefaultNamespace(uri);
+            } else {
+                writeNamespace(prefix, uri);
+            }
+        }
+        StreamReaderImpl r = (StreamReaderImpl) sr;
+        for (int i = 0, len = sr.getAttributeCount(); i < len; ++i) {
+            String prefix = sr.getAttributePrefix(i);
+            String nsURI = sr.getAttributeNamespace(i);
+            String localName = sr.getAttributeLocalName(i);
+            ByteBuffer raw = r.isRawAttributeValueVerbatim(i) ? r.getRawAttributeValue(i) : null;
+            // can not use raw value if it contains the quote char we use
+            if (raw != null && !_containsQuote(raw)) {
+                _writeAttribute(_findAttrName(prefix, nsURI, localName), raw);
+            } else {
+                writeAttribute(prefix, nsURI, localName, sr.getAttributeValue(i));
+            }
+        }
+    }
+
+    /*
+    ////////////////////////////////////////////////////
+    // Non-standard extensions, raw subtree output
+    ////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for outputting an element subtree read using
+     * {@link StreamReaderImpl#readRawSubtree}, as is. If the subtree
+     * relies on namespace bindings that differ from those in scope
+     * at the current output location, declarations for them are added
+     * to the start tag of the subtree root; otherwise content is output
+     * unchanged. Content is not validated, nor checked for
+     * well-formedness.
+     *<p>
+     * Content is copied byte by byte if output encoding is UTF-8; for
+     * other encodings it is decoded and output using {@link #writeRaw},
+     * which fails if content contains characters that the encoding
+     * can not represent.
+     */
+    public void writeRawSubtree(RawSubtree subtree)
+        throws XMLStreamException
+    {
+        _stateAnyOutput = true;
+        if (_stateStartElementOpen) {
+            _closeStartElement(_stateEmptyElement);
+        } else if (_state == State.EPILOG) {
+            if (_cfgCheckStructure) {
+                _reportNwfStructure(ErrorConsts.WERR_PROLOG_SECOND_ROOT, "[raw subtree]");
+            }
+        }
+        ByteBuffer content = subtree.getContent();
+        try {
+            Map<String,String> bindings = subtree.getNamespaceBindings();
+            if (bindings.isEmpty() || !_needNsDecls(bindings)) {
+                _writeRawUtf8(content);
+            } else {
+                int nameEnd = subtree.getRootNameEnd();
+                ByteBuffer rest = content.duplicate();
+                content.limit(nameEnd);
+                rest.position(nameEnd);
+                _writeRawUtf8(content);
+                for (Map.Entry<String,String> en : bindings.entrySet()) {
+                    String prefix = en.getKey();
+                    String uri = en.getValue();
+                    if (!uri.equals(_nonNullNsURI(prefix))) {
+                        if (prefix.length() == 0) {
+                            _writeDefaultNamespace(uri);
+                        } else {
+                            _writeNamespace(prefix, uri);
+                        }
+                    }
+                }
+                _writeRawUtf8(rest);
+            }
+        } catch (IOException ioe) {
+            throw new IoStreamException(ioe);
+        }
+        // Was this the root element?
+        if (_currElem.isRoot()) {
+            _state = State.EPILOG;
+        }
+    }
+
+    /*
+    ////////////////////////////////////////////////////
+    // Non-standard extensions, pre-resolved names
+    ////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for resolving given name into a handle that can be used
+     * for writing elements and attributes with that name repeatedly,
+     * without having to find the serialized name for each call.
+     *
+     * @param prefix Prefix to use, if any; in repairing mode, a suggested
+     *   prefix that is used if it is (or can be) bound to the namespace URI
+     * @param nsURI Namespace URI of the name; null or empty String
+     *   for "no namespace"
+     */
+    public OutputName resolveName(String prefix, String localName, String nsURI)
+        throws XMLStreamException
+    {
+        WName name = (prefix == null || prefix.length() == 0)
+            ? _symbols.findSymbol(localName)
+            : _symbols.findSymbol(prefix, localName);
+        return new OutputName(prefix, localName, nsURI, name, _xmlWriter,
+                              _config.getActualEncoding());
+    }
+
+    public void writeStartElement(OutputName name)
+        throws XMLStreamException
+    {
+        _writeStartElement(name, false);
+    }
+
+    public void writeEmptyElement(OutputName name)
+        throws XMLStreamException
+    {
+        _writeStartElement(name, true);
+    }
+
+    public void writeAttribute(OutputName name, String value)
+        throws XMLStreamException
+    {
+        if (!_stateStartElementOpen) {
+            throwOutputError(ErrorConsts.WERR_ATTR_NO_ELEM);
+        }
+        _writeAttribute(name, value);
+    }
+
+    protected abstract void _writeStartElement(OutputName name, boolean isEmpty)
+        throws XMLStreamException;
+
+    protected abstract void _writeAttribute(OutputName name, String value)
+        throws XMLStreamException;
+
+    /**
+     * @return Serialized name to use for given handle: either one it
+     *   contains, if resolved for compatible writer, or one looked up
+     *   for this writer
+     */
+    protected final WName _nameFor(OutputName name)
+        throws XMLStreamException
+    {
+        if (name.isResolvedFor(_xmlWriter, _config.getActualEncoding())) {
+            return name._name;
+        }
+        return (name._prefix == null) ? _symbols.findSymbol(name._localName)
+            : _symbols.findSymbol(name._prefix, name._localName);
+    }
+
+    /*
+    ////////////////////////////////////////////////////
+    // Non-standard extensions, output templates
+    ////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for writing an instance of given template, with given
+     * values for its slots (in the order in which slots were defined).
+     * Constant parts of the template are output as is, pre-encoded,
+     * and only slot values are escaped and encoded.
+     *<p>
+     * Elements that the template leaves open are to be closed with
+     * {@link #writeEndElement}, as if they had been started with
+     * {@link #writeStartElement}. Template content is not validated,
+     * and no namespace repairing is done for it.
+     */
+    public void writeTemplate(OutputTemplate template, String... values)
+        throws XMLStreamException
+    {
+        if (values.length != template.getSlotCount()) {
+            throw new IllegalArgumentException("Template has "+template.getSlotCount()
+                                               +" slots, but "+values.length+" values passed");
+        }
+        OutputTemplate.Compiled compiled = template.compiledFor(_xmlWriter, _symbols,
+                                                                _config.getActualEncoding());
+        _verifyStartElement(template.getRootPrefix(), template.getRootLocalName());
+        _stateAnyOutput = true;
+        try {
+            compiled.write(_xmlWriter, values);
+        } catch (IOException ioe) {
+            throw new IoStreamException(ioe);
+        }
+        final WName[] open = compiled._openElements;
+        if (open.length == 0) {
+            if (_currElem.isRoot()) {
+                _state = State.EPILOG;
+            }
+            return;
+        }
+        for (int i = 0; i < open.length; ++i) {
+            _pushElement(open[i]);
+            String[] decls = compiled._openNsDecls[i];
+            for (int j = 0; j < decls.length; j += 2) {
+                if (decls[j].length() == 0) {
+                    _currElem.setDefaultNsURI(decls[j+1]);
+                } else {
+                    _currElem.addPrefix(decls[j], decls[j+1]);
+                }
+            }
+        }
+        _stateStartElementOpen = compiled._startTagOpen;
+        _stateEmptyElement = false;
+    }
 
     /*
     ////////////////////////////////////////////////////
@@ -1347,6 +1611,90 @@ public abstract class StreamWriterBase
         return (_state != State.TREE);
     }
 
+    /**
+     * @return True if content of the current event of given reader
+     *   could be copied as raw UTF-8 (if it needs no escaping): this
+     *   requires both input and output to be UTF-8 encoded
+     */
+    private final boolean _canCopyRaw(XMLStreamReader sr)
+    {
+        return (sr instanceof StreamReaderImpl)
+            && (_validator == null)
+            && _xmlWriter.canWriteRawUtf8()
+            && CharsetNames.CS_UTF8.equals(sr.getEncoding());
+    }
+
+    /**
+     * @return True if text was copied as is; false if caller has to
+     *   use regular handling instead
+     */
+    private final boolean _copyRawCharacters(StreamReaderImpl sr)
+        throws XMLStreamException
+    {
+        // Let regular handling report problems, if any
+        if (inPrologOrEpilog() || _vldContent <= XMLValidator.CONTENT_ALLOW_WS
+            || !sr.isRawTextVerbatim()) {
+            return false;
+        }
+        ByteBuffer raw = sr.getRawText();
+        if (raw == null) {
+            return false;
+        }
+        _stateAnyOutput = true;
+        if (_stateStartElementOpen) {
+            _closeStartElement(_stateEmptyElement);
+        }
+        try {
+            _xmlWriter.writeRawUtf8Characters(raw);
+        } catch (IOException ioe) {
+            throw new IoStreamException(ioe);
+        }
+        return true;
+    }
+
+    /**
+     * @return True if any of given namespace bindings differs from
+     *   the one in scope at the current output location
+     */
+    private final boolean _needNsDecls(Map<String,String> bindings)
+    {
+        for (Map.Entry<String,String> en : bindings.entrySet()) {
+            if (!en.getValue().equals(_nonNullNsURI(en.getKey()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final String _nonNullNsURI(String prefix)
+    {
+        String uri = getNamespaceURI(prefix);
+        return (uri == null) ? "" : uri;
+    }
+
+    private final void _writeRawUtf8(ByteBuffer utf8)
+        throws IOException, XMLStreamException
+    {
+        if (_xmlWriter.canWriteRawUtf8()) {
+            _xmlWriter.writeRawUtf8Characters(utf8);
+        } else {
+            byte[] b = new byte[utf8.remaining()];
+            utf8.get(b);
+            String str = new String(b, "UTF-8");
+            _xmlWriter.writeRaw(str, 0, str.length());
+        }
+    }
+
+    private final static boolean _containsQuote(ByteBuffer raw)
+    {
+        for (int i = raw.position(), end = raw.limit(); i < end; ++i) {
+            if (raw.get(i) == '"') {
+                return true;
+            }
+        }
+        return false;
+    }
+
     protected final ValueEncoderFactory valueEncoderFactory()
     {
         if (_valueEncoderFactory == null) {
@@ -1355,6 +1703,14 @@ public abstract class StreamWriterBase
         return _valueEncoderFactory;
     }
 
+    private final FloatingPointEncoder fpEncoder()
+    {
+        if (_fpEncoder == null) {
+            _fpEncoder = new FloatingPointEncoder();
+        }
+        return _fpEncoder;
+    }
+
     /*
     ////////////////////////////////////////////////////
     // Package methods, write helpers
@@ -1374,6 +1730,19 @@ public abstract class StreamWriterBase
         }
     }
 
+    protected final void _writeAttribute(WName name, ByteBuffer rawUtf8)
+        throws XMLStreamException
+    {
+        if (_cfgCheckAttrs) { // still need to ensure no duplicate attrs?
+            _verifyWriteAttr(name);
+        }
+        try {
+            _xmlWriter.writeRawUtf8Attribute(name, rawUtf8);
+        } catch (IOException ioe) {
+            throw new IoStreamException(ioe);
+        }
+    }
+
     protected final void _writeAttribute(WName name, AsciiValueEncoder enc)
         throws XMLStreamException
     {
@@ -1463,7 +1832,21 @@ public abstract class StreamWriterBase
     {
         _stateAnyOutput = true;
         _stateStartElementOpen = true;
+        _pushElement(name);
+        try {
+            _xmlWriter.writeStartTagStart(name);
+        } catch (IOException ioe) {
+            throw new IoStreamException(ioe);
+        }
+        _stateEmptyElement = isEmpty;
+    }
 
+    /**
+     * Method called to add an element with given name as the new
+     * current element
+     */
+    protected final void _pushElement(WName name)
+    {
         if (_outputElemPool != null) {
             OutputElement newCurr = _outputElemPool;
             _outputElemPool = newCurr.reuseAsChild(_currElem, name);
@@ -1472,12 +1855,6 @@ public abstract class StreamWriterBase
         } else {
             _currElem = _currElem.createChild(name);
         }
-        try {
-            _xmlWriter.writeStartTagStart(name);
-        } catch (IOException ioe) {
-            throw new IoStreamException(ioe);
-        }
-        _stateEmptyElement = isEmpty;
     }
 
     protected void _writeStartTag(WName name, boolean isEmpty, String uri)
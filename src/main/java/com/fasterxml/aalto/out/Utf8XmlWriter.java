@@ -42,6 +42,11 @@ public final class Utf8XmlWriter
         super(cfg, out, OutputCharTypes.getUtf8CharTypes());
     }
 
+    @Override
+    public boolean canWriteRawUtf8() {
+        return true;
+    }
+
     public int getHighestEncodable()
     {
         return XmlConsts.MAX_UNICODE_CHAR;
@@ -54,7 +59,9 @@ public final class Utf8XmlWriter
             return;
         }
         if (mSurrogate != 0) {
-            outputSurrogates(mSurrogate, cbuf[offset]);
+            int surr = mSurrogate;
+            mSurrogate = 0;
+            outputSurrogates(surr, cbuf[offset]);
             ++offset;
             --len;
         }
@@ -86,10 +93,6 @@ public final class Utf8XmlWriter
             } else {
                 offset = outputMultiByteChar(ch, cbuf, offset, len);
             }
-            if (_outputPtr >= _outputBufferLen) {
-                flushBuffer();
-            }
-            _outputBuffer[_outputPtr++] = (byte)ch;
         }
     }
 
@@ -117,6 +120,16 @@ public final class Utf8XmlWriter
         }
     }
 
+    protected byte[] encodeMarkup(String markup)
+        throws XMLStreamException
+    {
+        try {
+            return markup.getBytes("UTF-8");
+        } catch (IOException ioe) {
+            throw new IoStreamException(ioe);
+        }
+    }
+
     /*
     ////////////////////////////////////////////////////
     // Internal methods, low-level write
@@ -185,6 +198,33 @@ public final class Utf8XmlWriter
         return inputOffset;
     }
 
+    final protected int outputMultiByteChar(int ch, String str, int inputOffset, int inputLen)
+        throws IOException, XMLStreamException
+    {
+        if (ch >= SURR1_FIRST) {
+            if (ch <= SURR2_LAST) { // yes, outside of BMP
+                if (inputOffset >= inputLen) { // nope... have to note down
+                    mSurrogate = ch;
+                } else {
+                    outputSurrogates(ch, str.charAt(inputOffset));
+                    ++inputOffset;
+                }
+                return inputOffset;
+            }
+            if (ch >= 0xFFFE) { // 0xFFFE, 0xFFFF are invalid
+                reportInvalidChar(ch);
+            }
+        } 
+        if ((_outputPtr + 3) > _outputBufferLen) {
+            flushBuffer();
+        }
+        byte[] bbuf = _outputBuffer;
+        bbuf[_outputPtr++] = (byte) (0xe0 | (ch >> 12));
+        bbuf[_outputPtr++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+        bbuf[_outputPtr++] = (byte) (0x80 | (ch & 0x3f));
+        return inputOffset;
+    }
+
     final protected int outputStrictMultiByteChar(int ch, char[] cbuf, int inputOffset, int inputLen)
         throws IOException, XMLStreamException
     {
@@ -2,6 +2,7 @@ package com.fasterxml.aalto.out;
 
 import java.util.*;
 import java.lang.ref.SoftReference;
+import java.util.concurrent.Executor;
 
 import javax.xml.stream.XMLOutputFactory; // to get constants
 
@@ -9,7 +10,9 @@ import org.codehaus.stax2.XMLOutputFactory2;
 import org.codehaus.stax2.XMLStreamProperties;
 
 
+import com.fasterxml.aalto.AaltoOutputProperties;
 import com.fasterxml.aalto.CommonConfig;
+import com.fasterxml.aalto.util.BufferPool;
 import com.fasterxml.aalto.util.BufferRecycler;
 
 /**
@@ -33,6 +36,8 @@ public final class WriterConfig
     // Non-flag (object) properties
 
     final static int PROP_AUTO_NS_PREFIX = -2;
+    final static int PROP_BUFFER_POOL = -3;
+    final static int PROP_FLUSH_EXECUTOR = -4;
 
     // No flags are set by default, yet...
     final static int DEFAULT_FLAGS =
@@ -58,6 +63,10 @@ public final class WriterConfig
         sProperties.put(XMLOutputFactory2.P_AUTOMATIC_NS_PREFIX, Integer.valueOf(PROP_AUTO_NS_PREFIX));
         sProperties.put(XMLOutputFactory2.P_TEXT_ESCAPER, null);
         sProperties.put(XMLOutputFactory2.P_ATTR_VALUE_ESCAPER, null);
+
+        // Aalto-specific:
+        sProperties.put(AaltoOutputProperties.P_BUFFER_POOL, Integer.valueOf(PROP_BUFFER_POOL));
+        sProperties.put(AaltoOutputProperties.P_FLUSH_EXECUTOR, Integer.valueOf(PROP_FLUSH_EXECUTOR));
     }
 
     /*
@@ -109,6 +118,18 @@ public final class WriterConfig
      */
     BufferRecycler _currRecycler = null;
 
+    /**
+     * Explicitly configured buffer pool, if any; if non-null, used
+     * instead of thread-local recycler.
+     */
+    private BufferPool _bufferPool;
+
+    /**
+     * Executor to use for writing output buffers in the background,
+     * if any
+     */
+    private Executor _flushExecutor;
+
     /*
     /////////////////////////////////////////////////////
     // Life-cycle
@@ -117,7 +138,8 @@ public final class WriterConfig
 
     private WriterConfig(String encoding, int flags, int flagMods,
                          EncodingContext encCtxt,
-                         String autoNsPrefix)
+                         String autoNsPrefix, BufferPool bufferPool,
+                         Executor flushExecutor)
     {
         super(flags, flagMods);
         _encoding = encoding;
@@ -129,18 +151,22 @@ public final class WriterConfig
          * we can reconstruct one if and when we are to return one or more
          * buffers.
          */
-        SoftReference<BufferRecycler> ref = mRecyclerRef.get();
-        if (ref != null) {
-            _currRecycler = ref.get();
+        if (bufferPool == null) {
+            SoftReference<BufferRecycler> ref = mRecyclerRef.get();
+            if (ref != null) {
+                _currRecycler = ref.get();
+            }
         }
+        _bufferPool = bufferPool;
         _flags = flags;
         _flagMods = flagMods;
         _propAutoNsPrefix = autoNsPrefix;
+        _flushExecutor = flushExecutor;
     }
 
     public WriterConfig()
     {
-        this(null, DEFAULT_FLAGS, 0, new EncodingContext(), DEFAULT_AUTOMATIC_NS_PREFIX);
+        this(null, DEFAULT_FLAGS, 0, new EncodingContext(), DEFAULT_AUTOMATIC_NS_PREFIX, null, null);
     }
 
     public void setActualEncodingIfNotSet(String enc)
@@ -168,7 +194,7 @@ public final class WriterConfig
     public WriterConfig createNonShared()
     {
         return new WriterConfig(_encoding, _flags, _flagMods, _encCtxt,
-                                _propAutoNsPrefix);
+                                _propAutoNsPrefix, _bufferPool, _flushExecutor);
     }
 
     public boolean isXml11() {
@@ -218,6 +244,10 @@ public final class WriterConfig
         switch (f) {
         case PROP_AUTO_NS_PREFIX:
             return _propAutoNsPrefix;
+        case PROP_BUFFER_POOL:
+            return _bufferPool;
+        case PROP_FLUSH_EXECUTOR:
+            return _flushExecutor;
         }
 
         // Need to handle non numerics separately?
@@ -254,6 +284,12 @@ public final class WriterConfig
         case PROP_AUTO_NS_PREFIX:
             _propAutoNsPrefix = value.toString();
             return true;
+        case PROP_BUFFER_POOL:
+            setBufferPool((BufferPool) value);
+            return true;
+        case PROP_FLUSH_EXECUTOR:
+            _flushExecutor = (Executor) value;
+            return true;
         }
 
         return false;
@@ -298,6 +334,26 @@ public final class WriterConfig
         return _propAutoNsPrefix;
     }
 
+    // // // Aalto-specific properties
+
+    public BufferPool getBufferPool() { return _bufferPool; }
+
+    /**
+     * @return Executor used for writing output buffers in the background;
+     *   null if output is not pipelined
+     */
+    public Executor getFlushExecutor() { return _flushExecutor; }
+
+    /**
+     * @param pool Buffer pool to use for writers created using this
+     *   configuration; null to use default per-thread recycling
+     */
+    public void setBufferPool(BufferPool pool)
+    {
+        _bufferPool = pool;
+        _currRecycler = null;
+    }
+
     /*
     /////////////////////////////////////////////////////
     // Stax2 additions
@@ -390,6 +446,9 @@ public final class WriterConfig
 
     public char[] allocSmallCBuffer(int minSize)
     {
+        if (_bufferPool != null) {
+            return _bufferPool.allocCharBuffer(minSize);
+        }
         if (_currRecycler != null) {
             char[] result = _currRecycler.getSmallCBuffer(minSize);
             if (result != null) {
@@ -402,6 +461,10 @@ public final class WriterConfig
 
     public void freeSmallCBuffer(char[] buffer)
     {
+        if (_bufferPool != null) {
+            _bufferPool.releaseCharBuffer(buffer);
+            return;
+        }
         // Need to create (and assign) the buffer?
         if (_currRecycler == null) {
             _currRecycler = createRecycler();
@@ -411,6 +474,9 @@ public final class WriterConfig
 
     public char[] allocMediumCBuffer(int minSize)
     {
+        if (_bufferPool != null) {
+            return _bufferPool.allocCharBuffer(minSize);
+        }
         if (_currRecycler != null) {
             char[] result = _currRecycler.getMediumCBuffer(minSize);
             if (result != null) {
@@ -422,6 +488,10 @@ public final class WriterConfig
 
     public void freeMediumCBuffer(char[] buffer)
     {
+        if (_bufferPool != null) {
+            _bufferPool.releaseCharBuffer(buffer);
+            return;
+        }
         if (_currRecycler == null) {
             _currRecycler = createRecycler();
         }
@@ -430,6 +500,9 @@ public final class WriterConfig
 
     public char[] allocFullCBuffer(int minSize)
     {
+        if (_bufferPool != null) {
+            return _bufferPool.allocCharBuffer(minSize);
+        }
         if (_currRecycler != null) {
             char[] result = _currRecycler.getFullCBuffer(minSize);
             if (result != null) {
@@ -441,6 +514,10 @@ public final class WriterConfig
 
     public void freeFullCBuffer(char[] buffer)
     {
+        if (_bufferPool != null) {
+            _bufferPool.releaseCharBuffer(buffer);
+            return;
+        }
         // Need to create (and assign) the buffer?
         if (_currRecycler == null) {
             _currRecycler = createRecycler();
@@ -450,6 +527,9 @@ public final class WriterConfig
 
     public byte[] allocFullBBuffer(int minSize)
     {
+        if (_bufferPool != null) {
+            return _bufferPool.allocByteBuffer(minSize);
+        }
         if (_currRecycler != null) {
             byte[] result = _currRecycler.getFullBBuffer(minSize);
             if (result != null) {
@@ -461,6 +541,10 @@ public final class WriterConfig
 
     public void freeFullBBuffer(byte[] buffer)
     {
+        if (_bufferPool != null) {
+            _bufferPool.releaseByteBuffer(buffer);
+            return;
+        }
         // Need to create (and assign) the buffer?
         if (_currRecycler == null) {
             _currRecycler = createRecycler();
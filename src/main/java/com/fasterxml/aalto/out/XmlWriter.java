@@ -16,6 +16,7 @@
 package com.fasterxml.aalto.out;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.text.MessageFormat;
 
 import javax.xml.stream.*;
@@ -306,6 +307,55 @@ public abstract class XmlWriter
     public abstract void writeAttribute(WName name, AsciiValueEncoder enc)
         throws IOException, XMLStreamException;
 
+    /*
+    ////////////////////////////////////////////////////
+    // Write methods, raw UTF-8 pass-through
+    ////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return True if this writer outputs UTF-8 encoded content, and
+     *   can thereby copy already encoded content as is, using
+     *   {@link #writeRawUtf8Characters} and {@link #writeRawUtf8Attribute}
+     */
+    public boolean canWriteRawUtf8() {
+        return false;
+    }
+
+    /**
+     * Method for outputting UTF-8 encoded textual content that is known
+     * not to need any escaping (such as verbatim text from a well-formed
+     * UTF-8 encoded document) as is, if {@link #canWriteRawUtf8}
+     * returns true. Default implementation decodes content and
+     * outputs it using {@link #writeCharacters(String)}.
+     */
+    public void writeRawUtf8Characters(ByteBuffer utf8)
+        throws IOException, XMLStreamException
+    {
+        writeCharacters(decodeUtf8(utf8));
+    }
+
+    /**
+     * Method for outputting an attribute with UTF-8 encoded value that
+     * is known not to need any escaping, as is, if
+     * {@link #canWriteRawUtf8} returns true. Default implementation
+     * decodes the value and outputs it using
+     * {@link #writeAttribute(WName, String)}.
+     */
+    public void writeRawUtf8Attribute(WName name, ByteBuffer utf8)
+        throws IOException, XMLStreamException
+    {
+        writeAttribute(name, decodeUtf8(utf8));
+    }
+
+    protected final static String decodeUtf8(ByteBuffer utf8)
+        throws IOException
+    {
+        byte[] b = new byte[utf8.remaining()];
+        utf8.get(b);
+        return new String(b, "UTF-8");
+    }
+
     /*
     ////////////////////////////////////////////////////
     // Location information
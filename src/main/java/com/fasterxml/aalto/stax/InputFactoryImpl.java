@@ -42,6 +42,7 @@ import com.fasterxml.aalto.dom.DOMReaderImpl;
 import com.fasterxml.aalto.evt.EventAllocatorImpl;
 import com.fasterxml.aalto.evt.EventReaderImpl;
 import com.fasterxml.aalto.in.*;
+import com.fasterxml.aalto.util.NameTableStats;
 import com.fasterxml.aalto.util.URLUtil;
 
 /**
@@ -305,6 +306,81 @@ public final class InputFactoryImpl
         _config.configureForRoundTripping();
     }
 
+    /*
+    /////////////////////////////////////////////////////
+    // Non-standard extensions
+    /////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for exporting symbol tables (element and attribute names
+     * seen so far) shared by readers this factory has created, in a
+     * compact binary format. Exported data can be loaded by another
+     * factory instance (possibly in another JVM) using
+     * {@link #importSymbolTables(InputStream)}, to let it start with
+     * pre-warmed symbol tables.
+     */
+    public void exportSymbolTables(OutputStream out)
+        throws IOException
+    {
+        _config.exportSymbolTables(out);
+    }
+
+    /**
+     * Convenience method that is equivalent to calling
+     * {@link #exportSymbolTables(OutputStream)} with a
+     * {@link ByteArrayOutputStream}.
+     */
+    public byte[] exportSymbolTables()
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1000);
+        try {
+            _config.exportSymbolTables(bytes);
+        } catch (IOException ioe) { // should never occur with in-memory streams
+            throw new RuntimeException(ioe);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Method for replacing symbol tables of this factory with ones
+     * exported using {@link #exportSymbolTables(OutputStream)}. Usually
+     * called right after constructing the factory; readers created
+     * after this call will use imported tables.
+     */
+    public void importSymbolTables(InputStream in)
+        throws IOException
+    {
+        _config.importSymbolTables(in);
+    }
+
+    public void importSymbolTables(byte[] data)
+        throws IOException
+    {
+        _config.importSymbolTables(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Method for accessing statistics regarding shared symbol table used
+     * by readers this factory has created for byte-based input in given
+     * encoding; one of "UTF-8", "ISO-8859-1" or "US-ASCII".
+     */
+    public NameTableStats getSymbolTableStats(String encoding)
+    {
+        return _config.getBBSymbolStats(encoding);
+    }
+
+    /**
+     * Method for accessing statistics regarding shared symbol table used
+     * by readers this factory has created for character-based input
+     * (ones constructed with a {@link Reader}, or for input in encodings
+     * other than UTF-8, ISO-8859-1 or US-ASCII).
+     */
+    public NameTableStats getCharSymbolTableStats()
+    {
+        return _config.getCBSymbolStats();
+    }
+
     /*
     /////////////////////////////////////////////////////
     // Internal/package methods
@@ -15,6 +15,7 @@
 package com.fasterxml.aalto.stax;
 
 import java.io.*;
+import java.nio.channels.WritableByteChannel;
 
 import javax.xml.stream.*;
 import javax.xml.transform.Result;
@@ -33,6 +34,9 @@ import com.fasterxml.aalto.IoStreamException;
 import com.fasterxml.aalto.StreamExceptionBase;
 import com.fasterxml.aalto.XmlConsts;
 import com.fasterxml.aalto.dom.DOMWriterImpl;
+import com.fasterxml.aalto.io.ByteBufferChain;
+import com.fasterxml.aalto.io.ChannelOutputStream;
+import com.fasterxml.aalto.io.UTF16Writer;
 import com.fasterxml.aalto.out.*;
 import com.fasterxml.aalto.util.CharsetNames;
 import com.fasterxml.aalto.util.URLUtil;
@@ -159,6 +163,35 @@ public final class OutputFactoryImpl
         return createSW(null, w, enc, false);
     }
 
+    /*
+    /////////////////////////////////////////
+    // Non-standard extensions, NIO output
+    /////////////////////////////////////////
+     */
+
+    /**
+     * Method for constructing a stream writer that writes its output
+     * directly to given channel. Output is buffered by the writer,
+     * and written to the channel when its buffer fills up (as well as
+     * when writer is flushed or closed). Channel has to be a blocking
+     * one, since writer has no way to wait for a non-blocking one to
+     * become writable.
+     *<p>
+     * To collect output in a chain of buffers (for example, to
+     * write it using a {@link java.nio.channels.GatheringByteChannel}
+     * later on), a {@link ByteBufferChain} can be passed to
+     * {@link #createXMLStreamWriter(OutputStream,String)}; writer
+     * will then append its buffers to the chain without copying.
+     *
+     * @throws IllegalArgumentException If channel is a non-blocking
+     *   {@link java.nio.channels.SelectableChannel}
+     */
+    public XMLStreamWriter2 createXMLStreamWriter(WritableByteChannel ch, String enc)
+        throws XMLStreamException
+    {
+        return createSW(new ChannelOutputStream(ch), null, enc, false);
+    }
+
     // // // StAX2 "Profile" mutators
 
     public void configureForXmlConformance()
@@ -236,6 +269,17 @@ public final class OutputFactoryImpl
                 } else if (enc == CharsetNames.CS_US_ASCII) {
                     xw = new AsciiXmlWriter(cfg, out);
                     symbols = _config.getAsciiSymbols(xw);
+                } else if (enc == CharsetNames.CS_UTF16
+                           || enc == CharsetNames.CS_UTF16BE
+                           || enc == CharsetNames.CS_UTF16LE) {
+                    /* No need for a JDK encoder with UTF-16: chars can be
+                     * written as is (plus BOM, if endianness not specified)
+                     */
+                    w = new UTF16Writer(cfg, out, cfg.willAutoCloseOutput(),
+                                        (enc != CharsetNames.CS_UTF16LE),
+                                        (enc == CharsetNames.CS_UTF16));
+                    xw = new CharXmlWriter(cfg, w);
+                    symbols = _config.getCharSymbols(xw);
                 } else {
                     w = new OutputStreamWriter(out, enc);
                     xw = new CharXmlWriter(cfg, w);
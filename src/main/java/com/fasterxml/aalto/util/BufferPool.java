@@ -0,0 +1,55 @@
+package com.fasterxml.aalto.util;
+
+/**
+ * Abstract base class for pluggable buffer pools: objects that
+ * stream readers and writers use for allocating and recycling their
+ * raw <code>char[]</code> and <code>byte[]</code> buffers.
+ *<p>
+ * By default, factories use a per-thread {@link BufferRecycler},
+ * accessed via a <code>ThreadLocal</code>. This works well when a
+ * small number of long-lived threads do all the parsing, but not
+ * when readers and writers are created by short-lived threads
+ * (thread pools that churn threads, virtual threads), or when
+ * a reader is created in one thread and closed in another: in those
+ * cases buffers are rarely, if ever, reused. For such use cases
+ * a pool instance that is shared by all threads (such as
+ * {@link SharedBufferPool}) can be configured for a factory
+ * instead.
+ *<p>
+ * Implementations have to be thread-safe if they are to be
+ * shared by factories that are used concurrently.
+ * Buffers returned by allocation methods are to be at least as
+ * long as requested, but may be longer.
+ */
+public abstract class BufferPool
+{
+    protected BufferPool() { }
+
+    /**
+     * @param minSize Minimum size of the buffer to return
+     *
+     * @return Buffer that is at least <code>minSize</code> chars long
+     */
+    public abstract char[] allocCharBuffer(int minSize);
+
+    /**
+     * Method called to return a buffer that was earlier allocated
+     * using {@link #allocCharBuffer}, once caller no longer
+     * uses it.
+     */
+    public abstract void releaseCharBuffer(char[] buffer);
+
+    /**
+     * @param minSize Minimum size of the buffer to return
+     *
+     * @return Buffer that is at least <code>minSize</code> bytes long
+     */
+    public abstract byte[] allocByteBuffer(int minSize);
+
+    /**
+     * Method called to return a buffer that was earlier allocated
+     * using {@link #allocByteBuffer}, once caller no longer
+     * uses it.
+     */
+    public abstract void releaseByteBuffer(byte[] buffer);
+}
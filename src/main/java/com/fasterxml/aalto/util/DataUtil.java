@@ -42,6 +42,18 @@ public final class DataUtil
         return arr;
     }
 
+    public static byte[] growArrayBy(byte[] arr, int more)
+    {
+        if (arr == null) {
+            return new byte[more];
+        }
+        byte[] old = arr;
+        int len = arr.length;
+        arr = new byte[len + more];
+        System.arraycopy(old, 0, arr, 0, len);
+        return arr;
+    }
+
     public static char[] growArrayBy(char[] arr, int more)
     {
         if (arr == null) {
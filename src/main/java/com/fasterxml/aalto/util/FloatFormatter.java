@@ -0,0 +1,503 @@
+package com.fasterxml.aalto.util;
+
+import java.math.BigInteger;
+
+/**
+ * Utility class for formatting <code>double</code> and <code>float</code>
+ * values as ASCII bytes, directly into caller's buffer and without
+ * allocating any objects. Output is the shortest decimal that parses
+ * back to the same value (closest one to the exact value, if there are
+ * multiple), using the same notation as {@link Double#toString(double)}
+ * and {@link Float#toString(float)}: plain notation for magnitudes
+ * from 10^-3 (inclusive) up to 10^7 (exclusive), computerized scientific
+ * notation otherwise, and always at least one digit after the decimal
+ * point.
+ *<p>
+ * Implementation is based on the "Schubfach" algorithm by Raffaello
+ * Giulietti ("The Schubfach way to render doubles", 2020), which is also
+ * used by JDK (versions 19 and above) for <code>Double.toString()</code>.
+ */
+public final class FloatFormatter
+{
+    /**
+     * Maximum length of a formatted double (like "-2.2250738585072014E-308")
+     */
+    public final static int MAX_DOUBLE_LENGTH = 24;
+
+    /**
+     * Maximum length of a formatted float (like "-1.17549435E-38")
+     */
+    public final static int MAX_FLOAT_LENGTH = 15;
+
+    // // // Double constants: precision, min exponent, etc
+
+    private final static int D_P = 53;
+    private final static int D_Q_MIN = -1074;
+    private final static long D_C_MIN = 1L << (D_P - 1);
+    private final static int D_C_TINY = 3;
+    private final static int D_H = 17;
+
+    // // // Float constants
+
+    private final static int F_P = 24;
+    private final static int F_Q_MIN = -149;
+    private final static int F_C_MIN = 1 << (F_P - 1);
+    private final static int F_C_TINY = 8;
+    private final static int F_H = 9;
+
+    private final static long MASK_63 = 0x7FFFFFFFFFFFFFFFL;
+    private final static long MASK_32 = 0xFFFFFFFFL;
+    private final static int MASK_28 = (1 << 28) - 1;
+
+    private final static byte[] BYTES_NAN = { 'N', 'a', 'N' };
+    private final static byte[] BYTES_INFINITY = { 'I', 'n', 'f', 'i', 'n', 'i', 't', 'y' };
+    private final static byte[] BYTES_ZERO = { '0', '.', '0' };
+
+    private final static long[] POW10 = new long[D_H + 1];
+    static {
+        long l = 1L;
+        for (int i = 0; i < POW10.length; ++i) {
+            POW10[i] = l;
+            l *= 10;
+        }
+    }
+
+    /**
+     * Range of decimal exponents needed for doubles (and floats)
+     */
+    private final static int K_MIN = -324;
+    private final static int K_MAX = 292;
+
+    /**
+     * Table of 126-bit approximations of powers of 10, split in two
+     * 63-bit halves: for each k from {@link #K_MIN} to {@link #K_MAX},
+     * the value g = floor(10^-k * 2^-r) + 1, where r is chosen so that
+     * 2^125 &lt;= g &lt; 2^126. Calculated when class is loaded, since
+     * it is cheap enough to do and much more compact than a literal
+     * table.
+     */
+    private final static long[] G = new long[(K_MAX - K_MIN + 1) << 1];
+    static {
+        BigInteger ten = BigInteger.valueOf(10);
+        for (int k = K_MIN, ix = 0; k <= K_MAX; ++k, ix += 2) {
+            int r = flog2pow10(-k) - 125;
+            BigInteger num = (k < 0) ? ten.pow(-k) : BigInteger.ONE;
+            BigInteger den = (k < 0) ? BigInteger.ONE : ten.pow(k);
+            if (r < 0) {
+                num = num.shiftLeft(-r);
+            } else {
+                den = den.shiftLeft(r);
+            }
+            BigInteger g = num.divide(den).add(BigInteger.ONE);
+            G[ix] = g.shiftRight(63).longValue();
+            G[ix+1] = g.longValue() & MASK_63;
+        }
+    }
+
+    private FloatFormatter() { }
+
+    /*
+    ////////////////////////////////////////////////////////////
+    // Public API
+    ////////////////////////////////////////////////////////////
+    */
+
+    /**
+     * @param buf Buffer to write to; needs to have room for at least
+     *   {@link #MAX_DOUBLE_LENGTH} bytes
+     *
+     * @return Offset in buffer after the last byte written
+     */
+    public static int writeDouble(double v, byte[] buf, int ptr)
+    {
+        long bits = Double.doubleToRawLongBits(v);
+        long t = bits & ((1L << (D_P - 1)) - 1);
+        int bq = (int) (bits >>> (D_P - 1)) & 0x7FF;
+        if (bq == 0x7FF) { // NaN or infinity
+            if (t != 0L) {
+                return append(BYTES_NAN, buf, ptr);
+            }
+            if (bits < 0L) {
+                buf[ptr++] = '-';
+            }
+            return append(BYTES_INFINITY, buf, ptr);
+        }
+        if (bits < 0L) {
+            buf[ptr++] = '-';
+        }
+        if (bq != 0) { // normal value
+            int mq = -D_Q_MIN + 1 - bq;
+            long c = D_C_MIN | t;
+            // Fast path for integral values
+            if (0 < mq && mq < D_P) {
+                long f = c >> mq;
+                if ((f << mq) == c) {
+                    return doubleChars(f, 0, buf, ptr);
+                }
+            }
+            return doubleToDecimal(-mq, c, 0, buf, ptr);
+        }
+        if (t != 0L) { // subnormal value
+            return (t < D_C_TINY) ? doubleToDecimal(D_Q_MIN, 10 * t, -1, buf, ptr)
+                : doubleToDecimal(D_Q_MIN, t, 0, buf, ptr);
+        }
+        return append(BYTES_ZERO, buf, ptr);
+    }
+
+    /**
+     * @param buf Buffer to write to; needs to have room for at least
+     *   {@link #MAX_FLOAT_LENGTH} bytes
+     *
+     * @return Offset in buffer after the last byte written
+     */
+    public static int writeFloat(float v, byte[] buf, int ptr)
+    {
+        int bits = Float.floatToRawIntBits(v);
+        int t = bits & ((1 << (F_P - 1)) - 1);
+        int bq = (bits >>> (F_P - 1)) & 0xFF;
+        if (bq == 0xFF) { // NaN or infinity
+            if (t != 0) {
+                return append(BYTES_NAN, buf, ptr);
+            }
+            if (bits < 0) {
+                buf[ptr++] = '-';
+            }
+            return append(BYTES_INFINITY, buf, ptr);
+        }
+        if (bits < 0) {
+            buf[ptr++] = '-';
+        }
+        if (bq != 0) { // normal value
+            int mq = -F_Q_MIN + 1 - bq;
+            int c = F_C_MIN | t;
+            if (0 < mq && mq < F_P) {
+                int f = c >> mq;
+                if ((f << mq) == c) {
+                    return floatChars(f, 0, buf, ptr);
+                }
+            }
+            return floatToDecimal(-mq, c, 0, buf, ptr);
+        }
+        if (t != 0) { // subnormal value
+            return (t < F_C_TINY) ? floatToDecimal(F_Q_MIN, 10 * t, -1, buf, ptr)
+                : floatToDecimal(F_Q_MIN, t, 0, buf, ptr);
+        }
+        return append(BYTES_ZERO, buf, ptr);
+    }
+
+    /*
+    ////////////////////////////////////////////////////////////
+    // Internal methods, finding shortest decimal
+    ////////////////////////////////////////////////////////////
+    */
+
+    /**
+     * Method that finds the shortest decimal for value c*2^q (with c
+     * being the significand, and q binary exponent), and outputs it.
+     */
+    private static int doubleToDecimal(int q, long c, int dk, byte[] buf, int ptr)
+    {
+        int out = (int) c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        // Rounding interval is asymmetric for powers of 2 (except for smallest)
+        if (c != D_C_MIN || q == D_Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        int ix = (k - K_MIN) << 1;
+        long g1 = G[ix];
+        long g0 = G[ix+1];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100) {
+            // One digit shorter possible?
+            long sp10 = 10 * multiplyHigh(s, 115292150460684698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = (vbl + out) <= (sp10 << 2);
+            boolean wpin = ((tp10 << 2) + out) <= vbr;
+            if (upin != wpin) {
+                return doubleChars(upin ? sp10 : tp10, k, buf, ptr);
+            }
+        }
+        long t = s + 1;
+        boolean uin = (vbl + out) <= (s << 2);
+        boolean win = ((t << 2) + out) <= vbr;
+        if (uin != win) {
+            return doubleChars(uin ? s : t, k + dk, buf, ptr);
+        }
+        // Both in rounding interval: choose the closer one (even one if tied)
+        long cmp = vb - ((s + t) << 1);
+        return doubleChars((cmp < 0L || (cmp == 0L && (s & 1L) == 0L)) ? s : t,
+                           k + dk, buf, ptr);
+    }
+
+    private static int floatToDecimal(int q, int c, int dk, byte[] buf, int ptr)
+    {
+        int out = c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != F_C_MIN || q == F_Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 33;
+        long g = G[(k - K_MIN) << 1] + 1;
+        int vb = rop(g, cb << h);
+        int vbl = rop(g, cbl << h);
+        int vbr = rop(g, cbr << h);
+
+        int s = vb >> 2;
+        if (s >= 100) {
+            int sp10 = 10 * (int) ((s * 1717986919L) >>> 34);
+            int tp10 = sp10 + 10;
+            boolean upin = (vbl + out) <= (sp10 << 2);
+            boolean wpin = ((tp10 << 2) + out) <= vbr;
+            if (upin != wpin) {
+                return floatChars(upin ? sp10 : tp10, k, buf, ptr);
+            }
+        }
+        int t = s + 1;
+        boolean uin = (vbl + out) <= (s << 2);
+        boolean win = ((t << 2) + out) <= vbr;
+        if (uin != win) {
+            return floatChars(uin ? s : t, k + dk, buf, ptr);
+        }
+        int cmp = vb - ((s + t) << 1);
+        return floatChars((cmp < 0 || (cmp == 0 && (s & 1) == 0)) ? s : t,
+                          k + dk, buf, ptr);
+    }
+
+    /**
+     * Rounding-to-odd multiplication of 126-bit g (as g1:g0) and cp,
+     * shifted right by 127 bits
+     */
+    private static long rop(long g1, long g0, long cp)
+    {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (((z & MASK_63) + MASK_63) >>> 63);
+    }
+
+    private static int rop(long g, long cp)
+    {
+        long x1 = multiplyHigh(g, cp);
+        long vbp = x1 >>> 31;
+        return (int) (vbp | (((x1 & MASK_32) + MASK_32) >>> 32));
+    }
+
+    /*
+    ////////////////////////////////////////////////////////////
+    // Internal methods, output
+    ////////////////////////////////////////////////////////////
+    */
+
+    /**
+     * Method for outputting value f*10^e, where f has at most 17 digits
+     */
+    private static int doubleChars(long f, int e, byte[] buf, int ptr)
+    {
+        // First, normalize to have exactly 17 digits: 0.f * 10^e
+        int len = flog10pow2(64 - Long.numberOfLeadingZeros(f));
+        if (f >= POW10[len]) {
+            ++len;
+        }
+        f *= POW10[D_H - len];
+        e += len;
+        // then split in leading digit, and two 8-digit parts
+        long hm = multiplyHigh(f, 193428131138340668L) >>> 20;
+        int l = (int) (f - 100000000L * hm);
+        int h = (int) ((hm * 1441151881L) >>> 57);
+        int m = (int) (hm - 100000000 * h);
+        return toChars(h, m, l, e, buf, ptr);
+    }
+
+    /**
+     * Method for outputting value f*10^e, where f has at most 9 digits
+     */
+    private static int floatChars(int f, int e, byte[] buf, int ptr)
+    {
+        int len = flog10pow2(32 - Integer.numberOfLeadingZeros(f));
+        if (f >= POW10[len]) {
+            ++len;
+        }
+        f *= (int) POW10[F_H - len];
+        e += len;
+        int h = (int) ((f * 1441151881L) >>> 57);
+        int m = f - 100000000 * h;
+        return toChars(h, m, 0, e, buf, ptr);
+    }
+
+    /**
+     * Method for outputting value 0.hml * 10^e, where h is a single digit,
+     * and m and l 8 digits each.
+     */
+    private static int toChars(int h, int m, int l, int e, byte[] buf, int ptr)
+    {
+        if (0 < e && e <= 7) { // plain notation, decimal point within digits
+            buf[ptr++] = (byte) ('0' + h);
+            int y = y(m);
+            int i = 1;
+            for (; i < e; ++i) {
+                int t = 10 * y;
+                buf[ptr++] = (byte) ('0' + (t >>> 28));
+                y = t & MASK_28;
+            }
+            buf[ptr++] = '.';
+            for (; i <= 8; ++i) {
+                int t = 10 * y;
+                buf[ptr++] = (byte) ('0' + (t >>> 28));
+                y = t & MASK_28;
+            }
+            return lowDigits(l, buf, ptr);
+        }
+        if (-3 < e && e <= 0) { // plain notation, leading zeroes
+            buf[ptr++] = '0';
+            buf[ptr++] = '.';
+            for (; e < 0; ++e) {
+                buf[ptr++] = '0';
+            }
+            buf[ptr++] = (byte) ('0' + h);
+            ptr = append8Digits(m, buf, ptr);
+            return lowDigits(l, buf, ptr);
+        }
+        // scientific notation
+        buf[ptr++] = (byte) ('0' + h);
+        buf[ptr++] = '.';
+        ptr = append8Digits(m, buf, ptr);
+        ptr = lowDigits(l, buf, ptr);
+        return exponent(e - 1, buf, ptr);
+    }
+
+    private static int lowDigits(int l, byte[] buf, int ptr)
+    {
+        if (l != 0) {
+            ptr = append8Digits(l, buf, ptr);
+        }
+        // Remove trailing zeroes, except for one right after the decimal point
+        while (buf[ptr-1] == '0') {
+            --ptr;
+        }
+        if (buf[ptr-1] == '.') {
+            ++ptr;
+        }
+        return ptr;
+    }
+
+    /**
+     * Outputs 8 digits of given value (less than 10^8), left to right,
+     * using fixed-point arithmetics instead of divisions.
+     */
+    private static int append8Digits(int m, byte[] buf, int ptr)
+    {
+        int y = y(m);
+        for (int i = 0; i < 8; ++i) {
+            int t = 10 * y;
+            buf[ptr++] = (byte) ('0' + (t >>> 28));
+            y = t & MASK_28;
+        }
+        return ptr;
+    }
+
+    /**
+     * @return floor((a + 1) * 2^28 / 10^8) - 1
+     */
+    private static int y(int a)
+    {
+        return (int) (multiplyHigh((long) (a + 1) << 28, 193428131138340668L) >>> 20) - 1;
+    }
+
+    private static int exponent(int e, byte[] buf, int ptr)
+    {
+        buf[ptr++] = 'E';
+        if (e < 0) {
+            buf[ptr++] = '-';
+            e = -e;
+        }
+        if (e < 10) {
+            buf[ptr++] = (byte) ('0' + e);
+            return ptr;
+        }
+        int d;
+        if (e >= 100) {
+            d = (e * 1311) >>> 17; // e / 100
+            buf[ptr++] = (byte) ('0' + d);
+            e -= 100 * d;
+        }
+        d = (e * 103) >>> 10; // e / 10
+        buf[ptr++] = (byte) ('0' + d);
+        buf[ptr++] = (byte) ('0' + (e - 10 * d));
+        return ptr;
+    }
+
+    private static int append(byte[] bytes, byte[] buf, int ptr)
+    {
+        int len = bytes.length;
+        System.arraycopy(bytes, 0, buf, ptr, len);
+        return ptr + len;
+    }
+
+    /*
+    ////////////////////////////////////////////////////////////
+    // Internal methods, math helpers
+    ////////////////////////////////////////////////////////////
+    */
+
+    /**
+     * @return floor(q * log10(2))
+     */
+    private static int flog10pow2(int q)
+    {
+        return (int) ((q * 661971961083L) >> 41);
+    }
+
+    /**
+     * @return floor(log10(3/4 * 2^q))
+     */
+    private static int flog10threeQuartersPow2(int q)
+    {
+        return (int) ((q * 661971961083L - 274743187321L) >> 41);
+    }
+
+    /**
+     * @return floor(e * log2(10))
+     */
+    private static int flog2pow10(int e)
+    {
+        return (int) ((e * 913124641741L) >> 38);
+    }
+
+    /**
+     * @return High 64 bits of the 128-bit product of given (signed) values
+     */
+    private static long multiplyHigh(long x, long y)
+    {
+        long x1 = x >> 32;
+        long x2 = x & MASK_32;
+        long y1 = y >> 32;
+        long y2 = y & MASK_32;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & MASK_32;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+}
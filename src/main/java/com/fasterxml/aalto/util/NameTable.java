@@ -33,4 +33,25 @@ public abstract class NameTable
      * if a child table should be merged into shared table.
      */
     public abstract boolean maybeDirty();
+
+    /**
+     * Helper method used when importing symbol table contents, to
+     * verify that declared sizes are sane before anything is allocated
+     * based on them.
+     *
+     * @param hashSize Declared size of the primary hash area
+     * @param count Declared number of entries
+     * @param maxCount Maximum number of entries a table may contain
+     */
+    protected static void verifyImportSizes(int hashSize, int count, int maxCount)
+        throws java.io.IOException
+    {
+        // tables start at 64 slots, and are at most 75% full before doubling
+        long maxHashSize = Math.max(64L, 4L * maxCount);
+        if (hashSize < 1 || (hashSize & (hashSize - 1)) != 0 || hashSize > maxHashSize
+            || count < 0 || count > hashSize || count > maxCount) {
+            throw new java.io.IOException("Corrupt symbol table data: size "+count+"/"+hashSize
+                                          +" (maximum entry count "+maxCount+")");
+        }
+    }
 }
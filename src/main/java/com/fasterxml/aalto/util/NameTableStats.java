@@ -0,0 +1,104 @@
+package com.fasterxml.aalto.util;
+
+/**
+ * Simple immutable value class that contains snapshot of statistics
+ * about a shared symbol table (and its usage by readers), to allow
+ * monitoring whether symbol tables work as expected, or whether
+ * input contains large number of distinct names (which may degrade
+ * performance of symbol tables).
+ */
+public final class NameTableStats
+{
+    private final int _size;
+
+    private final int _hashSize;
+
+    private final int _collisionCount;
+
+    private final int _bucketCount;
+
+    private final long _lookupCount;
+
+    private final long _missCount;
+
+    private final int _resetCount;
+
+    public NameTableStats(int size, int hashSize,
+                          int collisionCount, int bucketCount,
+                          long lookupCount, long missCount, int resetCount)
+    {
+        _size = size;
+        _hashSize = hashSize;
+        _collisionCount = collisionCount;
+        _bucketCount = bucketCount;
+        _lookupCount = lookupCount;
+        _missCount = missCount;
+        _resetCount = resetCount;
+    }
+
+    /**
+     * @return Number of names contained in the table
+     */
+    public int getSize() { return _size; }
+
+    /**
+     * @return Size of the primary hash area of the table
+     */
+    public int getHashSize() { return _hashSize; }
+
+    /**
+     * @return Number of names that could not be stored in the primary
+     *   hash area, and had to be added to collision buckets
+     */
+    public int getCollisionCount() { return _collisionCount; }
+
+    /**
+     * @return Number of collision buckets (chains) in use
+     */
+    public int getBucketCount() { return _bucketCount; }
+
+    /**
+     * @return Total number of lookups done by readers, since the
+     *   factory was created
+     */
+    public long getLookupCount() { return _lookupCount; }
+
+    /**
+     * @return Number of lookups that did not find a name, and resulted
+     *   in a new name being constructed
+     */
+    public long getMissCount() { return _missCount; }
+
+    /**
+     * @return Number of times the shared table has been reset due to
+     *   exceeding its maximum size
+     */
+    public int getResetCount() { return _resetCount; }
+
+    /**
+     * @return Ratio of successful lookups to all lookups, between
+     *   0.0 and 1.0; or 0.0 if no lookups have been made
+     */
+    public double getHitRate()
+    {
+        if (_lookupCount <= 0L) {
+            return 0.0;
+        }
+        long hits = _lookupCount - _missCount;
+        return (hits <= 0L) ? 0.0 : ((double) hits / (double) _lookupCount);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(100);
+        sb.append("[NameTableStats: size ").append(_size).append('/').append(_hashSize);
+        sb.append(", collisions ").append(_collisionCount);
+        sb.append(" in ").append(_bucketCount).append(" buckets");
+        sb.append(", lookups ").append(_lookupCount);
+        sb.append(", misses ").append(_missCount);
+        sb.append(", resets ").append(_resetCount);
+        sb.append(']');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,233 @@
+package com.fasterxml.aalto.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link BufferPool} implementation that is safe to share between
+ * any number of threads (and factories). Buffers are grouped in
+ * size classes (powers of two, from 64 up to configured maximum
+ * size), and each size class holds at most a fixed number of idle
+ * buffers; so the total amount of memory retained by the pool is
+ * bounded.
+ *<p>
+ * Access does not require locking: each size class is a fixed-size
+ * array of slots, which are claimed and filled using atomic
+ * compare-and-set operations. Threads start probing from different
+ * slots, to reduce contention. If no idle buffer is found, a new one
+ * is simply allocated; and if no free slot is found when a buffer is
+ * released, buffer is just dropped (left for GC to collect).
+ * Buffers bigger than the maximum size are never pooled.
+ */
+public final class SharedBufferPool
+    extends BufferPool
+{
+    /**
+     * Smallest size class is for buffers of 64 chars/bytes
+     */
+    private final static int MIN_SHIFT = 6;
+
+    /**
+     * By default, will pool buffers up to 64k chars/bytes long.
+     */
+    public final static int DEFAULT_MAX_BUFFER_SIZE = 0x10000;
+
+    /**
+     * By default, will keep up to 16 idle buffers per size class
+     * (and buffer type).
+     */
+    public final static int DEFAULT_BUFFERS_PER_CLASS = 16;
+
+    /**
+     * Slots for idle char buffers: slots of size class <code>N</code>
+     * are at indexes <code>N * mSlots</code> through
+     * <code>(N+1) * mSlots - 1</code>
+     */
+    private final AtomicReferenceArray<char[]> mCharBuffers;
+
+    private final AtomicReferenceArray<byte[]> mByteBuffers;
+
+    /**
+     * Number of slots each size class has.
+     */
+    private final int mSlots;
+
+    /**
+     * Length of the biggest buffers to pool
+     */
+    private final int mMaxSize;
+
+    public SharedBufferPool()
+    {
+        this(DEFAULT_MAX_BUFFER_SIZE, DEFAULT_BUFFERS_PER_CLASS);
+    }
+
+    /**
+     * @param maxBufferSize Maximum length of buffers to pool; will be
+     *   rounded up to the next power of two
+     * @param buffersPerClass Maximum number of idle buffers to retain
+     *   for each size class, separately for char and byte buffers
+     */
+    public SharedBufferPool(int maxBufferSize, int buffersPerClass)
+    {
+        if (maxBufferSize < 1) {
+            throw new IllegalArgumentException("Illegal maximum buffer size ("+maxBufferSize+"): has to be positive");
+        }
+        if (buffersPerClass < 1) {
+            throw new IllegalArgumentException("Illegal buffers-per-class count ("+buffersPerClass+"): has to be positive");
+        }
+        int classes = Math.max(1, sizeClassFor(maxBufferSize) + 1);
+        mMaxSize = 1 << (MIN_SHIFT + classes - 1);
+        mSlots = buffersPerClass;
+        mCharBuffers = new AtomicReferenceArray<char[]>(classes * buffersPerClass);
+        mByteBuffers = new AtomicReferenceArray<byte[]>(classes * buffersPerClass);
+    }
+
+    /*
+    //////////////////////////////////////////////////////////
+    // BufferPool implementation
+    //////////////////////////////////////////////////////////
+     */
+
+    @Override
+    public char[] allocCharBuffer(int minSize)
+    {
+        if (minSize > mMaxSize) {
+            return new char[minSize];
+        }
+        int sizeClass = sizeClassFor(minSize);
+        char[] buf = take(mCharBuffers, sizeClass);
+        return (buf == null) ? new char[1 << (MIN_SHIFT + sizeClass)] : buf;
+    }
+
+    @Override
+    public void releaseCharBuffer(char[] buffer)
+    {
+        int len = buffer.length;
+        if (len >= (1 << MIN_SHIFT) && len <= mMaxSize) {
+            put(mCharBuffers, sizeClassOf(len), buffer);
+        }
+    }
+
+    @Override
+    public byte[] allocByteBuffer(int minSize)
+    {
+        if (minSize > mMaxSize) {
+            return new byte[minSize];
+        }
+        int sizeClass = sizeClassFor(minSize);
+        byte[] buf = take(mByteBuffers, sizeClass);
+        return (buf == null) ? new byte[1 << (MIN_SHIFT + sizeClass)] : buf;
+    }
+
+    @Override
+    public void releaseByteBuffer(byte[] buffer)
+    {
+        int len = buffer.length;
+        if (len >= (1 << MIN_SHIFT) && len <= mMaxSize) {
+            put(mByteBuffers, sizeClassOf(len), buffer);
+        }
+    }
+
+    /*
+    //////////////////////////////////////////////////////////
+    // Diagnostics
+    //////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Number of idle char buffers currently held by the pool;
+     *   not exact if pool is concurrently accessed
+     */
+    public int getIdleCharBufferCount()
+    {
+        return countNonNull(mCharBuffers);
+    }
+
+    /**
+     * @return Number of idle byte buffers currently held by the pool;
+     *   not exact if pool is concurrently accessed
+     */
+    public int getIdleByteBufferCount()
+    {
+        return countNonNull(mByteBuffers);
+    }
+
+    public int getMaxBufferSize() { return mMaxSize; }
+
+    /*
+    //////////////////////////////////////////////////////////
+    // Internal methods
+    //////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Index of the smallest size class whose buffers are
+     *   all at least <code>size</code> long
+     */
+    private static int sizeClassFor(int size)
+    {
+        if (size <= (1 << MIN_SHIFT)) {
+            return 0;
+        }
+        return (32 - Integer.numberOfLeadingZeros(size - 1)) - MIN_SHIFT;
+    }
+
+    /**
+     * @return Index of the biggest size class that a buffer of given
+     *   length can be used for
+     */
+    private static int sizeClassOf(int len)
+    {
+        return (31 - Integer.numberOfLeadingZeros(len)) - MIN_SHIFT;
+    }
+
+    private int startSlot()
+    {
+        long id = Thread.currentThread().getId();
+        return (int) ((id ^ (id >>> 32)) & 0x7FFFFFFF) % mSlots;
+    }
+
+    private <T> T take(AtomicReferenceArray<T> slots, int sizeClass)
+    {
+        final int count = mSlots;
+        final int base = sizeClass * count;
+        int ix = startSlot();
+        for (int i = 0; i < count; ++i) {
+            T buf = slots.get(base + ix);
+            if (buf != null && slots.compareAndSet(base + ix, buf, null)) {
+                return buf;
+            }
+            if (++ix == count) {
+                ix = 0;
+            }
+        }
+        return null;
+    }
+
+    private <T> void put(AtomicReferenceArray<T> slots, int sizeClass, T buffer)
+    {
+        final int count = mSlots;
+        final int base = sizeClass * count;
+        int ix = startSlot();
+        for (int i = 0; i < count; ++i) {
+            if (slots.get(base + ix) == null && slots.compareAndSet(base + ix, null, buffer)) {
+                return;
+            }
+            if (++ix == count) {
+                ix = 0;
+            }
+        }
+        // All full: let GC take care of it
+    }
+
+    private static int countNonNull(AtomicReferenceArray<?> slots)
+    {
+        int count = 0;
+        for (int i = 0, len = slots.length(); i < len; ++i) {
+            if (slots.get(i) != null) {
+                ++count;
+            }
+        }
+        return count;
+    }
+}
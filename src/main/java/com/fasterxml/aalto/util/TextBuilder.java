@@ -2,7 +2,12 @@ package com.fasterxml.aalto.util;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.CharBuffer;
+import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
@@ -14,6 +19,8 @@ import org.codehaus.stax2.typed.TypedXMLStreamException;
 
 import org.codehaus.stax2.ri.typed.CharArrayBase64Decoder;
 
+import com.fasterxml.aalto.ErrorConsts;
+import com.fasterxml.aalto.WFCException;
 import com.fasterxml.aalto.in.ReaderConfig;
 
 /**
@@ -41,6 +48,12 @@ public final class TextBuilder
 
     private final ReaderConfig _config;
 
+    /**
+     * Maximum length of content; checked whenever a new segment is
+     * needed, to keep memory usage bounded
+     */
+    private final int _maxLength;
+
     // // // Internal non-shared collector buffers:
 
     /**
@@ -78,6 +91,11 @@ public final class TextBuilder
      */
     private int _resultLen;
 
+    /**
+     * Live view of the contents, constructed when first requested
+     */
+    private ContentView _contentView;
+
     /*
     ////////////////////////////////////////////////////////
     // Support for decoding, for Typed Access API
@@ -130,6 +148,7 @@ public final class TextBuilder
     private TextBuilder(ReaderConfig cfg)
     {
         _config = cfg;
+        _maxLength = (cfg == null) ? Integer.MAX_VALUE : cfg.getMaxTextLength();
     }
 
     public static TextBuilder createRecyclableBuffer(ReaderConfig cfg)
@@ -326,7 +345,13 @@ public final class TextBuilder
                 int currLen = _currentSize;
 
                 if (segLen == 0) {
-                    _resultString = (currLen == 0) ? "" : new String(_currentSegment, 0, currLen);
+                    // Short values may be shared, if so configured
+                    ValueCanonicalizer canon = (_config == null) ? null : _config.getValueCanonicalizer();
+                    if (canon != null) {
+                        _resultString = canon.canonicalize(_currentSegment, 0, currLen);
+                    } else {
+                        _resultString = (currLen == 0) ? "" : new String(_currentSegment, 0, currLen);
+                    }
                     return _resultString;
                 }
 
@@ -356,6 +381,47 @@ public final class TextBuilder
         return result;
     }
 
+    /**
+     * Method for accessing contents of this buffer as a {@link CharSequence}
+     * that reads characters directly from the internal segments, without
+     * constructing a String or combined array. Returned object is a live
+     * view that reflects the current contents, and is reused for all calls;
+     * so it is only valid until the buffer is reset.
+     */
+    public CharSequence contentsAsCharSequence()
+    {
+        ContentView v = _contentView;
+        if (v == null) {
+            _contentView = v = new ContentView();
+        }
+        return v;
+    }
+
+    /**
+     * @return Character at specified index of the contents
+     */
+    public char charAt(int index)
+    {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index "+index+", length "+size());
+        }
+        if (_currentSize < 0) { // shared indentation
+            return _resultArray[index];
+        }
+        index -= _segmentSize;
+        if (index >= 0) { // common case, last segment
+            return _currentSegment[index];
+        }
+        index += _segmentSize;
+        for (int i = 0; ; ++i) {
+            char[] curr = _segments.get(i);
+            if (index < curr.length) {
+                return curr[index];
+            }
+            index -= curr.length;
+        }
+    }
+
     public int contentsToArray(int srcStart, char[] dst, int dstStart, int len) {
         /* Could also check if we have array, but that'd only help with
          * braindead clients that get full array first, then segments...
@@ -493,39 +559,88 @@ public final class TextBuilder
     }
 
     /**
-     * Note: it is assumed that this method is not used often enough to
-     * be a bottleneck, or for long segments. Based on this, it is optimized
-     * for common simple cases where there is only one single character
-     * segment to use; fallback for other cases is to create such segment.
+     * Method for checking whether contents of this buffer equal given
+     * String. Comparison is done segment by segment, so that no
+     * combined array or String needs to be constructed.
      */
     public boolean equalsString(String str)
     {
-        int expLen = str.length();
-        
-        // Otherwise, segments:
-        if (expLen != size()) {
+        if (str.length() != size()) {
             return false;
         }
-        char[] seg;
-        if (_segments == null || _segments.size() == 0) {
-            // just one segment, still easy
-            seg = _currentSegment;
-        } else {
-            /* Ok; this is the sub-optimal case. Could obviously juggle through
-             * segments, but probably not worth the hassle, we seldom if ever
-             * get here...
-             */
-            seg = contentsAsArray();
+        if (_currentSize < 0) { // shared indentation
+            return _resultString.equals(str);
         }
-        
-        for (int i = 0; i < expLen; ++i) {
-            if (seg[i] != str.charAt(i)) {
+        int ix = 0;
+        if (_segments != null) {
+            for (int i = 0, len = _segments.size(); i < len; ++i) {
+                char[] seg = _segments.get(i);
+                for (int j = 0, segLen = seg.length; j < segLen; ++j) {
+                    if (seg[j] != str.charAt(ix++)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        final char[] seg = _currentSegment;
+        for (int j = 0, segLen = _currentSize; j < segLen; ++j) {
+            if (seg[j] != str.charAt(ix++)) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * Method for checking whether contents of this buffer equal given
+     * character sequence. Like {@link #equalsString}, works segment by
+     * segment.
+     */
+    public boolean equalsChars(char[] chars, int offset, int len)
+    {
+        if (len != size()) {
+            return false;
+        }
+        if (_currentSize < 0) { // shared indentation
+            return regionEquals(_resultArray, 0, len, chars, offset);
+        }
+        if (_segments != null) {
+            for (int i = 0, segc = _segments.size(); i < segc; ++i) {
+                char[] seg = _segments.get(i);
+                if (!regionEquals(seg, 0, seg.length, chars, offset)) {
+                    return false;
+                }
+                offset += seg.length;
+            }
+        }
+        return regionEquals(_currentSegment, 0, _currentSize, chars, offset);
+    }
+
+    /**
+     * @return Hash code of the contents; same as what {@link String#hashCode}
+     *   would return for the contents
+     */
+    public int contentsHashCode()
+    {
+        if (_resultString != null) {
+            return _resultString.hashCode();
+        }
+        int hash = 0;
+        if (_segments != null) {
+            for (int i = 0, len = _segments.size(); i < len; ++i) {
+                char[] seg = _segments.get(i);
+                for (int j = 0, segLen = seg.length; j < segLen; ++j) {
+                    hash = (31 * hash) + seg[j];
+                }
+            }
+        }
+        final char[] seg = _currentSegment;
+        for (int j = 0, segLen = _currentSize; j < segLen; ++j) {
+            hash = (31 * hash) + seg[j];
+        }
+        return hash;
+    }
+
     /*
     //////////////////////////////////////////////
     // Methods for generating SAX events
@@ -612,6 +727,7 @@ public final class TextBuilder
      */
 
     public void append(char c)
+        throws XMLStreamException
     {
         _resultString = null;
         _resultArray = null;
@@ -624,12 +740,14 @@ public final class TextBuilder
     }
 
     public void appendSurrogate(int surr)
+        throws XMLStreamException
     {
         append((char) (0xD800 | (surr >> 10)));
         append((char) (0xDC00 | (surr & 0x3FF)));
     }
 
     public void append(char[] c, int start, int len)
+        throws XMLStreamException
     {
         _resultString = null;
         _resultArray = null;
@@ -658,6 +776,7 @@ public final class TextBuilder
     }
 
     public void append(String str)
+        throws XMLStreamException
     {
         _resultString = null;
         _resultArray = null;
@@ -699,6 +818,7 @@ public final class TextBuilder
     }
 
     public char[] finishCurrentSegment()
+        throws XMLStreamException
     {
         if (_segments == null) {
             _segments = new ArrayList<char[]>();
@@ -706,12 +826,56 @@ public final class TextBuilder
         _segments.add(_currentSegment);
         int oldLen = _currentSegment.length;
         _segmentSize += oldLen;
+        checkLength();
         char[] curr = new char[calcNewSize(oldLen)];
         _currentSize = 0;
         _currentSegment = curr;
         return curr;
     }
 
+    /**
+     * Method called instead of {@link #finishCurrentSegment} by scanners
+     * that return text in chunks of limited length, when the current
+     * segment is full. Rather than adding a new segment, current one is
+     * expanded (up to the maximum chunk length): this way content is
+     * usually kept in a single segment, which is then retained and reused
+     * for following chunks.
+     *
+     * @param currLen Length of content in the current segment
+     * @param maxLength Maximum length of content to collect
+     *
+     * @return Current segment, expanded if necessary (with existing
+     *   content retained); or null if maximum length has been reached
+     */
+    public char[] expandForChunk(int currLen, int maxLength)
+    {
+        if ((_segmentSize + currLen) >= maxLength) {
+            return null;
+        }
+        char[] curr = _currentSegment;
+        if (currLen >= curr.length) {
+            int newLen = Math.min(curr.length + curr.length, maxLength);
+            _currentSegment = curr = Arrays.copyOf(curr, newLen);
+        }
+        return curr;
+    }
+
+    /**
+     * @param maxLength Maximum length of content to collect
+     *
+     * @return Offset within the current segment at which content
+     *   reaches given maximum length (or, end of the segment, if that
+     *   comes first)
+     */
+    public int getChunkEnd(int maxLength)
+    {
+        int end = maxLength - _segmentSize;
+        if (end < 0) {
+            return 0;
+        }
+        return Math.min(end, _currentSegment.length);
+    }
+
     private int calcNewSize(int latestSize)
     {
         // Let's grow segments by 50%, when over 8k
@@ -859,6 +1023,7 @@ public final class TextBuilder
      * segment.
      */
     private void expand(int roomNeeded)
+        throws XMLStreamException
     {
         // First, let's move current segment to segment list:
         if (_segments == null) {
@@ -868,12 +1033,87 @@ public final class TextBuilder
         _segments.add(curr);
         int oldLen = curr.length;
         _segmentSize += oldLen;
+        checkLength();
         int newSize = Math.max(roomNeeded, calcNewSize(oldLen));
         curr = new char[newSize];
         _currentSize = 0;
         _currentSegment = curr;
     }
 
+    private void checkLength()
+        throws XMLStreamException
+    {
+        if (_segmentSize > _maxLength) {
+            // no access to location information from here
+            throw new WFCException(MessageFormat.format(ErrorConsts.ERR_LIMIT_TEXT_LENGTH,
+                    new Object[] { String.valueOf(_maxLength) }));
+        }
+    }
+
+    /**
+     * Helper class that implements {@link CharSequence} on top of
+     * the segments of the enclosing builder.
+     */
+    private final class ContentView
+        implements CharSequence
+    {
+        public int length() {
+            return size();
+        }
+
+        public char charAt(int index) {
+            return TextBuilder.this.charAt(index);
+        }
+
+        public CharSequence subSequence(int start, int end)
+        {
+            int len = end - start;
+            if (start < 0 || len < 0 || end > size()) {
+                throw new IndexOutOfBoundsException("start "+start+", end "+end+", length "+size());
+            }
+            // Within a single segment? Can return another view, then
+            if (_currentSize < 0) {
+                return CharBuffer.wrap(_resultArray, start, len);
+            }
+            if (start >= _segmentSize) {
+                return CharBuffer.wrap(_currentSegment, start - _segmentSize, len);
+            }
+            if (_segments != null) {
+                int offset = start;
+                for (int i = 0, segc = _segments.size(); i < segc; ++i) {
+                    char[] curr = _segments.get(i);
+                    if (offset < curr.length) {
+                        if ((offset + len) <= curr.length) {
+                            return CharBuffer.wrap(curr, offset, len);
+                        }
+                        break;
+                    }
+                    offset -= curr.length;
+                }
+            }
+            // Nope, spans segments, need to copy
+            char[] result = new char[len];
+            contentsToArray(start, result, 0, len);
+            return CharBuffer.wrap(result);
+        }
+
+        @Override
+        public String toString() {
+            return contentsAsString();
+        }
+    }
+
+    private final static boolean regionEquals(char[] buf, int start, int len,
+                                              char[] other, int otherStart)
+    {
+        for (int i = 0; i < len; ++i) {
+            if (buf[start+i] != other[otherStart+i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private char[] buildResultArray()
     {
         if (_resultString != null) { // Can take a shortcut...
@@ -1,190 +1,200 @@
 package com.fasterxml.aalto.util;
 
-import java.util.*;
-
 /**
  * This class is used for canonicalization of namespace URIs.
  * It will act as a layer above String.intern(), trying to reduce
  * calls to somewhat slow intern() method, and to do that as efficiently
  * as possible considering that Strings in question are often
  * longer than names in xml documents.
+ *<p>
+ * Since a single instance is shared by all readers created by a factory,
+ * access has to be thread-safe; but it should not require locking, as
+ * namespace-heavy documents may be parsed concurrently by many threads.
+ * To achieve this, canonicalizer uses a fixed-size, 2-way set-associative
+ * table of immutable entries. Lookups need no allocation (matching is done
+ * directly against the char array slice) and no synchronization: since
+ * entries are immutable and have only final fields, a thread will either
+ * see a fully constructed entry or no entry at all. Concurrent updates
+ * may overwrite each others' entries, but since all values are
+ * <code>intern()</code>ed Strings, this can only result in an occasional
+ * extra cache miss, never in non-canonical results.
+ *<p>
+ * Size of the table is bounded, so that degenerate cases (unique URIs
+ * used as identifiers etc) can not make it grow without limit: least
+ * recently added entry of a bucket is simply displaced.
  */
 public final class UriCanonicalizer
 {
-    private BoundedHashMap mURIs = null;
+    /**
+     * Let's use a table big enough to usually have enough space for
+     * all/most entries for normal cases; 512 buckets with 2 entries
+     * each.
+     */
+    private final static int DEFAULT_BUCKETS = 512;
+
+    /**
+     * Table of canonicalized URIs. Entries for bucket <code>i</code>
+     * are at indexes <code>2*i</code> (most recently added) and
+     * <code>2*i + 1</code>. Table is never resized.
+     */
+    private final Entry[] mEntries;
+
+    /**
+     * Mask used to get bucket index from (spread) hash code
+     */
+    private final int mBucketMask;
 
-    public UriCanonicalizer() { }
+    public UriCanonicalizer()
+    {
+        this(DEFAULT_BUCKETS);
+    }
 
-    private void init()
+    /**
+     * @param bucketCount Number of 2-entry buckets to use; must be a
+     *   power of two
+     */
+    public UriCanonicalizer(int bucketCount)
     {
-        mURIs = new BoundedHashMap();
+        if (bucketCount < 1 || (bucketCount & (bucketCount - 1)) != 0) {
+            throw new IllegalArgumentException("Bucket count has to be a power of two, got "+bucketCount);
+        }
+        mEntries = new Entry[bucketCount << 1];
+        mBucketMask = bucketCount - 1;
     }
 
-    public synchronized String canonicalizeURI(char[] ch, int len)
+    public String canonicalizeURI(char[] ch, int len)
     {
-        CanonicalKey key = new CanonicalKey(ch, len);
-        if (mURIs == null) {
-            init();
-        } else {
-            String result = (String) mURIs.get(key);
-            if (result != null) {
-                return result;
-            }
+        final int hash = calcKeyHash(ch, len);
+        final Entry[] entries = mEntries;
+        final int ix = ((hash ^ (hash >>> 15)) & mBucketMask) << 1;
+
+        // Since other threads may modify table, need local copies:
+        Entry primary = entries[ix];
+        if (primary != null && primary.matches(ch, len, hash)) {
+            return primary.mURI;
+        }
+        Entry secondary = entries[ix+1];
+        if (secondary != null && secondary.matches(ch, len, hash)) {
+            return secondary.mURI;
         }
-        /* Key we have is not yet stable, as the underlying array 
-         * is shared and mutable. So:
+        /* Nope: need to intern, and add to the table, displacing
+         * the older of entries (if any)
          */
-        key = key.safeClone();
-        // Also, now we should intern() the URI
         String uri = new String(ch, 0, len).intern();
-        mURIs.put(key, uri);
+        if (primary != null) {
+            entries[ix+1] = primary;
+        }
+        entries[ix] = new Entry(uri, hash);
         return uri;
     }
 
-    /*
-    ///////////////////////////////////////////////////
-    // Helper classes
-    ///////////////////////////////////////////////////
+    /**
+     * Method that can be used to check how many URIs are currently
+     * held by the canonicalizer. Note that value is not exact
+     * when the instance is concurrently modified.
      */
+    public int size()
+    {
+        int count = 0;
+        for (Entry e : mEntries) {
+            if (e != null) {
+                ++count;
+            }
+        }
+        return count;
+    }
 
     /**
-     * We'll use a bounded map, which should work well for most normal
-     * cases, but avoid excesses for degenerate cases (unique URIs
-     * used as idenfitiers etc).
+     * Method that can be used to check the maximum number of URIs
+     * held by the canonicalizer at any given time.
      */
-    @SuppressWarnings("serial")
-	final static class BoundedHashMap
-        extends LinkedHashMap<CanonicalKey, String>
+    public int capacity() { return mEntries.length; }
+
+    public static int calcKeyHash(char[] buffer, int len)
     {
-        /**
-         * Let's create cache big enough to usually have enough space for
-         * all/most entries for normal cases, but that won't grow
-         * indefinitely for degenerate cases
+        /* Short URIs are not common, but if they were to
+         * happen, let's just use regular String.hashCode();
+         * it's good one, and for short strings, fast enough
          */
-        private final static int DEFAULT_SIZE = 64;
-        
-        private final static int MAX_SIZE = (int) (1023 * 0.7f); // 4k primary hash
-
-        public BoundedHashMap()
-        {
-            super(DEFAULT_SIZE, 0.7f, true);
+        if (len <= 8) { // we know it's at least one char, though
+            int hash = buffer[0];
+            // For these, let's use regular hashing method
+            for (int i = 1; i < len; ++i) {
+                hash = (hash * 31) + buffer[i];
+            }
+            return hash;
         }
 
-        @Override
-            public boolean removeEldestEntry(Map.Entry<CanonicalKey, String> entry)
-        {
-            return (size() >= MAX_SIZE);
+        /* Ok, longer. So first let's use length xored with first char;
+         * usually first 4 will just be "http" anyways (and could
+         * just be skipped for good?)
+         */
+        int hash = len ^ buffer[0];
+
+        /* Otherwise, let's start with length, xor with first char,
+         * then latter chars separated by larger and larger
+         * spaces. The idea is to severely limit time needed
+         * to calc hash code as URIs can get quite long.
+         * But let's ignore last 4 chars, for now (we'll use them
+         * all after the loop)
+         */
+        int ix = 2; // start from 3rd char (buffer[2])
+        int dist = 2; // and skip 1 char first
+        int end = (len - 4);
+
+        while (ix < end) {
+            hash = (hash * 31) + buffer[ix];
+            ix += dist;
+            ++dist; // will skip progressively longer spans
         }
+
+        // And then last 4 chars...
+        hash = (hash * 31) ^ (buffer[end] << 2) + buffer[end+1];
+        hash = (hash * 31) + (buffer[end+2] << 2) ^ buffer[end+3];
+        return hash;
     }
 
-    final static class CanonicalKey
-    {
-        /**
-         * Array containing characters of the canonicalized String.
-         */
-        final char[] mChars;
+    /*
+    ///////////////////////////////////////////////////
+    // Helper classes
+    ///////////////////////////////////////////////////
+     */
 
-        /**
-         * Length of canonicalized String
-         */
-        final int mLength;
+    /**
+     * Immutable entry of the canonicalization table; contains
+     * canonical (interned) URI, and its hash code as calculated by
+     * {@link #calcKeyHash}.
+     */
+    final static class Entry
+    {
+        final String mURI;
 
-        /**
-         * Hash of the URI string, calculated using fast(er) hash
-         * function (compared to regular String).
-         */
         final int mHash;
 
-        public CanonicalKey(char[] buffer, int len)
-        {
-            mChars = buffer;
-            mLength = len;
-            mHash = calcKeyHash(buffer, len);
-        }
-
-        public CanonicalKey(char[] buffer, int len, int hashCode)
-        {
-            mChars = buffer;
-            mLength = len;
-            mHash = hashCode;
-        }
-
-        public CanonicalKey safeClone()
+        public Entry(String uri, int hash)
         {
-            char[] newBuf = new char[mLength];
-            System.arraycopy(mChars, 0, newBuf, 0, mLength);
-            return new CanonicalKey(newBuf, mLength, mHash);
+            mURI = uri;
+            mHash = hash;
         }
 
-        public static int calcKeyHash(char[] buffer, int len)
+        public boolean matches(char[] ch, int len, int hash)
         {
-            /* Short URIs are not common, but if they were to
-             * happen, let's just use regular String.hashCode();
-             * it's good one, and for short strings, fast enough
-             */
-            if (len <= 8) { // we know it's at least one char, though
-                int hash = buffer[0];
-                // For these, let's use regular hashing method
-                for (int i = 1; i < len; ++i) {
-                    hash = (hash * 31) + buffer[i];
-                }
-                return hash;
+            if (hash != mHash) {
+                return false;
             }
-
-            /* Ok, longer. So first let's use length xored with first char;
-             * usually first 4 will just be "http" anyways (and could
-             * just be skipped for good?)
-             */
-            int hash = len ^ buffer[0];
-            
-            /* Otherwise, let's start with length, xor with first char,
-             * then latter chars separated by larger and larger
-             * spaces. The idea is to severely limit time needed
-             * to calc hash code as URIs can get quite long.
-             * But let's ignore last 4 chars, for now (we'll use them
-             * all after the loop)
-             */
-            int ix = 2; // start from 3rd char (buffer[2])
-            int dist = 2; // and skip 1 char first
-            int end = (len - 4);
-            
-            while (ix < end) {
-                hash = (hash * 31) + buffer[ix];
-                ix += dist;
-                ++dist; // will skip progressively longer spans
+            final String uri = mURI;
+            if (uri.length() != len) {
+                return false;
             }
-            
-            // And then last 4 chars...
-            hash = (hash * 31) ^ (buffer[end] << 2) + buffer[end+1];
-            hash = (hash * 31) + (buffer[end+2] << 2) ^ buffer[end+3];
-            return hash;
-        }
-
-        @Override
-            public String toString() { return "{URI, hash: 0x"+Integer.toHexString(mHash)+"}"; }
-
-        @Override
-            public int hashCode() { return mHash; }
-
-        @Override
-            public boolean equals(Object o)
-        {
-            if (o == this) return true;
-            if (o == null) return false;
-            if (o.getClass() != getClass()) return false;
-
-            CanonicalKey other = (CanonicalKey) o;
-            if (other.mLength != mLength) return false;
-            char[] c1 = mChars;
-            char[] c2 = other.mChars;
-            for (int i = 0, len = mLength; i < len; ++i) {
-                if (c1[i] != c2[i]) {
+            for (int i = 0; i < len; ++i) {
+                if (uri.charAt(i) != ch[i]) {
                     return false;
                 }
             }
             return true;
         }
 
+        @Override
+            public String toString() { return "{URI, hash: 0x"+Integer.toHexString(mHash)+"}"; }
     }
 }
-
@@ -0,0 +1,181 @@
+package com.fasterxml.aalto.util;
+
+/**
+ * This class is used for canonicalizing short attribute values and
+ * text segments, so that documents that repeat a small set of values
+ * (codes, enumerated values, flags) many times do not produce a new
+ * String instance for each occurrence. Unlike
+ * {@link UriCanonicalizer}, values are not <code>intern()</code>ed,
+ * just shared.
+ *<p>
+ * A single instance is shared by all readers created by a factory,
+ * so access has to be thread-safe without locking. Implementation is
+ * similar to that of {@link UriCanonicalizer}: a fixed-size, 2-way
+ * set-associative table of immutable entries; lookups are done against
+ * the char array slice without allocation. Within a bucket, entries
+ * are kept in least-recently-used order: a hit on the second entry
+ * promotes it, and a new entry displaces the least recently used one.
+ * Concurrent updates may lose entries or duplicate them, but since
+ * entries are immutable this can only lead to extra cache misses,
+ * never to incorrect values.
+ *<p>
+ * Only values up to a maximum length are cached; longer ones are
+ * unlikely to repeat, and would be costly to compare.
+ */
+public final class ValueCanonicalizer
+{
+    /**
+     * By default, let's only cache values of up to 64 characters.
+     */
+    public final static int DEFAULT_MAX_VALUE_LENGTH = 64;
+
+    /**
+     * Table of cached values. Entries for bucket <code>i</code>
+     * are at indexes <code>2*i</code> (most recently used) and
+     * <code>2*i + 1</code>. Table is never resized.
+     */
+    private final Entry[] mEntries;
+
+    /**
+     * Mask used to get bucket index from (spread) hash code
+     */
+    private final int mBucketMask;
+
+    private final int mMaxValueLength;
+
+    /**
+     * @param maxEntries Maximum number of values to cache; rounded up
+     *   to the next power of two
+     */
+    public ValueCanonicalizer(int maxEntries)
+    {
+        this(maxEntries, DEFAULT_MAX_VALUE_LENGTH);
+    }
+
+    /**
+     * @param maxEntries Maximum number of values to cache; rounded up
+     *   to the next power of two
+     * @param maxValueLength Maximum length of values to cache
+     */
+    public ValueCanonicalizer(int maxEntries, int maxValueLength)
+    {
+        if (maxEntries < 2) {
+            throw new IllegalArgumentException("Illegal maximum entry count ("+maxEntries+"); has to be at least 2");
+        }
+        int bucketCount = 1;
+        while ((bucketCount << 1) < maxEntries) {
+            bucketCount <<= 1;
+        }
+        mEntries = new Entry[bucketCount << 1];
+        mBucketMask = bucketCount - 1;
+        mMaxValueLength = maxValueLength;
+    }
+
+    public int getMaxValueLength() { return mMaxValueLength; }
+
+    /**
+     * @return Canonical String instance with contents of the given
+     *   char array slice; or, if value is longer than maximum length,
+     *   a newly constructed String
+     */
+    public String canonicalize(char[] ch, int start, int len)
+    {
+        if (len == 0) {
+            return "";
+        }
+        if (len > mMaxValueLength) {
+            return new String(ch, start, len);
+        }
+        int hash = 0;
+        for (int i = start, end = start+len; i < end; ++i) {
+            hash = (hash * 31) + ch[i];
+        }
+        final Entry[] entries = mEntries;
+        final int ix = ((hash ^ (hash >>> 15)) & mBucketMask) << 1;
+
+        // Since other threads may modify table, need local copies:
+        Entry primary = entries[ix];
+        if (primary != null && primary.matches(ch, start, len, hash)) {
+            return primary.mValue;
+        }
+        Entry secondary = entries[ix+1];
+        if (secondary != null && secondary.matches(ch, start, len, hash)) {
+            // Most recently used, so let's swap them
+            entries[ix] = secondary;
+            entries[ix+1] = primary;
+            return secondary.mValue;
+        }
+        // Nope: need to add, displacing least recently used one (if any)
+        String value = new String(ch, start, len);
+        if (primary != null) {
+            entries[ix+1] = primary;
+        }
+        entries[ix] = new Entry(value, hash);
+        return value;
+    }
+
+    /**
+     * Method that can be used to check how many values are currently
+     * held by the canonicalizer. Note that value is not exact
+     * when the instance is concurrently modified.
+     */
+    public int size()
+    {
+        int count = 0;
+        for (Entry e : mEntries) {
+            if (e != null) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Method that can be used to check the maximum number of values
+     * held by the canonicalizer at any given time.
+     */
+    public int capacity() { return mEntries.length; }
+
+    /*
+    ///////////////////////////////////////////////////
+    // Helper classes
+    ///////////////////////////////////////////////////
+     */
+
+    /**
+     * Immutable entry of the canonicalization table; contains
+     * the value, and its hash code (same as {@link String#hashCode}).
+     */
+    final static class Entry
+    {
+        final String mValue;
+
+        final int mHash;
+
+        public Entry(String value, int hash)
+        {
+            mValue = value;
+            mHash = hash;
+        }
+
+        public boolean matches(char[] ch, int start, int len, int hash)
+        {
+            if (hash != mHash) {
+                return false;
+            }
+            final String value = mValue;
+            if (value.length() != len) {
+                return false;
+            }
+            for (int i = 0; i < len; ++i) {
+                if (value.charAt(i) != ch[start+i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() { return "{value, hash: 0x"+Integer.toHexString(mHash)+"}"; }
+    }
+}
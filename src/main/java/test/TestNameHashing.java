@@ -92,7 +92,7 @@ public final class TestNameHashing
     PName tryToFind(ByteBasedPNameTable table, String word)
     {
         int[] quads = calcQuads(word);
-        int hash = ByteBasedPNameTable.calcHash(quads, quads.length);
+        int hash = table.calcHash(quads, quads.length);
         if (quads.length < 3) {
             return table.findSymbol(hash, quads[0], (quads.length < 2) ? 0 : quads[1]);
         }
@@ -103,7 +103,7 @@ public final class TestNameHashing
     {
         int[] quads = calcQuads(word);
         int colonIx = word.indexOf(':');
-        int hash = ByteBasedPNameTable.calcHash(quads, quads.length);
+        int hash = table.calcHash(quads, quads.length);
         if (quads.length < 3) {
             return table.addSymbol(hash, word, colonIx, quads[0], (quads.length < 2) ? 0 : quads[1]);
         }
@@ -468,7 +468,7 @@ public final class TestPNamePerf
     {
         // First, need to push back the byte read but not used:
         --mInputPtr;
-        int hash = ByteBasedPNameTable.calcHash(onlyQuad);
+        int hash = mSymbols.calcHash(onlyQuad);
         ByteBasedPName name = mSymbols.findSymbol(hash, onlyQuad, 0);
         if (name == null) {
             // Let's simplify things a bit, and just use array based one then:
@@ -484,7 +484,7 @@ public final class TestPNamePerf
     {
         // First, need to push back the byte read but not used:
         --mInputPtr;
-        int hash = ByteBasedPNameTable.calcHash(firstQuad, secondQuad);
+        int hash = mSymbols.calcHash(firstQuad, secondQuad);
         ByteBasedPName name = mSymbols.findSymbol(hash, firstQuad, secondQuad);
         if (name == null) {
             // Let's just use array, then
@@ -507,7 +507,7 @@ public final class TestPNamePerf
             mQuadBuffer = quads = DataUtil.growArrayBy(quads, quads.length);
         }
         quads[qlen++] = lastQuad;
-        int hash = ByteBasedPNameTable.calcHash(quads, qlen);
+        int hash = mSymbols.calcHash(quads, qlen);
         ByteBasedPName name = mSymbols.findSymbol(hash, quads, qlen);
         if (name == null) {
             name = addPName(hash, quads, qlen, lastByteCount);
@@ -524,7 +524,7 @@ public final class TestPNamePerf
         // Separate handling for short names:
         if (qlen <= 1) { // short name?
             if (qlen == 0) { // 4-bytes or less; only has 'lastQuad' defined
-                int hash = ByteBasedPNameTable.calcHash(lastQuad, 0);
+                int hash = mSymbols.calcHash(lastQuad, 0);
                 ByteBasedPName name = mSymbols.findSymbol(hash, lastQuad, 0);
                 if (name == null) {
                     // Let's simplify things a bit, and just use array based one then:
@@ -535,7 +535,7 @@ public final class TestPNamePerf
                 return name;
             }
 
-            int hash = ByteBasedPNameTable.calcHash(firstQuad, lastQuad);
+            int hash = mSymbols.calcHash(firstQuad, lastQuad);
             ByteBasedPName name = mSymbols.findSymbol(hash, firstQuad, lastQuad);
             if (name == null) {
                 // As above, let's just use array, then
@@ -553,7 +553,7 @@ public final class TestPNamePerf
             mQuadBuffer = quads = DataUtil.growArrayBy(quads, quads.length);
         }
         quads[qlen++] = lastQuad;
-        int hash = ByteBasedPNameTable.calcHash(quads, qlen);
+        int hash = mSymbols.calcHash(quads, qlen);
         ByteBasedPName name = mSymbols.findSymbol(hash, quads, qlen);
         if (name == null) {
             name = addPName(hash, quads, qlen, lastByteCount);
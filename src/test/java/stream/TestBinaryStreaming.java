@@ -0,0 +1,158 @@
+package stream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamWriter2;
+
+import com.fasterxml.aalto.in.StreamReaderImpl;
+
+/**
+ * Tests for the non-standard methods that stream decoded
+ * base64 content to output streams, channels and byte buffers.
+ */
+public class TestBinaryStreaming
+    extends base.BaseTestCase
+{
+    public void testToOutputStream() throws Exception
+    {
+        byte[] data = generateData(300000);
+        for (int i = 0; i < 2; ++i) {
+            boolean bytes = (i == 0);
+            StreamReaderImpl sr = createReader(data, bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals((long) data.length, sr.readElementAsBinary(out));
+            assertTrue(Arrays.equals(data, out.toByteArray()));
+            assertTokenType(END_ELEMENT, sr.getEventType());
+            assertEquals("data", sr.getLocalName());
+            assertTokenType(END_ELEMENT, sr.next());
+            sr.close();
+        }
+    }
+
+    public void testToChannel() throws Exception
+    {
+        byte[] data = generateData(50000);
+        StreamReaderImpl sr = createReader(data, true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals((long) data.length, sr.readElementAsBinary(Channels.newChannel(out)));
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+        sr.close();
+    }
+
+    /**
+     * Channel that does not accept anything must not make reader
+     * spin, but fail; and non-blocking channels are to be rejected
+     */
+    public void testToChannelWithoutProgress() throws Exception
+    {
+        StreamReaderImpl sr = createReader(generateData(5000), true);
+        try {
+            sr.readElementAsBinary(new WritableByteChannel() {
+                public int write(ByteBuffer src) { return 0; }
+                public boolean isOpen() { return true; }
+                public void close() { }
+            });
+            fail("Expected an exception for channel that does not accept output");
+        } catch (XMLStreamException e) {
+            verifyException(e, "did not accept");
+        }
+        sr.close();
+
+        sr = createReader(generateData(5000), true);
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            try {
+                sr.readElementAsBinary(pipe.sink());
+                fail("Expected an exception for non-blocking channel");
+            } catch (IllegalArgumentException e) {
+                verifyException(e, "non-blocking");
+            }
+            // and reader is not to be advanced
+            assertTokenType(START_ELEMENT, sr.getEventType());
+            assertEquals("data", sr.getLocalName());
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+        sr.close();
+    }
+
+    public void testToByteBuffer() throws Exception
+    {
+        byte[] data = generateData(70000);
+        // Both heap and direct buffers; small ones to force multiple calls
+        for (int i = 0; i < 2; ++i) {
+            ByteBuffer bb = (i == 0) ? ByteBuffer.allocate(999) : ByteBuffer.allocateDirect(999);
+            StreamReaderImpl sr = createReader(data, false);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int count;
+            while ((count = sr.readElementAsBinary(bb)) > 0) {
+                assertEquals(count, bb.position());
+                bb.flip();
+                while (bb.hasRemaining()) {
+                    out.write(bb.get());
+                }
+                bb.clear();
+            }
+            assertEquals(-1, count);
+            assertTrue(Arrays.equals(data, out.toByteArray()));
+            sr.close();
+        }
+    }
+
+    public void testEmpty() throws Exception
+    {
+        XMLStreamReader sr = getNewInputFactory().createXMLStreamReader(new StringReader("<root><data/></root>"));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0L, ((StreamReaderImpl) sr).readElementAsBinary(out));
+        assertEquals(0, out.size());
+        assertTokenType(END_ELEMENT, sr.getEventType());
+        sr.close();
+    }
+
+    /*
+    ////////////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////////////
+     */
+
+    private StreamReaderImpl createReader(byte[] data, boolean bytes) throws Exception
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        XMLStreamWriter2 sw = (XMLStreamWriter2) getNewOutputFactory().createXMLStreamWriter(bos, ENC_UTF8);
+        sw.writeStartElement("root");
+        sw.writeStartElement("data");
+        sw.writeBinary(data, 0, data.length);
+        sw.writeEndElement();
+        sw.writeEndElement();
+        sw.close();
+        byte[] doc = bos.toByteArray();
+
+        XMLInputFactory f = getNewInputFactory();
+        XMLStreamReader sr = bytes ?
+            f.createXMLStreamReader(new ByteArrayInputStream(doc))
+            : f.createXMLStreamReader(new StringReader(new String(doc, ENC_UTF8)));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("data", sr.getLocalName());
+        return (StreamReaderImpl) sr;
+    }
+
+    private byte[] generateData(int len)
+    {
+        byte[] data = new byte[len];
+        new Random(len).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,149 @@
+package stream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.AaltoInputProperties;
+import com.fasterxml.aalto.AaltoOutputProperties;
+import com.fasterxml.aalto.util.SharedBufferPool;
+
+/**
+ * Tests to verify that pluggable buffer pools work, both for
+ * readers and writers, and that pooled buffers are shared between
+ * threads.
+ */
+public class TestBufferPool
+    extends base.BaseTestCase
+{
+    public void testPoolBasics()
+    {
+        SharedBufferPool pool = new SharedBufferPool(1000, 2);
+        assertEquals(1024, pool.getMaxBufferSize());
+
+        char[] c1 = pool.allocCharBuffer(100);
+        assertEquals(128, c1.length);
+        pool.releaseCharBuffer(c1);
+        assertEquals(1, pool.getIdleCharBufferCount());
+        // Smaller requests can use bigger buffers
+        assertSame(c1, pool.allocCharBuffer(65));
+        assertEquals(0, pool.getIdleCharBufferCount());
+
+        // but bigger ones not smaller ones:
+        pool.releaseCharBuffer(c1);
+        char[] c2 = pool.allocCharBuffer(129);
+        assertNotSame(c1, c2);
+        assertEquals(256, c2.length);
+
+        // Capacity is bounded, per class:
+        pool.releaseByteBuffer(new byte[500]);
+        pool.releaseByteBuffer(new byte[500]);
+        pool.releaseByteBuffer(new byte[500]);
+        assertEquals(2, pool.getIdleByteBufferCount());
+        // And too big or small buffers are not pooled
+        pool.releaseByteBuffer(new byte[2000]);
+        pool.releaseByteBuffer(new byte[10]);
+        assertEquals(2, pool.getIdleByteBufferCount());
+        assertEquals(5000, pool.allocByteBuffer(5000).length);
+    }
+
+    public void testReaderWithPool()
+        throws Exception
+    {
+        final SharedBufferPool pool = new SharedBufferPool();
+        final XMLInputFactory f = getNewInputFactory();
+        assertNull(f.getProperty(AaltoInputProperties.P_BUFFER_POOL));
+        f.setProperty(AaltoInputProperties.P_BUFFER_POOL, pool);
+        assertSame(pool, f.getProperty(AaltoInputProperties.P_BUFFER_POOL));
+
+        final String doc = "<root attr='x'>text &amp; <leaf>more</leaf></root>";
+        assertEquals(2, readAll(f, doc, true));
+        assertEquals(2, readAll(f, doc, false));
+        int idleBytes = pool.getIdleByteBufferCount();
+        int idleChars = pool.getIdleCharBufferCount();
+        assertTrue(idleBytes > 0);
+        assertTrue(idleChars > 0);
+
+        // Buffers released by one thread should be usable by others
+        final Exception[] problem = new Exception[1];
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; i < 10; ++i) {
+                        readAll(f, doc, true);
+                        readAll(f, doc, false);
+                    }
+                } catch (Exception e) {
+                    problem[0] = e;
+                }
+            }
+        });
+        t.start();
+        t.join();
+        if (problem[0] != null) {
+            throw problem[0];
+        }
+        assertEquals(idleBytes, pool.getIdleByteBufferCount());
+        assertEquals(idleChars, pool.getIdleCharBufferCount());
+    }
+
+    public void testWriterWithPool()
+        throws Exception
+    {
+        SharedBufferPool pool = new SharedBufferPool();
+        XMLOutputFactory f = getNewOutputFactory();
+        f.setProperty(AaltoOutputProperties.P_BUFFER_POOL, pool);
+        assertSame(pool, f.getProperty(AaltoOutputProperties.P_BUFFER_POOL));
+
+        for (int i = 0; i < 3; ++i) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            XMLStreamWriter sw = f.createXMLStreamWriter(bytes, ENC_UTF8);
+            sw.writeStartDocument();
+            sw.writeStartElement("root");
+            sw.writeCharacters("value");
+            sw.writeEndElement();
+            sw.writeEndDocument();
+            sw.close();
+            assertEquals("<root>value</root>", stripDecl(bytes.toString(ENC_UTF8)));
+
+            StringWriter strw = new StringWriter();
+            sw = f.createXMLStreamWriter(strw);
+            sw.writeStartElement("root");
+            sw.writeEndElement();
+            sw.close();
+            assertEquals("<root/>", strw.toString());
+        }
+        assertTrue(pool.getIdleByteBufferCount() > 0);
+        assertTrue(pool.getIdleCharBufferCount() > 0);
+    }
+
+    /*
+    ////////////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////////////
+     */
+
+    private int readAll(XMLInputFactory f, String doc, boolean bytes)
+        throws XMLStreamException, IOException
+    {
+        XMLStreamReader sr = bytes ?
+            f.createXMLStreamReader(new ByteArrayInputStream(doc.getBytes(ENC_UTF8)))
+            : f.createXMLStreamReader(new StringReader(doc));
+        int elems = 0;
+        while (sr.hasNext()) {
+            int type = sr.next();
+            if (type == START_ELEMENT) {
+                ++elems;
+            } else if (type == CHARACTERS) {
+                assertTrue(sr.getText().length() > 0);
+            }
+        }
+        sr.close();
+        return elems;
+    }
+
+    private static String stripDecl(String xml)
+    {
+        return xml.substring(xml.indexOf("?>") + 2);
+    }
+}
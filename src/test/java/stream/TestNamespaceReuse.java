@@ -0,0 +1,112 @@
+package stream;
+
+import java.io.*;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.*;
+
+/**
+ * Tests to verify that reuse of element and namespace declaration
+ * stacks, and of bound names, does not leak state from one
+ * scope to another.
+ */
+public class TestNamespaceReuse
+    extends base.BaseTestCase
+{
+    public void testRebindingUtf8() throws Exception
+    {
+        _testRebinding(true);
+    }
+
+    public void testRebindingChars() throws Exception
+    {
+        _testRebinding(false);
+    }
+
+    public void testDeepNesting() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        final int DEPTH = 100;
+        for (int i = 0; i < DEPTH; ++i) {
+            sb.append("<p").append(i % 3).append(":e").append(i)
+                .append(" xmlns:p").append(i % 3).append("='urn:").append(i).append("'>");
+        }
+        for (int i = DEPTH; --i >= 0; ) {
+            sb.append("</p").append(i % 3).append(":e").append(i).append('>');
+        }
+        XMLStreamReader sr = getNewInputFactory().createXMLStreamReader(new StringReader(sb.toString()));
+        for (int i = 0; i < DEPTH; ++i) {
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals("e"+i, sr.getLocalName());
+            assertEquals("urn:"+i, sr.getNamespaceURI());
+            assertEquals(1, sr.getNamespaceCount());
+        }
+        for (int i = DEPTH; --i >= 0; ) {
+            assertTokenType(END_ELEMENT, sr.next());
+            assertEquals("e"+i, sr.getLocalName());
+            assertEquals("urn:"+i, sr.getNamespaceURI());
+            assertEquals(1, sr.getNamespaceCount());
+        }
+        sr.close();
+    }
+
+    /*
+    ////////////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////////////
+     */
+
+    private void _testRebinding(boolean bytes) throws Exception
+    {
+        String doc = "<root>"
+            +"<ns:a xmlns:ns='urn:1'><ns:b ns:attr='x' /></ns:a>"
+            +"<ns:a xmlns:ns='urn:2'><ns:b ns:attr='y' /></ns:a>"
+            +"<ns:a xmlns:ns='urn:1'><ns:b ns:attr='x' /></ns:a>"
+            +"</root>";
+        XMLInputFactory f = getNewInputFactory();
+        XMLStreamReader sr = bytes ?
+            f.createXMLStreamReader(new ByteArrayInputStream(doc.getBytes(ENC_UTF8)))
+            : f.createXMLStreamReader(new StringReader(doc));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("root", sr.getLocalName());
+        NamespaceContext rootCtxt = ((org.codehaus.stax2.XMLStreamReader2) sr).getNonTransientNamespaceContext();
+
+        NamespaceContext prevCtxt = null;
+        for (int i = 0; i < 3; ++i) {
+            String expURI = (i == 1) ? "urn:2" : "urn:1";
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals("a", sr.getLocalName());
+            assertEquals(expURI, sr.getNamespaceURI());
+            assertEquals(1, sr.getNamespaceCount());
+            assertEquals("ns", sr.getNamespacePrefix(0));
+            assertEquals(expURI, sr.getNamespaceURI(0));
+
+            NamespaceContext ctxt = ((org.codehaus.stax2.XMLStreamReader2) sr).getNonTransientNamespaceContext();
+            assertEquals(expURI, ctxt.getNamespaceURI("ns"));
+            if (prevCtxt != null) {
+                // old context must not be affected by reuse
+                assertEquals((i == 1) ? "urn:1" : "urn:2", prevCtxt.getNamespaceURI("ns"));
+            }
+            prevCtxt = ctxt;
+
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals("b", sr.getLocalName());
+            assertEquals(expURI, sr.getNamespaceURI());
+            assertEquals(0, sr.getNamespaceCount());
+            assertEquals(expURI, sr.getAttributeNamespace(0));
+            assertTokenType(END_ELEMENT, sr.next());
+            assertEquals("b", sr.getLocalName());
+            assertEquals(expURI, sr.getNamespaceURI());
+            assertTokenType(END_ELEMENT, sr.next());
+            assertEquals("a", sr.getLocalName());
+            assertEquals(expURI, sr.getNamespaceURI());
+            assertEquals(1, sr.getNamespaceCount());
+        }
+        assertTokenType(END_ELEMENT, sr.next());
+        assertEquals("root", sr.getLocalName());
+        assertEquals(0, sr.getNamespaceCount());
+        assertNull(((org.codehaus.stax2.XMLStreamReader2) sr).getNonTransientNamespaceContext().getNamespaceURI("ns"));
+        assertNull(rootCtxt.getNamespaceURI("ns"));
+        sr.close();
+    }
+}
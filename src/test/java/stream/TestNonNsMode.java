@@ -0,0 +1,138 @@
+package stream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+/**
+ * Tests for verifying handling of namespace-unaware mode, in which
+ * colons are regular name characters and namespace declarations are
+ * just attributes.
+ */
+public class TestNonNsMode
+    extends base.BaseTestCase
+{
+    final static String DOC = "<ns:root xmlns:ns='urn:x' xmlns='urn:y' ns:attr='1' a:b:c='2'>"
+        +"<ns:leaf>text</ns:leaf><plain/></ns:root>";
+
+    public void testProperty() throws Exception
+    {
+        XMLInputFactory f = getNewInputFactory();
+        assertEquals(Boolean.TRUE, f.getProperty(XMLInputFactory.IS_NAMESPACE_AWARE));
+        f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        assertEquals(Boolean.FALSE, f.getProperty(XMLInputFactory.IS_NAMESPACE_AWARE));
+    }
+
+    public void testBasicBytes() throws Exception
+    {
+        XMLInputFactory f = getNewInputFactory();
+        f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        _testBasic(f.createXMLStreamReader(new ByteArrayInputStream(DOC.getBytes(ENC_UTF8))));
+    }
+
+    public void testBasicChars() throws Exception
+    {
+        XMLInputFactory f = getNewInputFactory();
+        f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        _testBasic(f.createXMLStreamReader(new StringReader(DOC)));
+    }
+
+    /**
+     * Names must not be shared between namespace-aware and -unaware
+     * readers, as they are split differently.
+     */
+    public void testSharedFactory() throws Exception
+    {
+        XMLInputFactory f = getNewInputFactory();
+        for (int i = 0; i < 2; ++i) {
+            boolean bytes = (i == 0);
+            f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            XMLStreamReader sr = createReader(f, "<ns:root xmlns:ns='urn:x'/>", bytes);
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals("root", sr.getLocalName());
+            assertEquals("urn:x", sr.getNamespaceURI());
+            sr.close();
+
+            f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+            sr = createReader(f, "<ns:root xmlns:ns='urn:x'/>", bytes);
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals("ns:root", sr.getLocalName());
+            sr.close();
+        }
+    }
+
+    public void testUnboundPrefix() throws Exception
+    {
+        // fine in non-namespace mode, since there are no prefixes
+        final String XML = "<x:root y:attr='a'><z:leaf /></x:root>";
+        XMLInputFactory f = getNewInputFactory();
+        f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        for (int i = 0; i < 2; ++i) {
+            XMLStreamReader sr = createReader(f, XML, (i == 0));
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals("x:root", sr.getLocalName());
+            assertEquals("y:attr", sr.getAttributeLocalName(0));
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals("z:leaf", sr.getLocalName());
+            assertTokenType(END_ELEMENT, sr.next());
+            assertTokenType(END_ELEMENT, sr.next());
+            assertEquals("x:root", sr.getLocalName());
+            sr.close();
+        }
+    }
+
+    private void _testBasic(XMLStreamReader sr) throws Exception
+    {
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("ns:root", sr.getLocalName());
+        assertNoPrefix(sr.getPrefix());
+        assertNoNsURI(sr.getNamespaceURI());
+        assertEquals(0, sr.getNamespaceCount());
+        assertEquals(4, sr.getAttributeCount());
+        assertEquals("xmlns:ns", sr.getAttributeLocalName(0));
+        assertEquals("urn:x", sr.getAttributeValue(0));
+        assertEquals("xmlns", sr.getAttributeLocalName(1));
+        assertEquals("urn:y", sr.getAttributeValue(1));
+        assertEquals("ns:attr", sr.getAttributeLocalName(2));
+        assertNoPrefix(sr.getAttributePrefix(2));
+        assertNoNsURI(sr.getAttributeNamespace(2));
+        assertEquals("a:b:c", sr.getAttributeLocalName(3));
+        assertEquals("2", sr.getAttributeValue(null, "a:b:c"));
+
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("ns:leaf", sr.getLocalName());
+        assertEquals("text", sr.getElementText());
+        assertEquals("ns:leaf", sr.getLocalName());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("plain", sr.getLocalName());
+        assertNoNsURI(sr.getNamespaceURI());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertEquals("ns:root", sr.getLocalName());
+        assertTokenType(END_DOCUMENT, sr.next());
+        sr.close();
+    }
+
+    private void assertNoPrefix(String prefix)
+    {
+        if (prefix != null && prefix.length() > 0) {
+            fail("Expected no prefix, got '"+prefix+"'");
+        }
+    }
+
+    private void assertNoNsURI(String uri)
+    {
+        if (uri != null && uri.length() > 0) {
+            fail("Expected no namespace URI, got '"+uri+"'");
+        }
+    }
+
+    private XMLStreamReader createReader(XMLInputFactory f, String doc, boolean bytes)
+        throws Exception
+    {
+        if (bytes) {
+            return f.createXMLStreamReader(new ByteArrayInputStream(doc.getBytes(ENC_UTF8)));
+        }
+        return f.createXMLStreamReader(new StringReader(doc));
+    }
+}
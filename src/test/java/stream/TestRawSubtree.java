@@ -0,0 +1,243 @@
+package stream;
+
+import java.io.*;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.RawSubtree;
+import com.fasterxml.aalto.in.StreamReaderImpl;
+import com.fasterxml.aalto.out.StreamWriterBase;
+
+/**
+ * Tests for verifying that element subtrees can be read as raw bytes,
+ * and written out as is.
+ */
+public class TestRawSubtree
+    extends base.BaseTestCase
+{
+    final static String BODY = "<ns:body xmlns:x='urn:x' a=\"&amp;1\">\r\n"
+        +"  <x:leaf ns:attr='v'>text \u00E9\u20AC &lt; <![CDATA[cdata]]></x:leaf><!-- c --><?pi?>\n"
+        +"  <empty  /><deflt>&#65;</deflt>"
+        +"</ns:body>";
+
+    final static String DOC = "<?xml version='1.0'?>\n"
+        +"<env xmlns='urn:default' xmlns:ns='urn:ns' xmlns:unused='urn:unused'>"
+        +"<header />"+BODY+"<trailer/></env>";
+
+    public void testReadSubtree() throws Exception
+    {
+        StreamReaderImpl sr = createReader(DOC.getBytes(ENC_UTF8));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("header", sr.getLocalName());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("body", sr.getLocalName());
+
+        RawSubtree raw = sr.readRawSubtree();
+        assertNotNull(raw);
+        assertEquals(BODY, raw.toString());
+        assertEquals("<ns:body".length(), raw.getRootNameEnd());
+        Map<String,String> exp = new LinkedHashMap<String,String>();
+        exp.put("ns", "urn:ns");
+        exp.put("", "urn:default");
+        assertEquals(exp, raw.getNamespaceBindings());
+
+        // and reader must be positioned at the matching end element
+        assertTokenType(END_ELEMENT, sr.getEventType());
+        assertEquals("body", sr.getLocalName());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("trailer", sr.getLocalName());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_DOCUMENT, sr.next());
+        sr.close();
+    }
+
+    public void testEmptyElement() throws Exception
+    {
+        StreamReaderImpl sr = createReader("<root><leaf a='1' /></root>".getBytes(ENC_UTF8));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        RawSubtree raw = sr.readRawSubtree();
+        assertEquals("<leaf a='1' />", raw.toString());
+        assertEquals(Collections.singletonMap("", ""), raw.getNamespaceBindings());
+        assertTokenType(END_ELEMENT, sr.getEventType());
+        assertEquals("leaf", sr.getLocalName());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertEquals("root", sr.getLocalName());
+        sr.close();
+    }
+
+    /**
+     * Test that uses subtrees bigger than input buffer, and with
+     * start tags split across buffer boundaries.
+     */
+    public void testLongSubtrees() throws Exception
+    {
+        StringBuilder sb = new StringBuilder("<root xmlns:p='urn:p'>");
+        List<String> items = new ArrayList<String>();
+        for (int i = 0; i < 300; ++i) {
+            StringBuilder item = new StringBuilder();
+            item.append("<p:item id='").append(i).append("'>");
+            for (int j = 0; j < (i % 7) * 50; ++j) {
+                item.append("<sub>").append(j).append(" \u00E9</sub>");
+            }
+            item.append("</p:item>");
+            items.add(item.toString());
+            sb.append(item).append(' ');
+        }
+        sb.append("</root>");
+        // use an input stream that returns content in small pieces
+        InputStream in = new SlowInputStream(sb.toString().getBytes(ENC_UTF8));
+        StreamReaderImpl sr = (StreamReaderImpl) getNewInputFactory().createXMLStreamReader(in);
+        assertTokenType(START_ELEMENT, sr.next());
+        for (int i = 0; i < items.size(); ++i) {
+            String item = items.get(i);
+            int type;
+            while ((type = sr.next()) != START_ELEMENT) {
+                assertTokenType(CHARACTERS, type);
+            }
+            RawSubtree raw = sr.readRawSubtree();
+            assertEquals(item, raw.toString());
+            Map<String,String> exp = new LinkedHashMap<String,String>();
+            exp.put("p", "urn:p");
+            // unprefixed child elements rely on there being no default namespace
+            if ((i % 7) != 0) {
+                exp.put("", "");
+            }
+            assertEquals(exp, raw.getNamespaceBindings());
+        }
+        sr.close();
+    }
+
+    public void testNotAvailable() throws Exception
+    {
+        // char-based readers can not provide raw bytes
+        StreamReaderImpl sr = (StreamReaderImpl) getNewInputFactory().createXMLStreamReader(new StringReader("<root><leaf/></root>"));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertNull(sr.readRawSubtree());
+        assertTokenType(START_ELEMENT, sr.getEventType());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("leaf", sr.getLocalName());
+        sr.close();
+
+        // nor can ones for ISO-8859-1 input, since bytes are not UTF-8
+        sr = createReader("<?xml version='1.0' encoding='ISO-8859-1'?><root><leaf>caf\u00E9</leaf></root>".getBytes(ENC_LATIN1));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertNull(sr.readRawSubtree());
+        assertTokenType(START_ELEMENT, sr.getEventType());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("leaf", sr.getLocalName());
+        assertEquals("caf\u00E9", sr.getElementText());
+        sr.close();
+    }
+
+    public void testWriteSubtree() throws Exception
+    {
+        StreamReaderImpl sr = createReader(DOC.getBytes(ENC_UTF8));
+        while (sr.next() != START_ELEMENT || !"body".equals(sr.getLocalName())) { }
+        RawSubtree raw = sr.readRawSubtree();
+        sr.close();
+
+        // First, in context where bindings match: no changes needed
+        String out = write(raw, ENC_UTF8, "urn:default", "urn:ns");
+        assertEquals("<out xmlns=\"urn:default\" xmlns:ns=\"urn:ns\">"+BODY+"</out>", out);
+
+        // then with mismatching bindings
+        out = write(raw, ENC_UTF8, null, "urn:other");
+        String withDecls = "<ns:body xmlns:ns=\"urn:ns\" xmlns=\"urn:default\""
+            +BODY.substring("<ns:body".length());
+        assertEquals("<out xmlns:ns=\"urn:other\">"+withDecls+"</out>", out);
+
+        // and with an encoding that requires conversion; but can not
+        // contain chars that can not be encoded, since content is raw
+        try {
+            write(raw, ENC_LATIN1, "urn:default", "urn:ns");
+            fail("Should not pass");
+        } catch (XMLStreamException e) {
+            verifyException(e, "can only be output as character entity");
+        }
+
+        // and resulting document must be well-formed and equivalent
+        out = write(raw, ENC_UTF8, null, "urn:other");
+        XMLStreamReader sr2 = getNewInputFactory().createXMLStreamReader(new StringReader(out));
+        assertTokenType(START_ELEMENT, sr2.next());
+        assertTokenType(START_ELEMENT, sr2.next());
+        assertEquals("urn:ns", sr2.getNamespaceURI());
+        assertTokenType(CHARACTERS, sr2.next());
+        assertTokenType(START_ELEMENT, sr2.next());
+        assertEquals("urn:x", sr2.getNamespaceURI());
+        assertEquals("urn:ns", sr2.getAttributeNamespace(0));
+        while (sr2.next() != START_ELEMENT || !"deflt".equals(sr2.getLocalName())) { }
+        assertEquals("urn:default", sr2.getNamespaceURI());
+        sr2.close();
+    }
+
+    public void testWriteAsRoot() throws Exception
+    {
+        StreamReaderImpl sr = createReader("<root><leaf>x\u00E9</leaf></root>".getBytes(ENC_UTF8));
+        sr.next();
+        sr.next();
+        RawSubtree raw = sr.readRawSubtree();
+        sr.close();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        StreamWriterBase sw = (StreamWriterBase) getNewOutputFactory().createXMLStreamWriter(bos, ENC_UTF8);
+        sw.writeStartDocument();
+        sw.writeRawSubtree(raw);
+        sw.writeComment("end");
+        sw.writeEndDocument();
+        sw.close();
+        assertEquals("<?xml version='1.0' encoding='UTF-8'?><leaf>x\u00E9</leaf><!--end-->", bos.toString(ENC_UTF8));
+
+        bos = new ByteArrayOutputStream();
+        sw = (StreamWriterBase) getNewOutputFactory().createXMLStreamWriter(bos, ENC_LATIN1);
+        sw.writeRawSubtree(raw);
+        sw.close();
+        assertEquals("<leaf>x\u00E9</leaf>", bos.toString(ENC_LATIN1));
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////
+     */
+
+    private StreamReaderImpl createReader(byte[] data) throws Exception
+    {
+        return (StreamReaderImpl) getNewInputFactory().createXMLStreamReader(new ByteArrayInputStream(data));
+    }
+
+    private String write(RawSubtree raw, String enc, String defaultNs, String nsUri)
+        throws Exception
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        StreamWriterBase sw = (StreamWriterBase) getNewOutputFactory().createXMLStreamWriter(bos, enc);
+        sw.writeStartElement("", "out", (defaultNs == null) ? "" : defaultNs);
+        if (defaultNs != null) {
+            sw.writeDefaultNamespace(defaultNs);
+        }
+        sw.writeNamespace("ns", nsUri);
+        sw.writeRawSubtree(raw);
+        sw.writeEndElement();
+        sw.close();
+        return bos.toString(enc);
+    }
+
+    /**
+     * Input stream that returns at most 17 bytes per read
+     */
+    final static class SlowInputStream
+        extends ByteArrayInputStream
+    {
+        public SlowInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 17));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package stream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.AaltoInputProperties;
+import com.fasterxml.aalto.in.StreamReaderImpl;
+
+/**
+ * Tests for accessing text and attribute values as raw undecoded
+ * UTF-8 bytes.
+ */
+public class TestRawUtf8Access
+    extends base.BaseTestCase
+{
+    public void testRawText() throws Exception
+    {
+        final String TEXT1 = "abc \u00E4\u20AC\uD83D\uDE00 xyz";
+        final String TEXT2 = "a &amp; b&#65;\r\nc";
+        StreamReaderImpl sr = createReader("<root>"+TEXT1+"<leaf>"+TEXT2+"</leaf></root>", true);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertNull(sr.getRawText());
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals(TEXT1, utf8(sr.getRawText()));
+        assertTrue(sr.isRawTextVerbatim());
+        assertEquals(TEXT1, sr.getText());
+
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals(TEXT2, utf8(sr.getRawText()));
+        assertFalse(sr.isRawTextVerbatim());
+        assertEquals("a & bA\nc", sr.getText());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertNull(sr.getRawText());
+        sr.close();
+    }
+
+    public void testRawTextStartingWithEntity() throws Exception
+    {
+        StreamReaderImpl sr = createReader("<root>&lt;tag></root>", true);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("&lt;tag>", utf8(sr.getRawText()));
+        assertFalse(sr.isRawTextVerbatim());
+        assertEquals("<tag>", sr.getText());
+        sr.close();
+    }
+
+    public void testRawAttributes() throws Exception
+    {
+        StreamReaderImpl sr = createReader("<root a='\u00E4bc' xmlns:ns='urn:x' b=\"x&amp;y\" ns:c='1\t2' d=''/>", true);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals(4, sr.getAttributeCount());
+        assertEquals("\u00E4bc", utf8(sr.getRawAttributeValue(0)));
+        assertTrue(sr.isRawAttributeValueVerbatim(0));
+        assertEquals("x&amp;y", utf8(sr.getRawAttributeValue(1)));
+        assertFalse(sr.isRawAttributeValueVerbatim(1));
+        assertEquals("1\t2", utf8(sr.getRawAttributeValue(2)));
+        assertFalse(sr.isRawAttributeValueVerbatim(2));
+        assertEquals("1 2", sr.getAttributeValue(2));
+        assertEquals("", utf8(sr.getRawAttributeValue(3)));
+        assertTrue(sr.isRawAttributeValueVerbatim(3));
+        sr.close();
+    }
+
+    public void testNotAvailableForChars() throws Exception
+    {
+        StreamReaderImpl sr = createReader("<root a='b'>text</root>", false);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertNull(sr.getRawAttributeValue(0));
+        assertFalse(sr.isRawAttributeValueVerbatim(0));
+        assertTokenType(CHARACTERS, sr.next());
+        assertNull(sr.getRawText());
+        assertFalse(sr.isRawTextVerbatim());
+        sr.close();
+    }
+
+    /**
+     * ISO-8859-1 and US-ASCII input is parsed by the same scanner as
+     * UTF-8; but raw bytes are not UTF-8, so must not be exposed.
+     */
+    public void testNotAvailableForLatin1() throws Exception
+    {
+        String doc = "<?xml version='1.0' encoding='ISO-8859-1'?><root a='caf\u00E9'>caf\u00E9</root>";
+        XMLInputFactory f = getNewInputFactory();
+        StreamReaderImpl sr = (StreamReaderImpl) f.createXMLStreamReader(new ByteArrayInputStream(doc.getBytes(ENC_LATIN1)));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("caf\u00E9", sr.getAttributeValue(0));
+        assertNull(sr.getRawAttributeValue(0));
+        assertFalse(sr.isRawAttributeValueVerbatim(0));
+        assertTokenType(CHARACTERS, sr.next());
+        assertNull(sr.getRawText());
+        assertFalse(sr.isRawTextVerbatim());
+        assertEquals("caf\u00E9", sr.getText());
+        sr.close();
+
+        doc = "<?xml version='1.0' encoding='US-ASCII'?><root a='b'>text</root>";
+        sr = (StreamReaderImpl) f.createXMLStreamReader(new ByteArrayInputStream(doc.getBytes("US-ASCII")));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertNull(sr.getRawAttributeValue(0));
+        assertTokenType(CHARACTERS, sr.next());
+        assertNull(sr.getRawText());
+        sr.close();
+    }
+
+    /**
+     * Test to verify that long text is either returned accurately, or
+     * not at all, when input buffer is reloaded mid-event.
+     */
+    public void testLongChunkedText() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 200000; ++i) {
+            sb.append("line ").append(i).append(" \u00E4\u20AC\n");
+        }
+        String text = sb.toString();
+        XMLInputFactory f = getNewInputFactory();
+        f.setProperty(AaltoInputProperties.P_MAX_TEXT_CHUNK_LENGTH, Integer.valueOf(1000));
+        byte[] doc = ("<root>"+text+"</root>").getBytes(ENC_UTF8);
+        // important: stream, not a byte array, to force reloads
+        StreamReaderImpl sr = (StreamReaderImpl) f.createXMLStreamReader(new ByteArrayInputStream(doc));
+        assertTokenType(START_ELEMENT, sr.next());
+        int available = 0;
+        int missing = 0;
+        while (sr.next() == CHARACTERS) {
+            ByteBuffer raw = sr.getRawText();
+            if (raw == null) {
+                ++missing;
+            } else {
+                ++available;
+                assertEquals(sr.getText(), utf8(raw));
+            }
+        }
+        assertTokenType(END_ELEMENT, sr.getEventType());
+        assertTrue(available > missing);
+        sr.close();
+    }
+
+    /*
+    ////////////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////////////
+     */
+
+    private StreamReaderImpl createReader(String doc, boolean bytes) throws Exception
+    {
+        XMLInputFactory f = getNewInputFactory();
+        return (StreamReaderImpl) (bytes ?
+            f.createXMLStreamReader(new ByteArrayInputStream(doc.getBytes(ENC_UTF8)))
+            : f.createXMLStreamReader(new StringReader(doc)));
+    }
+
+    private static String utf8(ByteBuffer bb) throws IOException
+    {
+        assertNotNull(bb);
+        assertTrue(bb.isReadOnly());
+        byte[] b = new byte[bb.remaining()];
+        bb.get(b);
+        return new String(b, "UTF-8");
+    }
+}
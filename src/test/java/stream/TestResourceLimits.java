@@ -0,0 +1,218 @@
+package stream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.AaltoInputProperties;
+import com.fasterxml.aalto.UncheckedStreamException;
+
+/**
+ * Tests for verifying that configurable resource limits are enforced
+ * by both byte- and char-based readers.
+ */
+public class TestResourceLimits
+    extends base.BaseTestCase
+{
+    public void testDefaults() throws Exception
+    {
+        XMLInputFactory f = getNewInputFactory();
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), f.getProperty(AaltoInputProperties.P_MAX_ELEMENT_DEPTH));
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), f.getProperty(AaltoInputProperties.P_MAX_ATTRIBUTE_COUNT));
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), f.getProperty(AaltoInputProperties.P_MAX_NAME_LENGTH));
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), f.getProperty(AaltoInputProperties.P_MAX_TEXT_LENGTH));
+        assertEquals(Long.valueOf(Long.MAX_VALUE), f.getProperty(AaltoInputProperties.P_MAX_DOCUMENT_LENGTH));
+        f.setProperty(AaltoInputProperties.P_MAX_DOCUMENT_LENGTH, "1000");
+        assertEquals(Long.valueOf(1000L), f.getProperty(AaltoInputProperties.P_MAX_DOCUMENT_LENGTH));
+        try {
+            f.setProperty(AaltoInputProperties.P_MAX_ELEMENT_DEPTH, Integer.valueOf(0));
+            fail("Should not pass");
+        } catch (IllegalArgumentException e) {
+            verifyException(e, "minimum 1");
+        }
+    }
+
+    public void testElementDepth() throws Exception
+    {
+        final String DOC = "<a><b><c/></b></a>";
+        for (int i = 0; i < 2; ++i) {
+            boolean bytes = (i == 0);
+            streamThrough(createReader(DOC, bytes, AaltoInputProperties.P_MAX_ELEMENT_DEPTH, 3));
+            try {
+                streamThrough(createReader(DOC, bytes, AaltoInputProperties.P_MAX_ELEMENT_DEPTH, 2));
+                fail("Should not pass");
+            } catch (XMLStreamException e) {
+                verifyException(e, "Maximum element nesting depth (2)");
+            }
+        }
+    }
+
+    public void testAttributeCount() throws Exception
+    {
+        // namespace declarations are not counted
+        final String DOC = "<root xmlns:x='urn:x' a='1' x:b='2'><leaf c='3' /></root>";
+        for (int i = 0; i < 2; ++i) {
+            boolean bytes = (i == 0);
+            streamThrough(createReader(DOC, bytes, AaltoInputProperties.P_MAX_ATTRIBUTE_COUNT, 2));
+            try {
+                streamThrough(createReader(DOC, bytes, AaltoInputProperties.P_MAX_ATTRIBUTE_COUNT, 1));
+                fail("Should not pass");
+            } catch (XMLStreamException e) {
+                verifyException(e, "Maximum attribute count (1)");
+            }
+        }
+    }
+
+    public void testNameLength() throws Exception
+    {
+        // long enough to need expansion of name buffers
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; ++i) {
+            sb.append((char) ('a' + (i % 26)));
+        }
+        final String NAME = sb.toString();
+        final String[] DOCS = new String[] {
+            "<"+NAME+"/>",
+            "<root "+NAME+"='value'/>",
+            // and one with multi-byte chars, for byte-based input
+            "<r\u00E9"+NAME+"/>",
+        };
+        for (int i = 0; i < 2; ++i) {
+            boolean bytes = (i == 0);
+            for (String doc : DOCS) {
+                streamThrough(createReader(doc, bytes, AaltoInputProperties.P_MAX_NAME_LENGTH, 502));
+                // exceeding by a single char should be caught
+                try {
+                    streamThrough(createReader(doc, bytes, AaltoInputProperties.P_MAX_NAME_LENGTH, 499));
+                    fail("Should not pass");
+                } catch (XMLStreamException e) {
+                    verifyException(e, "Maximum name length (499)");
+                }
+                // as well as names much longer than limit
+                try {
+                    streamThrough(createReader(doc, bytes, AaltoInputProperties.P_MAX_NAME_LENGTH, 20));
+                    fail("Should not pass");
+                } catch (XMLStreamException e) {
+                    verifyException(e, "Maximum name length (20)");
+                }
+            }
+        }
+    }
+
+    public void testTextLength() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; ++i) {
+            sb.append(i % 10);
+        }
+        final String TEXT = sb.toString();
+        final String[] DOCS = new String[] {
+            "<root>"+TEXT+"</root>",
+            "<root><![CDATA["+TEXT+"]]></root>",
+            "<root><!--"+TEXT+"--></root>",
+        };
+        for (int i = 0; i < 2; ++i) {
+            boolean bytes = (i == 0);
+            for (String doc : DOCS) {
+                readAllText(createReader(doc, bytes, AaltoInputProperties.P_MAX_TEXT_LENGTH, 10000));
+                try {
+                    readAllText(createReader(doc, bytes, AaltoInputProperties.P_MAX_TEXT_LENGTH, 9999));
+                    fail("Should not pass");
+                } catch (XMLStreamException e) {
+                    verifyException(e, "Maximum text length (9999)");
+                }
+                try {
+                    readAllText(createReader(doc, bytes, AaltoInputProperties.P_MAX_TEXT_LENGTH, 100));
+                    fail("Should not pass");
+                } catch (XMLStreamException e) {
+                    verifyException(e, "Maximum text length (100)");
+                }
+            }
+        }
+    }
+
+    public void testAttributeValueLength() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 800) {
+            sb.append("value ");
+        }
+        final String SHORT = sb.toString();
+        while (sb.length() < 200000) {
+            sb.append("value ");
+        }
+        final String LONG = sb.toString();
+        for (int i = 0; i < 2; ++i) {
+            boolean bytes = (i == 0);
+            // limit is per value, not for all values of an element
+            streamThrough(createReader("<root a='"+SHORT+"' b='"+SHORT+"' c='"+SHORT+"'/>",
+                                       bytes, AaltoInputProperties.P_MAX_TEXT_LENGTH, 1000));
+            try {
+                streamThrough(createReader("<root a='x' b='"+LONG+"'/>",
+                                           bytes, AaltoInputProperties.P_MAX_TEXT_LENGTH, 1000));
+                fail("Should not pass");
+            } catch (XMLStreamException e) {
+                verifyException(e, "Maximum attribute value length (1000)");
+            }
+        }
+    }
+
+    public void testDocumentLength() throws Exception
+    {
+        StringBuilder sb = new StringBuilder("<root>");
+        while (sb.length() < 50000) {
+            sb.append("<item>value</item>");
+        }
+        sb.append("</root>");
+        final String DOC = sb.toString();
+        for (int i = 0; i < 2; ++i) {
+            boolean bytes = (i == 0);
+            streamThrough(createReader(DOC, bytes, AaltoInputProperties.P_MAX_DOCUMENT_LENGTH, DOC.length()));
+            try {
+                streamThrough(createReader(DOC, bytes, AaltoInputProperties.P_MAX_DOCUMENT_LENGTH, 20000));
+                fail("Should not pass");
+            } catch (XMLStreamException e) {
+                verifyException(e, "Maximum document length (20000)");
+            }
+        }
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////
+     */
+
+    private XMLStreamReader createReader(String doc, boolean bytes, String prop, long limit)
+        throws Exception
+    {
+        XMLInputFactory f = getNewInputFactory();
+        f.setProperty(prop, Long.valueOf(limit));
+        if (bytes) {
+            return f.createXMLStreamReader(new ByteArrayInputStream(doc.getBytes(ENC_UTF8)));
+        }
+        return f.createXMLStreamReader(new StringReader(doc));
+    }
+
+    private void streamThrough(XMLStreamReader sr) throws XMLStreamException
+    {
+        while (sr.hasNext()) {
+            sr.next();
+        }
+        sr.close();
+    }
+
+    private void readAllText(XMLStreamReader sr) throws XMLStreamException
+    {
+        while (sr.hasNext()) {
+            if (sr.next() != START_ELEMENT && sr.hasText()) {
+                try {
+                    sr.getText();
+                } catch (UncheckedStreamException e) {
+                    throw (XMLStreamException) e.getCause();
+                }
+            }
+        }
+        sr.close();
+    }
+}
@@ -0,0 +1,107 @@
+package stream;
+
+import java.io.*;
+import java.util.Arrays;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.AaltoInputProperties;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import com.fasterxml.aalto.util.NameTableStats;
+
+/**
+ * Tests to verify that symbol tables exported from one input factory
+ * can be imported into another one.
+ */
+public class TestSymbolTableExport
+    extends base.BaseTestCase
+{
+    final static String DOC = "<root xmlns:ns='urn:x'><ns:branch attr='1'><leaf /></ns:branch></root>";
+
+    public void testRoundTrip()
+        throws Exception
+    {
+        InputFactoryImpl f = (InputFactoryImpl) getNewInputFactory();
+        // Need both byte- and char-based symbol tables populated:
+        readAll(f.createXMLStreamReader(new ByteArrayInputStream(DOC.getBytes(ENC_UTF8))));
+        readAll(f.createXMLStreamReader(new StringReader(DOC)));
+        byte[] data = f.exportSymbolTables();
+        assertTrue(data.length > 0);
+
+        InputFactoryImpl f2 = (InputFactoryImpl) getNewInputFactory();
+        f2.importSymbolTables(data);
+        // Should still parse same content just fine
+        assertEquals(3, readAll(f2.createXMLStreamReader(new ByteArrayInputStream(DOC.getBytes(ENC_UTF8)))));
+        assertEquals(3, readAll(f2.createXMLStreamReader(new StringReader(DOC))));
+        // and names should have been found, not added again
+        NameTableStats stats = f2.getSymbolTableStats(ENC_UTF8);
+        assertTrue(stats.getLookupCount() > 0L);
+        assertEquals(0L, stats.getMissCount());
+        stats = f2.getCharSymbolTableStats();
+        assertTrue(stats.getLookupCount() > 0L);
+        assertEquals(0L, stats.getMissCount());
+        // and re-exporting should give identical content
+        assertTrue(Arrays.equals(data, f2.exportSymbolTables()));
+    }
+
+    public void testInvalidData()
+        throws Exception
+    {
+        InputFactoryImpl f = (InputFactoryImpl) getNewInputFactory();
+        try {
+            f.importSymbolTables(new byte[] { 1, 2, 3, 4, 5 });
+            fail("Should not accept invalid data");
+        } catch (IOException e) {
+            verifyException(e, "unrecognized header");
+        }
+    }
+
+    /**
+     * Declared table sizes must be verified before anything is
+     * allocated based on them
+     */
+    public void testCorruptSizes()
+        throws Exception
+    {
+        InputFactoryImpl f = (InputFactoryImpl) getNewInputFactory();
+        // way too big; not a power of two; more entries than allowed
+        _verifyCorrupt(f, 0x40000000, 1);
+        _verifyCorrupt(f, 100, 1);
+        _verifyCorrupt(f, 1 << 20, 100000);
+        f.setProperty(AaltoInputProperties.P_MAX_SYMBOL_TABLE_SIZE, Integer.valueOf(100));
+        _verifyCorrupt(f, 1024, 200);
+        _verifyCorrupt(f, 1 << 16, 1);
+    }
+
+    private void _verifyCorrupt(InputFactoryImpl f, int hashSize, int count)
+        throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xAA170001);
+        out.writeBoolean(true);
+        out.writeInt(hashSize);
+        out.writeInt(count);
+        out.close();
+        try {
+            f.importSymbolTables(bytes.toByteArray());
+            fail("Should not accept table size "+count+"/"+hashSize);
+        } catch (IOException e) {
+            verifyException(e, "corrupt symbol table data");
+        }
+    }
+
+    private int readAll(XMLStreamReader sr)
+        throws XMLStreamException
+    {
+        int elems = 0;
+        while (sr.hasNext()) {
+            if (sr.next() == START_ELEMENT) {
+                ++elems;
+                sr.getLocalName();
+            }
+        }
+        sr.close();
+        return elems;
+    }
+}
@@ -0,0 +1,141 @@
+package stream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.AaltoInputProperties;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import com.fasterxml.aalto.util.NameTableStats;
+
+/**
+ * Tests to verify that size limits of shared symbol tables are
+ * enforced, and that usage statistics are collected.
+ */
+public class TestSymbolTableLimits
+    extends base.BaseTestCase
+{
+    public void testStatsUtf8()
+        throws Exception
+    {
+        InputFactoryImpl f = (InputFactoryImpl) getNewInputFactory();
+        String doc = "<root><leaf /><leaf /><leaf /></root>";
+        readAll(f, doc, true);
+        NameTableStats stats = f.getSymbolTableStats("UTF-8");
+        assertEquals(2, stats.getSize());
+        assertEquals(2L, stats.getMissCount());
+        assertTrue(stats.getLookupCount() > stats.getMissCount());
+        assertEquals(0, stats.getResetCount());
+        double rate = stats.getHitRate();
+        assertTrue(rate > 0.0 && rate < 1.0);
+
+        // Second round should be all hits
+        readAll(f, doc, true);
+        stats = f.getSymbolTableStats("UTF-8");
+        assertEquals(2, stats.getSize());
+        assertEquals(2L, stats.getMissCount());
+    }
+
+    public void testLimitUtf8()
+        throws Exception
+    {
+        _testLimit(true);
+    }
+
+    public void testLimitChars()
+        throws Exception
+    {
+        _testLimit(false);
+    }
+
+    /**
+     * Readers created before the shared table was reset must not
+     * be able to merge their (stale) content back in
+     */
+    public void testResetWithActiveReader()
+        throws Exception
+    {
+        for (int i = 0; i < 2; ++i) {
+            boolean bytes = (i == 0);
+            InputFactoryImpl f = (InputFactoryImpl) getNewInputFactory();
+            f.setProperty(AaltoInputProperties.P_MAX_SYMBOL_TABLE_SIZE, Integer.valueOf(10));
+            String doc = "<root><a/><b/></root>";
+            XMLStreamReader sr = bytes ?
+                f.createXMLStreamReader(new ByteArrayInputStream(doc.getBytes(ENC_UTF8)))
+                : f.createXMLStreamReader(new StringReader(doc));
+            assertTokenType(START_ELEMENT, sr.next());
+            assertTokenType(START_ELEMENT, sr.next());
+
+            StringBuilder sb = new StringBuilder("<root>");
+            for (int j = 0; j < 50; ++j) {
+                sb.append("<item_").append(j).append(" />");
+            }
+            sb.append("</root>");
+            readAll(f, sb.toString(), bytes);
+            NameTableStats stats = bytes ? f.getSymbolTableStats("UTF-8") : f.getCharSymbolTableStats();
+            assertEquals(0, stats.getSize());
+
+            while (sr.hasNext()) {
+                sr.next();
+            }
+            sr.close();
+            stats = bytes ? f.getSymbolTableStats("UTF-8") : f.getCharSymbolTableStats();
+            assertEquals(0, stats.getSize());
+            assertEquals(1, stats.getResetCount());
+        }
+    }
+
+    /*
+    ////////////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////////////
+     */
+
+    private void _testLimit(boolean bytes)
+        throws Exception
+    {
+        InputFactoryImpl f = (InputFactoryImpl) getNewInputFactory();
+        f.setProperty(AaltoInputProperties.P_MAX_SYMBOL_TABLE_SIZE, Integer.valueOf(10));
+        assertEquals(Integer.valueOf(10), f.getProperty(AaltoInputProperties.P_MAX_SYMBOL_TABLE_SIZE));
+
+        // First, a document within limits
+        readAll(f, "<root><a/><b/></root>", bytes);
+        NameTableStats stats = bytes ? f.getSymbolTableStats("UTF-8") : f.getCharSymbolTableStats();
+        assertEquals(3, stats.getSize());
+
+        // And then one that exceeds it
+        StringBuilder sb = new StringBuilder("<root>");
+        for (int i = 0; i < 50; ++i) {
+            sb.append("<item_").append(i).append(" />");
+        }
+        sb.append("</root>");
+        assertEquals(51, readAll(f, sb.toString(), bytes));
+        stats = bytes ? f.getSymbolTableStats("UTF-8") : f.getCharSymbolTableStats();
+        assertEquals(0, stats.getSize());
+        assertEquals(1, stats.getResetCount());
+
+        // But things should still work after reset
+        assertEquals(3, readAll(f, "<root><a/><b/></root>", bytes));
+        stats = bytes ? f.getSymbolTableStats("UTF-8") : f.getCharSymbolTableStats();
+        assertEquals(3, stats.getSize());
+    }
+
+    private int readAll(InputFactoryImpl f, String doc, boolean bytes)
+        throws XMLStreamException, IOException
+    {
+        XMLStreamReader sr = bytes ?
+            f.createXMLStreamReader(new ByteArrayInputStream(doc.getBytes(ENC_UTF8)))
+            : f.createXMLStreamReader(new StringReader(doc));
+        int elems = 0;
+        while (sr.hasNext()) {
+            if (sr.next() == START_ELEMENT) {
+                if (elems > 0) {
+                    assertTrue(sr.getLocalName().length() > 0);
+                }
+                ++elems;
+            }
+        }
+        sr.close();
+        return elems;
+    }
+}
@@ -0,0 +1,137 @@
+package stream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.AaltoInputProperties;
+
+/**
+ * Tests to verify that the optional splitting of long text segments
+ * into bounded chunks works as expected.
+ */
+public class TestTextChunking
+    extends base.BaseTestCase
+{
+    final static int CHUNK_LENGTH = 1000;
+
+    public void testChunkedUtf8() throws Exception
+    {
+        _testChunked(true);
+    }
+
+    public void testChunkedChars() throws Exception
+    {
+        _testChunked(false);
+    }
+
+    public void testNotChunkedByDefault() throws Exception
+    {
+        String text = generateText(20000);
+        XMLInputFactory f = getNewInputFactory();
+        assertEquals(Integer.valueOf(0), f.getProperty(AaltoInputProperties.P_MAX_TEXT_CHUNK_LENGTH));
+        XMLStreamReader sr = f.createXMLStreamReader(new StringReader("<root>"+text+"</root>"));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals(expected(text), sr.getText());
+        assertTokenType(END_ELEMENT, sr.next());
+        sr.close();
+    }
+
+    public void testNoChunkingWhenCoalescing() throws Exception
+    {
+        String text = generateText(20000);
+        XMLInputFactory f = getNewInputFactory();
+        f.setProperty(AaltoInputProperties.P_MAX_TEXT_CHUNK_LENGTH, Integer.valueOf(CHUNK_LENGTH));
+        f.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        XMLStreamReader sr = f.createXMLStreamReader(new StringReader("<root>"+text+"</root>"));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals(expected(text), sr.getText());
+        sr.close();
+    }
+
+    /*
+    ////////////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////////////
+     */
+
+    private void _testChunked(boolean bytes) throws Exception
+    {
+        String text = generateText(100000);
+        String doc = "<root>"+text+"<leaf>x</leaf>"+text+"</root>";
+        XMLInputFactory f = getNewInputFactory();
+        f.setProperty(AaltoInputProperties.P_MAX_TEXT_CHUNK_LENGTH, Integer.valueOf(CHUNK_LENGTH));
+        XMLStreamReader sr = bytes ?
+            f.createXMLStreamReader(new ByteArrayInputStream(doc.getBytes(ENC_UTF8)))
+            : f.createXMLStreamReader(new StringReader(doc));
+        assertTokenType(START_ELEMENT, sr.next());
+        sr.next();
+        assertEquals(expected(text), collectChunks(sr));
+        assertTokenType(START_ELEMENT, sr.getEventType());
+        assertEquals("leaf", sr.getLocalName());
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("x", sr.getText());
+        assertTokenType(END_ELEMENT, sr.next());
+        sr.next();
+        assertEquals(expected(text), collectChunks(sr));
+        assertTokenType(END_ELEMENT, sr.getEventType());
+        assertEquals("root", sr.getLocalName());
+        sr.close();
+    }
+
+    /**
+     * Method that will read all consecutive CHARACTERS events, starting
+     * with the current one, and verify their lengths.
+     */
+    private String collectChunks(XMLStreamReader sr) throws XMLStreamException
+    {
+        StringBuilder sb = new StringBuilder();
+        int chunks = 0;
+        int type = sr.getEventType();
+        while (type == CHARACTERS) {
+            int len = sr.getTextLength();
+            // may be exceeded by a surrogate pair
+            assertTrue("Chunk too long: "+len, len <= CHUNK_LENGTH+1);
+            sb.append(sr.getTextCharacters(), sr.getTextStart(), len);
+            ++chunks;
+            type = sr.next();
+        }
+        assertTrue("Only "+chunks+" chunks", chunks > 50);
+        return sb.toString();
+    }
+
+    private String generateText(int len)
+    {
+        StringBuilder sb = new StringBuilder(len + 20);
+        int i = 0;
+        while (sb.length() < len) {
+            switch (++i % 7) {
+            case 0:
+                sb.append("&amp;");
+                break;
+            case 1:
+                sb.append("\u00E4\u20AC");
+                break;
+            case 2:
+                sb.append("\uD83D\uDE00");
+                break;
+            case 3:
+                sb.append("\r\n");
+                break;
+            case 4:
+                sb.append("]]");
+                break;
+            default:
+                sb.append("abcdefghij");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String expected(String text)
+    {
+        return text.replace("&amp;", "&").replace("\r\n", "\n");
+    }
+}
@@ -0,0 +1,117 @@
+package stream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.AaltoInputProperties;
+
+/**
+ * Tests for the trusted-input mode, in which some of well-formedness
+ * checks are skipped.
+ */
+public class TestTrustedInput
+    extends base.BaseTestCase
+{
+    public void testWellFormedUtf8() throws Exception
+    {
+        _testWellFormed(true);
+    }
+
+    public void testWellFormedChars() throws Exception
+    {
+        _testWellFormed(false);
+    }
+
+    public void testChecksSkipped() throws Exception
+    {
+        for (int i = 0; i < 2; ++i) {
+            boolean bytes = (i == 0);
+            // mismatched end tag (of same length) is not noticed
+            XMLStreamReader sr = createReader("<root><abc></xyz></root>", bytes, true);
+            assertTokenType(START_ELEMENT, sr.next());
+            assertTokenType(START_ELEMENT, sr.next());
+            assertTokenType(END_ELEMENT, sr.next());
+            assertEquals("abc", sr.getLocalName());
+            assertTokenType(END_ELEMENT, sr.next());
+            sr.close();
+
+            // but is by default
+            sr = createReader("<root><abc></xyz></root>", bytes, false);
+            assertTokenType(START_ELEMENT, sr.next());
+            assertTokenType(START_ELEMENT, sr.next());
+            try {
+                sr.next();
+                fail("Should have failed for mismatched end tag");
+            } catch (XMLStreamException e) {
+                verifyException(e, "Unexpected end tag");
+            }
+            sr.close();
+
+            // and neither are duplicate attributes
+            sr = createReader("<root a='1' b='2' a='3' />", bytes, true);
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals(3, sr.getAttributeCount());
+            assertEquals("2", sr.getAttributeValue("", "b"));
+            sr.close();
+        }
+    }
+
+    public void testMalformedStillFails() throws Exception
+    {
+        XMLStreamReader sr = createReader("<root><abc></abcd></root>", true, true);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        try {
+            sr.next();
+            fail("Should have failed for malformed end tag");
+        } catch (XMLStreamException e) {
+            verifyException(e, "expected space or closing '>'");
+        }
+        sr.close();
+    }
+
+    /*
+    ////////////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////////////
+     */
+
+    private void _testWellFormed(boolean bytes) throws Exception
+    {
+        StringBuilder sb = new StringBuilder("<root xmlns:ns='urn:x'>");
+        for (int i = 0; i < 1000; ++i) {
+            sb.append("<ns:elem\u00E4").append(i % 7)
+                .append(" a='1' ns:b='").append(i).append("' c='x' d='y'>text</ns:elem\u00E4")
+                .append(i % 7).append(" >");
+        }
+        sb.append("</root>");
+        XMLStreamReader sr = createReader(sb.toString(), bytes, true);
+        assertTokenType(START_ELEMENT, sr.next());
+        for (int i = 0; i < 1000; ++i) {
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals("elem\u00E4"+(i % 7), sr.getLocalName());
+            assertEquals(4, sr.getAttributeCount());
+            assertEquals(String.valueOf(i), sr.getAttributeValue("urn:x", "b"));
+            assertEquals("y", sr.getAttributeValue("", "d"));
+            assertNull(sr.getAttributeValue("", "b"));
+            assertTokenType(CHARACTERS, sr.next());
+            assertEquals("text", sr.getText());
+            assertTokenType(END_ELEMENT, sr.next());
+            assertEquals("elem\u00E4"+(i % 7), sr.getLocalName());
+        }
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_DOCUMENT, sr.next());
+        sr.close();
+    }
+
+    private XMLStreamReader createReader(String doc, boolean bytes, boolean trusted) throws Exception
+    {
+        XMLInputFactory f = getNewInputFactory();
+        f.setProperty(AaltoInputProperties.P_TRUSTED_INPUT, Boolean.valueOf(trusted));
+        assertEquals(Boolean.valueOf(trusted), f.getProperty(AaltoInputProperties.P_TRUSTED_INPUT));
+        return bytes ?
+            f.createXMLStreamReader(new ByteArrayInputStream(doc.getBytes(ENC_UTF8)))
+            : f.createXMLStreamReader(new StringReader(doc));
+    }
+}
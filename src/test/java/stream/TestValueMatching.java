@@ -0,0 +1,83 @@
+package stream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.in.StreamReaderImpl;
+
+/**
+ * Tests for methods that compare and hash attribute values and
+ * text without constructing Strings.
+ */
+public class TestValueMatching
+    extends base.BaseTestCase
+{
+    public void testAttributeMatching() throws Exception
+    {
+        StreamReaderImpl sr = createReader("<root type='foo' xmlns:ns='urn:x' ns:id='a&amp;b' empty=''/>");
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals(3, sr.getAttributeCount());
+        for (int i = 0; i < 3; ++i) {
+            String value = sr.getAttributeValue(i);
+            assertTrue(sr.attributeValueEquals(i, value));
+            assertTrue(sr.attributeValueEquals(i, ("x"+value+"x").toCharArray(), 1, value.length()));
+            assertFalse(sr.attributeValueEquals(i, value+"x"));
+            assertEquals(value.hashCode(), sr.getAttributeValueHashCode(i));
+        }
+        assertFalse(sr.attributeValueEquals(0, "fox"));
+        assertTrue(sr.attributeValueEquals("", "type", "foo"));
+        assertFalse(sr.attributeValueEquals("", "type", "bar"));
+        assertTrue(sr.attributeValueEquals("urn:x", "id", "a&b"));
+        assertFalse(sr.attributeValueEquals("", "missing", "foo"));
+        try {
+            sr.attributeValueEquals(3, "foo");
+            fail("Should not pass");
+        } catch (IllegalArgumentException e) { }
+        assertTokenType(END_ELEMENT, sr.next());
+        try {
+            sr.attributeValueEquals(0, "foo");
+            fail("Should not pass");
+        } catch (IllegalStateException e) { }
+        sr.close();
+    }
+
+    public void testTextMatching() throws Exception
+    {
+        // long enough to be stored in multiple segments
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 4000; ++i) {
+            sb.append(i).append(',');
+        }
+        final String LONG = sb.toString();
+        StreamReaderImpl sr = createReader("<root><a>short</a><b>"+LONG+"</b><c>\n  </c></root>");
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertTrue(sr.textEquals("short"));
+        assertFalse(sr.textEquals("shore"));
+        assertTrue(sr.textEquals("[short]".toCharArray(), 1, 5));
+        assertEquals("short".hashCode(), sr.getTextHashCode());
+        assertTokenType(END_ELEMENT, sr.next());
+
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals(LONG.hashCode(), sr.getTextHashCode());
+        assertTrue(sr.textEquals(LONG));
+        assertTrue(sr.textEquals(LONG.toCharArray(), 0, LONG.length()));
+        assertFalse(sr.textEquals(LONG.substring(1)+"x"));
+        assertTokenType(END_ELEMENT, sr.next());
+
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertTrue(sr.textEquals("\n  "));
+        assertTrue(sr.textEquals("\n  ".toCharArray(), 0, 3));
+        assertEquals("\n  ".hashCode(), sr.getTextHashCode());
+        sr.close();
+    }
+
+    private StreamReaderImpl createReader(String doc) throws Exception
+    {
+        return (StreamReaderImpl) getNewInputFactory().createXMLStreamReader(new ByteArrayInputStream(doc.getBytes(ENC_UTF8)));
+    }
+}
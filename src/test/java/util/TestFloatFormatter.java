@@ -0,0 +1,114 @@
+package util;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.fasterxml.aalto.util.FloatFormatter;
+
+public class TestFloatFormatter
+    extends TestCase
+{
+    public void testDoubleSpecialValues()
+    {
+        assertEquals("0.0", _format(0.0));
+        assertEquals("-0.0", _format(-0.0));
+        assertEquals("NaN", _format(Double.NaN));
+        assertEquals("Infinity", _format(Double.POSITIVE_INFINITY));
+        assertEquals("-Infinity", _format(Double.NEGATIVE_INFINITY));
+    }
+
+    public void testDoubleNotation()
+    {
+        assertEquals("1.0", _format(1.0));
+        assertEquals("100.0", _format(100.0));
+        assertEquals("-0.5", _format(-0.5));
+        assertEquals("0.001", _format(0.001));
+        assertEquals("9.99E-4", _format(0.000999));
+        assertEquals("9999999.0", _format(9999999.0));
+        assertEquals("1.0E7", _format(1.0e7));
+        assertEquals("3.141592653589793", _format(Math.PI));
+        assertEquals("1.2345678901234568E17", _format(123456789012345678.0));
+    }
+
+    /**
+     * Output is to be the shortest decimal that rounds to the value;
+     * not always the case with older JDK implementations.
+     */
+    public void testDoubleShortest()
+    {
+        assertEquals("1.0E23", _format(1.0e23));
+        assertEquals("0.002", _format(2.0e-3));
+        assertEquals("4.9E-324", _format(Double.MIN_VALUE));
+        assertEquals("1.7976931348623157E308", _format(Double.MAX_VALUE));
+        assertEquals("2.2250738585072014E-308", _format(Double.MIN_NORMAL));
+    }
+
+    public void testFloat()
+    {
+        assertEquals("0.0", _format(0.0f));
+        assertEquals("-Infinity", _format(Float.NEGATIVE_INFINITY));
+        assertEquals("0.1", _format(0.1f));
+        assertEquals("1.6777216E7", _format(16777216.0f));
+        assertEquals("1.4E-45", _format(Float.MIN_VALUE));
+        assertEquals("3.4028235E38", _format(Float.MAX_VALUE));
+        assertEquals("1.1754944E-38", _format(Float.MIN_NORMAL));
+    }
+
+    public void testRoundTrip()
+    {
+        Random r = new Random(123);
+        for (int i = 0; i < 100000; ++i) {
+            double d = Double.longBitsToDouble(r.nextLong());
+            if (!Double.isNaN(d)) {
+                String str = _format(d);
+                assertEquals(str, d, Double.parseDouble(str));
+                assertTrue(str, _digits(str) <= _digits(Double.toString(d)));
+            }
+            float f = Float.intBitsToFloat(r.nextInt());
+            if (!Float.isNaN(f)) {
+                String str = _format(f);
+                assertEquals(str, f, Float.parseFloat(str));
+                assertTrue(str, _digits(str) <= _digits(Float.toString(f)));
+            }
+        }
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////
+     */
+
+    private String _format(double d)
+    {
+        byte[] buf = new byte[FloatFormatter.MAX_DOUBLE_LENGTH + 2];
+        // also verify offset is handled properly
+        int end = FloatFormatter.writeDouble(d, buf, 1);
+        assertTrue(end <= FloatFormatter.MAX_DOUBLE_LENGTH + 1);
+        return new String(buf, 1, end-1);
+    }
+
+    private String _format(float f)
+    {
+        byte[] buf = new byte[FloatFormatter.MAX_FLOAT_LENGTH + 2];
+        int end = FloatFormatter.writeFloat(f, buf, 1);
+        assertTrue(end <= FloatFormatter.MAX_FLOAT_LENGTH + 1);
+        return new String(buf, 1, end-1);
+    }
+
+    /**
+     * @return Number of significant digits
+     */
+    private int _digits(String str)
+    {
+        int ix = str.indexOf('E');
+        if (ix >= 0) {
+            str = str.substring(0, ix);
+        }
+        str = str.replace("-", "").replace(".", "");
+        // strip leading, trailing zeroes
+        str = str.replaceAll("^0+", "").replaceAll("0+$", "");
+        return str.length();
+    }
+}
@@ -1,5 +1,7 @@
 package util;
 
+import java.io.*;
+
 import junit.framework.TestCase;
 
 import com.fasterxml.aalto.in.*;
@@ -45,6 +47,141 @@ System.err.println("FAIL: table('"+names[j]+"') == "+table.toDebugString());
         }
     }
 
+    public void testExportImport() throws IOException
+    {
+        ByteBasedPNameTable table = new ByteBasedPNameTable(16, 123);
+        final String[] names = new String[] {
+            "a", "root", "ns:elem", "SomeSlightlyLongerNsPrefix:andElementNameToo"
+        };
+        for (int i = 0; i < 200; ++i) {
+            addSymbol(table, "item"+i);
+        }
+        for (String name : names) {
+            addSymbol(table, name);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        table.writeTo(new DataOutputStream(bytes));
+        ByteBasedPNameTable copy = ByteBasedPNameTable.readFrom
+            (new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 456);
+        assertEquals(table.size(), copy.size());
+        for (String name : names) {
+            PName pn = tryToFind(copy, name);
+            assertNotNull(pn);
+            assertEquals(name, pn.getPrefixedName());
+        }
+        for (int i = 0; i < 200; ++i) {
+            assertNotNull(tryToFind(copy, "item"+i));
+        }
+        assertNull(tryToFind(copy, "item200"));
+    }
+
+    /**
+     * Test to verify that names with colliding hash codes are handled
+     * properly, even if there are more of them than what collision
+     * bucket chains can hold; since hash codes are seeded, need to
+     * fake collisions
+     */
+    public void testCharCollisions()
+    {
+        CharBasedPNameTable table = new CharBasedPNameTable(64, 789);
+        final int HASH = 0x12345;
+        String[] names = new String[512];
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = "name"+i;
+            char[] ch = names[i].toCharArray();
+            assertNull(table.findSymbol(ch, 0, ch.length, HASH));
+            table.addSymbol(ch, 0, ch.length, HASH);
+        }
+        assertEquals(names.length, table.size());
+        for (int i = 0; i < names.length; ++i) {
+            char[] ch = names[i].toCharArray();
+            PName pn = table.findSymbol(ch, 0, ch.length, HASH);
+            assertNotNull(pn);
+            assertEquals(names[i], pn.getPrefixedName());
+        }
+        char[] ch = "name512".toCharArray();
+        assertNull(table.findSymbol(ch, 0, ch.length, HASH));
+    }
+
+    /**
+     * Names that have same hash code with String-style hashing
+     * ("Aa" and "BB", and all their combinations) should not collide
+     * with seeded hashing.
+     */
+    public void testCharHashSeeding()
+    {
+        CharBasedPNameTable table1 = new CharBasedPNameTable(64, 789);
+        CharBasedPNameTable table2 = new CharBasedPNameTable(64, 12345);
+        char[] ch1 = "AaAaAa".toCharArray();
+        char[] ch2 = "BBBBBB".toCharArray();
+        assertEquals(PNameC.calcHash(ch1, 0, ch1.length), PNameC.calcHash(ch2, 0, ch2.length));
+        assertFalse(table1.calcHash(ch1, 0, ch1.length) == table1.calcHash(ch2, 0, ch2.length));
+        assertFalse(table1.calcHash(ch1, 0, ch1.length) == table2.calcHash(ch1, 0, ch1.length));
+    }
+
+    /**
+     * Similar to {@link #testCharCollisions}, but for byte-based table;
+     * since hash codes are seeded, need to fake collisions
+     */
+    public void testByteCollisions()
+    {
+        ByteBasedPNameTable table = new ByteBasedPNameTable(16, 789);
+        final int HASH = 0x12345;
+        final int COUNT = 500;
+        for (int i = 0; i < COUNT; ++i) {
+            String name = "name"+i;
+            int[] quads = calcQuads(name);
+            assertNull(table.findSymbol(HASH, quads, quads.length));
+            if (quads.length < 3) {
+                table.addSymbol(HASH, name, -1, quads[0], (quads.length < 2) ? 0 : quads[1]);
+            } else {
+                table.addSymbol(HASH, name, -1, quads, quads.length);
+            }
+        }
+        assertEquals(COUNT, table.size());
+        for (int i = 0; i < COUNT; ++i) {
+            String name = "name"+i;
+            int[] quads = calcQuads(name);
+            PName pn = table.findSymbol(HASH, quads, quads.length);
+            assertNotNull(pn);
+            assertEquals(name, pn.getPrefixedName());
+        }
+    }
+
+    /**
+     * Test to verify that rehashing works when all collision buckets
+     * are shared and full, so that names spill over to the fallback
+     * area while table is being rehashed
+     */
+    public void testByteRehashWithFallback()
+    {
+        ByteBasedPNameTable table = new ByteBasedPNameTable(16, 789);
+        // only 512 distinct primary slots, regardless of table size
+        final int SLOTS = 512;
+        final int PER_SLOT = 10;
+        for (int j = 0; j < PER_SLOT; ++j) {
+            for (int k = 0; k < SLOTS; ++k) {
+                String name = "n"+k+"_"+j;
+                int[] quads = calcQuads(name);
+                if (quads.length < 3) {
+                    table.addSymbol(k | (j << 16), name, -1, quads[0], (quads.length < 2) ? 0 : quads[1]);
+                } else {
+                    table.addSymbol(k | (j << 16), name, -1, quads, quads.length);
+                }
+            }
+        }
+        assertEquals(SLOTS * PER_SLOT, table.size());
+        for (int j = 0; j < PER_SLOT; ++j) {
+            for (int k = 0; k < SLOTS; ++k) {
+                String name = "n"+k+"_"+j;
+                int[] quads = calcQuads(name);
+                PName pn = table.findSymbol(k | (j << 16), quads, quads.length);
+                assertNotNull(pn);
+                assertEquals(name, pn.getPrefixedName());
+            }
+        }
+    }
+
     /*
     ////////////////////////////////////////////////
     // Internal methods
@@ -54,7 +191,7 @@ System.err.println("FAIL: table('"+names[j]+"') == "+table.toDebugString());
     PName tryToFind(ByteBasedPNameTable table, String word)
     {
         int[] quads = calcQuads(word);
-        int hash = ByteBasedPNameTable.calcHash(quads, quads.length);
+        int hash = calcHash(table, quads);
         if (quads.length < 3) {
             return table.findSymbol(hash, quads[0], (quads.length < 2) ? 0 : quads[1]);
         }
@@ -65,13 +202,22 @@ System.err.println("FAIL: table('"+names[j]+"') == "+table.toDebugString());
     {
         int[] quads = calcQuads(word);
         int colonIx = word.indexOf(':');
-        int hash = ByteBasedPNameTable.calcHash(quads, quads.length);
+        int hash = calcHash(table, quads);
         if (quads.length < 3) {
             return table.addSymbol(hash, word, colonIx, quads[0], (quads.length < 2) ? 0 : quads[1]);
         }
         return table.addSymbol(hash, word, colonIx, quads, quads.length);
     }
 
+    // Need to calculate hash same way as the scanners do
+    int calcHash(ByteBasedPNameTable table, int[] quads)
+    {
+        if (quads.length == 1) {
+            return table.calcHash(quads[0]);
+        }
+        return table.calcHash(quads, quads.length);
+    }
+
     int[] calcQuads(String word)
     {
         byte[] wordBytes;
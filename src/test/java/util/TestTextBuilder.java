@@ -0,0 +1,73 @@
+package util;
+
+import java.io.StringReader;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.in.StreamReaderImpl;
+import com.fasterxml.aalto.util.TextBuilder;
+
+/**
+ * Unit tests for {@link TextBuilder}, focusing on the live
+ * {@link CharSequence} view of segmented content.
+ */
+public class TestTextBuilder
+    extends base.BaseTestCase
+{
+    public void testSegmentedView() throws Exception
+    {
+        TextBuilder tb = TextBuilder.createRecyclableBuffer(null);
+        tb.resetWithEmpty();
+        StringBuilder exp = new StringBuilder();
+        for (int i = 0; i < 5000; ++i) {
+            String str = "#"+i+" ";
+            tb.append(str);
+            exp.append(str);
+        }
+        String expStr = exp.toString();
+        CharSequence cs = tb.contentsAsCharSequence();
+        assertEquals(expStr.length(), cs.length());
+        for (int i = 0; i < expStr.length(); ++i) {
+            assertEquals(expStr.charAt(i), cs.charAt(i));
+        }
+        // sub-sequences, both within and across segments
+        for (int start = 0; start < expStr.length(); start += 997) {
+            int end = Math.min(expStr.length(), start + 1500);
+            assertEquals(expStr.substring(start, end), cs.subSequence(start, end).toString());
+            assertEquals(expStr.substring(start, start+10), cs.subSequence(start, start+10).toString());
+        }
+        assertEquals(expStr, cs.toString());
+        try {
+            cs.charAt(expStr.length());
+            fail("Should not pass");
+        } catch (IndexOutOfBoundsException e) { }
+
+        // and view is live
+        tb.resetWithChar('x');
+        assertEquals(1, cs.length());
+        assertEquals("x", cs.toString());
+    }
+
+    public void testViewFromReader() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3000; ++i) {
+            sb.append("item").append(i).append(' ');
+        }
+        String text = sb.toString();
+        XMLStreamReader sr = getNewInputFactory().createXMLStreamReader(new StringReader("<root>\n  <a>"+text+"</a></root>"));
+        StreamReaderImpl r = (StreamReaderImpl) sr;
+        assertTokenType(START_ELEMENT, sr.next());
+        // indentation is handled specially
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("\n  ", r.getTextCharSequence().toString());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        CharSequence cs = r.getTextCharSequence();
+        assertEquals(text.length(), cs.length());
+        assertTrue(Pattern.compile("item2999 $").matcher(cs).find());
+        assertEquals(text, new StringBuilder().append(cs).toString());
+        sr.close();
+    }
+}
@@ -0,0 +1,40 @@
+package util;
+
+import junit.framework.TestCase;
+
+import com.fasterxml.aalto.util.UriCanonicalizer;
+
+public class TestUriCanonicalizer
+    extends TestCase
+{
+    public void testSimple()
+    {
+        UriCanonicalizer canon = new UriCanonicalizer();
+        final String[] uris = new String[] {
+            "http://www.w3.org/2001/XMLSchema-instance",
+            "urn:x", "a", "http://schemas.xmlsoap.org/soap/envelope/"
+        };
+        for (int i = 0; i < uris.length; ++i) {
+            String uri = uris[i];
+            // Let's pad the buffer, to ensure only given slice is used
+            char[] buf = (uri+"xyz").toCharArray();
+            String result = canon.canonicalizeURI(buf, uri.length());
+            assertEquals(uri, result);
+            assertSame(uri.intern(), result);
+            // and should get same instance from cache as well
+            assertSame(result, canon.canonicalizeURI(uri.toCharArray(), uri.length()));
+        }
+        assertEquals(uris.length, canon.size());
+    }
+
+    public void testBounded()
+    {
+        UriCanonicalizer canon = new UriCanonicalizer(16);
+        for (int i = 0; i < 1000; ++i) {
+            String uri = "urn:test:"+i;
+            assertSame(uri.intern(), canon.canonicalizeURI(uri.toCharArray(), uri.length()));
+        }
+        assertTrue(canon.size() <= canon.capacity());
+        assertEquals(32, canon.capacity());
+    }
+}
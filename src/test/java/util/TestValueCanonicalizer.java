@@ -0,0 +1,80 @@
+package util;
+
+import java.io.ByteArrayInputStream;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.AaltoInputProperties;
+import com.fasterxml.aalto.util.ValueCanonicalizer;
+
+public class TestValueCanonicalizer
+    extends base.BaseTestCase
+{
+    public void testSimple()
+    {
+        ValueCanonicalizer canon = new ValueCanonicalizer(100, 8);
+        assertEquals(128, canon.capacity());
+        char[] buf = "xxUSDxx".toCharArray();
+        String usd = canon.canonicalize(buf, 2, 3);
+        assertEquals("USD", usd);
+        assertSame(usd, canon.canonicalize("USD".toCharArray(), 0, 3));
+        assertSame("", canon.canonicalize(buf, 0, 0));
+        // too long, not cached
+        String str = canon.canonicalize("123456789".toCharArray(), 0, 9);
+        assertEquals("123456789", str);
+        assertNotSame(str, canon.canonicalize("123456789".toCharArray(), 0, 9));
+        assertEquals(1, canon.size());
+    }
+
+    public void testBoundedLRU()
+    {
+        ValueCanonicalizer canon = new ValueCanonicalizer(16);
+        char[] hot = "hot".toCharArray();
+        String hotStr = canon.canonicalize(hot, 0, 3);
+        for (int i = 0; i < 1000; ++i) {
+            String value = "value"+i;
+            assertEquals(value, canon.canonicalize(value.toCharArray(), 0, value.length()));
+            // frequently used value should stay cached
+            assertSame(hotStr, canon.canonicalize(hot, 0, 3));
+        }
+        assertTrue(canon.size() <= canon.capacity());
+        assertEquals(16, canon.capacity());
+    }
+
+    public void testSharedByReaders() throws Exception
+    {
+        XMLInputFactory f = getNewInputFactory();
+        assertEquals(Integer.valueOf(0), f.getProperty(AaltoInputProperties.P_VALUE_CACHE_SIZE));
+        String[] values = read(f);
+        assertNotSame(values[0], values[1]);
+
+        f.setProperty(AaltoInputProperties.P_VALUE_CACHE_SIZE, Integer.valueOf(256));
+        assertEquals(Integer.valueOf(256), f.getProperty(AaltoInputProperties.P_VALUE_CACHE_SIZE));
+        values = read(f);
+        assertEquals("EUR", values[0]);
+        assertSame(values[0], values[1]);
+        assertSame(values[0], values[2]);
+        assertSame(values[0], values[3]);
+        // and across readers
+        assertSame(values[0], read(f)[0]);
+    }
+
+    private String[] read(XMLInputFactory f) throws Exception
+    {
+        String doc = "<root cur='EUR'><a cur='EUR'>EUR</a><a>EUR</a></root>";
+        XMLStreamReader sr = f.createXMLStreamReader(new ByteArrayInputStream(doc.getBytes(ENC_UTF8)));
+        String[] result = new String[4];
+        assertTokenType(START_ELEMENT, sr.next());
+        result[0] = sr.getAttributeValue(0);
+        assertTokenType(START_ELEMENT, sr.next());
+        result[1] = sr.getAttributeValue(0);
+        assertTokenType(CHARACTERS, sr.next());
+        result[2] = sr.getText();
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        result[3] = sr.getText();
+        sr.close();
+        return result;
+    }
+}
@@ -0,0 +1,136 @@
+package wstream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.*;
+import org.codehaus.stax2.util.StreamReader2Delegate;
+
+/**
+ * Tests for verifying that copying events from a reader to a writer
+ * (using {@link XMLStreamWriter2#copyEventFromReader}) produces
+ * expected output, regardless of whether content is copied as raw
+ * UTF-8 bytes or decoded and re-encoded.
+ */
+public class TestCopyEvents
+    extends base.BaseTestCase
+{
+    public void testVerbatimUtf8() throws Exception
+    {
+        final String DOC = "<root a='1' b=\"value\" c='\u00E9\u20AC'>text \u00E9\u20AC\n"
+            +"<leaf x='&lt;'>more &gt; text</leaf>\n</root>";
+        final String EXP = "<root a=\"1\" b=\"value\" c=\"\u00E9\u20AC\">text \u00E9\u20AC\n"
+            +"<leaf x=\"&lt;\">more > text</leaf>\n</root>";
+        assertEquals(EXP, copy(DOC, ENC_UTF8, false, false));
+        assertEquals(EXP, copy(DOC, ENC_UTF8, true, false));
+        assertEquals(EXP, copy(DOC, ENC_UTF8, false, true));
+    }
+
+    /**
+     * Content that is not verbatim in input must produce same output
+     * as when copied via regular decode/encode path
+     */
+    public void testContentNeedingEscaping() throws Exception
+    {
+        final String DOC = "<root a='x\"y' b='&amp;&#65;' c='line\nfeed'>a &amp; b\r\n&#66;<![CDATA[<cdata>]]>"
+            +"<!--comment--><?pi data?>\n</root>";
+        _verifySameAsGeneric(DOC);
+    }
+
+    public void testNamespaces() throws Exception
+    {
+        final String DOC = "<ns:root xmlns:ns='urn:x' xmlns='urn:y' ns:attr='value'><leaf ns:a='b'/></ns:root>";
+        _verifySameAsGeneric(DOC);
+    }
+
+    /**
+     * Text long enough to span multiple input and output buffers
+     */
+    public void testLongText() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; ++i) {
+            sb.append("item ").append(i).append(" \u00E9\u20AC\n");
+        }
+        final String TEXT = sb.toString();
+        final String DOC = "<root>"+TEXT+"</root>";
+        assertEquals(DOC, copy(DOC, ENC_UTF8, false, false));
+        assertEquals(DOC, copy(DOC, ENC_UTF8, false, true));
+    }
+
+    public void testLongAttribute() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; ++i) {
+            sb.append("value ").append(i).append(" \u00E9\u20AC ");
+        }
+        final String VALUE = sb.toString();
+        String doc = "<root attr=\""+VALUE+"\" />";
+        assertEquals("<root attr=\""+VALUE+"\"/>", copy(doc, ENC_UTF8, false, false));
+        _verifySameAsGeneric(doc);
+
+        // and then one that needs to be escaped on output
+        doc = "<root attr=\""+VALUE+"&lt;&amp;\" />";
+        assertEquals("<root attr=\""+VALUE+"&lt;&amp;\"/>", copy(doc, ENC_UTF8, false, false));
+        _verifySameAsGeneric(doc);
+    }
+
+    /**
+     * ISO-8859-1 input must not be copied as is to UTF-8 output
+     */
+    public void testLatin1Input() throws Exception
+    {
+        final String DOC = "<?xml version='1.0' encoding='ISO-8859-1'?><root a='caf\u00E9'>caf\u00E9</root>";
+        final String EXP = "<root a=\"caf\u00E9\">caf\u00E9</root>";
+        assertEquals(EXP, copy(DOC, ENC_LATIN1, ENC_UTF8, false, false));
+        assertEquals(EXP, copy(DOC, ENC_LATIN1, ENC_UTF8, false, true));
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////
+     */
+
+    private void _verifySameAsGeneric(String doc) throws Exception
+    {
+        for (int i = 0; i < 2; ++i) {
+            boolean repairing = (i == 0);
+            assertEquals(copy(doc, ENC_UTF8, repairing, true), copy(doc, ENC_UTF8, repairing, false));
+        }
+    }
+
+    /**
+     * @param generic If true, reader is wrapped so that writer can not
+     *   use raw pass-through
+     */
+    private String copy(String doc, String outputEnc, boolean repairing, boolean generic)
+        throws Exception
+    {
+        return copy(doc, ENC_UTF8, outputEnc, repairing, generic);
+    }
+
+    private String copy(String doc, String inputEnc, String outputEnc, boolean repairing, boolean generic)
+        throws Exception
+    {
+        XMLStreamReader2 sr = (XMLStreamReader2) getNewInputFactory().createXMLStreamReader(new ByteArrayInputStream(doc.getBytes(inputEnc)));
+        if (generic) {
+            sr = new StreamReader2Delegate(sr);
+        }
+        XMLOutputFactory2 f = getNewOutputFactory();
+        f.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.valueOf(repairing));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        XMLStreamWriter2 sw = (XMLStreamWriter2) f.createXMLStreamWriter(bos, outputEnc);
+        while (sr.hasNext()) {
+            int type = sr.next();
+            if (type == END_DOCUMENT) {
+                break;
+            }
+            sw.copyEventFromReader(sr, false);
+        }
+        sr.close();
+        sw.close();
+        return bos.toString(outputEnc);
+    }
+}
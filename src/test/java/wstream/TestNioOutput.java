@@ -0,0 +1,245 @@
+package wstream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.IdentityHashMap;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.AaltoOutputProperties;
+import com.fasterxml.aalto.io.ByteBufferChain;
+import com.fasterxml.aalto.stax.OutputFactoryImpl;
+import com.fasterxml.aalto.util.BufferPool;
+import com.fasterxml.aalto.util.SharedBufferPool;
+
+/**
+ * Tests for verifying that writers can output to NIO channels and
+ * buffer chains.
+ */
+public class TestNioOutput
+    extends base.BaseTestCase
+{
+    public void testChannel() throws Exception
+    {
+        final String EXP = expectedDoc();
+        for (String enc : new String[] { ENC_UTF8, ENC_LATIN1, "UTF-16" }) {
+            // channel that only accepts a few bytes at a time
+            CollectingChannel ch = new CollectingChannel(7);
+            XMLStreamWriter sw = ((OutputFactoryImpl) getNewOutputFactory()).createXMLStreamWriter(ch, enc);
+            writeDoc(sw);
+            sw.close();
+            assertTrue(ch.isOpen());
+            assertEquals(EXP, ch.toString(enc));
+        }
+    }
+
+    public void testChannelAutoClose() throws Exception
+    {
+        XMLOutputFactory f = getNewOutputFactory();
+        f.setProperty(org.codehaus.stax2.XMLOutputFactory2.P_AUTO_CLOSE_OUTPUT, Boolean.TRUE);
+        CollectingChannel ch = new CollectingChannel(100);
+        XMLStreamWriter sw = ((OutputFactoryImpl) f).createXMLStreamWriter(ch, ENC_UTF8);
+        sw.writeEmptyElement("root");
+        sw.close();
+        assertFalse(ch.isOpen());
+        assertEquals("<root/>", ch.toString(ENC_UTF8));
+    }
+
+    public void testNonBlockingChannel() throws Exception
+    {
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            try {
+                ((OutputFactoryImpl) getNewOutputFactory()).createXMLStreamWriter(pipe.sink(), ENC_UTF8);
+                fail("Expected an exception for non-blocking channel");
+            } catch (IllegalArgumentException e) {
+                verifyException(e, "non-blocking");
+            }
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+
+    /**
+     * Channel that does not accept anything must not make writer
+     * spin, but fail
+     */
+    public void testChannelWithoutProgress() throws Exception
+    {
+        for (String enc : new String[] { ENC_UTF8, "UTF-16" }) {
+            CollectingChannel ch = new CollectingChannel(0);
+            XMLStreamWriter sw = ((OutputFactoryImpl) getNewOutputFactory()).createXMLStreamWriter(ch, enc);
+            try {
+                writeDoc(sw);
+                sw.flush();
+                fail("Expected an exception for channel that does not accept output");
+            } catch (XMLStreamException e) {
+                verifyException(e, "did not accept");
+            }
+        }
+    }
+
+    public void testBufferChain() throws Exception
+    {
+        final String EXP = expectedDoc();
+        ByteBufferChain chain = new ByteBufferChain(new SharedBufferPool(), 1000);
+        XMLStreamWriter sw = getNewOutputFactory().createXMLStreamWriter(chain, ENC_UTF8);
+        writeDoc(sw);
+        sw.close();
+        byte[] exp = EXP.getBytes(ENC_UTF8);
+        assertEquals(exp.length, chain.size());
+        assertTrue(chain.getBuffers().length > 1);
+        assertEquals(EXP, new String(chain.toByteArray(), ENC_UTF8));
+
+        // and then gathering write to a file
+        File f = File.createTempFile("aalto", ".xml");
+        f.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            assertEquals(exp.length, chain.writeTo(raf.getChannel()));
+        } finally {
+            raf.close();
+        }
+        assertEquals(exp.length, f.length());
+
+        // can be reused after releasing
+        chain.release();
+        assertEquals(0L, chain.size());
+        assertEquals(0, chain.getBuffers().length);
+
+        // flushing partially filled buffers, and mixing direct writes
+        sw = getNewOutputFactory().createXMLStreamWriter(chain, ENC_LATIN1);
+        sw.writeStartElement("root");
+        sw.writeCharacters("a");
+        sw.flush();
+        chain.write('\n');
+        sw.writeCharacters("x");
+        sw.flush();
+        sw.writeEndElement();
+        sw.close();
+        assertEquals("<root>a\nx</root>", new String(chain.toByteArray(), ENC_LATIN1));
+        assertEquals(4, chain.getBuffers().length);
+        chain.release();
+        assertEquals(0L, chain.size());
+        assertEquals(0, chain.getBuffers().length);
+        sw = getNewOutputFactory().createXMLStreamWriter(chain, ENC_UTF8);
+        sw.writeEmptyElement("x");
+        sw.close();
+        assertEquals("<x/>", new String(chain.toByteArray(), ENC_UTF8));
+        chain.release();
+    }
+
+    /**
+     * Buffers that writer hands over to a chain must come from the pool
+     * of the chain, and all buffers must be returned to the pool they
+     * were allocated from
+     */
+    public void testBufferChainPools() throws Exception
+    {
+        TrackingPool chainPool = new TrackingPool();
+        TrackingPool writerPool = new TrackingPool();
+        ByteBufferChain chain = new ByteBufferChain(chainPool, 1000);
+        XMLOutputFactory f = getNewOutputFactory();
+        f.setProperty(AaltoOutputProperties.P_BUFFER_POOL, writerPool);
+        XMLStreamWriter sw = f.createXMLStreamWriter(chain, ENC_UTF8);
+        writeDoc(sw);
+        sw.close();
+        assertEquals(expectedDoc(), new String(chain.toByteArray(), ENC_UTF8));
+        chain.release();
+
+        assertTrue(chainPool._allocated.size() > 1);
+        chainPool.verifyAllReturned();
+        writerPool.verifyAllReturned();
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////
+     */
+
+    private void writeDoc(XMLStreamWriter sw) throws XMLStreamException
+    {
+        sw.writeStartElement("root");
+        for (int i = 0; i < 1000; ++i) {
+            sw.writeStartElement("item");
+            sw.writeAttribute("id", String.valueOf(i));
+            sw.writeCharacters("value \u00E9 & more");
+            sw.writeEndElement();
+        }
+        sw.writeEndElement();
+    }
+
+    private String expectedDoc()
+    {
+        StringBuilder sb = new StringBuilder("<root>");
+        for (int i = 0; i < 1000; ++i) {
+            sb.append("<item id=\"").append(i).append("\">value \u00E9 &amp; more</item>");
+        }
+        return sb.append("</root>").toString();
+    }
+
+    final static class TrackingPool
+        extends BufferPool
+    {
+        final IdentityHashMap<byte[],Boolean> _allocated = new IdentityHashMap<byte[],Boolean>();
+
+        final IdentityHashMap<byte[],Boolean> _released = new IdentityHashMap<byte[],Boolean>();
+
+        public char[] allocCharBuffer(int minSize) { return new char[minSize]; }
+
+        public void releaseCharBuffer(char[] buffer) { }
+
+        public byte[] allocByteBuffer(int minSize)
+        {
+            byte[] buf = new byte[minSize];
+            _allocated.put(buf, Boolean.TRUE);
+            return buf;
+        }
+
+        public void releaseByteBuffer(byte[] buffer)
+        {
+            assertTrue("Buffer returned to a pool it was not allocated from", _allocated.containsKey(buffer));
+            assertNull("Buffer returned twice", _released.put(buffer, Boolean.TRUE));
+        }
+
+        void verifyAllReturned()
+        {
+            assertEquals(_allocated.size(), _released.size());
+        }
+    }
+
+    final static class CollectingChannel
+        implements WritableByteChannel
+    {
+        final ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+
+        final int _maxPerWrite;
+
+        boolean _open = true;
+
+        public CollectingChannel(int maxPerWrite) {
+            _maxPerWrite = maxPerWrite;
+        }
+
+        public int write(ByteBuffer src)
+        {
+            int count = Math.min(src.remaining(), _maxPerWrite);
+            for (int i = 0; i < count; ++i) {
+                _bytes.write(src.get());
+            }
+            return count;
+        }
+
+        public boolean isOpen() { return _open; }
+
+        public void close() { _open = false; }
+
+        public String toString(String enc) throws IOException {
+            return _bytes.toString(enc);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package wstream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.out.OutputName;
+import com.fasterxml.aalto.out.StreamWriterBase;
+
+/**
+ * Tests for verifying that writing elements and attributes using
+ * pre-resolved name handles produces same output as regular methods.
+ */
+public class TestOutputName
+    extends base.BaseTestCase
+{
+    public void testNonRepairing() throws Exception
+    {
+        final String EXP = "<ns:root xmlns:ns=\"urn:ns\"><ns:item id=\"1\" ns:attr=\"x\">a</ns:item>"
+            +"<leaf id=\"2\"/><ns:item id=\"3\" ns:attr=\"x\">a</ns:item></ns:root>";
+        for (String enc : new String[] { ENC_UTF8, ENC_LATIN1, "UTF-16" }) {
+            assertEquals(EXP, _writeDoc(false, enc, true));
+            assertEquals(EXP, _writeDoc(false, enc, false));
+        }
+    }
+
+    public void testRepairing() throws Exception
+    {
+        for (String enc : new String[] { ENC_UTF8, ENC_LATIN1, "UTF-16" }) {
+            assertEquals(_writeDoc(true, enc, false), _writeDoc(true, enc, true));
+        }
+
+        // and then cases where bindings need to be added
+        XMLOutputFactory f = getNewOutputFactory();
+        f.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.TRUE);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        StreamWriterBase sw = (StreamWriterBase) f.createXMLStreamWriter(bos, ENC_UTF8);
+        OutputName elem = sw.resolveName("p", "elem", "urn:p");
+        OutputName attr = sw.resolveName("q", "attr", "urn:q");
+        sw.writeStartElement(elem);
+        sw.writeAttribute(attr, "1");
+        sw.writeEmptyElement(elem);
+        sw.writeAttribute(attr, "2");
+        sw.writeEndElement();
+        sw.close();
+        assertEquals("<p:elem xmlns:p=\"urn:p\" xmlns:q=\"urn:q\" q:attr=\"1\"><p:elem q:attr=\"2\"/></p:elem>",
+                     bos.toString(ENC_UTF8));
+    }
+
+    /**
+     * Handles can be used with writers they were not resolved by, too
+     */
+    public void testOtherEncoding() throws Exception
+    {
+        StreamWriterBase sw = (StreamWriterBase) getNewOutputFactory().createXMLStreamWriter(new ByteArrayOutputStream(), ENC_UTF8);
+        OutputName name = sw.resolveName(null, "r\u00E9sum\u00E9", null);
+        assertEquals("r\u00E9sum\u00E9", name.getLocalName());
+        assertNull(name.getPrefix());
+        assertEquals("", name.getNamespaceURI());
+
+        for (String enc : new String[] { ENC_UTF8, ENC_LATIN1, "UTF-16" }) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            sw = (StreamWriterBase) getNewOutputFactory().createXMLStreamWriter(bos, enc);
+            sw.writeEmptyElement(name);
+            sw.writeAttribute(name, "x");
+            sw.close();
+            assertEquals("<r\u00E9sum\u00E9 r\u00E9sum\u00E9=\"x\"/>", bos.toString(enc));
+        }
+    }
+
+    public void testAttrWithoutElement() throws Exception
+    {
+        StreamWriterBase sw = (StreamWriterBase) getNewOutputFactory().createXMLStreamWriter(new ByteArrayOutputStream(), ENC_UTF8);
+        OutputName name = sw.resolveName(null, "attr", null);
+        try {
+            sw.writeAttribute(name, "x");
+            fail("Should not pass");
+        } catch (XMLStreamException e) {
+            verifyException(e, "attribute");
+        }
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////
+     */
+
+    private String _writeDoc(boolean repairing, String enc, boolean useHandles)
+        throws Exception
+    {
+        XMLOutputFactory f = getNewOutputFactory();
+        f.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.valueOf(repairing));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        StreamWriterBase sw = (StreamWriterBase) f.createXMLStreamWriter(bos, enc);
+
+        sw.writeStartElement("ns", "root", "urn:ns");
+        sw.writeNamespace("ns", "urn:ns");
+        OutputName item = sw.resolveName("ns", "item", "urn:ns");
+        OutputName leaf = sw.resolveName(null, "leaf", null);
+        OutputName id = sw.resolveName(null, "id", null);
+        OutputName attr = sw.resolveName("ns", "attr", "urn:ns");
+        for (int i = 1; i <= 3; ++i) {
+            String idValue = String.valueOf(i);
+            if (i == 2) {
+                if (useHandles) {
+                    sw.writeEmptyElement(leaf);
+                    sw.writeAttribute(id, idValue);
+                } else {
+                    sw.writeEmptyElement("leaf");
+                    sw.writeAttribute("id", idValue);
+                }
+                continue;
+            }
+            if (useHandles) {
+                sw.writeStartElement(item);
+                sw.writeAttribute(id, idValue);
+                sw.writeAttribute(attr, "x");
+            } else {
+                sw.writeStartElement("ns", "item", "urn:ns");
+                sw.writeAttribute("id", idValue);
+                sw.writeAttribute("ns", "urn:ns", "attr", "x");
+            }
+            sw.writeCharacters("a");
+            sw.writeEndElement();
+        }
+        sw.writeEndElement();
+        sw.close();
+        return bos.toString(enc);
+    }
+}
@@ -0,0 +1,220 @@
+package wstream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.out.OutputTemplate;
+import com.fasterxml.aalto.out.StreamWriterBase;
+
+/**
+ * Tests for verifying that output templates produce same output as
+ * equivalent regular write calls.
+ */
+public class TestOutputTemplate
+    extends base.BaseTestCase
+{
+    final static String[] ENCODINGS = { ENC_UTF8, ENC_LATIN1, "US-ASCII", "UTF-16" };
+
+    public void testWholeElement() throws Exception
+    {
+        OutputTemplate t = new OutputTemplate()
+            .startElement("item").attribute("type", "a&b \"c\" \u20AC").attributeSlot("id")
+            .startElement("name").textSlot().endElement()
+            .startElement("empty").endElement()
+            .characters("x < y\r\n\u00E9")
+            .endElement();
+        assertEquals(2, t.getSlotCount());
+        assertFalse(t.isOpen());
+
+        for (String enc : ENCODINGS) {
+            // second round uses cached compiled template
+            for (int reuse = 0; reuse < 2; ++reuse) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                StreamWriterBase sw = createWriter(bos, enc);
+                sw.writeStartElement("root");
+                for (int i = 0; i < 3; ++i) {
+                    sw.writeStartElement("item");
+                    sw.writeAttribute("type", "a&b \"c\" \u20AC");
+                    sw.writeAttribute("id", String.valueOf(i));
+                    sw.writeStartElement("name");
+                    sw.writeCharacters("value <"+i+"> \u00FF\u20AC");
+                    sw.writeEndElement();
+                    sw.writeEmptyElement("empty");
+                    sw.writeCharacters("x < y\r\n\u00E9");
+                    sw.writeEndElement();
+                }
+                sw.writeEndElement();
+                sw.close();
+
+                _verifySame(bos.toByteArray(), _write(t, enc), enc);
+            }
+        }
+    }
+
+    public void testOpenStartTag() throws Exception
+    {
+        OutputTemplate t = new OutputTemplate()
+            .startElement("p", "item").namespace("p", "urn:p").attribute("type", "x");
+        assertTrue(t.isOpen());
+        for (String enc : ENCODINGS) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            StreamWriterBase sw = createWriter(bos, enc);
+            sw.writeTemplate(t);
+            sw.writeAttribute("id", "1");
+            // binding from template must be known to writer
+            sw.writeStartElement("urn:p", "child");
+            sw.writeEndElement();
+            sw.writeEndElement();
+            sw.writeEndDocument();
+            sw.close();
+            assertEquals("<p:item xmlns:p=\"urn:p\" type=\"x\" id=\"1\"><p:child/></p:item>",
+                         bos.toString(enc));
+        }
+    }
+
+    public void testOpenElements() throws Exception
+    {
+        OutputTemplate t = new OutputTemplate()
+            .startElement("root").startElement("list").attributeSlot("size").characters("\n");
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        StreamWriterBase sw = createWriter(bos, ENC_UTF8);
+        sw.writeTemplate(t, "2");
+        sw.writeEmptyElement("a");
+        sw.writeEndElement();
+        sw.writeEndElement();
+        sw.writeEndDocument();
+        sw.close();
+        assertEquals("<root><list size=\"2\">\n<a/></list></root>", bos.toString(ENC_UTF8));
+    }
+
+    public void testNullValues() throws Exception
+    {
+        OutputTemplate t = new OutputTemplate()
+            .startElement("a").attributeSlot("x").attributeSlot("y").textSlot().endElement();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        StreamWriterBase sw = createWriter(bos, ENC_UTF8);
+        sw.writeTemplate(t, null, "2", null);
+        sw.close();
+        assertEquals("<a y=\"2\"></a>", bos.toString(ENC_UTF8));
+
+        try {
+            createWriter(new ByteArrayOutputStream(), ENC_UTF8).writeTemplate(t, "1");
+            fail("Should not pass");
+        } catch (IllegalArgumentException e) {
+            verifyException(e, "3 slots");
+        }
+    }
+
+    public void testStructure() throws Exception
+    {
+        // Root-level template: nothing allowed after it
+        OutputTemplate t = new OutputTemplate().startElement("root").endElement();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        StreamWriterBase sw = createWriter(bos, ENC_UTF8);
+        sw.writeStartDocument();
+        sw.writeTemplate(t);
+        try {
+            sw.writeStartElement("second");
+            fail("Should not pass");
+        } catch (XMLStreamException e) {
+            verifyException(e, "second root");
+        }
+
+        try {
+            new OutputTemplate().startElement("a").endElement().startElement("b");
+            fail("Should not pass");
+        } catch (IllegalStateException e) {
+            verifyException(e, "single root");
+        }
+        try {
+            new OutputTemplate().startElement("a").characters("x").attribute("b", "c");
+            fail("Should not pass");
+        } catch (IllegalStateException e) {
+            verifyException(e, "right after a start element");
+        }
+        try {
+            new OutputTemplate().startElement("a").characters("\u0001");
+            fail("Should not pass");
+        } catch (IllegalArgumentException e) {
+            verifyException(e, "Invalid character");
+        }
+        try {
+            t.startElement("x");
+            fail("Should not pass");
+        } catch (IllegalStateException e) {
+            verifyException(e, "after it has been used");
+        }
+    }
+
+    /**
+     * Names can not use character entities, so those with characters that
+     * output encoding can not express must fail
+     */
+    public void testUnencodableName() throws Exception
+    {
+        OutputTemplate t = new OutputTemplate().startElement("\u00E9").endElement();
+        _write(t, ENC_LATIN1);
+        try {
+            _write(t, "US-ASCII");
+            fail("Should not pass");
+        } catch (XMLStreamException e) {
+            verifyException(e, "can not be expressed");
+        }
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////
+     */
+
+    private StreamWriterBase createWriter(OutputStream out, String enc)
+        throws XMLStreamException
+    {
+        return (StreamWriterBase) getNewOutputFactory().createXMLStreamWriter(out, enc);
+    }
+
+    private byte[] _write(OutputTemplate t, String enc) throws Exception
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        StreamWriterBase sw = createWriter(bos, enc);
+        sw.writeStartElement("root");
+        for (int i = 0; i < 3; ++i) {
+            if (t.getSlotCount() == 0) {
+                sw.writeTemplate(t);
+            } else {
+                sw.writeTemplate(t, String.valueOf(i), "value <"+i+"> \u00FF\u20AC");
+            }
+        }
+        sw.writeEndElement();
+        sw.close();
+        return bos.toByteArray();
+    }
+
+    /**
+     * Since constant parts may be escaped differently from the way
+     * writer escapes them, need to compare parsed content.
+     */
+    private void _verifySame(byte[] exp, byte[] actual, String enc) throws Exception
+    {
+        XMLStreamReader sr1 = getNewInputFactory().createXMLStreamReader(new InputStreamReader(new ByteArrayInputStream(exp), enc));
+        XMLStreamReader sr2 = getNewInputFactory().createXMLStreamReader(new InputStreamReader(new ByteArrayInputStream(actual), enc));
+        while (sr1.hasNext()) {
+            int type = sr1.next();
+            assertTokenType(type, sr2.next());
+            if (type == START_ELEMENT) {
+                assertEquals(sr1.getName(), sr2.getName());
+                assertEquals(sr1.getAttributeCount(), sr2.getAttributeCount());
+                for (int i = 0; i < sr1.getAttributeCount(); ++i) {
+                    assertEquals(sr1.getAttributeName(i), sr2.getAttributeName(i));
+                    assertEquals(sr1.getAttributeValue(i), sr2.getAttributeValue(i));
+                }
+            } else if (type == CHARACTERS) {
+                assertEquals(sr1.getText(), sr2.getText());
+            }
+        }
+        sr1.close();
+        sr2.close();
+    }
+}
@@ -0,0 +1,153 @@
+package wstream;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+import javax.xml.stream.*;
+
+import com.fasterxml.aalto.AaltoOutputProperties;
+
+/**
+ * Tests for verifying that pipelined output (where full buffers are
+ * written in the background) produces same output as regular output.
+ */
+public class TestPipelinedOutput
+    extends base.BaseTestCase
+{
+    final static String[] ENCODINGS = { ENC_UTF8, ENC_LATIN1, "US-ASCII" };
+
+    public void testSameOutput() throws Exception
+    {
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            for (String enc : ENCODINGS) {
+                byte[] exp = _write(null, enc, new ByteArrayOutputStream());
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                byte[] actual = _write(exec, enc, new SlowOutputStream(bos));
+                assertTrue("Output differs for "+enc, Arrays.equals(exp, actual));
+            }
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    /**
+     * If executor does not accept tasks, output has to be written
+     * synchronously
+     */
+    public void testRejectedExecution() throws Exception
+    {
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        exec.shutdown();
+        byte[] exp = _write(null, ENC_UTF8, new ByteArrayOutputStream());
+        byte[] actual = _write(exec, ENC_UTF8, new ByteArrayOutputStream());
+        assertTrue(Arrays.equals(exp, actual));
+    }
+
+    public void testFailedWrite() throws Exception
+    {
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            XMLStreamWriter sw = _createWriter(exec, ENC_UTF8, new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throw new IOException("Test failure");
+                    }
+
+                    @Override
+                    public void write(byte[] b, int offset, int len) throws IOException {
+                        throw new IOException("Test failure");
+                    }
+                });
+            try {
+                _writeContent(sw);
+                sw.close();
+                fail("Should not pass");
+            } catch (XMLStreamException e) {
+                verifyException(e, "Test failure");
+            }
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////
+     */
+
+    private XMLStreamWriter _createWriter(Executor exec, String enc, OutputStream out)
+        throws XMLStreamException
+    {
+        XMLOutputFactory f = getNewOutputFactory();
+        f.setProperty(AaltoOutputProperties.P_FLUSH_EXECUTOR, exec);
+        return f.createXMLStreamWriter(out, enc);
+    }
+
+    private byte[] _write(Executor exec, String enc, OutputStream out)
+        throws XMLStreamException
+    {
+        XMLStreamWriter sw = _createWriter(exec, enc, out);
+        _writeContent(sw);
+        sw.close();
+        if (out instanceof SlowOutputStream) {
+            out = ((SlowOutputStream) out)._out;
+        }
+        return ((ByteArrayOutputStream) out).toByteArray();
+    }
+
+    private void _writeContent(XMLStreamWriter sw) throws XMLStreamException
+    {
+        sw.writeStartDocument();
+        sw.writeStartElement("root");
+        // long names, attribute values to exercise all buffer boundaries
+        StringBuilder sb = new StringBuilder("name");
+        while (sb.length() < 9000) {
+            sb.append(sb.length());
+        }
+        String longName = sb.toString();
+        for (int i = 0; i < 2000; ++i) {
+            sw.writeStartElement("item");
+            sw.writeAttribute("id", String.valueOf(i));
+            sw.writeAttribute("desc", "a&b <"+i+"> \"\u00E9\"\t\n");
+            sw.writeCharacters("Value & text\r\n"+i+" \u00FF\u20AC");
+            char[] ch = ("chars "+i+"<]]>").toCharArray();
+            sw.writeCharacters(ch, 0, ch.length);
+            sw.writeComment(" comment "+i+" ");
+            sw.writeEndElement();
+            if ((i % 500) == 0) {
+                sw.writeEmptyElement(longName);
+                sw.writeAttribute("attr", longName);
+                sw.writeCharacters(longName);
+            }
+        }
+        sw.writeEndElement();
+        sw.writeEndDocument();
+    }
+
+    /**
+     * Stream that yields between writes, to make it more likely
+     * that writes overlap with serialization
+     */
+    final static class SlowOutputStream extends OutputStream
+    {
+        final ByteArrayOutputStream _out;
+
+        public SlowOutputStream(ByteArrayOutputStream out) {
+            _out = out;
+        }
+
+        @Override
+        public void write(int b) {
+            _out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int len) {
+            Thread.yield();
+            _out.write(b, offset, len);
+        }
+    }
+}
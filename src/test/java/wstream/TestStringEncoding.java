@@ -0,0 +1,170 @@
+package wstream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+/**
+ * Tests for verifying that text and attribute values passed as Strings
+ * (which byte-based writers encode directly, without copying) produce
+ * same output as when passed as char arrays.
+ */
+public class TestStringEncoding
+    extends base.BaseTestCase
+{
+    final static String[] ENCODINGS = { ENC_UTF8, ENC_LATIN1, "US-ASCII" };
+
+    final static String SAMPLE = "abc <&> ]]> \u00E9\u00FF \u20AC \uD834\uDD1E\r\n";
+
+    public void testShortText() throws Exception
+    {
+        for (String enc : ENCODINGS) {
+            _verifyText(SAMPLE, enc);
+            _verifyText("x", enc);
+            _verifyText("", enc);
+        }
+    }
+
+    public void testLongText() throws Exception
+    {
+        for (String enc : ENCODINGS) {
+            _verifyText(_longString(9000), enc);
+            _verifyText(_longString(70000), enc);
+        }
+    }
+
+    public void testShortAttribute() throws Exception
+    {
+        for (String enc : ENCODINGS) {
+            _verifyAttr(SAMPLE, enc);
+            _verifyAttr("\"'\t", enc);
+            _verifyAttr("", enc);
+        }
+    }
+
+    public void testLongAttribute() throws Exception
+    {
+        for (String enc : ENCODINGS) {
+            _verifyAttr(_longString(9000), enc);
+            _verifyAttr(_longString(70000), enc);
+        }
+    }
+
+    /**
+     * Test to verify that chars needing escaping or encoding are found
+     * at any offset, since runs of clean chars are scanned in blocks.
+     */
+    public void testSpecialCharOffsets() throws Exception
+    {
+        final String CLEAN = "abcdefghijk";
+        final String SPECIAL = "<&>\n\u00E9\u20AC\"";
+        for (String enc : ENCODINGS) {
+            for (int len = 1; len <= CLEAN.length(); ++len) {
+                for (int i = 0; i < len; ++i) {
+                    for (int j = 0; j < SPECIAL.length(); ++j) {
+                        String str = CLEAN.substring(0, i) + SPECIAL.charAt(j) + CLEAN.substring(i+1, len);
+                        _verifyText(str, enc);
+                        _verifyAttr(str, enc);
+                    }
+                }
+            }
+        }
+    }
+
+    public void testCarriageReturn() throws Exception
+    {
+        final String EXP = "<root>a&#xd;\nb</root>";
+        String out = _write("a\r\nb", ENC_UTF8, false);
+        assertEquals(EXP, out.substring(out.indexOf("<root>")));
+        out = _write("a\r\nb", ENC_UTF8, true);
+        assertEquals(EXP, out.substring(out.indexOf("<root>")));
+    }
+
+    /**
+     * Surrogate pairs may be split between calls for text content
+     */
+    public void testSplitSurrogate() throws Exception
+    {
+        for (String enc : ENCODINGS) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            XMLStreamWriter sw = getNewOutputFactory().createXMLStreamWriter(bos, enc);
+            sw.writeStartDocument(enc, "1.0");
+            sw.writeStartElement("root");
+            sw.writeCharacters("a\uD834");
+            sw.writeCharacters("\uDD1Eb");
+            sw.writeCharacters("c");
+            sw.writeEndElement();
+            sw.close();
+            _verifyRead(bos.toByteArray(), enc, "a\uD834\uDD1Ebc");
+        }
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////
+     */
+
+    private void _verifyText(String text, String enc) throws Exception
+    {
+        String str = _write(text, enc, false);
+        assertEquals(_write(text, enc, true), str);
+        _verifyRead(str.getBytes(enc), enc, text);
+    }
+
+    private void _verifyAttr(String value, String enc) throws Exception
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        XMLStreamWriter sw = getNewOutputFactory().createXMLStreamWriter(bos, enc);
+        sw.writeStartDocument(enc, "1.0");
+        sw.writeEmptyElement("root");
+        sw.writeAttribute("attr", value);
+        sw.writeEndDocument();
+        sw.close();
+        byte[] data = bos.toByteArray();
+
+        XMLStreamReader sr = getNewInputFactory().createXMLStreamReader(new ByteArrayInputStream(data), enc);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals(value, sr.getAttributeValue(0));
+        sr.close();
+    }
+
+    private String _write(String text, String enc, boolean asArray)
+        throws Exception
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        XMLStreamWriter sw = getNewOutputFactory().createXMLStreamWriter(bos, enc);
+        sw.writeStartDocument(enc, "1.0");
+        sw.writeStartElement("root");
+        if (asArray) {
+            char[] ch = text.toCharArray();
+            sw.writeCharacters(ch, 0, ch.length);
+        } else {
+            sw.writeCharacters(text);
+        }
+        sw.writeEndElement();
+        sw.close();
+        return bos.toString(enc);
+    }
+
+    private void _verifyRead(byte[] data, String enc, String exp) throws Exception
+    {
+        XMLStreamReader sr = getNewInputFactory().createXMLStreamReader(new ByteArrayInputStream(data), enc);
+        assertTokenType(START_ELEMENT, sr.next());
+        StringBuilder sb = new StringBuilder();
+        while (sr.next() != END_ELEMENT) {
+            sb.append(sr.getText());
+        }
+        assertEquals(exp, sb.toString());
+        sr.close();
+    }
+
+    private String _longString(int minLen)
+    {
+        StringBuilder sb = new StringBuilder(minLen + SAMPLE.length());
+        while (sb.length() < minLen) {
+            sb.append(SAMPLE).append(sb.length());
+        }
+        return sb.toString();
+    }
+}
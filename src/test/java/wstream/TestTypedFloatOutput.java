@@ -0,0 +1,115 @@
+package wstream;
+
+import java.io.*;
+import java.util.Random;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamWriter2;
+
+/**
+ * Tests for verifying that floating-point values written via Typed
+ * Access API are output correctly, both by byte- and char-based writers,
+ * including arrays that span multiple output buffers.
+ */
+public class TestTypedFloatOutput
+    extends base.BaseTestCase
+{
+    public void testScalars() throws Exception
+    {
+        for (int i = 0; i < 3; ++i) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            XMLStreamWriter2 sw = _createWriter(bos, i);
+            sw.writeStartElement("root");
+            sw.writeDoubleAttribute(null, null, "d", 1.0e23);
+            sw.writeFloatAttribute(null, null, "f", -0.1f);
+            sw.writeStartElement("a");
+            sw.writeDouble(0.001);
+            sw.writeEndElement();
+            sw.writeStartElement("b");
+            sw.writeFloat(Float.NaN);
+            sw.writeEndElement();
+            sw.writeEndElement();
+            sw.close();
+            assertEquals("<root d=\"1.0E23\" f=\"-0.1\"><a>0.001</a><b>NaN</b></root>",
+                         bos.toString(ENC_UTF8));
+        }
+    }
+
+    public void testArrays() throws Exception
+    {
+        Random r = new Random(7);
+        double[] doubles = new double[5000];
+        float[] floats = new float[5000];
+        for (int i = 0; i < doubles.length; ++i) {
+            doubles[i] = Double.longBitsToDouble(r.nextLong());
+            if (Double.isNaN(doubles[i])) {
+                doubles[i] = i;
+            }
+            floats[i] = (float) (r.nextGaussian() * 1000.0);
+        }
+        for (int i = 0; i < 3; ++i) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            XMLStreamWriter2 sw = _createWriter(bos, i);
+            sw.writeStartElement("root");
+            sw.writeDoubleArrayAttribute(null, null, "d", doubles);
+            sw.writeFloatArrayAttribute(null, null, "f", floats);
+            sw.writeStartElement("d");
+            sw.writeDoubleArray(doubles, 0, doubles.length);
+            sw.writeEndElement();
+            sw.writeStartElement("f");
+            sw.writeFloatArray(floats, 0, floats.length);
+            sw.writeEndElement();
+            sw.writeEndElement();
+            sw.close();
+
+            XMLStreamReader sr = getNewInputFactory().createXMLStreamReader(new ByteArrayInputStream(bos.toByteArray()));
+            assertTokenType(START_ELEMENT, sr.next());
+            _verifyDoubles(doubles, sr.getAttributeValue(null, "d"));
+            _verifyFloats(floats, sr.getAttributeValue(null, "f"));
+            assertTokenType(START_ELEMENT, sr.next());
+            _verifyDoubles(doubles, sr.getElementText());
+            assertTokenType(START_ELEMENT, sr.next());
+            _verifyFloats(floats, sr.getElementText());
+            sr.close();
+        }
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////
+     */
+
+    /**
+     * @param type 0 for UTF-8, 1 for Latin1 byte-based writer, 2 for
+     *   char-based writer
+     */
+    private XMLStreamWriter2 _createWriter(OutputStream out, int type)
+        throws Exception
+    {
+        XMLOutputFactory f = getNewOutputFactory();
+        if (type == 2) {
+            return (XMLStreamWriter2) f.createXMLStreamWriter(new OutputStreamWriter(out, ENC_UTF8));
+        }
+        return (XMLStreamWriter2) f.createXMLStreamWriter(out, (type == 0) ? ENC_UTF8 : ENC_LATIN1);
+    }
+
+    private void _verifyDoubles(double[] exp, String str)
+    {
+        String[] parts = str.trim().split(" ");
+        assertEquals(exp.length, parts.length);
+        for (int i = 0; i < exp.length; ++i) {
+            assertEquals(exp[i], Double.parseDouble(parts[i]));
+        }
+    }
+
+    private void _verifyFloats(float[] exp, String str)
+    {
+        String[] parts = str.trim().split(" ");
+        assertEquals(exp.length, parts.length);
+        for (int i = 0; i < exp.length; ++i) {
+            assertEquals(exp[i], Float.parseFloat(parts[i]));
+        }
+    }
+}
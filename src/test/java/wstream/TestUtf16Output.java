@@ -0,0 +1,134 @@
+package wstream;
+
+import java.io.*;
+import java.util.Arrays;
+
+import javax.xml.stream.*;
+
+/**
+ * Tests for verifying that UTF-16 output written to byte streams
+ * (which does not use JDK encoders) produces expected byte sequences,
+ * including byte order mark where needed.
+ */
+public class TestUtf16Output
+    extends base.BaseTestCase
+{
+    final static String[] ENCODINGS = { "UTF-16", "UTF-16BE", "UTF-16LE" };
+
+    public void testSimple() throws Exception
+    {
+        for (String enc : ENCODINGS) {
+            _verify(enc, "abc \u00E9\u20AC \uD834\uDD1E <&>");
+        }
+    }
+
+    public void testLong() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 20000; ++i) {
+            sb.append("value \u20AC").append(i).append(' ');
+        }
+        String text = sb.toString();
+        for (String enc : ENCODINGS) {
+            _verify(enc, text);
+        }
+    }
+
+    /**
+     * Unpaired surrogates are to be replaced, same as JDK encoders do
+     */
+    public void testUnpairedSurrogates() throws Exception
+    {
+        byte[] data = _write("UTF-16BE", "a\uD834b");
+        byte[] exp = "<root attr=\"a\uFFFDb\">a\uFFFDb</root>".getBytes("UTF-16BE");
+        assertTrue("Unpaired surrogate not replaced", Arrays.equals(exp, data));
+        assertEquals((byte) 0xFF, data[26]);
+        assertEquals((byte) 0xFD, data[27]);
+
+        for (String enc : ENCODINGS) {
+            _verifyReplaced(enc, "\uDD1Ex\uD834");
+            _verifyReplaced(enc, "\uD834\uD834\uDD1E");
+        }
+    }
+
+    /**
+     * Surrogate pairs split between writes (long enough not to be
+     * buffered by the stream writer) are to be passed as is
+     */
+    public void testSplitSurrogatePair() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; ++i) {
+            sb.append('x');
+        }
+        String text = sb.toString();
+        for (String enc : ENCODINGS) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            XMLStreamWriter sw = getNewOutputFactory().createXMLStreamWriter(bos, enc);
+            sw.writeStartElement("root");
+            sw.writeCharacters(text+"\uD834");
+            sw.writeCharacters("\uDD1E"+text);
+            sw.writeEndElement();
+            sw.close();
+            String exp = "<root>"+text+"\uD834\uDD1E"+text+"</root>";
+            assertTrue("Output differs for "+enc, Arrays.equals(exp.getBytes(enc), bos.toByteArray()));
+        }
+    }
+
+    public void testByteOrderMark() throws Exception
+    {
+        byte[] data = _write("UTF-16", "x");
+        assertEquals((byte) 0xFE, data[0]);
+        assertEquals((byte) 0xFF, data[1]);
+        assertEquals(0, data[2]);
+        assertEquals('<', data[3]);
+        data = _write("UTF-16LE", "x");
+        assertEquals('<', data[0]);
+        assertEquals(0, data[1]);
+    }
+
+    /*
+    ////////////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////////////
+     */
+
+    private void _verify(String enc, String text) throws Exception
+    {
+        byte[] data = _write(enc, text);
+        StringWriter strw = new StringWriter();
+        _write(getNewOutputFactory().createXMLStreamWriter(strw), text);
+        byte[] exp = strw.toString().getBytes(enc);
+        assertTrue("Output differs for "+enc, Arrays.equals(exp, data));
+
+        XMLStreamReader sr = getNewInputFactory().createXMLStreamReader(new InputStreamReader(new ByteArrayInputStream(data), enc));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals(text, sr.getAttributeValue(0));
+        assertEquals(text, sr.getElementText());
+        sr.close();
+    }
+
+    private void _verifyReplaced(String enc, String text) throws Exception
+    {
+        byte[] data = _write(enc, text);
+        String exp = "<root attr=\""+text+"\">"+text+"</root>";
+        // JDK encoders replace unpaired surrogates as well
+        assertTrue("Output differs for "+enc, Arrays.equals(exp.getBytes(enc), data));
+    }
+
+    private byte[] _write(String enc, String text) throws Exception
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        _write(getNewOutputFactory().createXMLStreamWriter(bos, enc), text);
+        return bos.toByteArray();
+    }
+
+    private void _write(XMLStreamWriter sw, String text) throws Exception
+    {
+        sw.writeStartElement("root");
+        sw.writeAttribute("attr", text);
+        sw.writeCharacters(text);
+        sw.writeEndElement();
+        sw.close();
+    }
+}